@@ -0,0 +1,165 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+
+/**
+ * Sets up an analysis cache and AnalysisContext over the compiled
+ * findbugsTestCases classes, the input of all the analysis benchmarks. The
+ * benchmarks run without a FindBugs2 engine, so this does the parts of
+ * FindBugs2.execute() they need: build the classpath, create the analysis
+ * cache and register the analysis engines.
+ * <p>
+ * The classes are taken from the directory given by the
+ * <code>benchmark.classes</code> system property, by default
+ * <code>build/classes</code> in the directory given by
+ * <code>findbugsTestCases.home</code>. At most
+ * <code>benchmark.maxClasses</code> of them (by default 400) are used, in
+ * order of their names, so that runs are comparable.
+ * <p>
+ * The analysis cache and AnalysisContext are thread local, so the fixture
+ * must be created by the thread running the benchmark.
+ */
+public class AnalysisFixture {
+
+    private static final int MAX_CLASSES = SystemProperties.getInt("benchmark.maxClasses", 400);
+
+    private final IAnalysisCache analysisCache;
+
+    private final List<ClassDescriptor> appClassList;
+
+    private AnalysisFixture(IAnalysisCache analysisCache, List<ClassDescriptor> appClassList) {
+        this.analysisCache = analysisCache;
+        this.appClassList = appClassList;
+    }
+
+    /**
+     * @return directory containing the classes to analyze
+     */
+    public static File getClassesDirectory() {
+        String classes = SystemProperties.getProperty("benchmark.classes");
+        if (classes != null) {
+            return new File(classes);
+        }
+        String testCases = SystemProperties.getProperty("findbugsTestCases.home", "../findbugsTestCases");
+        return new File(testCases, "build/classes");
+    }
+
+    /**
+     * Create the fixture for the current thread.
+     *
+     * @return the AnalysisFixture
+     */
+    public static AnalysisFixture create() throws IOException, InterruptedException, CheckedAnalysisException {
+        File classes = getClassesDirectory();
+        if (!classes.isDirectory()) {
+            throw new IOException("Benchmark input " + classes
+                    + " not found; compile findbugsTestCases or set benchmark.classes");
+        }
+        DetectorFactoryCollection detectorFactoryCollection = DetectorFactoryCollection.instance();
+        PrintingBugReporter bugReporter = new PrintingBugReporter();
+
+        IClassFactory classFactory = ClassFactory.instance();
+        IClassPath classPath = classFactory.createClassPath();
+        IAnalysisCache analysisCache = classFactory.createAnalysisCache(classPath, bugReporter);
+        FindBugs2.registerBuiltInAnalysisEngines(analysisCache);
+        FindBugs2.registerPluginAnalysisEngines(detectorFactoryCollection, analysisCache);
+        analysisCache.eagerlyPutDatabase(DetectorFactoryCollection.class, detectorFactoryCollection);
+        Global.setAnalysisCacheForCurrentThread(analysisCache);
+
+        // as in FindBugs2, the classpath is built once the cache exists
+        IClassPathBuilder builder = classFactory.createClassPathBuilder(bugReporter);
+        builder.addCodeBase(classFactory.createFilesystemCodeBaseLocator(classes.getPath()), true);
+        builder.scanNestedArchives(false);
+        builder.build(classPath, new NoOpFindBugsProgress());
+
+        List<ClassDescriptor> appClassList = new ArrayList<ClassDescriptor>(builder.getAppClassList());
+        Collections.sort(appClassList);
+        if (appClassList.size() > MAX_CLASSES) {
+            appClassList = new ArrayList<ClassDescriptor>(appClassList.subList(0, MAX_CLASSES));
+        }
+
+        Project project = new Project();
+        project.addFile(classes.getPath());
+        FindBugs2.createAnalysisContext(project, appClassList, null);
+        FindBugs2.setAppClassList(appClassList);
+        return new AnalysisFixture(analysisCache, appClassList);
+    }
+
+    public IAnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    /**
+     * @return the classes to analyze, sorted by name
+     */
+    public List<ClassDescriptor> getAppClassList() {
+        return appClassList;
+    }
+
+    /**
+     * @return the non-abstract, non-native methods of the classes to
+     *         analyze
+     */
+    public List<MethodDescriptor> getMethodsWithCode() throws CheckedAnalysisException {
+        List<MethodDescriptor> result = new ArrayList<MethodDescriptor>();
+        for (ClassDescriptor classDescriptor : appClassList) {
+            XClass xclass = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+            for (XMethod xmethod : xclass.getXMethods()) {
+                if (!xmethod.isAbstract() && !xmethod.isNative()) {
+                    result.add(xmethod.getMethodDescriptor());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discard the analysis cache and AnalysisContext of the current thread.
+     */
+    public void dispose() {
+        AnalysisContext.removeCurrentAnalysisContext();
+        Global.removeAnalysisCacheForCurrentThread();
+    }
+}
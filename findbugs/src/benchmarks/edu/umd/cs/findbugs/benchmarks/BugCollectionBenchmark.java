@@ -0,0 +1,103 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * Read and write a bug collection, in XML and in the binary format. The
+ * collection is read from the file given by the <code>benchmark.bugs</code>
+ * system property, by default the sample analysis results in
+ * <code>src/sampleXml</code>; use real analysis results to get meaningful
+ * numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BugCollectionBenchmark {
+
+    private byte[] xml;
+
+    private byte[] binary;
+
+    private SortedBugCollection bugCollection;
+
+    @Setup
+    public void setUp() throws Exception {
+        DetectorFactoryCollection.instance();
+        String bugs = SystemProperties.getProperty("benchmark.bugs",
+                "src/sampleXml/analysisResultsWithFilterAndUserAnnotations.xml");
+        xml = IO.readAll(new FileInputStream(bugs));
+        bugCollection = new SortedBugCollection();
+        bugCollection.readXML(new ByteArrayInputStream(xml));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bugCollection.writeBinary(out);
+        binary = out.toByteArray();
+    }
+
+    @Benchmark
+    public SortedBugCollection readXML() throws Exception {
+        SortedBugCollection result = new SortedBugCollection();
+        result.readXML(new ByteArrayInputStream(xml));
+        return result;
+    }
+
+    @Benchmark
+    public SortedBugCollection readBinary() throws Exception {
+        SortedBugCollection result = new SortedBugCollection();
+        result.readXML(new ByteArrayInputStream(binary));
+        return result;
+    }
+
+    @Benchmark
+    public int writeXML() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+        bugCollection.writeXML(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeBinary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(binary.length);
+        bugCollection.writeBinary(out);
+        return out.size();
+    }
+}
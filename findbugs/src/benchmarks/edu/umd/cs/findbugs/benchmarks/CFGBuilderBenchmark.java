@@ -0,0 +1,85 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bcel.generic.MethodGen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.ba.BetterCFGBuilder2;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Build the control flow graph of every method of the input classes with
+ * BetterCFGBuilder2. The MethodGens are created once, up front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CFGBuilderBenchmark {
+
+    private AnalysisFixture fixture;
+
+    private final List<MethodDescriptor> methods = new ArrayList<MethodDescriptor>();
+
+    private final List<MethodGen> methodGens = new ArrayList<MethodGen>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        for (MethodDescriptor method : fixture.getMethodsWithCode()) {
+            MethodGen methodGen = fixture.getAnalysisCache().getMethodAnalysis(MethodGen.class, method);
+            if (methodGen != null) {
+                methods.add(method);
+                methodGens.add(methodGen);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public void buildCFGs(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < methods.size(); i++) {
+            BetterCFGBuilder2 builder = new BetterCFGBuilder2(methods.get(i), methodGens.get(i));
+            builder.build();
+            blackhole.consume(builder.getCFG());
+        }
+    }
+}
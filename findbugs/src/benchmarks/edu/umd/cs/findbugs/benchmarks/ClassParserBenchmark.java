@@ -0,0 +1,83 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
+
+/**
+ * Parse all of the input classes with ClassParserUsingASM, as done when
+ * building the XClass of each class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassParserBenchmark {
+
+    private AnalysisFixture fixture;
+
+    private final List<ClassData> classes = new ArrayList<ClassData>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        for (ClassDescriptor classDescriptor : fixture.getAppClassList()) {
+            classes.add(fixture.getAnalysisCache().getClassAnalysis(ClassData.class, classDescriptor));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public void parseClasses(Blackhole blackhole) throws Exception {
+        for (ClassData classData : classes) {
+            ClassParserUsingASM parser = new ClassParserUsingASM(new FBClassReader(classData.getData()),
+                    classData.getClassDescriptor(), classData.getCodeBaseEntry());
+            ClassInfo.Builder builder = new ClassInfo.Builder();
+            parser.parse(builder);
+            blackhole.consume(builder.build());
+        }
+    }
+}
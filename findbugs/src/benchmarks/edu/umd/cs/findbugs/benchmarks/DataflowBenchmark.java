@@ -0,0 +1,108 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.IsNullValueDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.TypeDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ValueNumberDataflowFactory;
+
+/**
+ * Execute a dataflow analysis on every method of the input classes. The
+ * analyses the dataflow depends on (CFG, depth first search, and for the null
+ * analysis, the value numbers and types) come from the analysis cache, and
+ * are computed once, during setup; each invocation only executes the
+ * dataflow analysis being measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataflowBenchmark {
+
+    @Param({ "ValueNumberAnalysis", "IsNullValueAnalysis", "TypeAnalysis" })
+    public String analysis;
+
+    private AnalysisFixture fixture;
+
+    private AnalysisFactory<?> factory;
+
+    private final List<MethodDescriptor> methods = new ArrayList<MethodDescriptor>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        if ("ValueNumberAnalysis".equals(analysis)) {
+            factory = new ValueNumberDataflowFactory();
+        } else if ("IsNullValueAnalysis".equals(analysis)) {
+            factory = new IsNullValueDataflowFactory();
+        } else if ("TypeAnalysis".equals(analysis)) {
+            factory = new TypeDataflowFactory();
+        } else {
+            throw new IllegalArgumentException("Unknown analysis " + analysis);
+        }
+        IAnalysisCache analysisCache = fixture.getAnalysisCache();
+        for (MethodDescriptor method : fixture.getMethodsWithCode()) {
+            try {
+                // also fills the cache with the analyses this one depends on
+                factory.analyze(analysisCache, method);
+                methods.add(method);
+            } catch (CheckedAnalysisException e) {
+                // method is unprofitable or can't be analyzed: skip it
+                continue;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public void executeDataflow(Blackhole blackhole) throws Exception {
+        IAnalysisCache analysisCache = fixture.getAnalysisCache();
+        for (MethodDescriptor method : methods) {
+            blackhole.consume(factory.analyze(analysisCache, method));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.ba.BasicBlock;
+import edu.umd.cs.findbugs.ba.Dataflow;
+import edu.umd.cs.findbugs.ba.DataflowAnalysis;
+import edu.umd.cs.findbugs.ba.DataflowAnalysisException;
+import edu.umd.cs.findbugs.ba.Edge;
+import edu.umd.cs.findbugs.ba.npe.IsNullValueDataflow;
+import edu.umd.cs.findbugs.ba.type.TypeDataflow;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberDataflow;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Copy and merge the frames computed by a frame dataflow analysis, the way
+ * Dataflow.execute() does while iterating to a fixpoint. The dataflows are
+ * computed during setup.
+ * <p>
+ * This is mainly an allocation benchmark: run it with the JMH gc profiler
+ * (<code>-prof gc</code>) and compare <code>gc.alloc.rate.norm</code>, the
+ * number of bytes allocated per invocation.
+ * <p>
+ * Merging value number frames creates fresh value numbers, which the
+ * analysis remembers, so for the value number analysis only copying is
+ * measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({ "ValueNumberAnalysis", "IsNullValueAnalysis", "TypeAnalysis" })
+    public String analysis;
+
+    private AnalysisFixture fixture;
+
+    private final List<Dataflow<?, ?>> dataflows = new ArrayList<Dataflow<?, ?>>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        Class<? extends Dataflow<?, ?>> dataflowClass;
+        if ("ValueNumberAnalysis".equals(analysis)) {
+            dataflowClass = ValueNumberDataflow.class;
+        } else if ("IsNullValueAnalysis".equals(analysis)) {
+            dataflowClass = IsNullValueDataflow.class;
+        } else if ("TypeAnalysis".equals(analysis)) {
+            dataflowClass = TypeDataflow.class;
+        } else {
+            throw new IllegalArgumentException("Unknown analysis " + analysis);
+        }
+        IAnalysisCache analysisCache = fixture.getAnalysisCache();
+        for (MethodDescriptor method : fixture.getMethodsWithCode()) {
+            try {
+                dataflows.add(analysisCache.getMethodAnalysis(dataflowClass, method));
+            } catch (CheckedAnalysisException e) {
+                // method is unprofitable or can't be analyzed: skip it
+                continue;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    /**
+     * Copy the start and result fact of every basic block into new facts.
+     */
+    @Benchmark
+    public void copyFacts(Blackhole blackhole) {
+        for (Dataflow<?, ?> dataflow : dataflows) {
+            copyFacts(dataflow, blackhole);
+        }
+    }
+
+    /**
+     * For every edge, copy the start fact of the target block and merge the
+     * result fact of the source block into the copy.
+     */
+    @Benchmark
+    public void copyAndMergeFacts(Blackhole blackhole) throws DataflowAnalysisException {
+        if ("ValueNumberAnalysis".equals(analysis)) {
+            return;
+        }
+        for (Dataflow<?, ?> dataflow : dataflows) {
+            copyAndMergeFacts(dataflow, blackhole);
+        }
+    }
+
+    private static <Fact, AnalysisType extends DataflowAnalysis<Fact>> void copyFacts(Dataflow<Fact, AnalysisType> dataflow,
+            Blackhole blackhole) {
+        AnalysisType dataflowAnalysis = dataflow.getAnalysis();
+        for (Iterator<BasicBlock> i = dataflow.getCFG().blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            Fact start = dataflowAnalysis.createFact();
+            dataflowAnalysis.copy(dataflow.getStartFact(block), start);
+            Fact result = dataflowAnalysis.createFact();
+            dataflowAnalysis.copy(dataflow.getResultFact(block), result);
+            blackhole.consume(start);
+            blackhole.consume(result);
+        }
+    }
+
+    private static <Fact, AnalysisType extends DataflowAnalysis<Fact>> void copyAndMergeFacts(
+            Dataflow<Fact, AnalysisType> dataflow, Blackhole blackhole) throws DataflowAnalysisException {
+        AnalysisType dataflowAnalysis = dataflow.getAnalysis();
+        for (Iterator<Edge> i = dataflow.getCFG().edgeIterator(); i.hasNext();) {
+            Edge edge = i.next();
+            Fact merged = dataflowAnalysis.createFact();
+            dataflowAnalysis.copy(dataflow.getStartFact(edge.getTarget()), merged);
+            dataflowAnalysis.meetInto(dataflow.getResultFact(edge.getSource()), edge, merged);
+            blackhole.consume(merged);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * Run an OpcodeStackDetector, which does nothing but look at the stack, over
+ * all of the input classes: this measures DismantleBytecode and the
+ * OpcodeStack updates done for every OpcodeStackDetector. The jump
+ * information of the methods is cached, as it is during analysis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OpcodeStackBenchmark {
+
+    static class StackDepthSum extends OpcodeStackDetector {
+        int sum;
+
+        @Override
+        public void sawOpcode(int seen) {
+            sum += stack.getStackDepth();
+        }
+    }
+
+    private AnalysisFixture fixture;
+
+    private final List<ClassContext> classContexts = new ArrayList<ClassContext>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        for (ClassDescriptor classDescriptor : fixture.getAppClassList()) {
+            classContexts.add(fixture.getAnalysisCache().getClassAnalysis(ClassContext.class, classDescriptor));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public int scanClasses() {
+        StackDepthSum detector = new StackDepthSum();
+        for (ClassContext classContext : classContexts) {
+            detector.visitClassContext(classContext);
+        }
+        return detector.sum;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bcel.generic.ObjectType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.ch.Subtypes2;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Subtype and common superclass queries on the inheritance graph of the
+ * input classes. Every class is queried against its superclass, its
+ * interfaces, java.lang.Object and the next class in the list, so both
+ * answers are represented. Queries that fail because part of the hierarchy
+ * is missing are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Subtypes2Benchmark {
+
+    private AnalysisFixture fixture;
+
+    private Subtypes2 subtypes2;
+
+    private final List<ClassDescriptor> subtypes = new ArrayList<ClassDescriptor>();
+
+    private final List<ClassDescriptor> supertypes = new ArrayList<ClassDescriptor>();
+
+    private final List<ObjectType> objectTypes = new ArrayList<ObjectType>();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = AnalysisFixture.create();
+        subtypes2 = AnalysisContext.currentAnalysisContext().getSubtypes2();
+        ClassDescriptor object = DescriptorFactory.createClassDescriptor(Object.class);
+        List<ClassDescriptor> appClassList = fixture.getAppClassList();
+        for (int i = 0; i < appClassList.size(); i++) {
+            ClassDescriptor classDescriptor = appClassList.get(i);
+            XClass xclass = fixture.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+            List<ClassDescriptor> candidates = new ArrayList<ClassDescriptor>();
+            if (xclass.getSuperclassDescriptor() != null) {
+                candidates.add(xclass.getSuperclassDescriptor());
+            }
+            for (ClassDescriptor iface : xclass.getInterfaceDescriptorList()) {
+                candidates.add(iface);
+            }
+            candidates.add(object);
+            candidates.add(appClassList.get((i + 1) % appClassList.size()));
+            for (ClassDescriptor candidate : candidates) {
+                try {
+                    subtypes2.isSubtype(classDescriptor, candidate);
+                } catch (ClassNotFoundException e) {
+                    // part of the hierarchy is missing: skip the query
+                    continue;
+                }
+                subtypes.add(classDescriptor);
+                supertypes.add(candidate);
+            }
+            ObjectType objectType = ObjectTypeFactory.getInstance(classDescriptor.toDottedClassName());
+            try {
+                if (!objectTypes.isEmpty()) {
+                    subtypes2.getFirstCommonSuperclass(objectTypes.get(objectTypes.size() - 1), objectType);
+                }
+                objectTypes.add(objectType);
+            } catch (ClassNotFoundException e) {
+                // skip the class
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public int isSubtype() throws Exception {
+        int count = 0;
+        for (int i = 0; i < subtypes.size(); i++) {
+            if (subtypes2.isSubtype(subtypes.get(i), supertypes.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void getFirstCommonSuperclass(Blackhole blackhole) throws Exception {
+        for (int i = 1; i < objectTypes.size(); i++) {
+            blackhole.consume(subtypes2.getFirstCommonSuperclass(objectTypes.get(i - 1), objectTypes.get(i)));
+        }
+    }
+}
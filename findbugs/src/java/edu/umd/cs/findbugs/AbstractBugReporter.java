@@ -38,6 +38,7 @@ import org.dom4j.DocumentException;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassNotFoundExceptionParser;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
+import edu.umd.cs.findbugs.ba.TimeBudgetExceededException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
@@ -345,6 +346,10 @@ public abstract class AbstractBugReporter implements BugReporter {
             // TODO: log this
             return;
         }
+        if (e instanceof TimeBudgetExceededException) {
+            // The engine logs abandoned units of work itself, once each
+            return;
+        }
         if (e instanceof edu.umd.cs.findbugs.classfile.MissingClassException) {
             edu.umd.cs.findbugs.classfile.MissingClassException e2 = (edu.umd.cs.findbugs.classfile.MissingClassException) e;
             reportMissingClass(e2.getClassDescriptor());
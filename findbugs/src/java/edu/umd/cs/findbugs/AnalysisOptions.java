@@ -76,6 +76,39 @@ public class AnalysisOptions {
      */
     public boolean noClassOk;
 
+    /**
+     * Analyze classes which are too big to be analyzed as a whole method by
+     * method, rather than skipping them
+     */
+    public boolean analyzeHugeClasses;
+
+    /**
+     * Number of threads used to apply detectors to classes
+     */
+    public int threads = 1;
+
+    /**
+     * Memory budget for cached analysis results in bytes, or 0 to bound the
+     * number of cached results instead
+     */
+    public long cacheBudget;
+
+    /**
+     * Time budget in milliseconds for analyzing a method, or 0 for none
+     */
+    public long methodTimeBudget;
+
+    /**
+     * Time budget in milliseconds for applying a detector to a class, or 0
+     * for none
+     */
+    public long detectorTimeBudget;
+
+    /**
+     * Directory keeping the warnings of each class between runs, or null
+     */
+    public String resultCacheDirectory;
+
     String releaseName;
 
     String projectName;
@@ -0,0 +1,486 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.FieldOrMethod;
+import org.apache.bcel.classfile.JavaClass;
+import org.dom4j.DocumentException;
+
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.AnalysisFeatures;
+import edu.umd.cs.findbugs.ba.ClassHash;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.engine.ClassParser;
+import edu.umd.cs.findbugs.plan.AnalysisPass;
+import edu.umd.cs.findbugs.plan.ExecutionPlan;
+import edu.umd.cs.findbugs.util.ClassName;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * On-disk store of the warnings reported for each application class, which
+ * lets a later analysis of the same classes skip the class local detectors
+ * (see {@link ClassLocalDetector}) for classes which did not change and
+ * report the stored warnings instead. All other detectors still visit every
+ * class, since their warnings may depend on the classes which did change.
+ * <p>
+ * Each class is stored under a key hashing the bytes of the class, of the
+ * classes it references and of all their supertypes, so a class is analyzed
+ * again whenever one of these changes. The whole store is discarded if the
+ * FindBugs version, the plugins, the detectors or the analysis features
+ * differ from the previous run.
+ */
+class AnalysisResultStore {
+
+    private static final String INDEX_FILE = "classes.txt";
+
+    private static final String RESULTS_FILE = "results.xml.gz";
+
+    /**
+     * Property recording the class a stored warning was reported for, and
+     * the position of the warning among the warnings of the class
+     */
+    private static final String CLASS_PROPERTY = "resultStore.class";
+
+    /**
+     * Orders stored warnings, keeping warnings which are equal but for the
+     * class they were reported for (or their position) apart.
+     */
+    private static final Comparator<BugInstance> STORED_BUG_COMPARATOR = new Comparator<BugInstance>() {
+        @Override
+        public int compare(BugInstance lhs, BugInstance rhs) {
+            int cmp = SortedBugCollection.MultiversionBugInstanceComparator.instance.compare(lhs, rhs);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return lhs.getProperty(CLASS_PROPERTY, "").compareTo(rhs.getProperty(CLASS_PROPERTY, ""));
+        }
+    };
+
+    private static final String MISSING = "missing";
+
+    /**
+     * Results of one application class.
+     */
+    static class ClassResults {
+        private final String className;
+
+        private final String key;
+
+        private final boolean reused;
+
+        private final List<BugInstance> bugs;
+
+        private volatile boolean incomplete;
+
+        ClassResults(String className, String key, boolean reused, List<BugInstance> bugs) {
+            this.className = className;
+            this.key = key;
+            this.reused = reused;
+            this.bugs = Collections.synchronizedList(bugs);
+        }
+
+        /**
+         * @return true if the class is unchanged, so that the stored warnings
+         *         have been reported and class local detectors need not
+         *         visit the class
+         */
+        boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * Don't store the warnings of the class, since some of its analysis
+         * was abandoned.
+         */
+        void setIncomplete() {
+            incomplete = true;
+        }
+    }
+
+    /**
+     * Key and warnings of a class stored by the previous run
+     */
+    private static class StoredClass {
+        final String key;
+
+        final List<BugInstance> bugs = new ArrayList<BugInstance>();
+
+        StoredClass(String key) {
+            this.key = key;
+        }
+    }
+
+    private final File directory;
+
+    private final String configuration;
+
+    private final Map<String, StoredClass> stored = new HashMap<String, StoredClass>();
+
+    private final Map<ClassDescriptor, ClassResults> current = new HashMap<ClassDescriptor, ClassResults>();
+
+    private final ConcurrentHashMap<ClassDescriptor, String> contentHashes = new ConcurrentHashMap<ClassDescriptor, String>();
+
+    private final ThreadLocal<ClassResults> recording = new ThreadLocal<ClassResults>();
+
+    private int numReused;
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            the directory holding the store
+     * @param configuration
+     *            description of the analysis configuration, as computed by
+     *            {@link #computeConfiguration(ExecutionPlan)}
+     */
+    AnalysisResultStore(File directory, String configuration) {
+        this.directory = directory;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Describe everything besides the analyzed classes which influences the
+     * warnings reported: the FindBugs version, the plugins, the detectors
+     * and the analysis features.
+     *
+     * @param executionPlan
+     *            the execution plan of the analysis
+     * @return hash of the configuration
+     */
+    static String computeConfiguration(ExecutionPlan executionPlan) {
+        StringBuilder buf = new StringBuilder(Version.COMPUTED_RELEASE);
+        Map<String, String> plugins = new TreeMap<String, String>();
+        for (Plugin plugin : DetectorFactoryCollection.instance().plugins()) {
+            plugins.put(plugin.getPluginId(), plugin.getVersion() + "," + plugin.isGloballyEnabled());
+        }
+        buf.append(plugins);
+        for (Iterator<AnalysisPass> i = executionPlan.passIterator(); i.hasNext();) {
+            buf.append('|');
+            for (Iterator<DetectorFactory> j = i.next().iterator(); j.hasNext();) {
+                DetectorFactory factory = j.next();
+                buf.append(factory.getFullName());
+                if (factory.isDetectorClassSubtypeOf(ClassLocalDetector.class)) {
+                    buf.append('*');
+                }
+                buf.append(',');
+            }
+        }
+        buf.append('|');
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        for (int i = 0; i < AnalysisFeatures.NUM_BOOLEAN_ANALYSIS_PROPERTIES; i++) {
+            buf.append(analysisContext.getBoolProperty(i) ? '1' : '0');
+        }
+        buf.append(FindBugsAnalysisFeatures.isRelaxedMode());
+        return hash(buf.toString());
+    }
+
+    private static String hash(String s) {
+        MessageDigest digest = Util.getMD5Digest();
+        return ClassHash.hashToString(digest.digest(UTF8.getBytes(s)));
+    }
+
+    /**
+     * Read the classes stored by the previous run. Nothing is read if the
+     * store does not exist or was written with a different configuration.
+     */
+    void load() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        File resultsFile = new File(directory, RESULTS_FILE);
+        if (!indexFile.isFile() || !resultsFile.isFile()) {
+            return;
+        }
+        BufferedReader in = UTF8.bufferedReader(new FileInputStream(indexFile));
+        try {
+            if (!configuration.equals(in.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                int split = line.indexOf(' ');
+                if (split > 0) {
+                    stored.put(line.substring(0, split), new StoredClass(line.substring(split + 1)));
+                }
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+
+        SortedBugCollection bugs = new SortedBugCollection(STORED_BUG_COMPARATOR);
+        try {
+            bugs.readXML(resultsFile);
+        } catch (DocumentException e) {
+            stored.clear();
+            throw new IOException("Couldn't read analysis results from " + resultsFile, e);
+        }
+        for (BugInstance bug : bugs.getCollection()) {
+            String property = bug.getProperty(CLASS_PROPERTY);
+            int split = property == null ? -1 : property.lastIndexOf('#');
+            StoredClass storedClass = split < 0 ? null : stored.get(property.substring(0, split));
+            if (storedClass != null) {
+                bug.deleteProperty(CLASS_PROPERTY);
+                storedClass.bugs.add(bug);
+            }
+        }
+    }
+
+    /**
+     * Write the results of all classes analyzed by this run, replacing the
+     * previous contents of the store.
+     */
+    synchronized void save() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create directory " + directory);
+        }
+        File indexFile = new File(directory, INDEX_FILE);
+        // Invalidate the store until both files are written
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Couldn't delete " + indexFile);
+        }
+
+        SortedBugCollection bugs = new SortedBugCollection(STORED_BUG_COMPARATOR);
+        Map<String, String> keys = new TreeMap<String, String>();
+        for (ClassResults results : current.values()) {
+            if (results.incomplete) {
+                continue;
+            }
+            keys.put(results.className, results.key);
+            synchronized (results.bugs) {
+                int position = 0;
+                for (BugInstance bug : results.bugs) {
+                    BugInstance copy = (BugInstance) bug.clone();
+                    copy.setProperty(CLASS_PROPERTY, results.className + "#" + position++);
+                    bugs.add(copy, false);
+                }
+            }
+        }
+        bugs.writeXML(new File(directory, RESULTS_FILE));
+
+        PrintWriter out = UTF8.printWriter(indexFile);
+        try {
+            out.println(configuration);
+            for (Map.Entry<String, String> e : keys.entrySet()) {
+                out.println(e.getKey() + " " + e.getValue());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the results of an application class. The first time this is
+     * called for a class which is unchanged since the previous run, the
+     * stored warnings are reported.
+     *
+     * @param classDescriptor
+     *            the class
+     * @param bugReporter
+     *            the reporter to report stored warnings to
+     * @return the results of the class
+     */
+    ClassResults getClassResults(ClassDescriptor classDescriptor, BugReporter bugReporter) {
+        synchronized (this) {
+            ClassResults results = current.get(classDescriptor);
+            if (results != null) {
+                return results;
+            }
+        }
+        // Computing the key may need to analyze other classes, so don't
+        // hold the lock meanwhile
+        String key = computeKey(classDescriptor);
+        return getClassResults(classDescriptor, key, bugReporter);
+    }
+
+    private synchronized ClassResults getClassResults(ClassDescriptor classDescriptor, String key, BugReporter bugReporter) {
+        ClassResults results = current.get(classDescriptor);
+        if (results != null) {
+            return results;
+        }
+        String className = classDescriptor.toDottedClassName();
+        StoredClass storedClass = stored.remove(className);
+        if (storedClass != null && storedClass.key.equals(key)) {
+            results = new ClassResults(className, key, true, storedClass.bugs);
+            for (BugInstance bug : storedClass.bugs) {
+                bugReporter.reportBug((BugInstance) bug.clone());
+            }
+            numReused++;
+        } else {
+            results = new ClassResults(className, key, false, new ArrayList<BugInstance>());
+        }
+        current.put(classDescriptor, results);
+        return results;
+    }
+
+    /**
+     * @return the number of classes whose stored warnings were reported
+     */
+    synchronized int getNumReused() {
+        return numReused;
+    }
+
+    /**
+     * Record the warnings reported on the calling thread, until
+     * {@link #stopRecording()} is called, as warnings of the given class.
+     */
+    void startRecording(ClassResults results) {
+        recording.set(results);
+    }
+
+    void stopRecording() {
+        recording.remove();
+    }
+
+    /**
+     * Create a reporter recording the warnings passed to it while recording
+     * is started on the reporting thread.
+     *
+     * @param delegate
+     *            the reporter to pass all warnings to
+     * @return the recording reporter
+     */
+    BugReporter createRecordingReporter(BugReporter delegate) {
+        return new DelegatingBugReporter(delegate) {
+            @Override
+            public void reportBug(@Nonnull BugInstance bugInstance) {
+                ClassResults results = recording.get();
+                // Ignored warnings are never shown, so don't keep them
+                if (results != null && bugInstance.getPriority() < Priorities.IGNORE_PRIORITY) {
+                    results.bugs.add(bugInstance);
+                }
+                super.reportBug(bugInstance);
+            }
+        };
+    }
+
+    /**
+     * Compute the key of a class from the bytes of the class, of the classes
+     * it references, and of all their supertypes.
+     */
+    private String computeKey(ClassDescriptor classDescriptor) {
+        Set<ClassDescriptor> referencedClasses = new TreeSet<ClassDescriptor>();
+        try {
+            JavaClass javaClass = Global.getAnalysisCache().getClassAnalysis(JavaClass.class, classDescriptor);
+            addReferencedClasses(javaClass, referencedClasses);
+        } catch (CheckedAnalysisException e) {
+            // Key reflects that the class itself is missing
+        }
+        referencedClasses.remove(classDescriptor);
+
+        Set<ClassDescriptor> dependencies = new TreeSet<ClassDescriptor>(referencedClasses);
+        addSupertypes(classDescriptor, dependencies);
+        for (ClassDescriptor d : referencedClasses) {
+            addSupertypes(d, dependencies);
+        }
+
+        StringBuilder buf = new StringBuilder(getContentHash(classDescriptor));
+        for (ClassDescriptor d : dependencies) {
+            buf.append(' ').append(d).append('=').append(getContentHash(d));
+        }
+        return hash(buf.toString());
+    }
+
+    /**
+     * Add the classes named by the constant pool of a class and by the
+     * signatures of its members.
+     */
+    private static void addReferencedClasses(JavaClass javaClass, Set<ClassDescriptor> referencedClasses) {
+        ConstantPool cp = javaClass.getConstantPool();
+        for (Constant constant : cp.getConstantPool()) {
+            if (constant instanceof ConstantClass) {
+                String className = ((ConstantClass) constant).getBytes(cp);
+                if (className.startsWith("[")) {
+                    ClassParser.extractReferencedClassesFromSignature(referencedClasses, className);
+                } else if (ClassName.isValidClassName(className)) {
+                    referencedClasses.add(DescriptorFactory.createClassDescriptor(className));
+                }
+            } else if (constant instanceof ConstantNameAndType) {
+                ClassParser.extractReferencedClassesFromSignature(referencedClasses,
+                        ((ConstantNameAndType) constant).getSignature(cp));
+            }
+        }
+        for (FieldOrMethod member : javaClass.getFields()) {
+            ClassParser.extractReferencedClassesFromSignature(referencedClasses, member.getSignature());
+        }
+        for (FieldOrMethod member : javaClass.getMethods()) {
+            ClassParser.extractReferencedClassesFromSignature(referencedClasses, member.getSignature());
+        }
+    }
+
+    private void addSupertypes(ClassDescriptor classDescriptor, Set<ClassDescriptor> supertypes) {
+        XClass xclass;
+        try {
+            xclass = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+        } catch (CheckedAnalysisException e) {
+            return;
+        }
+        ClassDescriptor superclass = xclass.getSuperclassDescriptor();
+        if (superclass != null && supertypes.add(superclass)) {
+            addSupertypes(superclass, supertypes);
+        }
+        for (ClassDescriptor i : xclass.getInterfaceDescriptorList()) {
+            if (supertypes.add(i)) {
+                addSupertypes(i, supertypes);
+            }
+        }
+    }
+
+    private String getContentHash(ClassDescriptor classDescriptor) {
+        String hash = contentHashes.get(classDescriptor);
+        if (hash == null) {
+            try {
+                ClassData classData = Global.getAnalysisCache().getClassAnalysis(ClassData.class, classDescriptor);
+                hash = ClassHash.hashToString(Util.getMD5Digest().digest(classData.getData()));
+            } catch (CheckedAnalysisException e) {
+                hash = MISSING;
+            }
+            contentHashes.put(classDescriptor, hash);
+        }
+        return hash;
+    }
+}
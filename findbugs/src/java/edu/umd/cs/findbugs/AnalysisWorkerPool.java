@@ -0,0 +1,146 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * A set of worker threads applying detectors to the classes of one analysis
+ * pass. Each worker owns its own detector instances; classes are handed out
+ * in list order, so workers follow the call graph order the list was sorted
+ * in.
+ * <p>
+ * Worker threads must be started from the analysis thread: the analysis
+ * cache, AnalysisContext and DescriptorFactory are inherited from it.
+ */
+class AnalysisWorkerPool {
+
+    /**
+     * Callback applying an array of detectors to one class.
+     */
+    interface ClassVisitor {
+        public void visitClass(ClassDescriptor classDescriptor, Detector2[] detectors) throws InterruptedException;
+    }
+
+    private static final long JOIN_POLL_MILLIS = 100;
+
+    private final List<ClassDescriptor> classList;
+
+    private final ClassVisitor visitor;
+
+    private final Thread[] workers;
+
+    private final AtomicInteger nextClass = new AtomicInteger();
+
+    private volatile Throwable failure;
+
+    /**
+     * Constructor.
+     *
+     * @param classList
+     *            classes to analyze, in analysis order
+     * @param workerDetectors
+     *            one array of detector instances per worker thread
+     * @param visitor
+     *            callback applying detectors to a class
+     */
+    AnalysisWorkerPool(List<ClassDescriptor> classList, List<Detector2[]> workerDetectors, ClassVisitor visitor) {
+        this.classList = classList;
+        this.visitor = visitor;
+        this.workers = new Thread[workerDetectors.size()];
+        for (int i = 0; i < workers.length; i++) {
+            final Detector2[] detectors = workerDetectors.get(i);
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(detectors);
+                }
+            }, "FindBugs analysis worker " + i);
+            workers[i].setDaemon(true);
+        }
+    }
+
+    void start() {
+        for (Thread t : workers) {
+            t.start();
+        }
+    }
+
+    private void work(Detector2[] detectors) {
+        try {
+            while (failure == null) {
+                int index = nextClass.getAndIncrement();
+                if (index >= classList.size()) {
+                    return;
+                }
+                visitor.visitClass(classList.get(index), detectors);
+            }
+        } catch (InterruptedException e) {
+            // cancelled
+            return;
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Wait for all workers to finish.
+     *
+     * @param whileWaiting
+     *            task run on the calling thread every few milliseconds
+     *            while the workers are still busy
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting
+     */
+    void join(Runnable whileWaiting) throws InterruptedException {
+        try {
+            for (Thread t : workers) {
+                while (t.isAlive()) {
+                    t.join(JOIN_POLL_MILLIS);
+                    whileWaiting.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        }
+        Throwable e = failure;
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IllegalStateException("Analysis worker failed", e);
+        }
+    }
+
+    /**
+     * Stop all workers as soon as possible.
+     */
+    void cancel() {
+        nextClass.set(classList.size());
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+import javax.annotation.WillNotClose;
+
+import edu.umd.cs.findbugs.cloud.Cloud;
+import edu.umd.cs.findbugs.cloud.Cloud.UserDesignation;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Compact binary form of a SortedBugCollection, used for files with the
+ * extension {@value #FILE_EXTENSION} (optionally followed by .gz).
+ * <p>
+ * A file holds a magic number and a format version, the BugInstances, and
+ * the rest of the collection (project, errors, statistics, class features
+ * and history) as an XML document without BugInstances. The BugInstances are
+ * written with the information their XML form holds, so that reading a
+ * collection from either form gives the same result. Strings are written
+ * once and then referred to by their index in a string table, and numbers
+ * are variable-length encoded.
+ */
+final class BinaryBugCollectionFormat {
+
+    static final String FILE_EXTENSION = "fbb";
+
+    private static final byte[] MAGIC = { 'F', 'B', 'B', 'C' };
+
+    /** Increment whenever the format changes */
+    static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int END_OF_BUGS = 0;
+
+    private static final int BUG_INSTANCE = 1;
+
+    private static final int CLASS = 1;
+
+    private static final int METHOD = 2;
+
+    private static final int FIELD = 3;
+
+    private static final int TYPE = 4;
+
+    private static final int SOURCE_LINE = 5;
+
+    private static final int INT = 6;
+
+    private static final int STRING = 7;
+
+    private static final int LOCAL_VARIABLE = 8;
+
+    private static final int INTRODUCED_BY_CHANGE = 1;
+
+    private static final int REMOVED_BY_CHANGE = 2;
+
+    private static final int HAS_USER_DESIGNATION = 4;
+
+    private static final int USER_DESIGNATION_DIRTY = 8;
+
+    private static final int NOT_IN_CLOUD = 16;
+
+    private static final int IS_STATIC = 1;
+
+    private static final int SYNTHETIC = 2;
+
+    private BinaryBugCollectionFormat() {
+    }
+
+    /**
+     * Does a file name denote a file in the binary format?
+     */
+    static boolean isBinaryFileName(File file) {
+        return FILE_EXTENSION.equals(Util.getFileExtensionIgnoringGz(file));
+    }
+
+    /**
+     * Does an input stream hold a collection in the binary format? The stream
+     * must support mark/reset, and is left unchanged.
+     */
+    static boolean isBinary(@WillNotClose InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Writes a collection in the binary format.
+     */
+    static class Writer {
+        private final OutputStream out;
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private final BugCollection bugCollection;
+
+        Writer(@WillClose OutputStream out, BugCollection bugCollection) throws IOException {
+            this.out = new BufferedOutputStream(out, 65536);
+            this.bugCollection = bugCollection;
+            this.out.write(MAGIC);
+            writeInt(VERSION);
+        }
+
+        void writeBugInstance(BugInstance bug) throws IOException {
+            writeInt(BUG_INSTANCE);
+            writeString(bug.getType());
+            writeInt(bug.getPriority());
+            writeLong(bug.getFirstVersion());
+            writeLong(bug.getLastVersion());
+            String oldInstanceHash = bug.getOldInstanceHash();
+            writeString(oldInstanceHash != null && !bug.isInstanceHashConsistent() ? oldInstanceHash : null);
+
+            // what BugInstance.writeXML writes about the bug in the cloud
+            String firstSeen = null;
+            int reviews = 0;
+            String consensus = null;
+            boolean inCloud = true;
+            Cloud cloud = bugCollection.getCloudLazily();
+            if (cloud != null && cloud.communicationInitiated()) {
+                firstSeen = BugInstance.firstSeenXMLFormat().format(cloud.getFirstSeen(bug));
+                reviews = cloud.getNumberReviewers(bug);
+                UserDesignation designation = cloud.getConsensusDesignation(bug);
+                if (designation != UserDesignation.UNCLASSIFIED) {
+                    consensus = designation.toString();
+                }
+                inCloud = cloud.isInCloud(bug);
+            } else if (bug.hasXmlProps()) {
+                BugInstance.XmlProps props = bug.getXmlProps();
+                if (props.getFirstSeen() != null) {
+                    firstSeen = BugInstance.firstSeenXMLFormat().format(props.getFirstSeen());
+                }
+                reviews = props.getReviewCount();
+                consensus = props.getConsensus();
+                inCloud = props.isInCloud();
+            }
+
+            BugDesignation userDesignation = bug.getUserDesignation();
+            int flags = 0;
+            if (bug.isIntroducedByChangeOfExistingClass()) {
+                flags |= INTRODUCED_BY_CHANGE;
+            }
+            if (bug.isRemovedByChangeOfPersistingClass()) {
+                flags |= REMOVED_BY_CHANGE;
+            }
+            if (userDesignation != null) {
+                flags |= HAS_USER_DESIGNATION;
+                if (userDesignation.isDirty()) {
+                    flags |= USER_DESIGNATION_DIRTY;
+                }
+            }
+            if (!inCloud) {
+                flags |= NOT_IN_CLOUD;
+            }
+            writeInt(flags);
+            writeString(firstSeen);
+            writeInt(Math.max(reviews, 0));
+            writeString(reviews > 0 ? consensus : null);
+
+            if (userDesignation != null) {
+                writeString(userDesignation.hasDesignationKey() ? userDesignation.getDesignationKey() : null);
+                String user = userDesignation.getUser();
+                writeString(user != null && user.length() > 0 ? user : null);
+                writeLong(Math.max(userDesignation.getTimestamp(), 0));
+                writeString(userDesignation.getNonnullAnnotationText());
+            }
+
+            List<BugAnnotation> annotations = new ArrayList<BugAnnotation>();
+            for (BugAnnotation annotation : bug.getAnnotations()) {
+                if (annotation instanceof SourceLineAnnotation && ((SourceLineAnnotation) annotation).isSynthetic()) {
+                    // not read back from XML either
+                    continue;
+                }
+                annotations.add(annotation);
+            }
+            writeInt(annotations.size());
+            for (BugAnnotation annotation : annotations) {
+                writeAnnotation(annotation);
+            }
+
+            List<BugProperty> properties = new ArrayList<BugProperty>();
+            for (Iterator<BugProperty> i = bug.propertyIterator(); i.hasNext();) {
+                properties.add(i.next());
+            }
+            Collections.sort(properties, new Comparator<BugProperty>() {
+                @Override
+                public int compare(BugProperty o1, BugProperty o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            writeInt(properties.size());
+            for (BugProperty property : properties) {
+                writeString(property.getName());
+                writeString(property.getValue());
+            }
+        }
+
+        private void writeAnnotation(BugAnnotation annotation) throws IOException {
+            if (annotation instanceof ClassAnnotation) {
+                ClassAnnotation c = (ClassAnnotation) annotation;
+                writeInt(CLASS);
+                writeString(c.getClassName());
+            } else if (annotation instanceof MethodAnnotation) {
+                MethodAnnotation m = (MethodAnnotation) annotation;
+                writeInt(METHOD);
+                writeString(m.getClassName());
+                writeString(m.getMethodName());
+                writeString(m.getMethodSignature());
+                writeInt(m.isStatic() ? IS_STATIC : 0);
+            } else if (annotation instanceof FieldAnnotation) {
+                FieldAnnotation f = (FieldAnnotation) annotation;
+                writeInt(FIELD);
+                writeString(f.getClassName());
+                writeString(f.getFieldName());
+                writeString(f.getFieldSignature());
+                writeString(f.getFieldSourceSignature());
+                writeInt(f.isStatic() ? IS_STATIC : 0);
+            } else if (annotation instanceof TypeAnnotation) {
+                TypeAnnotation t = (TypeAnnotation) annotation;
+                writeInt(TYPE);
+                writeString(t.getTypeDescriptor());
+                writeString(t.getTypeParameters());
+            } else if (annotation instanceof SourceLineAnnotation) {
+                writeInt(SOURCE_LINE);
+                writeSourceLines((SourceLineAnnotation) annotation);
+            } else if (annotation instanceof IntAnnotation) {
+                writeInt(INT);
+                writeSignedInt(((IntAnnotation) annotation).getValue());
+            } else if (annotation instanceof StringAnnotation) {
+                writeInt(STRING);
+                writeString(((StringAnnotation) annotation).getValue());
+            } else if (annotation instanceof LocalVariableAnnotation) {
+                LocalVariableAnnotation l = (LocalVariableAnnotation) annotation;
+                writeInt(LOCAL_VARIABLE);
+                writeString(l.getName());
+                writeSignedInt(l.getRegister());
+                writeSignedInt(l.getPC());
+            } else {
+                throw new IOException("Can't write bug annotation of " + annotation.getClass());
+            }
+            writeString(annotation.getDescription());
+            if (annotation instanceof BugAnnotationWithSourceLines) {
+                SourceLineAnnotation sourceLines = ((BugAnnotationWithSourceLines) annotation).getSourceLines();
+                writeInt(sourceLines != null ? 1 : 0);
+                if (sourceLines != null) {
+                    writeSourceLines(sourceLines);
+                }
+            }
+        }
+
+        private void writeSourceLines(SourceLineAnnotation s) throws IOException {
+            writeString(s.getClassName());
+            writeString(s.isSourceFileKnown() ? s.getSourceFile() : null);
+            writeSignedInt(Math.max(s.getStartLine(), -1));
+            writeSignedInt(Math.max(s.getEndLine(), -1));
+            writeSignedInt(Math.max(s.getStartBytecode(), -1));
+            writeSignedInt(Math.max(s.getEndBytecode(), -1));
+            writeInt(s.isSynthetic() ? SYNTHETIC : 0);
+        }
+
+        /**
+         * Write the rest of the collection, and close the output stream.
+         *
+         * @param metadata
+         *            UTF-8 encoded XML form of the collection without
+         *            BugInstances
+         */
+        void finish(byte[] metadata) throws IOException {
+            try {
+                writeInt(END_OF_BUGS);
+                writeInt(metadata.length);
+                out.write(metadata);
+            } finally {
+                out.close();
+            }
+        }
+
+        void close() {
+            Util.closeSilently(out);
+        }
+
+        private void writeString(@CheckForNull String s) throws IOException {
+            if (s == null) {
+                writeInt(0);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeInt(index + 2);
+                return;
+            }
+            strings.put(s, strings.size());
+            writeInt(1);
+            byte[] bytes = s.getBytes(UTF8);
+            writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeSignedInt(int value) throws IOException {
+            writeInt((value << 1) ^ (value >> 31));
+        }
+
+        private void writeInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            value = (value << 1) ^ (value >> 63);
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Reads a collection in the binary format.
+     */
+    static class Reader {
+        private final InputStream in;
+
+        private final List<String> strings = new ArrayList<String>();
+
+        /**
+         * Constructor.
+         *
+         * @throws IOException
+         *             if the stream does not hold a collection in a format
+         *             version we can read
+         */
+        Reader(@WillNotClose InputStream in) throws IOException {
+            this.in = in;
+            for (byte b : MAGIC) {
+                if (readByte() != b) {
+                    throw new IOException("Not a binary bug collection");
+                }
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary bug collection version " + version + ", expected " + VERSION);
+            }
+        }
+
+        /**
+         * Read the next BugInstance.
+         *
+         * @return the BugInstance, or null if all have been read
+         */
+        @CheckForNull
+        BugInstance readBugInstance() throws IOException {
+            int tag = readInt();
+            if (tag == END_OF_BUGS) {
+                return null;
+            }
+            if (tag != BUG_INSTANCE) {
+                throw new IOException("Corrupt binary bug collection: record " + tag);
+            }
+            BugInstance bug = new BugInstance(readNonnullString(), readInt());
+            long firstVersion = readLong();
+            if (firstVersion > 0) {
+                bug.setFirstVersion(firstVersion);
+            }
+            long lastVersion = readLong();
+            if (lastVersion >= 0) {
+                bug.setLastVersion(lastVersion);
+            }
+            String oldInstanceHash = readString();
+            if (oldInstanceHash != null) {
+                bug.setOldInstanceHash(oldInstanceHash);
+            }
+
+            int flags = readInt();
+            if ((flags & INTRODUCED_BY_CHANGE) != 0) {
+                bug.setIntroducedByChangeOfExistingClass(true);
+            }
+            if ((flags & REMOVED_BY_CHANGE) != 0) {
+                bug.setRemovedByChangeOfPersistingClass(true);
+            }
+            String firstSeen = readString();
+            if (firstSeen != null) {
+                try {
+                    bug.getXmlProps().setFirstSeen(BugInstance.firstSeenXMLFormat().parse(firstSeen));
+                } catch (ParseException e) {
+                    // ignore, as when reading XML
+                    assert true;
+                }
+            }
+            if ((flags & NOT_IN_CLOUD) != 0) {
+                bug.getXmlProps().setIsInCloud(false);
+            }
+            int reviews = readInt();
+            String consensus = readString();
+            if (reviews > 0) {
+                bug.getXmlProps().setReviewCount(reviews);
+            }
+            if (consensus != null) {
+                bug.getXmlProps().setConsensus(consensus);
+            }
+
+            if ((flags & HAS_USER_DESIGNATION) != 0) {
+                String designation = readString();
+                if (designation != null) {
+                    bug.setUserDesignationKey(designation, null);
+                }
+                String user = readString();
+                if (user != null) {
+                    bug.setUser(user);
+                }
+                long timestamp = readLong();
+                if (timestamp > 0) {
+                    bug.setUserAnnotationTimestamp(timestamp);
+                }
+                if ((flags & USER_DESIGNATION_DIRTY) == 0) {
+                    bug.setUserAnnotationDirty(false);
+                }
+                bug.setAnnotationText(readNonnullString(), null);
+            }
+
+            int numAnnotations = readInt();
+            for (int i = 0; i < numAnnotations; i++) {
+                bug.add(readAnnotation());
+            }
+            int numProperties = readInt();
+            for (int i = 0; i < numProperties; i++) {
+                bug.setProperty(readNonnullString(), readNonnullString());
+            }
+            return bug;
+        }
+
+        private BugAnnotation readAnnotation() throws IOException {
+            int tag = readInt();
+            BugAnnotation annotation;
+            switch (tag) {
+            case CLASS:
+                annotation = new ClassAnnotation(readNonnullString());
+                break;
+            case METHOD:
+                annotation = new MethodAnnotation(readNonnullString(), readNonnullString(), readNonnullString(),
+                        (readInt() & IS_STATIC) != 0);
+                break;
+            case FIELD:
+                annotation = new FieldAnnotation(readNonnullString(), readNonnullString(), readNonnullString(), readString(),
+                        (readInt() & IS_STATIC) != 0);
+                break;
+            case TYPE: {
+                TypeAnnotation typeAnnotation = new TypeAnnotation(readNonnullString());
+                String typeParameters = readString();
+                if (typeParameters != null) {
+                    typeAnnotation.setTypeParameters(typeParameters);
+                }
+                annotation = typeAnnotation;
+                break;
+            }
+            case SOURCE_LINE:
+                annotation = readSourceLines();
+                break;
+            case INT:
+                annotation = new IntAnnotation(readSignedInt());
+                break;
+            case STRING:
+                annotation = new StringAnnotation(readNonnullString());
+                break;
+            case LOCAL_VARIABLE:
+                annotation = new LocalVariableAnnotation(readNonnullString(), readSignedInt(), readSignedInt());
+                break;
+            default:
+                throw new IOException("Corrupt binary bug collection: annotation " + tag);
+            }
+            String role = readNonnullString();
+            if (!role.equals(annotation.getDescription())) {
+                annotation.setDescription(role);
+            }
+            if (annotation instanceof BugAnnotationWithSourceLines && readInt() != 0) {
+                ((BugAnnotationWithSourceLines) annotation).setSourceLines(readSourceLines());
+            }
+            return annotation;
+        }
+
+        private SourceLineAnnotation readSourceLines() throws IOException {
+            String className = readNonnullString();
+            String sourceFile = readString();
+            if (sourceFile == null) {
+                sourceFile = SourceLineAnnotation.UNKNOWN_SOURCE_FILE;
+            }
+            SourceLineAnnotation s = new SourceLineAnnotation(className, sourceFile, readSignedInt(), readSignedInt(),
+                    readSignedInt(), readSignedInt());
+            if ((readInt() & SYNTHETIC) != 0) {
+                s.setSynthetic(true);
+            }
+            return s;
+        }
+
+        /**
+         * Read the rest of the collection; call after readBugInstance() has
+         * returned null.
+         *
+         * @return UTF-8 encoded XML form of the collection without
+         *         BugInstances
+         */
+        byte[] readMetadata() throws IOException {
+            byte[] metadata = new byte[readInt()];
+            readFully(metadata);
+            return metadata;
+        }
+
+        private String readNonnullString() throws IOException {
+            String s = readString();
+            if (s == null) {
+                throw new IOException("Corrupt binary bug collection: missing string");
+            }
+            return s;
+        }
+
+        @CheckForNull
+        private String readString() throws IOException {
+            int index = readInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index == 1) {
+                byte[] bytes = new byte[readInt()];
+                readFully(bytes);
+                String s = new String(bytes, UTF8);
+                strings.add(s);
+                return s;
+            }
+            if (index - 2 >= strings.size()) {
+                throw new IOException("Corrupt binary bug collection: string " + index);
+            }
+            return strings.get(index - 2);
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary bug collection");
+            }
+            return b;
+        }
+
+        private void readFully(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int n = in.read(bytes, offset, bytes.length - offset);
+                if (n < 0) {
+                    throw new EOFException("Truncated binary bug collection");
+                }
+                offset += n;
+            }
+        }
+
+        private int readSignedInt() throws IOException {
+            int value = readInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int readInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                result |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Corrupt binary bug collection: bad number");
+        }
+
+        private long readLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return (result >>> 1) ^ -(result & 1);
+                }
+            }
+            throw new IOException("Corrupt binary bug collection: bad number");
+        }
+    }
+}
@@ -26,6 +26,7 @@ import javax.annotation.Nonnull;
 
 import edu.umd.cs.findbugs.ba.Debug;
 import edu.umd.cs.findbugs.ba.MethodUnprofitableException;
+import edu.umd.cs.findbugs.ba.TimeBudgetExceededException;
 import edu.umd.cs.findbugs.ba.MissingClassException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 
@@ -41,8 +42,30 @@ public class BugCollectionBugReporter extends TextUIBugReporter implements Debug
     }
 
     public BugCollectionBugReporter(Project project, @CheckForNull PrintWriter writer) {
+        this(project, writer, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param project
+     *            the Project
+     * @param maxBugsInMemory
+     *            if positive, the bug collection spills the warnings to
+     *            temporary files once it holds this many, see
+     *            {@link SpillingBugCollection}
+     */
+    protected BugCollectionBugReporter(Project project, int maxBugsInMemory) {
+        this(project, null, maxBugsInMemory);
+    }
+
+    private BugCollectionBugReporter(Project project, @CheckForNull PrintWriter writer, int maxBugsInMemory) {
         this.project = project;
-        this.bugCollection = new SortedBugCollection(getProjectStats(), project);
+        if (maxBugsInMemory > 0) {
+            this.bugCollection = new SpillingBugCollection(getProjectStats(), project, maxBugsInMemory);
+        } else {
+            this.bugCollection = new SortedBugCollection(getProjectStats(), project);
+        }
         bugCollection.setTimestamp(System.currentTimeMillis());
         this.writer = writer;
     }
@@ -77,6 +100,10 @@ public class BugCollectionBugReporter extends TextUIBugReporter implements Debug
             // TODO: log this
             return;
         }
+        if (e instanceof TimeBudgetExceededException) {
+            // The engine logs abandoned units of work itself, once each
+            return;
+        }
         bugCollection.addError(message, e);
         super.logError(message, e);
     }
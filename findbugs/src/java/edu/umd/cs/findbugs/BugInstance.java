@@ -22,6 +22,8 @@ package edu.umd.cs.findbugs;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
@@ -140,8 +142,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
 
     private int instanceOccurrenceMax;
 
+    /** Serialized by name, see {@link #writeObject(ObjectOutputStream)} */
     @CheckForNull
-    private DetectorFactory detectorFactory;
+    private transient DetectorFactory detectorFactory;
 
     private final AtomicReference<XmlProps> xmlProps;
 
@@ -248,6 +251,19 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
         }
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(detectorFactory != null ? detectorFactory.getFullName() : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        String detectorName = (String) in.readObject();
+        if (detectorName != null) {
+            detectorFactory = DetectorFactoryCollection.instance().getFactoryByClassName(detectorName);
+        }
+    }
+
     /**
      * Create a new BugInstance. This is the constructor that should be used by
      * Detectors.
@@ -2745,6 +2761,11 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
         this.oldInstanceHash = oldInstanceHash;
     }
 
+    @CheckForNull
+    String getOldInstanceHash() {
+        return oldInstanceHash;
+    }
+
     public String getInstanceHash() {
         String hash = instanceHash;
         if (hash != null) {
@@ -2855,7 +2876,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
      * should be used when the cloud is unavailable, or when communicating with
      * it is not desired for performance or complexity reasons.
      */
-    static public class XmlProps {
+    static public class XmlProps implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private Date firstSeen = null;
 
         private int reviewCount = 0;
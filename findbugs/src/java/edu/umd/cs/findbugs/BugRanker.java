@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 
@@ -259,11 +260,11 @@ public class BugRanker {
     }
 
 
-    private static AnalysisLocal<HashMap<BugPattern, Integer>> rankForBugPattern
-    = new AnalysisLocal<HashMap<BugPattern, Integer>>() {
+    private static AnalysisLocal<ConcurrentHashMap<BugPattern, Integer>> rankForBugPattern
+    = new AnalysisLocal<ConcurrentHashMap<BugPattern, Integer>>() {
         @Override
-        protected HashMap<BugPattern, Integer> initialValue() {
-            return new HashMap<BugPattern, Integer>();
+        protected ConcurrentHashMap<BugPattern, Integer> initialValue() {
+            return new ConcurrentHashMap<BugPattern, Integer>();
         }
     };
 
@@ -0,0 +1,35 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+/**
+ * A stateless detector whose warnings for a class depend only on the class
+ * itself and on the classes it references, together with their supertypes.
+ *
+ * The warnings such a detector reports for a class are kept in the result
+ * store (see -resultCache), and the detector skips the class in a later run
+ * if none of these classes changed. Detectors which use information gathered
+ * from other classes, such as subtypes, field summaries or the fields read
+ * elsewhere, must not implement this interface: their warnings may change
+ * when some unrelated class changes.
+ */
+public interface ClassLocalDetector extends StatelessDetector {
+
+}
@@ -88,4 +88,11 @@ public class DetectorToDetector2Adapter implements Detector2 {
     public String getDetectorClassName() {
         return detector.getClass().getName();
     }
+
+    /**
+     * @return the adapted Detector
+     */
+    public Detector getDetector() {
+        return detector;
+    }
 }
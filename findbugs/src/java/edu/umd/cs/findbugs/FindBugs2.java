@@ -19,12 +19,15 @@
 
 package edu.umd.cs.findbugs;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -32,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -42,13 +46,17 @@ import org.dom4j.DocumentException;
 import edu.umd.cs.findbugs.asm.FBClassReader;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.AnalysisFeatures;
+import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
 import edu.umd.cs.findbugs.ba.SourceInfoMap;
+import edu.umd.cs.findbugs.ba.TimeBudget;
+import edu.umd.cs.findbugs.ba.TimeBudgetExceededException;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XFactory;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierAnnotation;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierApplications;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierValue;
+import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 import edu.umd.cs.findbugs.bugReporter.BugReporterDecorator;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
@@ -62,12 +70,15 @@ import edu.umd.cs.findbugs.classfile.IClassPath;
 import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
 import edu.umd.cs.findbugs.classfile.ICodeBase;
 import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.MissingClassException;
+import edu.umd.cs.findbugs.classfile.impl.AnalysisCache;
 import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
 import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
 import edu.umd.cs.findbugs.config.UserPreferences;
 import edu.umd.cs.findbugs.detect.NoteSuppressedWarnings;
 import edu.umd.cs.findbugs.filter.FilterException;
+import edu.umd.cs.findbugs.log.BudgetStatistics;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.log.YourKitController;
 import edu.umd.cs.findbugs.plan.AnalysisPass;
@@ -93,6 +104,20 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private static final boolean SCREEN_FIRST_PASS_CLASSES = SystemProperties.getBoolean("findbugs.screenFirstPass");
 
+    /**
+     * Let the OpcodeStackDetectors of an analysis pass replay a stack model
+     * computed once per method instead of each modeling the stack
+     */
+    private static final boolean FUSE_OPCODE_STACK_DETECTORS = SystemProperties.getBoolean(
+            "findbugs.fuseOpcodeStackDetectors", true);
+
+    /**
+     * Number of methods of a huge class whose analysis results each thread
+     * retains: the method being analyzed, and another one an analysis of it
+     * may need.
+     */
+    private static final int HUGE_CLASS_RETAINED_METHODS = 2;
+
     public static final String PROP_FINDBUGS_HOST_APP = "findbugs.hostApp";
     public static final String PROP_FINDBUGS_HOST_APP_VERSION = "findbugs.hostAppVersion";
 
@@ -104,6 +129,29 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private ErrorCountingBugReporter errorCountingBugReporter;
 
+    /**
+     * Queue of the errors and reports of other analysis threads, or null if
+     * there is a single analysis thread
+     */
+    private QueuingBugReporter workerReports;
+
+    /**
+     * Bug reporter of the detectors on analysis worker threads, or null if
+     * there is a single analysis thread
+     */
+    private BugReporter workerBugReporter;
+
+    /**
+     * Warnings kept between runs, or null if all classes are analyzed
+     */
+    private AnalysisResultStore resultStore;
+
+    /**
+     * Instances of class local detectors in the current pass; these skip
+     * classes whose warnings are taken from the result store
+     */
+    private final Set<Detector2> classLocalDetectors = Collections.newSetFromMap(new IdentityHashMap<Detector2, Boolean>());
+
     private Project project;
 
     private IClassFactory classFactory;
@@ -198,6 +246,11 @@ public class FindBugs2 implements IFindBugsEngine {
 
         try {
             try {
+                if (analysisOptions.threads > 1) {
+                    // Errors are logged from all analysis threads
+                    workerReports = new QueuingBugReporter(bugReporter);
+                }
+
                 // Get the class factory for creating classpath/codebase/etc.
                 classFactory = ClassFactory.instance();
 
@@ -237,6 +290,9 @@ public class FindBugs2 implements IFindBugsEngine {
                 // Configure analysis features
                 configureAnalysisFeatures();
 
+                // Configure analysis time budgets
+                configureTimeBudget();
+
                 // Create the execution plan (which passes/detectors to execute)
                 createExecutionPlan();
 
@@ -298,6 +354,8 @@ public class FindBugs2 implements IFindBugsEngine {
                 }
                 throw e;
             } finally {
+                drainWorkerReports();
+                workerReports = null;
                 clearCaches();
                 profiler.end(this.getClass());
                 profiler.report();
@@ -575,6 +633,43 @@ public class FindBugs2 implements IFindBugsEngine {
         this.analysisOptions.noClassOk = noClassOk;
     }
 
+    @Override
+    public void setAnalyzeHugeClasses(boolean analyzeHugeClasses) {
+        this.analysisOptions.analyzeHugeClasses = analyzeHugeClasses;
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        this.analysisOptions.threads = threads;
+    }
+
+    @Override
+    public void setCacheBudget(long bytes) {
+        this.analysisOptions.cacheBudget = bytes;
+    }
+
+    @Override
+    public void setTimeBudgets(long methodMillis, long detectorMillis) {
+        this.analysisOptions.methodTimeBudget = methodMillis;
+        this.analysisOptions.detectorTimeBudget = detectorMillis;
+    }
+
+    @Override
+    public void setResultCacheDirectory(String directory) {
+        this.analysisOptions.resultCacheDirectory = directory;
+    }
+
+    /**
+     * Install the time budgets of the analysis in the analysis context.
+     */
+    private void configureTimeBudget() {
+        if (analysisOptions.methodTimeBudget > 0 || analysisOptions.detectorTimeBudget > 0) {
+            AnalysisContext.currentAnalysisContext().setTimeBudget(
+                    new TimeBudget(analysisOptions.methodTimeBudget, analysisOptions.detectorTimeBudget, bugReporter
+                            .getProjectStats().getBudgetStatistics()));
+        }
+    }
+
     /**
      * Create the analysis cache object and register it for current execution thread.
      * <p>
@@ -585,7 +680,11 @@ public class FindBugs2 implements IFindBugsEngine {
      *             if error occurs registering analysis engines in a plugin
      */
     protected IAnalysisCache createAnalysisCache() throws IOException {
-        IAnalysisCache analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        IAnalysisCache analysisCache = ClassFactory.instance().createAnalysisCache(classPath,
+                workerReports != null ? workerReports : bugReporter);
+        if (analysisOptions.cacheBudget > 0 && analysisCache instanceof AnalysisCache) {
+            ((AnalysisCache) analysisCache).setMemoryBudget(analysisOptions.cacheBudget);
+        }
 
         // Register the "built-in" analysis engines
         registerBuiltInAnalysisEngines(analysisCache);
@@ -673,6 +772,7 @@ public class FindBugs2 implements IFindBugsEngine {
         }
 
         builder.scanNestedArchives(analysisOptions.scanNestedArchives);
+        builder.setNumThreads(analysisOptions.threads);
 
         builder.build(classPath, progress);
 
@@ -748,62 +848,68 @@ public class FindBugs2 implements IFindBugsEngine {
                 }
             }
          */
+        // The classes of the work list are fetched in parallel, one
+        // generation at a time; each generation is processed in order, so
+        // the classes are visited in the same order as by a sequential
+        // breadth-first search.
+        XClassFetcher fetcher = new XClassFetcher(analysisOptions.threads);
         while (!workList.isEmpty()) {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            ClassDescriptor classDesc = workList.removeFirst();
-
-            if (seen.contains(classDesc)) {
-                continue;
-            }
-            seen.add(classDesc);
+            List<ClassDescriptor> generation = new ArrayList<ClassDescriptor>(workList.size());
+            for (ClassDescriptor classDesc : workList) {
+                if (!seen.add(classDesc)) {
+                    continue;
+                }
+                generation.add(classDesc);
 
-            if (!knownDescriptors.contains(classDesc)) {
-                count++;
-                if (PROGRESS && count % 5000 == 0) {
-                    System.out.println("Adding referenced class " + classDesc);
+                if (!knownDescriptors.contains(classDesc)) {
+                    count++;
+                    if (PROGRESS && count % 5000 == 0) {
+                        System.out.println("Adding referenced class " + classDesc);
+                    }
                 }
-            }
 
-            referencedPackageSet.add(classDesc.getPackageName());
+                referencedPackageSet.add(classDesc.getPackageName());
+            }
+            workList.clear();
 
             // Get list of referenced classes and add them to set.
             // Add superclasses and superinterfaces to worklist.
-            try {
-                XClass classNameAndInfo = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDesc);
-
-                ClassDescriptor superclassDescriptor = classNameAndInfo.getSuperclassDescriptor();
-                if (superclassDescriptor != null && addedToWorkList.add(superclassDescriptor)) {
-                    workList.addLast(superclassDescriptor);
-                }
+            Object[] generationInfo = fetcher.fetch(generation);
+            for (int i = 0; i < generationInfo.length; i++) {
+                ClassDescriptor classDesc = generation.get(i);
+                Object info = generationInfo[i];
+                if (info instanceof XClass) {
+                    XClass classNameAndInfo = (XClass) info;
+
+                    ClassDescriptor superclassDescriptor = classNameAndInfo.getSuperclassDescriptor();
+                    if (superclassDescriptor != null && addedToWorkList.add(superclassDescriptor)) {
+                        workList.addLast(superclassDescriptor);
+                    }
 
-                for (ClassDescriptor ifaceDesc : classNameAndInfo.getInterfaceDescriptorList()) {
-                    if (addedToWorkList.add(ifaceDesc)) {
-                        workList.addLast(ifaceDesc);
+                    for (ClassDescriptor ifaceDesc : classNameAndInfo.getInterfaceDescriptorList()) {
+                        if (addedToWorkList.add(ifaceDesc)) {
+                            workList.addLast(ifaceDesc);
+                        }
                     }
-                }
 
-                ClassDescriptor enclosingClass = classNameAndInfo.getImmediateEnclosingClass();
-                if (enclosingClass != null && addedToWorkList.add(enclosingClass)) {
-                    workList.addLast(enclosingClass);
+                    ClassDescriptor enclosingClass = classNameAndInfo.getImmediateEnclosingClass();
+                    if (enclosingClass != null && addedToWorkList.add(enclosingClass)) {
+                        workList.addLast(enclosingClass);
+                    }
+                    continue;
                 }
 
-            } catch (RuntimeException e) {
-                bugReporter.logError("Error scanning " + classDesc + " for referenced classes", e);
-                if (appClassSet.contains(classDesc)) {
-                    badAppClassSet.add(classDesc);
-                }
-            } catch (MissingClassException e) {
-                // Just log it as a missing class
-                bugReporter.reportMissingClass(e.getClassDescriptor());
-                if (appClassSet.contains(classDesc)) {
-                    badAppClassSet.add(classDesc);
+                if (info instanceof MissingClassException) {
+                    // Just log it as a missing class
+                    bugReporter.reportMissingClass(((MissingClassException) info).getClassDescriptor());
+                } else {
+                    // Failed to scan a referenced class --- just log the error
+                    // and continue
+                    bugReporter.logError("Error scanning " + classDesc + " for referenced classes", (Throwable) info);
                 }
-            } catch (CheckedAnalysisException e) {
-                // Failed to scan a referenced class --- just log the error and
-                // continue
-                bugReporter.logError("Error scanning " + classDesc + " for referenced classes", e);
                 if (appClassSet.contains(classDesc)) {
                     badAppClassSet.add(classDesc);
                 }
@@ -816,7 +922,12 @@ public class FindBugs2 implements IFindBugsEngine {
         for (ClassDescriptor d : DescriptorFactory.instance().getAllClassDescriptors()) {
             referencedPackageSet.add(d.getPackageName());
         }
-        referencedClassSet = new ArrayList<ClassDescriptor>(DescriptorFactory.instance().getAllClassDescriptors());
+        // Classes were discovered concurrently, so sort them to make the
+        // analysis order independent of thread timing
+        List<ClassDescriptor> referencedClassList = new ArrayList<ClassDescriptor>(DescriptorFactory.instance()
+                .getAllClassDescriptors());
+        Collections.sort(referencedClassList);
+        referencedClassSet = referencedClassList;
 
         // Based on referenced packages, add any resolvable package-info classes
         // to the set of referenced classes.
@@ -963,15 +1074,15 @@ public class FindBugs2 implements IFindBugsEngine {
             progress.predictPassCount(classesPerPass);
             XFactory factory = AnalysisContext.currentXFactory();
             Collection<ClassDescriptor> badClasses = new LinkedList<ClassDescriptor>();
-            for (ClassDescriptor desc : referencedClassSet) {
-                try {
-                    XClass info = Global.getAnalysisCache().getClassAnalysis(XClass.class, desc);
-                    factory.intern(info);
-                } catch (CheckedAnalysisException e) {
-                    AnalysisContext.logError("Couldn't get class info for " + desc, e);
-                    badClasses.add(desc);
-                } catch (RuntimeException e) {
-                    AnalysisContext.logError("Couldn't get class info for " + desc, e);
+            List<ClassDescriptor> referencedClassList = new ArrayList<ClassDescriptor>(referencedClassSet);
+            Object[] referencedClassInfo = new XClassFetcher(analysisOptions.threads).fetch(referencedClassList);
+            for (int i = 0; i < referencedClassInfo.length; i++) {
+                Object info = referencedClassInfo[i];
+                if (info instanceof XClass) {
+                    factory.intern((XClass) info);
+                } else {
+                    ClassDescriptor desc = referencedClassList.get(i);
+                    AnalysisContext.logError("Couldn't get class info for " + desc, (Exception) info);
                     badClasses.add(desc);
                 }
             }
@@ -982,6 +1093,17 @@ public class FindBugs2 implements IFindBugsEngine {
 
             long startTime = System.currentTimeMillis();
             bugReporter.getProjectStats().setReferencedClasses(referencedClassSet.size());
+            if (workerReports != null) {
+                workerBugReporter = workerReports.withDelegate(bugReporter);
+            }
+            resultStore = openResultStore();
+            if (resultStore != null) {
+                bugReporter = resultStore.createRecordingReporter(bugReporter);
+                if (workerBugReporter != null) {
+                    // Warnings are recorded on the thread reporting them
+                    workerBugReporter = resultStore.createRecordingReporter(workerBugReporter);
+                }
+            }
             for (Iterator<AnalysisPass> passIterator = executionPlan.passIterator(); passIterator.hasNext();) {
                 AnalysisPass pass = passIterator.next();
                 yourkitController.advanceGeneration("Pass " + passCount);
@@ -991,6 +1113,13 @@ public class FindBugs2 implements IFindBugsEngine {
 
                 // Instantiate the detectors
                 Detector2[] detectorList = pass.instantiateDetector2sInPass(bugReporter);
+                classLocalDetectors.clear();
+                int detectorIndex = 0;
+                for (Iterator<DetectorFactory> j = pass.iterator(); j.hasNext(); detectorIndex++) {
+                    if (isClassLocal(j.next())) {
+                        classLocalDetectors.add(detectorList[detectorIndex]);
+                    }
+                }
 
                 // If there are multiple passes, then on the first pass,
                 // we apply detectors to all classes referenced by the
@@ -1036,6 +1165,27 @@ public class FindBugs2 implements IFindBugsEngine {
                 int count = 0;
                 Global.getAnalysisCache().purgeAllMethodAnalysis();
                 Global.getAnalysisCache().purgeClassAnalysis(FBClassReader.class);
+
+                // In multi-threaded mode, stateless detectors are applied by
+                // worker threads, each using its own detector instances.
+                // All other detectors see the classes on this thread.
+                Detector2[] sequentialDetectorList = detectorList;
+                List<Detector2> allDetectors = new ArrayList<Detector2>(Arrays.asList(detectorList));
+                AnalysisWorkerPool workerPool = null;
+                if (analysisOptions.threads > 1) {
+                    workerPool = createWorkerPool(pass, detectorList, classCollection, isNonReportingFirstPass, allDetectors);
+                    if (workerPool != null) {
+                        sequentialDetectorList = getSequentialDetectors(pass, detectorList);
+                    }
+                }
+                if (FUSE_OPCODE_STACK_DETECTORS) {
+                    shareStackModels(allDetectors);
+                }
+                boolean reportProgress = workerPool == null || sequentialDetectorList.length > 0;
+                if (workerPool != null) {
+                    workerPool.start();
+                }
+                try {
                 for (ClassDescriptor classDescriptor : classCollection) {
                     long classStartNanoTime = 0;
                     if (PROGRESS) {
@@ -1053,14 +1203,13 @@ public class FindBugs2 implements IFindBugsEngine {
                     // Check to see if class is excluded by the class screener.
                     // In general, we do not want to screen classes from the
                     // first pass, even if they would otherwise be excluded.
-                    if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
-                            && !classScreener.matches(classDescriptor.toResourceName())) {
+                    if (isScreenedOut(classDescriptor, isNonReportingFirstPass)) {
                         if (DEBUG) {
                             System.out.println("*** Excluded by class screener");
                         }
                         continue;
                     }
-                    boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
+                    boolean isHuge = isTooBig(classDescriptor);
                     if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
                         bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
                         .addClass(classDescriptor));
@@ -1071,37 +1220,14 @@ public class FindBugs2 implements IFindBugsEngine {
                     currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
 
                     try {
-                        for (Detector2 detector : detectorList) {
-                            if (Thread.interrupted()) {
-                                throw new InterruptedException();
-                            }
-                            if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
-                                continue;
-                            }
-                            if (DEBUG) {
-                                System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
-                                // System.out.println("foo: " +
-                                // NonReportingDetector.class.isAssignableFrom(detector.getClass())
-                                // + ", bar: " + detector.getClass().getName());
-                            }
-                            try {
-                                profiler.start(detector.getClass());
-                                detector.visitClass(classDescriptor);
-                            } catch (ClassFormatException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (MissingClassException e) {
-                                Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
-                            } catch (CheckedAnalysisException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (RuntimeException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } finally {
-                                profiler.end(detector.getClass());
-                            }
-                        }
+                        applyDetectors(classDescriptor, sequentialDetectorList, isHuge, profiler,
+                                getClassResults(classDescriptor, isNonReportingFirstPass));
                     } finally {
+                        drainWorkerReports();
 
-                        progress.finishClass();
+                        if (reportProgress) {
+                            progress.finishClass();
+                        }
                         profiler.endContext(currentClassName);
                         currentAnalysisContext.clearClassBeingAnalyzed();
                         if (PROGRESS) {
@@ -1118,12 +1244,26 @@ public class FindBugs2 implements IFindBugsEngine {
                         }
                     }
                 }
+                if (workerPool != null) {
+                    workerPool.join(new Runnable() {
+                        @Override
+                        public void run() {
+                            drainWorkerReports();
+                        }
+                    });
+                    workerPool = null;
+                }
+                } finally {
+                    if (workerPool != null) {
+                        workerPool.cancel();
+                    }
+                }
 
                 if (!passIterator.hasNext()) {
                     yourkitController.captureMemorySnapshot();
                 }
                 // Call finishPass on each detector
-                for (Detector2 detector : detectorList) {
+                for (Detector2 detector : allDetectors) {
                     detector.finishPass();
                 }
 
@@ -1131,10 +1271,17 @@ public class FindBugs2 implements IFindBugsEngine {
 
                 passCount++;
             }
-
+            saveResultStore();
 
         } finally {
-
+            drainWorkerReports();
+            workerBugReporter = null;
+            resultStore = null;
+            classLocalDetectors.clear();
+            IAnalysisCache analysisCache = Global.getAnalysisCache();
+            if (analysisCache instanceof AnalysisCache) {
+                ((AnalysisCache) analysisCache).recordStatistics(bugReporter.getProjectStats().getCacheStatistics());
+            }
             bugReporter.finish();
             bugReporter.reportQueuedErrors();
             profiler.end(this.getClass());
@@ -1145,6 +1292,365 @@ public class FindBugs2 implements IFindBugsEngine {
 
     }
 
+    private boolean isScreenedOut(ClassDescriptor classDescriptor, boolean isNonReportingFirstPass) {
+        // In general, we do not want to screen classes from the
+        // first pass, even if they would otherwise be excluded.
+        return (SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
+                && !classScreener.matches(classDescriptor.toResourceName());
+    }
+
+    /**
+     * Check whether a class is too big to be analyzed by anything but first
+     * pass detectors. If huge classes are analyzed method by method, they
+     * never are: instead, each analysis thread only retains the analysis
+     * results of the last few methods of a huge class it used.
+     */
+    private boolean isTooBig(ClassDescriptor classDescriptor) {
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        if (!analysisContext.isTooBig(classDescriptor)) {
+            return false;
+        }
+        if (!analysisOptions.analyzeHugeClasses) {
+            return true;
+        }
+        try {
+            analysisContext.setMethodAnalysisLimit(classDescriptor, HUGE_CLASS_RETAINED_METHODS);
+        } catch (CheckedAnalysisException e) {
+            // isTooBig() already reported this
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply detectors to a class.
+     *
+     * @param classDescriptor
+     *            the class to analyze
+     * @param detectors
+     *            the detectors to apply
+     * @param isHuge
+     *            true if the class is too big to be analyzed by anything but
+     *            first pass detectors
+     * @param profiler
+     *            the profiler
+     * @param classResults
+     *            results of the class in the result store, or null if the
+     *            class is not stored
+     */
+    private void applyDetectors(ClassDescriptor classDescriptor, Detector2[] detectors, boolean isHuge, Profiler profiler,
+            @CheckForNull AnalysisResultStore.ClassResults classResults) throws InterruptedException {
+        TimeBudget timeBudget = AnalysisContext.currentAnalysisContext().getTimeBudget();
+        boolean pinAttempted = false;
+        boolean pinned = false;
+        try {
+            for (Detector2 detector : detectors) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                    continue;
+                }
+                boolean stored = classResults != null && classLocalDetectors.contains(detector);
+                if (stored && classResults.isReused()) {
+                    continue;
+                }
+                if (!pinAttempted) {
+                    pinAttempted = true;
+                    pinned = pinClassContext(classDescriptor);
+                }
+                if (DEBUG) {
+                    System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                }
+                long detectorStartTime = timeBudget.startDetector();
+                boolean detectorOverrun = false;
+                try {
+                    profiler.start(detector.getClass());
+                    if (stored) {
+                        resultStore.startRecording(classResults);
+                    }
+                    detector.visitClass(classDescriptor);
+                } catch (ClassFormatException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } catch (MissingClassException e) {
+                    Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
+                } catch (CheckedAnalysisException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } catch (RuntimeException e) {
+                    logRecoverableException(classDescriptor, detector, e);
+                } finally {
+                    detectorOverrun = timeBudget.endDetector(detectorStartTime);
+                    if (stored) {
+                        resultStore.stopRecording();
+                    }
+                    profiler.end(detector.getClass());
+                }
+                List<TimeBudgetExceededException> methodOverruns = timeBudget.takeMethodOverruns();
+                if (detectorOverrun || !methodOverruns.isEmpty()) {
+                    reportBudgetOverruns(classDescriptor, detector, detectorOverrun ? detectorStartTime : 0, methodOverruns);
+                    if (classResults != null) {
+                        classResults.setIncomplete();
+                    }
+                }
+            }
+        } finally {
+            if (pinned) {
+                ((AnalysisCache) Global.getAnalysisCache()).unpinClassAnalysis(ClassContext.class, classDescriptor);
+            }
+        }
+    }
+
+    /**
+     * Pin the ClassContext of a class while detectors are applied to it, so
+     * that they all use the same method analyses even if it is evicted from
+     * the analysis cache meanwhile (which other analysis threads make likely).
+     *
+     * @return true if the ClassContext was pinned
+     */
+    private static boolean pinClassContext(ClassDescriptor classDescriptor) {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (!(analysisCache instanceof AnalysisCache)) {
+            return false;
+        }
+        try {
+            ((AnalysisCache) analysisCache).pinClassAnalysis(ClassContext.class, classDescriptor);
+            return true;
+        } catch (CheckedAnalysisException e) {
+            // The detectors report it
+            return false;
+        }
+    }
+
+    /**
+     * Report the analysis abandoned because it exceeded its time budget while
+     * applying a detector to a class, as analysis errors and, for
+     * application classes, as warnings.
+     *
+     * @param classDescriptor
+     *            the class
+     * @param detector
+     *            the detector
+     * @param detectorStartTime
+     *            when the detector started, if it exceeded its budget, or 0
+     * @param methodOverruns
+     *            the method analyses which exceeded their budget
+     */
+    private void reportBudgetOverruns(ClassDescriptor classDescriptor, Detector2 detector, long detectorStartTime,
+            List<TimeBudgetExceededException> methodOverruns) {
+        boolean isApplicationClass = AnalysisContext.currentAnalysisContext().isApplicationClass(classDescriptor);
+        String detectorName = detector.getDetectorClassName();
+        BugReporter reporter = getThreadBugReporter();
+        for (TimeBudgetExceededException e : methodOverruns) {
+            reporter.logError(e.getMessage() + " (detector " + detectorName + ")");
+            MethodDescriptor method = e.getMethod();
+            if (isApplicationClass && method != null && method.getClassDescriptor().equals(classDescriptor)) {
+                reporter.reportBug(new BugInstance("SKIPPED_METHOD_TIME_BUDGET", Priorities.NORMAL_PRIORITY)
+                .addClass(classDescriptor).addMethod(method).addString(e.getAnalysis()));
+            }
+        }
+        if (detectorStartTime != 0) {
+            long milliseconds = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - detectorStartTime);
+            reporter.getProjectStats().getBudgetStatistics().record(BudgetStatistics.Kind.DETECTOR,
+                    classDescriptor.toDottedClassName(), detectorName, milliseconds);
+            reporter.logError("Detector " + detectorName + " exceeded its time budget after " + milliseconds
+                    + " ms analyzing " + classDescriptor.toDottedClassName());
+            if (isApplicationClass) {
+                reporter.reportBug(new BugInstance("SKIPPED_DETECTOR_TIME_BUDGET", Priorities.NORMAL_PRIORITY)
+                .addClass(classDescriptor).addString(detectorName));
+            }
+        }
+    }
+
+    /**
+     * Get the results of a class in the result store. Only the warnings of
+     * application classes in reporting passes are stored.
+     */
+    private @CheckForNull AnalysisResultStore.ClassResults getClassResults(ClassDescriptor classDescriptor,
+            boolean isNonReportingFirstPass) {
+        if (resultStore == null || isNonReportingFirstPass
+                || !AnalysisContext.currentAnalysisContext().isApplicationClass(classDescriptor)) {
+            return null;
+        }
+        return resultStore.getClassResults(classDescriptor, getThreadBugReporter());
+    }
+
+    /**
+     * Open the result store, if one is configured.
+     *
+     * @return the result store, or null if there is none or it can't be read
+     */
+    private @CheckForNull AnalysisResultStore openResultStore() {
+        if (analysisOptions.resultCacheDirectory == null) {
+            return null;
+        }
+        AnalysisResultStore store = new AnalysisResultStore(new File(analysisOptions.resultCacheDirectory),
+                AnalysisResultStore.computeConfiguration(executionPlan));
+        try {
+            store.load();
+        } catch (IOException e) {
+            bugReporter.logError("Couldn't read stored analysis results", e);
+        }
+        return store;
+    }
+
+    private void saveResultStore() {
+        if (resultStore == null) {
+            return;
+        }
+        try {
+            resultStore.save();
+        } catch (IOException e) {
+            bugReporter.logError("Couldn't store analysis results", e);
+        }
+        if (PROGRESS) {
+            System.out.println(resultStore.getNumReused() + " classes unchanged since previous analysis");
+        }
+    }
+
+    /**
+     * Get the bug reporter to use on the calling thread: the reports of
+     * analysis worker threads are queued.
+     */
+    private BugReporter getThreadBugReporter() {
+        BugReporter result = workerBugReporter;
+        return result != null ? result : bugReporter;
+    }
+
+    /**
+     * Pass on the reports queued by analysis worker threads. Must be called
+     * on the analysis thread.
+     */
+    private void drainWorkerReports() {
+        if (workerReports != null) {
+            workerReports.drain();
+        }
+    }
+
+    private static boolean isStateless(DetectorFactory factory) {
+        return factory.isDetectorClassSubtypeOf(StatelessDetector.class);
+    }
+
+    private static boolean isClassLocal(DetectorFactory factory) {
+        return factory.isDetectorClassSubtypeOf(ClassLocalDetector.class);
+    }
+
+    /**
+     * Get the detectors of a pass which must see all classes on the analysis
+     * thread, i.e. all detectors which are not stateless.
+     */
+    private static Detector2[] getSequentialDetectors(AnalysisPass pass, Detector2[] detectorList) {
+        List<Detector2> result = new ArrayList<Detector2>();
+        int i = 0;
+        for (Iterator<DetectorFactory> j = pass.iterator(); j.hasNext(); i++) {
+            if (!isStateless(j.next())) {
+                result.add(detectorList[i]);
+            }
+        }
+        return result.toArray(new Detector2[result.size()]);
+    }
+
+    /**
+     * Create worker threads applying the stateless detectors of given pass.
+     *
+     * @param pass
+     *            the analysis pass
+     * @param detectorList
+     *            detectors instantiated for the analysis thread
+     * @param classCollection
+     *            the classes to analyze, in analysis order
+     * @param isNonReportingFirstPass
+     *            true if this is the non-reporting first pass
+     * @param allDetectors
+     *            list to which all created detector instances are added
+     * @return the (not yet started) worker pool, or null if the pass has no
+     *         stateless detectors
+     */
+    private @CheckForNull AnalysisWorkerPool createWorkerPool(AnalysisPass pass, Detector2[] detectorList,
+            Collection<ClassDescriptor> classCollection, final boolean isNonReportingFirstPass, List<Detector2> allDetectors) {
+        List<DetectorFactory> statelessFactories = new ArrayList<DetectorFactory>();
+        for (Iterator<DetectorFactory> j = pass.iterator(); j.hasNext();) {
+            DetectorFactory factory = j.next();
+            if (isStateless(factory)) {
+                statelessFactories.add(factory);
+            }
+        }
+        if (statelessFactories.isEmpty()) {
+            return null;
+        }
+        allDetectors.clear();
+        allDetectors.addAll(Arrays.asList(getSequentialDetectors(pass, detectorList)));
+
+        List<Detector2[]> workerDetectors = new ArrayList<Detector2[]>();
+        for (int i = 0; i < analysisOptions.threads; i++) {
+            Detector2[] detectors = new Detector2[statelessFactories.size()];
+            for (int k = 0; k < detectors.length; k++) {
+                detectors[k] = statelessFactories.get(k).createDetector2(workerBugReporter);
+                allDetectors.add(detectors[k]);
+                if (isClassLocal(statelessFactories.get(k))) {
+                    classLocalDetectors.add(detectors[k]);
+                }
+            }
+            workerDetectors.add(detectors);
+        }
+        final Profiler profiler = bugReporter.getProjectStats().getProfiler();
+        final boolean reportProgress = statelessFactories.size() == detectorList.length;
+        return new AnalysisWorkerPool(new ArrayList<ClassDescriptor>(classCollection), workerDetectors,
+                new AnalysisWorkerPool.ClassVisitor() {
+            @Override
+            public void visitClass(ClassDescriptor classDescriptor, Detector2[] detectors) throws InterruptedException {
+                if (isScreenedOut(classDescriptor, isNonReportingFirstPass)) {
+                    return;
+                }
+                AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+                boolean isHuge = isTooBig(classDescriptor);
+                String className = classDescriptor.getDottedClassName();
+                profiler.startContext(className);
+                analysisContext.setClassBeingAnalyzed(classDescriptor);
+                try {
+                    applyDetectors(classDescriptor, detectors, isHuge, profiler,
+                            getClassResults(classDescriptor, isNonReportingFirstPass));
+                } finally {
+                    analysisContext.clearClassBeingAnalyzed();
+                    profiler.endContext(className);
+                    if (reportProgress) {
+                        synchronized (progress) {
+                            progress.finishClass();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Let the OpcodeStackDetectors of an analysis pass share the stack model
+     * of each method, if at least two different detectors can. With several
+     * analysis threads, each thread has its own instance of every detector:
+     * these instances visit different classes, so they don't count.
+     *
+     * @param detectors
+     *            all detector instances of the pass
+     */
+    private static void shareStackModels(List<Detector2> detectors) {
+        List<OpcodeStackDetector> sharing = new ArrayList<OpcodeStackDetector>();
+        Set<Class<?>> sharingClasses = new HashSet<Class<?>>();
+        for (Detector2 detector : detectors) {
+            if (detector instanceof DetectorToDetector2Adapter) {
+                Detector adapted = ((DetectorToDetector2Adapter) detector).getDetector();
+                if (adapted instanceof OpcodeStackDetector && ((OpcodeStackDetector) adapted).canShareStackModel()) {
+                    sharing.add((OpcodeStackDetector) adapted);
+                    sharingClasses.add(adapted.getClass());
+                }
+            }
+        }
+        if (sharingClasses.size() < 2) {
+            return;
+        }
+        for (OpcodeStackDetector detector : sharing) {
+            detector.setSharingStackModel(true);
+        }
+    }
+
     /**
      * Notify all IClassObservers that we are visiting given class.
      *
@@ -1169,7 +1675,7 @@ public class FindBugs2 implements IFindBugsEngine {
      *            the exception
      */
     private void logRecoverableException(ClassDescriptor classDescriptor, Detector2 detector, Throwable e) {
-        bugReporter.logError(
+        getThreadBugReporter().logError(
                 "Exception analyzing " + classDescriptor.toDottedClassName() + " using detector "
                         + detector.getDetectorClassName(), e);
     }
@@ -22,6 +22,8 @@ package edu.umd.cs.findbugs;
 import java.io.IOException;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
+
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.classfile.IClassObserver;
@@ -274,6 +276,70 @@ public interface IFindBugsEngine {
      */
     public void setNoClassOk(boolean noClassOk);
 
+    /**
+     * Set whether to analyze classes which are too big to be analyzed as a
+     * whole (see {@link edu.umd.cs.findbugs.ba.AnalysisContext#isTooBig}).
+     * By default, only first pass detectors are applied to such classes. If
+     * set, all detectors are applied to them, but the analysis results of a
+     * huge class are only retained for the few methods analyzed last, so that
+     * its analysis needs about as much memory as that of a few methods.
+     *
+     * @param analyzeHugeClasses
+     *            true if huge classes should be analyzed method by method
+     */
+    public void setAnalyzeHugeClasses(boolean analyzeHugeClasses);
+
+    /**
+     * Set the number of threads used to apply detectors to classes. Only
+     * detectors which declare themselves stateless (see
+     * {@link StatelessDetector}) are run on more than one thread; all others
+     * see the classes of a pass on a single thread, in the usual order.
+     *
+     * @param threads
+     *            number of analysis threads (1 for single-threaded analysis)
+     */
+    public void setThreads(int threads);
+
+    /**
+     * Set the memory budget for cached analysis results. Cached results
+     * which can be recomputed are evicted, least recently used first, when
+     * their estimated size exceeds the budget.
+     *
+     * @param bytes
+     *            the budget in bytes, or 0 to bound the number of cached
+     *            results of each analysis type instead (the default)
+     */
+    public void setCacheBudget(long bytes);
+
+    /**
+     * Set the time budgets of the analysis. A method whose analysis takes
+     * longer than its budget, or a detector which takes longer than its
+     * budget to analyze a class, is abandoned; the engine reports this as an
+     * analysis error and a warning, and goes on with the next method or
+     * detector. The budgets are only checked from time to time, so they may
+     * be exceeded somewhat.
+     *
+     * @param methodMillis
+     *            time budget for analyzing a method in milliseconds, or 0
+     *            for none (the default)
+     * @param detectorMillis
+     *            time budget for applying a detector to a class in
+     *            milliseconds, or 0 for none (the default)
+     */
+    public void setTimeBudgets(long methodMillis, long detectorMillis);
+
+    /**
+     * Set the directory in which the warnings of each application class are
+     * kept between runs. Class local detectors (see {@link ClassLocalDetector})
+     * skip classes which, like the classes they reference and all their
+     * supertypes, are unchanged since the previous run; the stored warnings
+     * of these classes are reported instead.
+     *
+     * @param directory
+     *            the directory, or null to analyze all classes (the default)
+     */
+    public void setResultCacheDirectory(@CheckForNull String directory);
+
     /**
      * Set the DetectorFactoryCollection from which plugins/detectors may be
      * accessed.
@@ -26,8 +26,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +64,8 @@ import edu.umd.cs.findbugs.ba.AnalysisFeatures;
 import edu.umd.cs.findbugs.ba.ClassMember;
 import edu.umd.cs.findbugs.ba.FieldSummary;
 import edu.umd.cs.findbugs.ba.SignatureParser;
+import edu.umd.cs.findbugs.ba.TimeBudget;
+import edu.umd.cs.findbugs.ba.TimeBudgetExceededException;
 import edu.umd.cs.findbugs.ba.XFactory;
 import edu.umd.cs.findbugs.ba.XField;
 import edu.umd.cs.findbugs.ba.XMethod;
@@ -118,6 +122,19 @@ public class OpcodeStack implements Constants2 {
     public @interface CustomUserValue {
     }
 
+    /**
+     * You can put this annotation on a OpcodeStack detector to indicate that
+     * it modifies the opcode stack, for instance using
+     * {@link OpcodeStack#replaceTop(Item)}, and thus must model the stack
+     * itself rather than replay the {@link StackModel} shared by the other
+     * detectors of its analysis pass.
+     */
+    @Documented
+    @Target({ElementType.TYPE, ElementType.PACKAGE})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface ModifiesStack {
+    }
+
     private static final String JAVA_UTIL_ARRAYS_ARRAY_LIST = "Ljava/util/Arrays$ArrayList;";
 
     private static final boolean DEBUG = SystemProperties.getBoolean("ocstack.debug");
@@ -127,6 +144,45 @@ public class OpcodeStack implements Constants2 {
     @StaticConstant
     static final HashMap<String, String> boxedTypes = new HashMap<String, String>();
 
+    /**
+     * Shared immutable items for the most common values, pushed instead of
+     * allocating a new Item every time. OpcodeStack replaces them by a copy
+     * before anybody gets a chance to modify them.
+     */
+    private static final Item[] SMALL_INT_CONSTANTS = new Item[256];
+
+    private static final Item[] LONG_CONSTANTS = { new Item("J", Long.valueOf(0)).makeImmutable(),
+        new Item("J", Long.valueOf(1)).makeImmutable() };
+
+    private static final Item[] FLOAT_CONSTANTS = { new Item("F", Float.valueOf(0)).makeImmutable(),
+        new Item("F", Float.valueOf(1)).makeImmutable(), new Item("F", Float.valueOf(2)).makeImmutable() };
+
+    private static final Item[] DOUBLE_CONSTANTS = { new Item("D", Double.valueOf(0)).makeImmutable(),
+        new Item("D", Double.valueOf(1)).makeImmutable() };
+
+    private static final Item NULL_CONSTANT = new Item().makeImmutable();
+
+    private static final Item UNKNOWN_INT = new Item("I").makeImmutable();
+
+    private static final Item UNKNOWN_LONG = new Item("J").makeImmutable();
+
+    private static final Item UNKNOWN_FLOAT = new Item("F").makeImmutable();
+
+    private static final Item UNKNOWN_DOUBLE = new Item("D").makeImmutable();
+
+    static {
+        for (int i = 0; i < SMALL_INT_CONSTANTS.length; i++) {
+            SMALL_INT_CONSTANTS[i] = new Item("I", Integer.valueOf(i - 128)).makeImmutable();
+        }
+    }
+
+    private static Item intConstant(int value) {
+        if (value >= -128 && value <= 127) {
+            return SMALL_INT_CONSTANTS[value + 128];
+        }
+        return new Item("I", Integer.valueOf(value));
+    }
+
     private List<Item> stack;
 
     private List<Item> lvValues;
@@ -161,9 +217,9 @@ public class OpcodeStack implements Constants2 {
 
     private boolean jumpInfoChangedByNewTarget;
 
-    private Map<Integer, List<Item>> jumpEntries = new HashMap<Integer, List<Item>>();
+    private final PcMap jumpEntries = new PcMap();
 
-    private Map<Integer, List<Item>> jumpStackEntries = new HashMap<Integer, List<Item>>();
+    private final PcMap jumpStackEntries = new PcMap();
 
     private BitSet jumpEntryLocations = new BitSet();
 
@@ -181,6 +237,17 @@ public class OpcodeStack implements Constants2 {
 
     private boolean reachOnlyByBranch;
 
+    /** The model being recorded while this stack models a method */
+    private @CheckForNull StackModel recording;
+
+    /** The model replayed by this stack instead of modeling the method */
+    private @CheckForNull StackModel model;
+
+    /** The state of the model the lists haven't been restored to yet */
+    private @CheckForNull StackModel.State pendingState;
+
+    private int modelStep;
+
     public static class Item {
 
         @Documented
@@ -312,7 +379,36 @@ public class OpcodeStack implements Constants2 {
 
         private int fieldLoadedFromRegister = -1;
 
+        /**
+         * Set for items that may be shared, by several stack slots or local
+         * variables, by the entries of a JumpInfo or (for common constants)
+         * by all OpcodeStacks. OpcodeStack copies such an item before
+         * modifying it, and only hands out modifiable copies.
+         */
+        private boolean immutable;
+
+        /**
+         * Make this item immutable, so that it can be shared.
+         *
+         * @return this item
+         */
+        Item makeImmutable() {
+            immutable = true;
+            return this;
+        }
+
+        boolean isImmutable() {
+            return immutable;
+        }
+
+        private void checkMutable() {
+            if (immutable) {
+                throw new IllegalStateException("Shared item " + this + " can't be modified");
+            }
+        }
+
         public void makeCrossMethod() {
+            checkMutable();
             pc = -1;
             registerNumber = -1;
             fieldLoadedFromRegister = -1;
@@ -330,6 +426,7 @@ public class OpcodeStack implements Constants2 {
         }
 
         public void setPC(int pc) {
+            checkMutable();
             this.pc = pc;
         }
 
@@ -672,6 +769,7 @@ public class OpcodeStack implements Constants2 {
         }
 
         public void setLoadedFromField(XField f, int fieldLoadedFromRegister) {
+            checkMutable();
             source = f;
             this.fieldLoadedFromRegister = fieldLoadedFromRegister;
             this.registerNumber = -1;
@@ -737,6 +835,7 @@ public class OpcodeStack implements Constants2 {
         }
 
         public void setCouldBeNegative() {
+            checkMutable();
             if (specialKind == NON_NEGATIVE) {
                 specialKind = NOT_SPECIAL;
             }
@@ -846,6 +945,7 @@ public class OpcodeStack implements Constants2 {
          *            The specialKind to set.
          */
         public void setSpecialKind(@SpecialKind int specialKind) {
+            checkMutable();
             this.specialKind = specialKind;
         }
 
@@ -879,6 +979,7 @@ public class OpcodeStack implements Constants2 {
          * @see OpcodeStack.CustomUserValue
          */
         public void setUserValue(@Nullable Object value) {
+            checkMutable();
             userValue = value;
         }
 
@@ -1025,6 +1126,7 @@ public class OpcodeStack implements Constants2 {
         }
 
         private void setFlag(boolean value, int flagBit) {
+            checkMutable();
             if (value) {
                 flags |= flagBit;
             } else {
@@ -1044,6 +1146,7 @@ public class OpcodeStack implements Constants2 {
          */
         public void clearNewlyAllocated() {
             if (specialKind == NEWLY_ALLOCATED) {
+                checkMutable();
                 if (signature.startsWith("Ljava/lang/StringB")) {
                     constValue = null;
                 }
@@ -1075,6 +1178,7 @@ public class OpcodeStack implements Constants2 {
         if (isTop()) {
             return "TOP";
         }
+        restoreModelState();
         return stack.toString() + "::" + lvValues.toString();
     }
 
@@ -1085,10 +1189,20 @@ public class OpcodeStack implements Constants2 {
     }
 
     public boolean hasIncomingBranches(int pc) {
+        if (model != null) {
+            return model.hasIncomingBranches(pc, modelStep);
+        }
         return jumpEntryLocations.get(pc) && jumpEntries.get(pc) != null;
 
     }
 
+    private static void setItems(List<Item> list, @CheckForNull Item[] items) {
+        list.clear();
+        if (items != null) {
+            Collections.addAll(list, items);
+        }
+    }
+
     public static String getExceptionSig(DismantleBytecode dbc, CodeException e) {
         if (e.getCatchType() == 0) {
             return "Ljava/lang/Throwable;";
@@ -1136,58 +1250,50 @@ public class OpcodeStack implements Constants2 {
             stackUpdated = true;
         }
 
-        List<Item> jumpEntry = null;
+        Item[] jumpEntry = null;
         if (jumpEntryLocations.get(dbc.getPC())) {
-            jumpEntry = jumpEntries.get(Integer.valueOf(dbc.getPC()));
+            jumpEntry = jumpEntries.get(dbc.getPC());
         }
         boolean wasReachOnlyByBranch = isReachOnlyByBranch();
         if (jumpEntry != null) {
             setReachOnlyByBranch(false);
-            List<Item> jumpStackEntry = jumpStackEntries.get(Integer.valueOf(dbc.getPC()));
+            Item[] jumpStackEntry = jumpStackEntries.get(dbc.getPC());
 
             if (DEBUG2) {
                 if (wasReachOnlyByBranch) {
-                    System.out.println("Reached by branch at " + dbc.getPC() + " with " + jumpEntry);
+                    System.out.println("Reached by branch at " + dbc.getPC() + " with " + Arrays.asList(jumpEntry));
                     if (jumpStackEntry != null) {
-                        System.out.println(" and stack " + jumpStackEntry);
+                        System.out.println(" and stack " + Arrays.asList(jumpStackEntry));
                     }
-                } else if (!jumpEntry.equals(lvValues)
-                        || jumpStackEntry != null && !jumpStackEntry.equals(stack)) {
+                } else if (!Arrays.asList(jumpEntry).equals(lvValues)
+                        || jumpStackEntry != null && !Arrays.asList(jumpStackEntry).equals(stack)) {
 
-                    System.out.println("Merging at " + dbc.getPC() + " with " + jumpEntry);
+                    System.out.println("Merging at " + dbc.getPC() + " with " + Arrays.asList(jumpEntry));
                     if (jumpStackEntry != null) {
-                        System.out.println(" and stack " + jumpStackEntry);
+                        System.out.println(" and stack " + Arrays.asList(jumpStackEntry));
                     }
 
                 }
 
             }
             if (isTop()) {
-                lvValues = new ArrayList<Item>(jumpEntry);
-                if (jumpStackEntry != null) {
-                    stack = new ArrayList<Item>(jumpStackEntry);
-                } else {
-                    stack.clear();
-                }
+                setItems(lvValues, jumpEntry);
+                setItems(stack, jumpStackEntry);
                 setTop(false);
                 return;
             }
             if (isReachOnlyByBranch()) {
                 setTop(false);
-                lvValues = new ArrayList<Item>(jumpEntry);
+                setItems(lvValues, jumpEntry);
                 if (!stackUpdated) {
-                    if (jumpStackEntry != null) {
-                        stack = new ArrayList<Item>(jumpStackEntry);
-                    } else {
-                        stack.clear();
-                    }
+                    setItems(stack, jumpStackEntry);
                 }
 
             } else {
                 setTop(false);
-                mergeLists(lvValues, jumpEntry, false);
+                mergeLists(lvValues, Arrays.asList(jumpEntry), false);
                 if (!stackUpdated && jumpStackEntry != null) {
-                    mergeLists(stack, jumpStackEntry, false);
+                    mergeLists(stack, Arrays.asList(jumpStackEntry), false);
                 }
             }
             if (DEBUG) {
@@ -1232,6 +1338,7 @@ public class OpcodeStack implements Constants2 {
     }
 
     public int getLastUpdate(int reg) {
+        restoreModelState();
         if (lastUpdate.size() <= reg) {
             return 0;
         }
@@ -1239,10 +1346,15 @@ public class OpcodeStack implements Constants2 {
     }
 
     public int getNumLastUpdates() {
+        restoreModelState();
         return lastUpdate.size();
     }
 
     public void sawOpcode(DismantleBytecode dbc, int seen) {
+        if (model != null) {
+            moveToModelState(model.after[dbc.getPC()], 2 * dbc.getPC() + 2);
+            return;
+        }
         int register;
         String signature;
         Item it, it2;
@@ -1422,7 +1534,7 @@ public class OpcodeStack implements Constants2 {
 
             case INSTANCEOF:
                 pop();
-                push(new Item("I"));
+                push(UNKNOWN_INT);
                 break;
 
             case IFNONNULL:
@@ -1458,14 +1570,16 @@ public class OpcodeStack implements Constants2 {
                     // reset all other such values on the opcode stack
                     if (topItem.valueCouldBeNegative() && (seen == IFLT || seen == IFLE || seen == IFGT || seen == IFGE)) {
                         int specialKind = topItem.getSpecialKind();
-                        for (Item item : stack) {
+                        for (int i = 0; i < stack.size(); i++) {
+                            Item item = stack.get(i);
                             if (item != null && item.getSpecialKind() == specialKind) {
-                                item.setSpecialKind(Item.NOT_SPECIAL);
+                                modifiableItem(stack, i).setSpecialKind(Item.NOT_SPECIAL);
                             }
                         }
-                        for (Item item : lvValues) {
+                        for (int i = 0; i < lvValues.size(); i++) {
+                            Item item = lvValues.get(i);
                             if (item != null && item.getSpecialKind() == specialKind) {
-                                item.setSpecialKind(Item.NOT_SPECIAL);
+                                modifiableItem(lvValues, i).setSpecialKind(Item.NOT_SPECIAL);
                             }
                         }
 
@@ -1582,14 +1696,16 @@ public class OpcodeStack implements Constants2 {
                 }
                 if (right.hasConstantValue(Integer.MIN_VALUE) && left.mightRarelyBeNegative()
                         || left.hasConstantValue(Integer.MIN_VALUE) && right.mightRarelyBeNegative()) {
-                    for (Item i : stack) {
-                        if (i != null && i.mightRarelyBeNegative()) {
-                            i.setSpecialKind(Item.NOT_SPECIAL);
+                    for (int i = 0; i < stack.size(); i++) {
+                        Item item = stack.get(i);
+                        if (item != null && item.mightRarelyBeNegative()) {
+                            modifiableItem(stack, i).setSpecialKind(Item.NOT_SPECIAL);
                         }
                     }
-                    for (Item i : lvValues) {
-                        if (i != null && i.mightRarelyBeNegative()) {
-                            i.setSpecialKind(Item.NOT_SPECIAL);
+                    for (int i = 0; i < lvValues.size(); i++) {
+                        Item item = lvValues.get(i);
+                        if (item != null && item.mightRarelyBeNegative()) {
+                            modifiableItem(lvValues, i).setSpecialKind(Item.NOT_SPECIAL);
                         }
                     }
                 }
@@ -1609,7 +1725,7 @@ public class OpcodeStack implements Constants2 {
             case IALOAD:
             case SALOAD:
                 pop(2);
-                push(new Item("I"));
+                push(UNKNOWN_INT);
                 break;
 
             case DUP:
@@ -1639,8 +1755,8 @@ public class OpcodeStack implements Constants2 {
 
             case IINC:
                 register = dbc.getRegisterOperand();
-                it = getLVValue(register);
-                it2 = new Item("I", dbc.getIntConstant());
+                it = peekLVValue(register);
+                it2 = intConstant(dbc.getIntConstant());
                 pushByIntMath(dbc, IADD, it2, it);
                 pushByLocalStore(register);
                 break;
@@ -1696,27 +1812,27 @@ public class OpcodeStack implements Constants2 {
             case ICONST_3:
             case ICONST_4:
             case ICONST_5:
-                push(new Item("I", (seen - ICONST_0)));
+                push(intConstant(seen - ICONST_0));
                 break;
 
             case LCONST_0:
             case LCONST_1:
-                push(new Item("J", Long.valueOf(seen - LCONST_0)));
+                push(LONG_CONSTANTS[seen - LCONST_0]);
                 break;
 
             case DCONST_0:
             case DCONST_1:
-                push(new Item("D", Double.valueOf(seen - DCONST_0)));
+                push(DOUBLE_CONSTANTS[seen - DCONST_0]);
                 break;
 
             case FCONST_0:
             case FCONST_1:
             case FCONST_2:
-                push(new Item("F", Float.valueOf(seen - FCONST_0)));
+                push(FLOAT_CONSTANTS[seen - FCONST_0]);
                 break;
 
             case ACONST_NULL:
-                push(new Item());
+                push(NULL_CONSTANT);
                 break;
 
             case ASTORE:
@@ -1809,17 +1925,17 @@ public class OpcodeStack implements Constants2 {
             }
             case DALOAD:
                 pop(2);
-                push(new Item("D"));
+                push(UNKNOWN_DOUBLE);
                 break;
 
             case FALOAD:
                 pop(2);
-                push(new Item("F"));
+                push(UNKNOWN_FLOAT);
                 break;
 
             case LALOAD:
                 pop(2);
-                push(new Item("J"));
+                push(UNKNOWN_LONG);
                 break;
 
             case AASTORE:
@@ -1835,7 +1951,7 @@ public class OpcodeStack implements Constants2 {
 
             case BIPUSH:
             case SIPUSH:
-                push(new Item("I", Integer.valueOf(dbc.getIntConstant())));
+                push(intConstant(dbc.getIntConstant()));
                 break;
 
             case IADD:
@@ -1857,9 +1973,9 @@ public class OpcodeStack implements Constants2 {
             case INEG:
                 it = pop();
                 if (it.getConstant() instanceof Integer) {
-                    push(new Item("I", Integer.valueOf(-constantToInt(it))));
+                    push(intConstant(-constantToInt(it)));
                 } else {
-                    push(new Item("I"));
+                    push(UNKNOWN_INT);
                 }
                 break;
 
@@ -1868,7 +1984,7 @@ public class OpcodeStack implements Constants2 {
                 if (it.getConstant() instanceof Long) {
                     push(new Item("J", Long.valueOf(-constantToLong(it))));
                 } else {
-                    push(new Item("J"));
+                    push(UNKNOWN_LONG);
                 }
                 break;
             case FNEG:
@@ -1876,7 +1992,7 @@ public class OpcodeStack implements Constants2 {
                 if (it.getConstant() instanceof Float) {
                     push(new Item("F", Float.valueOf(-constantToFloat(it))));
                 } else {
-                    push(new Item("F"));
+                    push(UNKNOWN_FLOAT);
                 }
                 break;
             case DNEG:
@@ -1884,7 +2000,7 @@ public class OpcodeStack implements Constants2 {
                 if (it.getConstant() instanceof Double) {
                     push(new Item("D", Double.valueOf(-constantToDouble(it))));
                 } else {
-                    push(new Item("D"));
+                    push(UNKNOWN_DOUBLE);
                 }
                 break;
 
@@ -2004,7 +2120,7 @@ public class OpcodeStack implements Constants2 {
                 if (it.getConstant() != null) {
                     push(new Item("F", Float.valueOf(constantToFloat(it))));
                 } else {
-                    push(new Item("F"));
+                    push(UNKNOWN_FLOAT);
                 }
                 break;
 
@@ -2015,7 +2131,7 @@ public class OpcodeStack implements Constants2 {
                 if (it.getConstant() != null) {
                     push(new Item("D", Double.valueOf(constantToDouble(it))));
                 } else {
-                    push(new Item("D"));
+                    push(UNKNOWN_DOUBLE);
                 }
                 break;
 
@@ -2137,19 +2253,25 @@ public class OpcodeStack implements Constants2 {
         if (fieldOperand == null) {
             return;
         }
-        for (Item item : stack) {
+        for (int i = 0; i < stack.size(); i++) {
+            Item item = stack.get(i);
             if (item != null && fieldOperand.equals(item.getXField())) {
-                item.setLoadedFromField(null, -1);
+                modifiableItem(stack, i).setLoadedFromField(null, -1);
             }
         }
-        for (Item item : lvValues) {
+        for (int i = 0; i < lvValues.size(); i++) {
+            Item item = lvValues.get(i);
             if (item != null && fieldOperand.equals(item.getXField())) {
-                item.setLoadedFromField(null, -1);
+                modifiableItem(lvValues, i).setLoadedFromField(null, -1);
             }
         }
     }
 
     public void precomputation(DismantleBytecode dbc) {
+        if (model != null) {
+            moveToModelState(model.before[dbc.getPC()], 2 * dbc.getPC() + 1);
+            return;
+        }
         if (registerTestedFoundToBeNonnegative >= 0) {
             for (int i = 0; i < stack.size(); i++) {
                 Item item = stack.get(i);
@@ -2200,20 +2322,20 @@ public class OpcodeStack implements Constants2 {
             double d2 = constantToDouble(it2);
             if (Double.isNaN(d) || Double.isNaN(d2)) {
                 if (opcode == DCMPG) {
-                    push(new Item("I", Integer.valueOf(1)));
+                    push(intConstant(1));
                 } else {
-                    push(new Item("I", Integer.valueOf(-1)));
+                    push(intConstant(-1));
                 }
             }
             if (d2 < d) {
-                push(new Item("I", Integer.valueOf(-1)));
+                push(intConstant(-1));
             } else if (d2 > d) {
-                push(new Item("I", Integer.valueOf(1)));
+                push(intConstant(1));
             } else {
-                push(new Item("I", Integer.valueOf(0)));
+                push(intConstant(0));
             }
         } else {
-            push(new Item("I"));
+            push(UNKNOWN_INT);
         }
     }
 
@@ -2225,20 +2347,20 @@ public class OpcodeStack implements Constants2 {
             float f2 = constantToFloat(it2);
             if (Float.isNaN(f) || Float.isNaN(f2)) {
                 if (opcode == FCMPG) {
-                    push(new Item("I", Integer.valueOf(1)));
+                    push(intConstant(1));
                 } else {
-                    push(new Item("I", Integer.valueOf(-1)));
+                    push(intConstant(-1));
                 }
             }
             if (f2 < f) {
-                push(new Item("I", Integer.valueOf(-1)));
+                push(intConstant(-1));
             } else if (f2 > f) {
-                push(new Item("I", Integer.valueOf(1)));
+                push(intConstant(1));
             } else {
-                push(new Item("I", Integer.valueOf(0)));
+                push(intConstant(0));
             }
         } else {
-            push(new Item("I"));
+            push(UNKNOWN_INT);
         }
     }
 
@@ -2250,14 +2372,14 @@ public class OpcodeStack implements Constants2 {
             long l = constantToLong(it);
             long l2 = constantToLong(it2);
             if (l2 < l) {
-                push(new Item("I", Integer.valueOf(-1)));
+                push(intConstant(-1));
             } else if (l2 > l) {
-                push(new Item("I", Integer.valueOf(1)));
+                push(intConstant(1));
             } else {
-                push(new Item("I", Integer.valueOf(0)));
+                push(intConstant(0));
             }
         } else {
-            push(new Item("I"));
+            push(UNKNOWN_INT);
         }
 
     }
@@ -2419,7 +2541,7 @@ public class OpcodeStack implements Constants2 {
         Item sbItem = null;
         Item topItem = null;
         if (getStackDepth() > 0) {
-            topItem = getStackItem(0);
+            topItem = peekStackItem(0);
         }
 
         int numberArguments = PreorderVisitor.getNumberArguments(signature);
@@ -2451,10 +2573,10 @@ public class OpcodeStack implements Constants2 {
             if (i >= getStackDepth()) {
                 break;
             }
-            Item item = getStackItem(i);
+            Item item = peekStackItem(i);
             String itemSignature = item.getSignature();
             if ("Ljava/lang/StringBuilder;".equals(itemSignature) || "Ljava/lang/StringBuffer;".equals(itemSignature)) {
-                markConstantValueUnknown(item);
+                markConstantValueUnknown(getStackItem(i));
             }
         }
         boolean initializingServletWriter = false;
@@ -2751,33 +2873,177 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void clear() {
+        restoreModelState();
         stack.clear();
         lvValues.clear();
     }
 
     public void printJumpEntries() {
         for(int i=jumpEntryLocations.nextSetBit(0); i>=0; i=jumpEntryLocations.nextSetBit(i+1)) {
-            List<Item> stack = jumpStackEntries.get(i);
-            List<Item> locals = jumpEntries.get(i);
+            Item[] stack = jumpStackEntries.get(i);
+            Item[] locals = jumpEntries.get(i);
+            String localsString = locals == null ? "null" : Arrays.asList(locals).toString();
             if (stack != null) {
-                System.out.printf("%4d: %s::%s%n", i, stack, locals);
+                System.out.printf("%4d: %s::%s%n", i, Arrays.asList(stack), localsString);
             } else {
-                System.out.printf("%4d:    ::%s%n", i,  locals);
+                System.out.printf("%4d:    ::%s%n", i,  localsString);
+            }
+        }
+    }
+
+    /**
+     * Map from pc to the items at that pc, without boxing the pcs. This is an
+     * open addressing hash table with linear probing; pcs can't be removed.
+     */
+    static final class PcMap {
+        private static final int NO_PC = -1;
+
+        private int[] pcs;
+
+        private Item[][] values;
+
+        private int size;
+
+        PcMap() {
+            pcs = new int[16];
+            Arrays.fill(pcs, NO_PC);
+            values = new Item[16][];
+        }
+
+        private static int hash(int pc) {
+            int h = pc * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        @CheckForNull
+        Item[] get(int pc) {
+            int mask = pcs.length - 1;
+            for (int i = hash(pc) & mask; pcs[i] != NO_PC; i = (i + 1) & mask) {
+                if (pcs[i] == pc) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int pc, Item[] items) {
+            if (2 * (size + 1) > pcs.length) {
+                grow();
+            }
+            int mask = pcs.length - 1;
+            int i = hash(pc) & mask;
+            while (pcs[i] != NO_PC) {
+                if (pcs[i] == pc) {
+                    values[i] = items;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            pcs[i] = pc;
+            values[i] = items;
+            size++;
+        }
+
+        private void grow() {
+            int[] oldPcs = pcs;
+            Item[][] oldValues = values;
+            pcs = new int[2 * oldPcs.length];
+            Arrays.fill(pcs, NO_PC);
+            values = new Item[pcs.length][];
+            size = 0;
+            for (int i = 0; i < oldPcs.length; i++) {
+                if (oldPcs[i] != NO_PC) {
+                    put(oldPcs[i], oldValues[i]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the pcs in this map, in increasing order
+         */
+        int[] pcs() {
+            int[] result = new int[size];
+            int n = 0;
+            for (int pc : pcs) {
+                if (pc != NO_PC) {
+                    result[n++] = pc;
+                }
+            }
+            Arrays.sort(result);
+            return result;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(pcs, NO_PC);
+                Arrays.fill(values, null);
+                size = 0;
             }
         }
     }
 
+    /**
+     * The values of the local variables and the stack at the jump targets of
+     * a method. The targets are kept sorted, with the items at each of them
+     * in parallel arrays; the items are immutable so that they can be shared
+     * by all the OpcodeStacks learning from this JumpInfo.
+     */
     public static class JumpInfo {
-        final Map<Integer, List<Item>> jumpEntries;
+        private final int[] targets;
+
+        private final Item[][] targetLocals;
 
-        final Map<Integer, List<Item>> jumpStackEntries;
+        /** The stack at each target, or null if it is empty */
+        private final Item[][] targetStacks;
 
         final BitSet jumpEntryLocations;
 
         JumpInfo(Map<Integer, List<Item>> jumpEntries, Map<Integer, List<Item>> jumpStackEntries, BitSet jumpEntryLocations) {
-            this.jumpEntries = jumpEntries;
-            this.jumpStackEntries = jumpStackEntries;
             this.jumpEntryLocations = jumpEntryLocations;
+            int numTargets = jumpEntries.size();
+            targets = new int[numTargets];
+            int n = 0;
+            for (Integer target : jumpEntries.keySet()) {
+                targets[n++] = target.intValue();
+            }
+            Arrays.sort(targets);
+            targetLocals = new Item[numTargets][];
+            targetStacks = new Item[numTargets][];
+            for (int i = 0; i < numTargets; i++) {
+                targetLocals[i] = shared(jumpEntries.get(targets[i]).toArray(new Item[0]));
+                List<Item> stack = jumpStackEntries.get(targets[i]);
+                if (stack != null) {
+                    targetStacks[i] = shared(stack.toArray(new Item[0]));
+                }
+            }
+        }
+
+        JumpInfo(OpcodeStack stack) {
+            this.jumpEntryLocations = stack.jumpEntryLocations;
+            targets = stack.jumpEntries.pcs();
+            int numTargets = targets.length;
+            targetLocals = new Item[numTargets][];
+            targetStacks = new Item[numTargets][];
+            for (int i = 0; i < numTargets; i++) {
+                targetLocals[i] = shared(stack.jumpEntries.get(targets[i]).clone());
+                Item[] stackItems = stack.jumpStackEntries.get(targets[i]);
+                if (stackItems != null) {
+                    targetStacks[i] = shared(stackItems.clone());
+                }
+            }
+        }
+
+        private static Item[] shared(Item[] items) {
+            for (Item item : items) {
+                if (item != null) {
+                    item.makeImmutable();
+                }
+            }
+            return items;
         }
 
         public int getNextJump(int pc) {
@@ -2851,7 +3117,7 @@ public class OpcodeStack implements Constants2 {
         }
 
         public static @CheckForNull JumpInfo computeJumpInfo(JavaClass jclass, Method method,
-                JumpStackComputation branchAnalysis) {
+                JumpStackComputation branchAnalysis) throws TimeBudgetExceededException {
             branchAnalysis.setupVisitorForClass(jclass);
             XMethod createXMethod = XFactory.createXMethod(jclass, method);
             if (!(createXMethod instanceof MethodInfo)) {
@@ -2859,6 +3125,8 @@ public class OpcodeStack implements Constants2 {
             }
             MethodInfo xMethod = (MethodInfo) createXMethod;
 
+            TimeBudget timeBudget = TimeBudget.current();
+            long startTime = System.nanoTime();
             int iteration = 1;
             OpcodeStack myStack = branchAnalysis.stack;
             /*
@@ -2873,6 +3141,7 @@ public class OpcodeStack implements Constants2 {
                     System.out.println();
                 }
                 // myStack.resetForMethodEntry0(ClassName.toSlashedClassName(jclass.getClassName()), method);
+                timeBudget.check("JumpInfo", branchAnalysis.descriptor, startTime);
                 branchAnalysis.doVisitMethod(method);
                 if (xMethod.hasBackBranch() != myStack.backwardsBranch && !myStack.encountedTop) {
                     AnalysisContext.logError(
@@ -2895,11 +3164,240 @@ public class OpcodeStack implements Constants2 {
                 AnalysisContext.logError("Iterative jump info converged after " + iteration + " iterations in " + xMethod + ", size " + method.getCode().getLength());
 
             }
-            return new JumpInfo(myStack.jumpEntries, myStack.jumpStackEntries, myStack.jumpEntryLocations);
+            return new JumpInfo(myStack);
+        }
+    }
+
+    /**
+     * The states of the OpcodeStack before and after each instruction of a
+     * method. It lets the OpcodeStackDetectors of an analysis pass model the
+     * stack of a method only once: the model is computed the first time one
+     * of them visits the method, and all of them replay it (see
+     * {@link OpcodeStackDetector#setSharingStackModel(boolean)}).
+     * <p>
+     * The items of the model are immutable; consecutive states share their
+     * arrays if they didn't change.
+     */
+    public static class StackModel {
+
+        static final class State {
+            final Item[] stack;
+
+            final Item[] locals;
+
+            final int[] lastUpdate;
+
+            final boolean top;
+
+            State(Item[] stack, Item[] locals, int[] lastUpdate, boolean top) {
+                this.stack = stack;
+                this.locals = locals;
+                this.lastUpdate = lastUpdate;
+                this.top = top;
+            }
+        }
+
+        private static final Item[] NO_ITEMS = new Item[0];
+
+        private static final int NEVER = Integer.MAX_VALUE;
+
+        private final Code code;
+
+        final State initial;
+
+        /** The state before each instruction, indexed by pc */
+        final State[] before;
+
+        /** The state after each instruction, indexed by pc */
+        final State[] after;
+
+        /**
+         * The step (see {@link OpcodeStack#moveToModelState(State, int)})
+         * from which each pc is a jump target, or NEVER
+         */
+        private final int[] jumpTargetSince;
+
+        /** The step from which each pc has incoming branches, or NEVER */
+        private final int[] incomingSince;
+
+        private State last;
+
+        private boolean complete;
+
+        StackModel(Code code, OpcodeStack stack) {
+            this.code = code;
+            int length = code.getCode().length;
+            before = new State[length];
+            after = new State[length];
+            jumpTargetSince = new int[length];
+            incomingSince = new int[length];
+            Arrays.fill(jumpTargetSince, NEVER);
+            Arrays.fill(incomingSince, NEVER);
+            for (int pc = stack.jumpEntryLocations.nextSetBit(0); pc >= 0 && pc < length; pc = stack.jumpEntryLocations
+                    .nextSetBit(pc + 1)) {
+                jumpTargetSince[pc] = 0;
+                if (stack.jumpEntries.get(pc) != null) {
+                    incomingSince[pc] = 0;
+                }
+            }
+            initial = last = capture(stack);
+        }
+
+        /**
+         * @return true if this is the complete model of the given code
+         */
+        public boolean isModelOf(Code code) {
+            return complete && this.code == code;
+        }
+
+        void recordBefore(int pc, OpcodeStack stack) {
+            before[pc] = last = capture(stack);
+        }
+
+        void recordAfter(int pc, OpcodeStack stack) {
+            after[pc] = last = capture(stack);
+        }
+
+        void newJumpTarget(int from, int target) {
+            if (target < 0 || target >= jumpTargetSince.length) {
+                return;
+            }
+            int step = 2 * from + 2;
+            if (jumpTargetSince[target] == NEVER) {
+                jumpTargetSince[target] = step;
+            }
+            if (incomingSince[target] == NEVER) {
+                incomingSince[target] = step;
+            }
+        }
+
+        boolean isJumpTarget(int pc, int step) {
+            return pc >= 0 && pc < jumpTargetSince.length && jumpTargetSince[pc] <= step;
+        }
+
+        boolean hasIncomingBranches(int pc, int step) {
+            return pc >= 0 && pc < incomingSince.length && incomingSince[pc] <= step;
+        }
+
+        private State capture(OpcodeStack stack) {
+            Item[] stackItems = shared(stack.stack, last == null ? null : last.stack);
+            Item[] locals = shared(stack.lvValues, last == null ? null : last.locals);
+            int[] lastUpdate = shared(stack.lastUpdate, last == null ? null : last.lastUpdate);
+            if (last != null && stackItems == last.stack && locals == last.locals && lastUpdate == last.lastUpdate
+                    && stack.top == last.top) {
+                return last;
+            }
+            return new State(stackItems, locals, lastUpdate, stack.top);
+        }
+
+        private static Item[] shared(List<Item> items, @CheckForNull Item[] previous) {
+            int size = items.size();
+            if (previous != null && previous.length == size) {
+                int i = 0;
+                while (i < size && items.get(i) == previous[i]) {
+                    i++;
+                }
+                if (i == size) {
+                    return previous;
+                }
+            }
+            if (size == 0) {
+                return NO_ITEMS;
+            }
+            Item[] result = items.toArray(new Item[size]);
+            for (Item item : result) {
+                if (item != null) {
+                    item.makeImmutable();
+                }
+            }
+            return result;
+        }
+
+        private static int[] shared(List<Integer> values, @CheckForNull int[] previous) {
+            int size = values.size();
+            if (previous != null && previous.length == size) {
+                int i = 0;
+                while (i < size && values.get(i).intValue() == previous[i]) {
+                    i++;
+                }
+                if (i == size) {
+                    return previous;
+                }
+            }
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = values.get(i).intValue();
+            }
+            return result;
+        }
+    }
+
+    public static class StackModelFactory extends edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory<StackModel> {
+
+        public StackModelFactory() {
+            super("Shared opcode stack model", StackModel.class);
+        }
+
+        @Override
+        public @CheckForNull StackModel analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+            if (method.getCode() == null) {
+                return null;
+            }
+            StackModelComputation computation = new StackModelComputation();
+            try {
+                computation.setupVisitorForClass(jclass);
+                computation.doVisitMethod(method);
+            } catch (RuntimeException e) {
+                // Let the detectors run into this themselves
+                throw new CheckedAnalysisException("Can't model opcode stack of " + descriptor, e);
+            }
+            StackModel model = computation.model;
+            if (model == null) {
+                return null;
+            }
+            model.complete = true;
+            return model;
+        }
+
+        /**
+         * Models the stack of a method the way every OpcodeStackDetector
+         * sharing the model does, recording its states.
+         */
+        static class StackModelComputation extends OpcodeStackDetector {
+            StackModel model;
+
+            @Override
+            public void visit(Code obj) {
+                model = stack.startRecording(obj);
+                super.visit(obj);
+            }
+
+            @Override
+            public boolean beforeOpcode(int seen) {
+                super.beforeOpcode(seen);
+                model.recordBefore(getPC(), stack);
+                return false;
+            }
+
+            @Override
+            public void afterOpcode(int seen) {
+                super.afterOpcode(seen);
+                model.recordAfter(getPC(), stack);
+            }
+
+            @Override
+            public void sawOpcode(int seen) {
+                // nothing to do
+            }
         }
     }
 
     public boolean isJumpTarget(int pc) {
+        if (model != null) {
+            return model.isJumpTarget(pc, modelStep);
+        }
         return jumpEntryLocations.get(pc);
     }
 
@@ -2911,22 +3409,31 @@ public class OpcodeStack implements Constants2 {
         if (from >= target) {
             backwardsBranch = true;
         }
-        List<Item> atTarget = jumpEntries.get(Integer.valueOf(target));
+        Item[] atTarget = jumpEntries.get(target);
         if (atTarget == null) {
             setJumpInfoChangedByBackwardBranch("new target", from, target);
             setJumpInfoChangedByNewTarget();
-            jumpEntries.put(Integer.valueOf(target), new ArrayList<Item>(lvValues));
+            jumpEntries.put(target, lvValues.toArray(new Item[lvValues.size()]));
             jumpEntryLocations.set(target);
+            if (recording != null) {
+                recording.newJumpTarget(from, target);
+            }
             if (stack.size() > 0) {
-                jumpStackEntries.put(Integer.valueOf(target), new ArrayList<Item>(stack));
+                jumpStackEntries.put(target, stack.toArray(new Item[stack.size()]));
             }
         } else {
-            if (mergeLists(atTarget, lvValues, false)) {
+            // the entries may have been learned from a JumpInfo, which must
+            // not change: merge into a copy
+            Item[] merged = atTarget.clone();
+            if (mergeLists(Arrays.asList(merged), lvValues, false)) {
+                jumpEntries.put(target, merged);
                 setJumpInfoChangedByBackwardBranch("locals", from, target);
             }
-            List<Item> stackAtTarget = jumpStackEntries.get(Integer.valueOf(target));
+            Item[] stackAtTarget = jumpStackEntries.get(target);
             if (stack.size() > 0 && stackAtTarget != null) {
-                if (mergeLists(stackAtTarget, stack, false)) {
+                merged = stackAtTarget.clone();
+                if (mergeLists(Arrays.asList(merged), stack, false)) {
+                    jumpStackEntries.put(target, merged);
                     setJumpInfoChangedByBackwardBranch("stack", from, target);
                 }
             }
@@ -2942,8 +3449,14 @@ public class OpcodeStack implements Constants2 {
         if (info == null) {
             return;
         }
-        jumpEntries = new HashMap<Integer, List<Item>>(info.jumpEntries);
-        jumpStackEntries = new HashMap<Integer, List<Item>>(info.jumpStackEntries);
+        jumpEntries.clear();
+        jumpStackEntries.clear();
+        for (int i = 0; i < info.targets.length; i++) {
+            jumpEntries.put(info.targets[i], info.targetLocals[i]);
+            if (info.targetStacks[i] != null) {
+                jumpStackEntries.put(info.targets[i], info.targetStacks[i]);
+            }
+        }
         jumpEntryLocations = (BitSet) info.jumpEntryLocations.clone();
     }
 
@@ -2961,6 +3474,49 @@ public class OpcodeStack implements Constants2 {
         setReachOnlyByBranch(false);
     }
 
+    /**
+     * Replay a stack model of the method being visited instead of modeling
+     * its stack.
+     */
+    public void resetForMethodEntry(final DismantleBytecode visitor, StackModel model) {
+        this.v = visitor;
+        this.model = model;
+        moveToModelState(model.initial, 0);
+    }
+
+    /**
+     * Move to a state of the stack model. The lists are restored only when
+     * the state is looked at.
+     *
+     * @param step
+     *            0 for the method entry, 2*pc+1 before and 2*pc+2 after the
+     *            instruction at pc
+     */
+    private void moveToModelState(StackModel.State state, int step) {
+        pendingState = state;
+        top = state.top;
+        modelStep = step;
+    }
+
+    private void restoreModelState() {
+        StackModel.State state = pendingState;
+        if (state == null) {
+            return;
+        }
+        pendingState = null;
+        setItems(stack, state.stack);
+        setItems(lvValues, state.locals);
+        lastUpdate.clear();
+        for (int pc : state.lastUpdate) {
+            lastUpdate.add(Integer.valueOf(pc));
+        }
+    }
+
+    StackModel startRecording(Code code) {
+        recording = new StackModel(code, this);
+        return recording;
+    }
+
     public int resetForMethodEntry(final DismantleBytecode visitor) {
         this.v = visitor;
         initialize();
@@ -3079,12 +3635,12 @@ public class OpcodeStack implements Constants2 {
         Type[] argTypes = Type.getArgumentTypes(signature);
         int reg = 0;
         if (!m.isStatic()) {
-            Item it = Item.initialArgument("L" + className + ";", reg);
+            Item it = Item.initialArgument("L" + className + ";", reg).makeImmutable();
             setLVValue(reg, it);
             reg += it.getSize();
         }
         for (Type argType : argTypes) {
-            Item it = Item.initialArgument(argType.getSignature(), reg);
+            Item it = Item.initialArgument(argType.getSignature(), reg).makeImmutable();
             setLVValue(reg, it);
             reg += it.getSize();
         }
@@ -3092,10 +3648,32 @@ public class OpcodeStack implements Constants2 {
     }
 
     public int getStackDepth() {
+        restoreModelState();
         return stack.size();
     }
 
+    /**
+     * Get an item from the stack. The item may be modified, for instance to
+     * record a user value for it.
+     *
+     * @param stackOffset
+     *            offset from the top of the stack, 0 for the top item
+     * @return the item at the given offset
+     */
     public Item getStackItem(int stackOffset) {
+        Item item = peekStackItem(stackOffset);
+        if (item.isImmutable()) {
+            return modifiableItem(stack, stack.size() - 1 - stackOffset);
+        }
+        return item;
+    }
+
+    /**
+     * Get an item from the stack, only to look at it: the item may be shared
+     * and must not be modified.
+     */
+    private Item peekStackItem(int stackOffset) {
+        restoreModelState();
         if (stackOffset < 0 || stackOffset >= stack.size()) {
             AnalysisContext.logError("Can't get stack offset " + stackOffset + " from " + stack.toString() + " @ " + v.getPC()
                     + " in " + v.getFullyQualifiedMethodName(), new IllegalArgumentException(stackOffset
@@ -3117,7 +3695,21 @@ public class OpcodeStack implements Constants2 {
         return stack.remove(stack.size() - 1);
     }
 
+    /**
+     * Get an item of the stack or of the local variables in order to modify
+     * it, replacing a shared item by a copy first.
+     */
+    private static Item modifiableItem(List<Item> list, int index) {
+        Item item = list.get(index);
+        if (item != null && item.isImmutable()) {
+            item = new Item(item);
+            list.set(index, item);
+        }
+        return item;
+    }
+
     public void replace(int stackOffset, Item value) {
+        restoreModelState();
         if (stackOffset < 0 || stackOffset >= stack.size()) {
             AnalysisContext.logError("Can't get replace stack offset " + stackOffset + " from " + stack.toString() + " @ " + v.getPC()
                     + " in " + v.getFullyQualifiedMethodName(), new IllegalArgumentException(stackOffset
@@ -3132,6 +3724,7 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void replaceTop(Item newTop) {
+        restoreModelState();
         pop();
         push(newTop);
     }
@@ -3151,7 +3744,7 @@ public class OpcodeStack implements Constants2 {
         if (c instanceof ConstantClass) {
             push(new Item("Ljava/lang/Class;", ((ConstantClass) c).getConstantValue(dbc.getConstantPool())));
         } else if (c instanceof ConstantInteger) {
-            push(new Item("I", Integer.valueOf(((ConstantInteger) c).getBytes())));
+            push(intConstant(((ConstantInteger) c).getBytes()));
         } else if (c instanceof ConstantString) {
             int s = ((ConstantString) c).getStringIndex();
             push(new Item("Ljava/lang/String;", getStringFromIndex(dbc, s)));
@@ -3445,7 +4038,7 @@ public class OpcodeStack implements Constants2 {
             pop(PreorderVisitor.getNumberArguments(signature));
             Item constructed = pop();
             if (getStackDepth() > 0) {
-                Item next = getStackItem(0);
+                Item next = peekStackItem(0);
                 if (constructed.equals(next)) {
                     next = new Item(next);
                     next.source = XFactory.createReferencedXMethod(dbc);
@@ -3503,7 +4096,7 @@ public class OpcodeStack implements Constants2 {
         if (it.registerNumber == -1) {
             it.registerNumber = register;
         }
-        setLVValue(register, it);
+        setLVValue(register, it.makeImmutable());
     }
 
     private static void clearRegisterLoad(List<Item> list, int register) {
@@ -3523,17 +4116,19 @@ public class OpcodeStack implements Constants2 {
     }
 
     private void pushByLocalLoad(String signature, int register) {
-        Item oldItem = new Item(getLVValue(register));
+        Item oldItem = peekLVValue(register);
 
-        Item newItem = oldItem;
-        if ("Ljava/lang/Object;".equals(newItem.signature) && !"Ljava/lang/Object;".equals(signature)) {
-            newItem = new Item(oldItem);
+        boolean retype = "Ljava/lang/Object;".equals(oldItem.signature) && !"Ljava/lang/Object;".equals(signature);
+        if (!retype && oldItem.isImmutable() && oldItem.getRegisterNumber() >= 0) {
+            // the local is unchanged since it was stored: share its item
+            push(oldItem);
+            return;
+        }
+        Item newItem = new Item(oldItem);
+        if (retype) {
             newItem.signature = signature;
         }
         if (newItem.getRegisterNumber() < 0) {
-            if (newItem == oldItem) {
-                newItem = new Item(oldItem);
-            }
             newItem.registerNumber = register;
         }
 
@@ -3554,19 +4149,33 @@ public class OpcodeStack implements Constants2 {
 
     @Nonnull
     public Item getLVValue(int index) {
-        if (index >= lvValues.size()) {
+        restoreModelState();
+        if (index >= lvValues.size() || lvValues.get(index) == null) {
             return new Item();
         }
 
+        return modifiableItem(lvValues, index);
+    }
+
+    /**
+     * Get the value of a local variable, only to look at it: the item may be
+     * shared and must not be modified.
+     */
+    private Item peekLVValue(int index) {
+        if (index >= lvValues.size()) {
+            return NULL_CONSTANT;
+        }
+
         Item item = lvValues.get(index);
         if (item != null) {
             return item;
         }
 
-        return new Item();
+        return NULL_CONSTANT;
     }
 
     public int getNumLocalValues() {
+        restoreModelState();
         return lvValues.size();
     }
 
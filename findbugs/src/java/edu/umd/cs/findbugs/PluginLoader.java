@@ -37,6 +37,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -145,6 +146,12 @@ public class PluginLoader {
     /** plugin Id for parent plugin */
     String parentId;
 
+    /** findbugs.xml, kept from {@link #init()} for {@link #loadPluginComponents()} */
+    private Document parsedPluginDescriptor;
+
+    /** messages*.xml, kept from {@link #init()} for {@link #loadPluginComponents()} */
+    private PluginMessageIndex parsedMessages;
+
     static HashSet<String> loadedPluginIds = new HashSet<String>();
     static {
         if (DEBUG) {
@@ -651,9 +658,13 @@ public class PluginLoader {
         // Plugin descriptor (a.k.a, "findbugs.xml"). Defines
         // the bug detectors and bug patterns that the plugin provides.
         Document pluginDescriptor = getPluginDescriptor();
-        List<Document> messageCollectionList = getMessageDocuments();
+        PluginMessageIndex messages = new PluginMessageIndex(getMessageDocuments());
 
-        Plugin constructedPlugin = constructMinimalPlugin(pluginDescriptor, messageCollectionList);
+        Plugin constructedPlugin = constructMinimalPlugin(pluginDescriptor, messages);
+
+        // Keep the parsed documents until the plugin components are loaded
+        parsedPluginDescriptor = pluginDescriptor;
+        parsedMessages = messages;
 
         // Success!
         if (DEBUG) {
@@ -664,8 +675,14 @@ public class PluginLoader {
 
     private void loadPluginComponents()
             throws PluginException {
-        Document pluginDescriptor = getPluginDescriptor();
-        List<Document> messageCollectionList = getMessageDocuments();
+        Document pluginDescriptor = parsedPluginDescriptor;
+        PluginMessageIndex messages = parsedMessages;
+        parsedPluginDescriptor = null;
+        parsedMessages = null;
+        if (pluginDescriptor == null || messages == null) {
+            pluginDescriptor = getPluginDescriptor();
+            messages = new PluginMessageIndex(getMessageDocuments());
+        }
         List<Node> cloudNodeList = XMLUtil.selectNodes(pluginDescriptor, "/FindbugsPlugin/Cloud");
         for (Node cloudNode : cloudNodeList) {
 
@@ -683,7 +700,7 @@ public class PluginLoader {
             Class<? extends Cloud> cloudClass = getClass(classLoader, cloudClassname, Cloud.class);
 
             Class<? extends NameLookup> usernameClass = getClass(classLoader, usernameClassname, NameLookup.class);
-            Node cloudMessageNode = findMessageNode(messageCollectionList, "/MessageCollection/Cloud[@id='" + cloudId + "']",
+            Element cloudMessageNode = findMessageNode(messages, "Cloud", cloudId,
                     "Missing Cloud description for cloud " + cloudId);
             String description = getChildText(cloudMessageNode, "Description").trim();
             String details = getChildText(cloudMessageNode, "Details").trim();
@@ -732,8 +749,7 @@ public class PluginLoader {
                     String propertiesLocation = componentNode.valueOf("@properties");
                     boolean disabled = Boolean.valueOf(componentNode.valueOf("@disabled"));
 
-                    Node filterMessageNode = findMessageNode(messageCollectionList,
-                            "/MessageCollection/PluginComponent[@id='" + componentId + "']",
+                    Element filterMessageNode = findMessageNode(messages, "PluginComponent", componentId,
                             "Missing Cloud description for PluginComponent " + componentId);
                     String description = getChildText(filterMessageNode, "Description").trim();
                     String details = getChildText(filterMessageNode, "Details").trim();
@@ -780,10 +796,7 @@ public class PluginLoader {
                     }
                     String kind = main.valueOf("@kind");
                     boolean analysis = Boolean.valueOf(main.valueOf("@analysis"));
-                    Element mainMessageNode = (Element) findMessageNode(messageCollectionList,
-                            "/MessageCollection/FindBugsMain[@cmd='" + cmd
-                            // + " and @class='" + className
-                            +"']/Description",
+                    Element mainMessageNode = findMessageNode(messages, "FindBugsMain", cmd, "Description",
                             "Missing FindBugsMain description for cmd " + cmd);
                     String description = mainMessageNode.getTextTrim();
                     try {
@@ -832,10 +845,9 @@ public class PluginLoader {
 
                 // Find Detector node in one of the messages files,
                 // to get the detail HTML.
-                Node node = findMessageNode(messageCollectionList, "/MessageCollection/Detector[@class='" + className
-                        + "']/Details", "Missing Detector description for detector " + className);
+                Element details = findMessageNode(messages, "Detector", className, "Details",
+                        "Missing Detector description for detector " + className);
 
-                Element details = (Element) node;
                 String detailHTML = details.getText();
                 StringBuilder buf = new StringBuilder();
                 buf.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\">\n");
@@ -891,13 +903,13 @@ public class PluginLoader {
         }
 
 
-        for (Document messageCollection : messageCollectionList) {
-            List<Node> categoryNodeList = XMLUtil.selectNodes(messageCollection, "/MessageCollection/BugCategory");
+        for (Document messageCollection : messages.getMessageCollections()) {
+            List<Element> categoryNodeList = XMLUtil.selectNodes(messageCollection, "/MessageCollection/BugCategory");
             if (DEBUG) {
                 System.out.println("found " + categoryNodeList.size() + " categories in " + plugin.getPluginId());
             }
-            for (Node categoryNode : categoryNodeList) {
-                String key = categoryNode.valueOf("@category");
+            for (Element categoryNode : categoryNodeList) {
+                String key = categoryNode.attributeValue("category", "");
                 if ("".equals(key)) {
                     throw new PluginException("BugCategory element with missing category attribute");
                 }
@@ -949,10 +961,9 @@ public class PluginLoader {
             boolean experimental = Boolean.parseBoolean(bugPatternNode.valueOf("@experimental"));
 
             // Find the matching element in messages.xml (or translations)
-            String query = "/MessageCollection/BugPattern[@type='" + type + "']";
-            Node messageNode = findMessageNode(messageCollectionList, query, "messages.xml missing BugPattern element for type "
-                    + type);
-            Node bugsUrlNode = messageNode.getDocument().selectSingleNode("/MessageCollection/Plugin/"+(experimental?"AllBugsUrl":"BugsUrl"));
+            Element messageNode = findMessageNode(messages, "BugPattern", type,
+                    "messages.xml missing BugPattern element for type " + type);
+            Element bugsUrlNode = messages.findPluginElement(messageNode, experimental ? "AllBugsUrl" : "BugsUrl");
 
             String bugsUrl = bugsUrlNode == null ? null : bugsUrlNode.getText();
 
@@ -986,8 +997,16 @@ public class PluginLoader {
         }
 
         // Create BugCodes
+        Map<String, String> bugCodeCweids = new HashMap<String, String>();
+        List<Element> bugCodeDescriptorList = XMLUtil.selectNodes(pluginDescriptor, "/FindbugsPlugin/BugCode");
+        for (Element bugCodeDescriptor : bugCodeDescriptorList) {
+            String abbrev = bugCodeDescriptor.attributeValue("abbrev");
+            if (abbrev != null && !bugCodeCweids.containsKey(abbrev)) {
+                bugCodeCweids.put(abbrev, bugCodeDescriptor.attributeValue("cweid", ""));
+            }
+        }
         Set<String> definedBugCodes = new HashSet<String>();
-        for (Document messageCollection : messageCollectionList) {
+        for (Document messageCollection : messages.getMessageCollections()) {
             List<Node> bugCodeNodeList = XMLUtil.selectNodes(messageCollection, "/MessageCollection/BugCode");
             for (Node bugCodeNode : bugCodeNodeList) {
                 String abbrev = bugCodeNode.valueOf("@abbrev");
@@ -999,12 +1018,11 @@ public class PluginLoader {
                 }
                 String description = bugCodeNode.getText();
 
-                String query = "/FindbugsPlugin/BugCode[@abbrev='" + abbrev + "']";
-                Node fbNode = pluginDescriptor.selectSingleNode(query);
+                String cweString = bugCodeCweids.get(abbrev);
                 int cweid = 0;
-                if (fbNode != null) {
+                if (cweString != null) {
                     try {
-                        cweid = Integer.parseInt(fbNode.valueOf("@cweid"));
+                        cweid = Integer.parseInt(cweString);
                     } catch (RuntimeException e) {
                         assert true; // ignore
                     }
@@ -1056,7 +1074,7 @@ public class PluginLoader {
         }
     }
 
-    private Plugin constructMinimalPlugin(Document pluginDescriptor, List<Document> messageCollectionList)
+    private Plugin constructMinimalPlugin(Document pluginDescriptor, PluginMessageIndex messages)
             throws DuplicatePluginIdError {
         // Get the unique plugin id (or generate one, if none is present)
         // Unique plugin id
@@ -1123,8 +1141,7 @@ public class PluginLoader {
         // Set short description, if specified
         Node pluginShortDesc = null;
         try {
-            pluginShortDesc = findMessageNode(messageCollectionList, XPATH_PLUGIN_SHORT_DESCRIPTION,
-                    "no plugin description");
+            pluginShortDesc = findMessageNode(messages, "Plugin", "", "ShortDescription", "no plugin description");
         } catch (PluginException e) {
             // Missing description is not fatal, so ignore
         }
@@ -1133,8 +1150,7 @@ public class PluginLoader {
         }
         Node detailedDescription = null;
         try {
-            detailedDescription = findMessageNode(messageCollectionList, "/MessageCollection/Plugin/Details",
-                    "no plugin description");
+            detailedDescription = findMessageNode(messages, "Plugin", "", "Details", "no plugin description");
         } catch (PluginException e) {
             // Missing description is not fatal, so ignore
         }
@@ -1319,15 +1335,22 @@ public class PluginLoader {
         }
     }
 
-    private static Node findMessageNode(List<Document> messageCollectionList, String xpath, String missingMsg)
+    private static Element findMessageNode(PluginMessageIndex messages, String name, String key, String missingMsg)
             throws PluginException {
-        for (Document document : messageCollectionList) {
-            Node node = document.selectSingleNode(xpath);
-            if (node != null) {
-                return node;
-            }
+        Element element = messages.find(name, key);
+        if (element == null) {
+            throw new PluginException(missingMsg);
+        }
+        return element;
+    }
+
+    private static Element findMessageNode(PluginMessageIndex messages, String name, String key, String child,
+            String missingMsg) throws PluginException {
+        Element element = messages.find(name, key, child);
+        if (element == null) {
+            throw new PluginException(missingMsg);
         }
-        throw new PluginException(missingMsg);
+        return element;
     }
 
     private static  String findMessageText(List<Document> messageCollectionList, String xpath, String missingMsg) {
@@ -1340,8 +1363,8 @@ public class PluginLoader {
         return missingMsg;
     }
 
-    private static String getChildText(Node node, String childName) throws PluginException {
-        Node child = node.selectSingleNode(childName);
+    private static String getChildText(Element node, String childName) throws PluginException {
+        Element child = node.element(childName);
         if (child == null) {
             throw new PluginException("Could not find child \"" + childName + "\" for node");
         }
@@ -0,0 +1,187 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+
+/**
+ * Index of the elements of the messages*.xml files of a plugin.
+ * <p>
+ * The plugin loader used to find the message element of every bug pattern,
+ * detector, cloud etc. with an XPath query over all message collections,
+ * which made loading a plugin quadratic in the number of messages. The index
+ * is built in one pass over the top level elements of the message collections
+ * and answers the same lookups by name and key attribute, with the message
+ * collections searched in decreasing order of precedence.
+ *
+ * @see PluginLoader
+ */
+final class PluginMessageIndex {
+
+    /** The attribute identifying a message element, by element name */
+    private static final Map<String, String> KEY_ATTRIBUTES = new HashMap<String, String>();
+    static {
+        KEY_ATTRIBUTES.put("Plugin", null);
+        KEY_ATTRIBUTES.put("BugPattern", "type");
+        KEY_ATTRIBUTES.put("Detector", "class");
+        KEY_ATTRIBUTES.put("Cloud", "id");
+        KEY_ATTRIBUTES.put("PluginComponent", "id");
+        KEY_ATTRIBUTES.put("FindBugsMain", "cmd");
+    }
+
+    private final List<Document> messageCollectionList;
+
+    /** Message elements by name and key, in decreasing order of precedence */
+    private final Map<String, List<Element>> elements = new HashMap<String, List<Element>>();
+
+    /**
+     * @param messageCollectionList
+     *            the message collections, in decreasing order of precedence
+     */
+    PluginMessageIndex(List<Document> messageCollectionList) {
+        this.messageCollectionList = messageCollectionList;
+        for (Document messageCollection : messageCollectionList) {
+            Element root = messageCollection.getRootElement();
+            if (root == null || !"MessageCollection".equals(root.getName())) {
+                continue;
+            }
+            for (Object o : root.elements()) {
+                Element element = (Element) o;
+                String name = element.getName();
+                if (!KEY_ATTRIBUTES.containsKey(name)) {
+                    continue;
+                }
+                String keyAttribute = KEY_ATTRIBUTES.get(name);
+                String key = keyAttribute == null ? "" : element.attributeValue(keyAttribute);
+                if (key == null) {
+                    continue;
+                }
+                String indexKey = indexKey(name, key);
+                List<Element> list = elements.get(indexKey);
+                if (list == null) {
+                    list = new ArrayList<Element>(messageCollectionList.size());
+                    elements.put(indexKey, list);
+                }
+                list.add(element);
+            }
+        }
+    }
+
+    private static String indexKey(String name, String key) {
+        return name + '\u0000' + key;
+    }
+
+    /**
+     * @return the message collections, in decreasing order of precedence
+     */
+    List<Document> getMessageCollections() {
+        return messageCollectionList;
+    }
+
+    /**
+     * Find a message element. Equivalent to the first result of the XPath
+     * query /MessageCollection/name[@keyAttribute='key'] over the message
+     * collections.
+     *
+     * @param name
+     *            element name, e.g. "BugPattern"
+     * @param key
+     *            value of the key attribute of the element, e.g. the bug
+     *            pattern type; ignored for the Plugin element
+     * @return the element, or null if there is none
+     */
+    @CheckForNull
+    Element find(String name, String key) {
+        List<Element> list = getElements(name, key);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Find a child of a message element. Equivalent to the first result of
+     * the XPath query /MessageCollection/name[@keyAttribute='key']/child over
+     * the message collections.
+     *
+     * @param name
+     *            element name, e.g. "Detector"
+     * @param key
+     *            value of the key attribute of the element, e.g. the detector
+     *            class name; ignored for the Plugin element
+     * @param child
+     *            name of the child element, e.g. "Details"
+     * @return the child element, or null if there is none
+     */
+    @CheckForNull
+    Element find(String name, String key, String child) {
+        for (Element element : getElements(name, key)) {
+            Element result = element.element(child);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the child of the Plugin element in the message collection
+     * containing the given message element.
+     *
+     * @param messageElement
+     *            a message element
+     * @param child
+     *            name of the child element, e.g. "BugsUrl"
+     * @return the child element, or null if there is none
+     */
+    @CheckForNull
+    Element findPluginElement(Element messageElement, String child) {
+        Document document = messageElement.getDocument();
+        for (Element plugin : getElements("Plugin", "")) {
+            if (plugin.getDocument() == document) {
+                Element result = plugin.element(child);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<Element> getElements(String name, String key) {
+        if (!KEY_ATTRIBUTES.containsKey(name)) {
+            throw new IllegalArgumentException("Message elements named " + name + " are not indexed");
+        }
+        if (KEY_ATTRIBUTES.get(name) == null) {
+            key = "";
+        }
+        List<Element> list = elements.get(indexKey(name, key));
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+}
@@ -53,6 +53,8 @@ import javax.xml.transform.stream.StreamSource;
 
 import edu.umd.cs.findbugs.PackageStats.ClassStats;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
+import edu.umd.cs.findbugs.log.BudgetStatistics;
+import edu.umd.cs.findbugs.log.CacheStatistics;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.workflow.FileBugHash;
 import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
@@ -94,6 +96,10 @@ public class ProjectStats implements XMLWriteable, Cloneable {
 
     private final Profiler profiler;
 
+    private final CacheStatistics cacheStatistics;
+
+    private final BudgetStatistics budgetStatistics;
+
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
@@ -115,6 +121,8 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         this.analysisTimestamp = new Date();
         this.baseFootprint = new Footprint();
         this.profiler = new Profiler();
+        this.cacheStatistics = new CacheStatistics();
+        this.budgetStatistics = new BudgetStatistics();
     }
 
     public boolean hasClassStats() {
@@ -458,6 +466,8 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         }
 
         getProfiler().writeXML(xmlOutput);
+        getCacheStatistics().writeXML(xmlOutput);
+        getBudgetStatistics().writeXML(xmlOutput);
         xmlOutput.closeTag("FindBugsSummary");
     }
 
@@ -610,6 +620,21 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         return profiler;
     }
 
+    /**
+     * @return Returns the analysis cache statistics of the project, never null
+     */
+    public CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    /**
+     * @return Returns the analysis time budgets of the project and the work
+     *         abandoned because it exceeded them, never null
+     */
+    public BudgetStatistics getBudgetStatistics() {
+        return budgetStatistics;
+    }
+
     public void setTotalClasses(int totalClasses) {
         this.totalClasses = totalClasses;
     }
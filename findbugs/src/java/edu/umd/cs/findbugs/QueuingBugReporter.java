@@ -0,0 +1,222 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.Nonnull;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * A BugReporter which funnels the results of several analysis threads into a
+ * single, non-thread-safe BugReporter. Calls made on the thread which created
+ * the reporter are passed on directly; calls from other threads are queued
+ * and passed on by the next call to {@link #drain()} (or any other call) on
+ * the owning thread.
+ * <p>
+ * Queuing rather than locking means that a worker thread never holds a lock
+ * of the reporter while the delegate runs, so the delegate is free to call
+ * back into locked analysis state (such as the class hierarchy).
+ */
+public class QueuingBugReporter extends DelegatingBugReporter {
+
+    private final Thread owner;
+
+    private final ConcurrentLinkedQueue<Runnable> queue;
+
+    public QueuingBugReporter(BugReporter delegate) {
+        this(delegate, Thread.currentThread(), new ConcurrentLinkedQueue<Runnable>());
+    }
+
+    private QueuingBugReporter(BugReporter delegate, Thread owner, ConcurrentLinkedQueue<Runnable> queue) {
+        super(delegate);
+        this.owner = owner;
+        this.queue = queue;
+    }
+
+    /**
+     * Get a reporter passing calls on to another delegate through the queue
+     * of this reporter, so that the calls made to both reporters are passed
+     * on in the order they were made, by a single drain.
+     *
+     * @param delegate
+     *            the other delegate
+     * @return reporter passing calls on to the other delegate
+     */
+    public QueuingBugReporter withDelegate(BugReporter delegate) {
+        return new QueuingBugReporter(delegate, owner, queue);
+    }
+
+    /**
+     * Pass on the calls queued by other threads. Does nothing unless called
+     * on the thread which created this reporter.
+     */
+    public void drain() {
+        if (Thread.currentThread() != owner) {
+            return;
+        }
+        Runnable r;
+        while ((r = queue.poll()) != null) {
+            r.run();
+        }
+    }
+
+    /**
+     * @return true if the call should be passed on immediately, false if
+     *         it must be queued
+     */
+    private boolean onOwner() {
+        if (Thread.currentThread() != owner) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    @Override
+    public void setErrorVerbosity(int level) {
+        drain();
+        super.setErrorVerbosity(level);
+    }
+
+    @Override
+    public void setPriorityThreshold(int threshold) {
+        drain();
+        super.setPriorityThreshold(threshold);
+    }
+
+    @Override
+    public void observeClass(final ClassDescriptor classDescriptor) {
+        if (onOwner()) {
+            super.observeClass(classDescriptor);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.observeClass(classDescriptor);
+            }
+        });
+    }
+
+    @Override
+    public void reportBug(@Nonnull final BugInstance bugInstance) {
+        if (onOwner()) {
+            super.reportBug(bugInstance);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.reportBug(bugInstance);
+            }
+        });
+    }
+
+    @Override
+    public void logError(final String message) {
+        if (onOwner()) {
+            super.logError(message);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.logError(message);
+            }
+        });
+    }
+
+    @Override
+    public void logError(final String message, final Throwable e) {
+        if (onOwner()) {
+            super.logError(message, e);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.logError(message, e);
+            }
+        });
+    }
+
+    @Override
+    public void reportMissingClass(final ClassNotFoundException ex) {
+        if (onOwner()) {
+            super.reportMissingClass(ex);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.reportMissingClass(ex);
+            }
+        });
+    }
+
+    @Override
+    public void reportMissingClass(final ClassDescriptor classDescriptor) {
+        if (onOwner()) {
+            super.reportMissingClass(classDescriptor);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.reportMissingClass(classDescriptor);
+            }
+        });
+    }
+
+    @Override
+    public void reportSkippedAnalysis(final MethodDescriptor method) {
+        if (onOwner()) {
+            super.reportSkippedAnalysis(method);
+            return;
+        }
+        queue.add(new Runnable() {
+            @Override
+            public void run() {
+                QueuingBugReporter.super.reportSkippedAnalysis(method);
+            }
+        });
+    }
+
+    @Override
+    public void finish() {
+        drain();
+        super.finish();
+    }
+
+    @Override
+    public void reportQueuedErrors() {
+        drain();
+        super.reportQueuedErrors();
+    }
+
+    @Override
+    public void addObserver(BugReporterObserver observer) {
+        drain();
+        super.addObserver(observer);
+    }
+}
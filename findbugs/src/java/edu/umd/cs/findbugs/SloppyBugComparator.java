@@ -43,6 +43,10 @@ public class SloppyBugComparator implements WarningComparator {
         this.classNameRewriter = classNameRewriter;
     }
 
+    public ClassNameRewriter getClassNameRewriter() {
+        return classNameRewriter;
+    }
+
     private int compareNullElements(Object lhs, Object rhs) {
         if (lhs == null && rhs == null) {
             return 0;
@@ -20,8 +20,10 @@
 package edu.umd.cs.findbugs;
 
 import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -379,7 +381,17 @@ public class SortedBugCollection implements BugCollection {
 
     private void doReadXML(@WillClose InputStream in, @CheckForNull File base) throws IOException, DocumentException {
         try {
-            checkInputStream(in);
+            boolean checkable = in.markSupported();
+            if (!checkable) {
+                in = new BufferedInputStream(in);
+            }
+            if (BinaryBugCollectionFormat.isBinary(in)) {
+                doReadBinary(in, base);
+                return;
+            }
+            if (checkable) {
+                checkInputStream(in);
+            }
             Reader reader = Util.getReader(in);
             doReadXML(reader, base);
         } catch (RuntimeException e) {
@@ -391,6 +403,27 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
+    /**
+     * Read a collection in the binary format: the BugInstances, then the rest
+     * of the collection from its XML form.
+     */
+    private void doReadBinary(@WillClose InputStream in, @CheckForNull File base) throws IOException, DocumentException {
+        long started = System.currentTimeMillis();
+        byte[] metadata;
+        try {
+            BinaryBugCollectionFormat.Reader reader = new BinaryBugCollectionFormat.Reader(in);
+            BugInstance bugInstance;
+            while ((bugInstance = reader.readBugInstance()) != null) {
+                add(bugInstance, false);
+            }
+            metadata = reader.readMetadata();
+        } finally {
+            in.close();
+        }
+        doReadXML(Util.getReader(new ByteArrayInputStream(metadata)), base);
+        timeStartedLoading = started;
+    }
+
     private void doReadXML(@WillClose Reader reader, @CheckForNull File base) throws IOException, DocumentException {
         timeStartedLoading = System.currentTimeMillis();
 
@@ -439,22 +472,20 @@ public class SortedBugCollection implements BugCollection {
     }
 
     /**
-     * Write this BugCollection to a file as XML.
+     * Write this BugCollection to a file as XML, or in the binary format if
+     * the file name has the extension .fbb or .fbb.gz.
      *
      * @param fileName
      *            the file to write to
      */
     @Override
     public void writeXML(String fileName) throws IOException {
-        OutputStream out = new FileOutputStream(fileName);
-        if (fileName.endsWith(".gz")) {
-            out = new GZIPOutputStream(out);
-        }
-        writeXML(out);
+        writeXML(new File(fileName));
     }
 
     /**
-     * Write this BugCollection to a file as XML.
+     * Write this BugCollection to a file as XML, or in the binary format if
+     * the file name has the extension .fbb or .fbb.gz.
      *
      * @param file
      *            the file to write to
@@ -464,7 +495,58 @@ public class SortedBugCollection implements BugCollection {
         if (file.getName().endsWith(".gz")) {
             out = new GZIPOutputStream(out);
         }
-        writeXML(out);
+        if (BinaryBugCollectionFormat.isBinaryFileName(file)) {
+            writeBinary(out);
+        } else {
+            writeXML(out);
+        }
+    }
+
+    /**
+     * Write the BugCollection to given output stream in the binary format,
+     * which all the readXML methods taking an InputStream or a File accept
+     * as well as XML. The output stream will be closed, even if an exception
+     * is thrown.
+     *
+     * @param out
+     *            the OutputStream to write to
+     */
+    public void writeBinary(@WillClose OutputStream out) throws IOException {
+        bugsPopulated();
+        BinaryBugCollectionFormat.Writer writer = new BinaryBugCollectionFormat.Writer(out, this);
+        try {
+            for (BugInstance bugInstance : getCollection()) {
+                writer.writeBugInstance(bugInstance);
+            }
+            writer.finish(getMetadataXML());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Get the XML form of this BugCollection without the BugInstances and
+     * the information derived from them.
+     */
+    private byte[] getMetadataXML() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLOutput xmlOutput = new OutputStreamXMLOutput(bytes);
+        boolean savedWithMessages = withMessages;
+        boolean savedMinimalXML = minimalXML;
+        withMessages = false;
+        minimalXML = false;
+        try {
+            writePrologue(xmlOutput);
+            if (earlyStats) {
+                getProjectStats().writeXML(xmlOutput, false);
+            }
+            writeEpilogue(xmlOutput);
+        } finally {
+            withMessages = savedWithMessages;
+            minimalXML = savedMinimalXML;
+            xmlOutput.finish();
+        }
+        return bytes.toByteArray();
     }
 
     /**
@@ -0,0 +1,441 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.util.Util;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * A SortedBugCollection which holds a bounded number of BugInstances in
+ * memory. Once the limit is reached, the BugInstances in memory are written,
+ * in sorted order, to a temporary file (a "run"), and forgotten. Iterating
+ * over the collection merges the runs and the BugInstances still in memory,
+ * so that the collection, and its XML output, look exactly like those of a
+ * SortedBugCollection holding all the BugInstances.
+ * <p>
+ * Only iteration and writing the collection are supported once a run has
+ * been spilled: methods looking up or removing individual BugInstances only
+ * see those still in memory. Call {@link #dispose()} to delete the temporary
+ * files when the collection is no longer needed.
+ */
+public class SpillingBugCollection extends SortedBugCollection {
+
+    /**
+     * Reset the object streams of runs this often, so that they don't keep
+     * the BugInstances already written (or read) reachable.
+     */
+    private static final int RESET_INTERVAL = 128;
+
+    private final Comparator<BugInstance> comparator;
+
+    private final int maxBugsInMemory;
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private final List<Closeable> openRuns = new ArrayList<Closeable>();
+
+    private int bugsInMemory;
+
+    /** Set if spilling failed: all further BugInstances are kept in memory */
+    private boolean spillFailed;
+
+    /** Number of distinct BugInstances, or -1 if not known */
+    private int size = -1;
+
+    /**
+     * Number of BugInstances with each instance hash, or null if bug hashes
+     * need to be computed
+     */
+    private @CheckForNull Map<String, Integer> instanceHashCounts;
+
+    /**
+     * Constructor.
+     *
+     * @param projectStats
+     *            the ProjectStats
+     * @param project
+     *            the Project
+     * @param maxBugsInMemory
+     *            maximum number of BugInstances to hold in memory
+     */
+    public SpillingBugCollection(ProjectStats projectStats, Project project, int maxBugsInMemory) {
+        this(projectStats, MultiversionBugInstanceComparator.instance, project, maxBugsInMemory);
+    }
+
+    public SpillingBugCollection(ProjectStats projectStats, Comparator<BugInstance> comparator, Project project,
+            int maxBugsInMemory) {
+        super(projectStats, comparator, project);
+        if (maxBugsInMemory <= 0) {
+            throw new IllegalArgumentException("maxBugsInMemory must be positive: " + maxBugsInMemory);
+        }
+        this.comparator = comparator;
+        this.maxBugsInMemory = maxBugsInMemory;
+    }
+
+    /**
+     * Add a BugInstance. Since BugInstances already spilled to disk are not
+     * consulted, this may return true for a duplicate of a BugInstance added
+     * earlier; the duplicate is dropped when the runs are merged.
+     */
+    @Override
+    public boolean add(BugInstance bugInstance, boolean updateActiveTime) {
+        if (!super.add(bugInstance, updateActiveTime)) {
+            return false;
+        }
+        size = -1;
+        instanceHashCounts = null;
+        if (++bugsInMemory >= maxBugsInMemory && !spillFailed) {
+            spill();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of runs spilled to disk
+     */
+    public int getNumRuns() {
+        return runs.size();
+    }
+
+    private void spill() {
+        File file = null;
+        ObjectOutputStream out = null;
+        try {
+            file = File.createTempFile("findbugs-bugs", ".run");
+            file.deleteOnExit();
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(bugsInMemory);
+            int count = 0;
+            for (Iterator<BugInstance> i = super.iterator(); i.hasNext();) {
+                out.writeObject(i.next());
+                if (++count % RESET_INTERVAL == 0) {
+                    out.reset();
+                }
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            AnalysisContext.logError("Could not write warnings to " + file + ", keeping them in memory", e);
+            Util.closeSilently(out);
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+            spillFailed = true;
+            return;
+        }
+        runs.add(file);
+        super.clearBugInstances();
+        bugsInMemory = 0;
+    }
+
+    @Override
+    public Iterator<BugInstance> iterator() {
+        if (runs.isEmpty()) {
+            return super.iterator();
+        }
+        return new MergingIterator();
+    }
+
+    @Override
+    public Collection<BugInstance> getCollection() {
+        if (runs.isEmpty()) {
+            return super.getCollection();
+        }
+        return new AbstractCollection<BugInstance>() {
+            @Override
+            public Iterator<BugInstance> iterator() {
+                return SpillingBugCollection.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                if (size < 0) {
+                    int count = 0;
+                    for (Iterator<BugInstance> i = iterator(); i.hasNext(); i.next()) {
+                        count++;
+                    }
+                    size = count;
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Compute the instance occurrence numbers of the BugInstances. Since
+     * BugInstances read back from disk are fresh objects, only the number of
+     * BugInstances with each instance hash is kept, and the occurrence
+     * numbers are assigned whenever the collection is iterated.
+     */
+    @Override
+    public void computeBugHashes() {
+        if (runs.isEmpty()) {
+            super.computeBugHashes();
+            return;
+        }
+        if (instanceHashCounts != null) {
+            return;
+        }
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Iterator<BugInstance> i = new MergingIterator(); i.hasNext();) {
+            String hash = i.next().getInstanceHash();
+            Integer count = counts.get(hash);
+            counts.put(hash, count == null ? 1 : count + 1);
+        }
+        instanceHashCounts = counts;
+    }
+
+    @Override
+    public void writeXML(XMLOutput xmlOutput) throws IOException {
+        try {
+            super.writeXML(xmlOutput);
+        } catch (RunReadException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void clearBugInstances() {
+        super.clearBugInstances();
+        deleteRuns();
+        bugsInMemory = 0;
+        size = -1;
+        instanceHashCounts = null;
+    }
+
+    /**
+     * Delete the runs spilled to disk. The collection only contains the
+     * BugInstances still in memory afterwards.
+     */
+    public void dispose() {
+        deleteRuns();
+        size = -1;
+        instanceHashCounts = null;
+    }
+
+    private void deleteRuns() {
+        for (Closeable in : openRuns) {
+            Util.closeSilently(in);
+        }
+        openRuns.clear();
+        for (File file : runs) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Unchecked wrapper for errors reading runs while iterating; writeXML
+     * rethrows the cause.
+     */
+    private static class RunReadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RunReadException(String message, IOException cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Iterates over a run spilled to disk.
+     */
+    private class RunIterator implements Iterator<BugInstance> {
+        private final File file;
+
+        private ObjectInputStream in;
+
+        private int remaining;
+
+        private int count;
+
+        RunIterator(File file) throws IOException {
+            this.file = file;
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            openRuns.add(in);
+            remaining = in.readInt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public BugInstance next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                BugInstance result = (BugInstance) in.readObject();
+                if (--remaining == 0) {
+                    close();
+                }
+                return result;
+            } catch (IOException e) {
+                close();
+                throw new RunReadException("Could not read warnings from " + file, e);
+            } catch (ClassNotFoundException e) {
+                close();
+                IOException ioe = new IOException("Could not read warnings from " + file);
+                ioe.initCause(e);
+                throw new RunReadException(ioe.getMessage(), ioe);
+            }
+        }
+
+        private void close() {
+            remaining = 0;
+            openRuns.remove(in);
+            Util.closeSilently(in);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The head of a run being merged.
+     */
+    private static class RunHead {
+        final Iterator<BugInstance> run;
+
+        final int index;
+
+        BugInstance head;
+
+        RunHead(Iterator<BugInstance> run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Merges the runs and the BugInstances in memory. BugInstances comparing
+     * equal are dropped, keeping the one added first, as a TreeSet would.
+     */
+    private class MergingIterator implements Iterator<BugInstance> {
+        private final PriorityQueue<RunHead> queue;
+
+        private final @CheckForNull Map<String, Integer> occurrenceMax;
+
+        private final Map<String, Integer> seen = new HashMap<String, Integer>();
+
+        private @CheckForNull BugInstance last;
+
+        MergingIterator() {
+            queue = new PriorityQueue<RunHead>(runs.size() + 1, new Comparator<RunHead>() {
+                @Override
+                public int compare(RunHead a, RunHead b) {
+                    int cmp = comparator.compare(a.head, b.head);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                    return a.index - b.index;
+                }
+            });
+            occurrenceMax = instanceHashCounts;
+            int index = 0;
+            for (File file : runs) {
+                try {
+                    advance(new RunHead(new RunIterator(file), index++));
+                } catch (IOException e) {
+                    throw new RunReadException("Could not read warnings from " + file, e);
+                }
+            }
+            advance(new RunHead(SpillingBugCollection.super.iterator(), index));
+        }
+
+        private void advance(RunHead runHead) {
+            if (runHead.run.hasNext()) {
+                runHead.head = runHead.run.next();
+                queue.add(runHead);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!queue.isEmpty()) {
+                RunHead first = queue.peek();
+                if (last == null || comparator.compare(last, first.head) != 0) {
+                    return true;
+                }
+                queue.poll();
+                advance(first);
+            }
+            return false;
+        }
+
+        @Override
+        public BugInstance next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RunHead first = queue.poll();
+            BugInstance result = first.head;
+            advance(first);
+            last = result;
+            if (occurrenceMax != null) {
+                String hash = result.getInstanceHash();
+                Integer count = seen.get(hash);
+                int num = count == null ? 0 : count + 1;
+                seen.put(hash, num);
+                result.setInstanceOccurrenceNum(num);
+                result.setInstanceOccurrenceMax(occurrenceMax.get(hash) - 1);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
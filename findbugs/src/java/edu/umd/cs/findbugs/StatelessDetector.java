@@ -27,6 +27,11 @@ package edu.umd.cs.findbugs;
  * If a detector implements this interface, a clone will be generated for each
  * element it is applied to.
  *
+ * When analyzing with several threads, each thread applies its own instance of
+ * a stateless detector to a share of the classes. Detectors collecting
+ * information across classes (e.g., to report it in report() or finishPass())
+ * must not implement this interface.
+ *
  * The idea of using this interface is questionable. Better for people writing
  * stateless detectors to just not keep around state they don't need, rather
  * than depending on cloning and garbage collection.
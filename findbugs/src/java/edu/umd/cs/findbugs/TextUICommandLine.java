@@ -30,6 +30,7 @@ import java.io.PrintStream;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -96,6 +97,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private boolean xmlWithAbridgedMessages = false;
 
+    private int xmlMaxBugsInMemory = 0;
+
     private String stylesheet = null;
 
     private boolean quiet = false;
@@ -110,6 +113,18 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private boolean noClassOk = false;
 
+    private boolean analyzeHugeClasses = false;
+
+    private int threads = 1;
+
+    private long cacheBudget;
+
+    private long methodTimeBudget;
+
+    private long detectorTimeBudget;
+
+    private String resultCacheDirectory;
+
     private int priorityThreshold = Detector.NORMAL_PRIORITY;
 
     private int rankThreshold = SystemProperties.getInt("findbugs.maxRank", BugRanker.VISIBLE_RANK_MAX);
@@ -169,6 +184,7 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         addSwitch("-sortByClass", "sort warnings by class");
         addSwitchWithOptionalExtraPart("-xml", "withMessages", "XML output (optionally with messages)");
+        addOption("-xmlMaxBugsInMemory", "count", "write warnings held by the XML output to temporary files once there are this many");
         addSwitch("-xdocs", "xdoc XML output to use with Apache Maven");
         addSwitchWithOptionalExtraPart("-html", "stylesheet", "Generate HTML output (default stylesheet is default.xsl)");
         addSwitch("-emacs", "Use emacs reporting format");
@@ -185,6 +201,11 @@ public class TextUICommandLine extends FindBugsCommandLine {
         addOption("-output", "filename", "Save output in named file");
         makeOptionUnlisted("-outputFile");
         addSwitchWithOptionalExtraPart("-nested", "true|false", "analyze nested jar/zip archives (default=true)");
+        addOption("-threads", "count", "number of threads used to apply stateless detectors (default=1)");
+        addOption("-cacheBudget", "size", "memory budget for cached analysis results, e.g. 512m or 2g");
+        addOption("-methodTimeBudget", "time", "give up analyzing a method after given time, e.g. 30s or 2m");
+        addOption("-detectorTimeBudget", "time", "give up applying a detector to a class after given time, e.g. 5m");
+        addOption("-resultCache", "directory", "keep warnings between runs, reanalyzing only changed classes");
 
         startOptionGroup("Output filtering options:");
         addOption("-bugCategories", "cat1[,cat2...]", "only report bugs in given categories");
@@ -209,6 +230,7 @@ public class TextUICommandLine extends FindBugsCommandLine {
         addOption("-sourcepath", "source path", "set source path for analyzed classes");
         addSwitch("-exitcode", "set exit code of process");
         addSwitch("-noClassOk", "output empty warning file if no classes are specified");
+        addSwitch("-analyzeHugeClasses", "analyze classes too big to be analyzed as a whole method by method");
         addSwitch("-xargs", "get list of classfiles/jarfiles from standard input rather than command line");
         addOption("-analyzeFromFile", "filepath", "get the list of class/jar files from a designated file");
         addOption("-cloud", "id", "set cloud id");
@@ -361,6 +383,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
             }
         } else if ("-noClassOk".equals(option)) {
             noClassOk = true;
+        } else if ("-analyzeHugeClasses".equals(option)) {
+            analyzeHugeClasses = true;
         } else if ("-xargs".equals(option)) {
             xargs = true;
         } else if ("-justListOptions".equals(option)) {
@@ -432,6 +456,24 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         } else if ("-maxRank".equals(option)) {
             this.rankThreshold = Integer.parseInt(argument);
+        } else if ("-threads".equals(option)) {
+            this.threads = Integer.parseInt(argument);
+            if (threads < 1) {
+                throw new IllegalArgumentException("Number of threads must be at least 1: " + argument);
+            }
+        } else if ("-xmlMaxBugsInMemory".equals(option)) {
+            this.xmlMaxBugsInMemory = Integer.parseInt(argument);
+            if (xmlMaxBugsInMemory < 1) {
+                throw new IllegalArgumentException("Maximum number of warnings in memory must be at least 1: " + argument);
+            }
+        } else if ("-cacheBudget".equals(option)) {
+            this.cacheBudget = parseSize(argument);
+        } else if ("-methodTimeBudget".equals(option)) {
+            this.methodTimeBudget = parseDuration(argument);
+        } else if ("-detectorTimeBudget".equals(option)) {
+            this.detectorTimeBudget = parseDuration(argument);
+        } else if ("-resultCache".equals(option)) {
+            this.resultCacheDirectory = argument;
         } else if ("-projectName".equals(option)) {
             this.projectName = argument;
         } else if ("-release".equals(option)) {
@@ -636,7 +678,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
             textuiBugReporter = new SortingBugReporter();
             break;
         case XML_REPORTER: {
-            XMLBugReporter xmlBugReporter = new XMLBugReporter(project);
+            XMLBugReporter xmlBugReporter = xmlMaxBugsInMemory > 0 ? new XMLBugReporter(project, xmlMaxBugsInMemory)
+                    : new XMLBugReporter(project);
             xmlBugReporter.setAddMessages(xmlWithMessages);
             xmlBugReporter.setMinimalXML(xmlMinimal);
 
@@ -707,6 +750,11 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         findBugs.setScanNestedArchives(scanNestedArchives);
         findBugs.setNoClassOk(noClassOk);
+        findBugs.setAnalyzeHugeClasses(analyzeHugeClasses);
+        findBugs.setThreads(threads);
+        findBugs.setCacheBudget(cacheBudget);
+        findBugs.setTimeBudgets(methodTimeBudget, detectorTimeBudget);
+        findBugs.setResultCacheDirectory(resultCacheDirectory);
 
         findBugs.setBugReporterDecorators(enabledBugReporterDecorators, disabledBugReporterDecorators);
         if (applySuppression) {
@@ -760,6 +808,72 @@ public class TextUICommandLine extends FindBugsCommandLine {
         }
     }
 
+    /**
+     * Parse a size in bytes, optionally followed by k, m or g.
+     *
+     * @param argument
+     *            the size, e.g. "512m"
+     * @return the size in bytes
+     */
+    static long parseSize(String argument) {
+        String value = argument.trim().toLowerCase(Locale.ENGLISH);
+        long multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024L;
+        } else if (value.endsWith("m")) {
+            multiplier = 1024L * 1024;
+        } else if (value.endsWith("g")) {
+            multiplier = 1024L * 1024 * 1024;
+        }
+        if (multiplier != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        long size;
+        try {
+            size = Long.parseLong(value) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + argument);
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + argument);
+        }
+        return size;
+    }
+
+    /**
+     * Parse a duration in seconds, or in milliseconds, seconds or minutes if
+     * followed by ms, s or m.
+     *
+     * @param argument
+     *            the duration, e.g. "30s"
+     * @return the duration in milliseconds
+     */
+    static long parseDuration(String argument) {
+        String value = argument.trim().toLowerCase(Locale.ENGLISH);
+        long multiplier = 1000L;
+        int suffixLength = 0;
+        if (value.endsWith("ms")) {
+            multiplier = 1L;
+            suffixLength = 2;
+        } else if (value.endsWith("s")) {
+            suffixLength = 1;
+        } else if (value.endsWith("m")) {
+            multiplier = 60 * 1000L;
+            suffixLength = 1;
+        }
+        value = value.substring(0, value.length() - suffixLength);
+        long duration;
+        try {
+            duration = Long.parseLong(value) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + argument);
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + argument);
+        }
+        return duration;
+    }
+
     /**
      * Handle -analyzeFromFile command line option by reading jar file names
      * from a file and adding them to the project.
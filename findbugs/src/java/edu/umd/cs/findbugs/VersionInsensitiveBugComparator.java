@@ -46,6 +46,10 @@ public class VersionInsensitiveBugComparator implements WarningComparator {
         this.classNameRewriter = classNameRewriter;
     }
 
+    public ClassNameRewriter getClassNameRewriter() {
+        return classNameRewriter;
+    }
+
     public void setComparePriorities(boolean b) {
         comparePriorities = b;
     }
@@ -0,0 +1,135 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+
+/**
+ * Fetches the XClass of a batch of classes, using several threads. Callers
+ * get the results in the order of the batch, so that whatever they do with
+ * them does not depend on the order in which the threads finished.
+ * <p>
+ * Must be used on the analysis thread: the fetching threads inherit its
+ * analysis cache, AnalysisContext and DescriptorFactory.
+ */
+class XClassFetcher {
+
+    /**
+     * Batches smaller than this are fetched on the calling thread
+     */
+    private static final int MIN_PARALLEL_BATCH = 64;
+
+    private final int numThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param numThreads
+     *            maximum number of threads to use
+     */
+    XClassFetcher(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Fetch the XClass of each class in a batch.
+     *
+     * @param batch
+     *            the classes
+     * @return for each class in the batch, at the same index, either its
+     *         XClass or the CheckedAnalysisException or RuntimeException
+     *         thrown while fetching it
+     * @throws InterruptedException
+     *             if the calling thread is interrupted
+     */
+    Object[] fetch(final List<ClassDescriptor> batch) throws InterruptedException {
+        final Object[] results = new Object[batch.size()];
+        int threads = Math.min(numThreads, batch.size() / (MIN_PARALLEL_BATCH / 2));
+        if (threads <= 1 || batch.size() < MIN_PARALLEL_BATCH) {
+            for (int i = 0; i < results.length; i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                results[i] = fetch(batch.get(i));
+            }
+            return results;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final Throwable[] failure = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement()) < results.length) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return;
+                            }
+                            results[i] = fetch(batch.get(i));
+                        }
+                    } catch (Error e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                        next.set(results.length);
+                    }
+                }
+            }, "FindBugs class scanner " + t);
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+        try {
+            for (Thread t : workers) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            next.set(results.length);
+            for (Thread t : workers) {
+                t.interrupt();
+            }
+            throw e;
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw (Error) failure[0];
+            }
+        }
+        return results;
+    }
+
+    private static Object fetch(ClassDescriptor classDescriptor) {
+        try {
+            return Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+        } catch (CheckedAnalysisException e) {
+            return e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -32,6 +32,20 @@ public class XMLBugReporter extends BugCollectionBugReporter {
         super(project);
     }
 
+    /**
+     * Constructor for a reporter which keeps at most the given number of
+     * warnings in memory, writing the rest to temporary files which are
+     * merged when the XML is written.
+     *
+     * @param project
+     *            the Project
+     * @param maxBugsInMemory
+     *            maximum number of warnings to keep in memory
+     */
+    public XMLBugReporter(Project project, int maxBugsInMemory) {
+        super(project, maxBugsInMemory);
+    }
+
     public void setAddMessages(boolean enable) {
         getBugCollection().setWithMessages(enable);
     }
@@ -49,6 +63,10 @@ public class XMLBugReporter extends BugCollectionBugReporter {
 
         } catch (IOException e) {
             throw new FatalException("Error writing XML output: " + e.getMessage(), e);
+        } finally {
+            if (getBugCollection() instanceof SpillingBugCollection) {
+                ((SpillingBugCollection) getBugCollection()).dispose();
+            }
         }
     }
 
@@ -40,6 +40,33 @@ import edu.umd.cs.findbugs.annotations.CheckReturnValue;
 public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDataflowAnalysis<Fact> {
     private static final boolean DEBUG = SystemProperties.getBoolean("dataflow.transfer");
 
+    /**
+     * Maximum number of locations in a method for which the facts at all
+     * locations are cached
+     */
+    private static final int MAX_CACHED_LOCATIONS = SystemProperties.getInt("dataflow.maxcachedlocations", 4000);
+
+    private volatile CompactLocationNumbering locationNumbering;
+
+    /**
+     * Facts at (just before) each location, indexed by location number;
+     * null until computed, NOT_RECORDED if transfer() does not record them
+     */
+    private volatile Object[] factAtLocationCache;
+
+    private static final Object[] NOT_RECORDED = new Object[0];
+
+    /**
+     * Facts being recorded by transfer(), indexed by number in
+     * recordingNumbering, or null if not recording. Only set by
+     * fillFactAtLocationCache(), and guarded by this object's lock: the
+     * solver runs before the analysis is shared, and later calls of
+     * transfer() hold the lock.
+     */
+    private Object[] recordedFacts;
+
+    private CompactLocationNumbering recordingNumbering;
+
     /*
      * ----------------------------------------------------------------------
      * Public methods
@@ -67,6 +94,27 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
     @CheckReturnValue
     public abstract boolean isFactValid(Fact fact);
 
+    /**
+     * Cache the facts at all locations, so that getFactAtLocation() and
+     * getFactAfterLocation() do not need to replay the transfer function from
+     * the start of the block. The facts are computed in a single pass over
+     * the CFG when first requested, so this must only be called once the
+     * dataflow analysis has converged. Methods with more than
+     * dataflow.maxcachedlocations locations are not cached.
+     * <p>
+     * Only analyses whose transfer function has no side effects which later
+     * queries depend on should enable the cache, since blocks are no longer
+     * transferred once per query.
+     *
+     * @param locationNumbering
+     *            numbering of the locations in the CFG analyzed
+     */
+    public void enableFactAtLocationCache(CompactLocationNumbering locationNumbering) {
+        if (locationNumbering.getSize() <= MAX_CACHED_LOCATIONS) {
+            this.locationNumbering = locationNumbering;
+        }
+    }
+
     /**
      * Get the dataflow fact representing the point just before given Location.
      * Note "before" is meant in the logical sense, so for backward analyses,
@@ -78,10 +126,28 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
      */
     @Override
     public Fact getFactAtLocation(Location location) throws DataflowAnalysisException {
+        CompactLocationNumbering numbering = locationNumbering;
+        if (numbering != null) {
+            Object[] cache = factAtLocationCache;
+            if (cache == null) {
+                cache = fillFactAtLocationCache(numbering);
+            }
+            if (cache != NOT_RECORDED) {
+                @SuppressWarnings("unchecked")
+                Fact cached = (Fact) cache[numbering.getNumber(location)];
+                Fact fact = createFact();
+                copy(cached, fact);
+                return fact;
+            }
+        }
         Fact start = getStartFact(location.getBasicBlock());
         Fact result = createFact();
         makeFactTop(result);
-        transfer(location.getBasicBlock(), location.getHandle(), start, result);
+        // Analyses are cached and may be queried by several analysis threads,
+        // and transfer() may use state of the analysis
+        synchronized (this) {
+            transfer(location.getBasicBlock(), location.getHandle(), start, result);
+        }
         return result;
     }
 
@@ -106,6 +172,50 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
         }
     }
 
+    /**
+     * Compute the facts at all locations by transferring each block once,
+     * recording the fact before each instruction.
+     *
+     * @param numbering
+     *            numbering of the locations
+     * @return the facts indexed by location number, or NOT_RECORDED if they
+     *         could not be recorded
+     */
+    private synchronized Object[] fillFactAtLocationCache(CompactLocationNumbering numbering)
+            throws DataflowAnalysisException {
+        if (factAtLocationCache != null) {
+            return factAtLocationCache;
+        }
+        Object[] facts = new Object[numbering.getSize()];
+        recordedFacts = facts;
+        recordingNumbering = numbering;
+        try {
+            for (int i = 0; i < facts.length; i++) {
+                if (facts[i] == null) {
+                    BasicBlock basicBlock = numbering.getLocation(i).getBasicBlock();
+                    Fact result = createFact();
+                    transfer(basicBlock, null, getStartFact(basicBlock), result);
+                    if (facts[i] == null) {
+                        // transfer() is overridden without recording facts
+                        facts = NOT_RECORDED;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            recordedFacts = null;
+            recordingNumbering = null;
+        }
+        factAtLocationCache = facts;
+        return facts;
+    }
+
+    private void recordFact(InstructionHandle handle, BasicBlock basicBlock, Fact fact) {
+        Fact copy = createFact();
+        copy(fact, copy);
+        recordedFacts[recordingNumbering.getNumber(new Location(handle, basicBlock))] = copy;
+    }
+
     /*
      * ----------------------------------------------------------------------
      * Implementations of interface methods
@@ -117,6 +227,8 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
             throws DataflowAnalysisException {
         copy(start, result);
 
+        // Only the thread filling the cache holds the lock while recording
+        boolean record = end == null && Thread.holdsLock(this) && recordedFacts != null;
         if (isFactValid(result)) {
             Iterator<InstructionHandle> i = isForwards() ? basicBlock.instructionIterator() : basicBlock
                     .instructionReverseIterator();
@@ -131,6 +243,10 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
                     System.out.print("Transfer " + handle);
                 }
 
+                if (record) {
+                    recordFact(handle, basicBlock, result);
+                }
+
                 // Transfer the dataflow value
                 transferInstruction(handle, basicBlock, result);
 
@@ -138,6 +254,11 @@ public abstract class AbstractDataflowAnalysis<Fact> extends BasicAbstractDatafl
                     System.out.println(" ==> " + result.toString());
                 }
             }
+        } else if (record) {
+            Iterator<InstructionHandle> i = basicBlock.instructionIterator();
+            while (i.hasNext()) {
+                recordFact(i.next(), basicBlock, result);
+            }
         }
     }
 
@@ -26,10 +26,13 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -148,7 +151,11 @@ public class AnalysisContext {
 
     private ClassSummary classSummary;
 
-    private ClassDescriptor classBeingAnalyzed;
+    /**
+     * The class being analyzed is tracked per thread, since analysis worker
+     * threads may visit different classes at the same time.
+     */
+    private final ThreadLocal<ClassDescriptor> classBeingAnalyzed = new ThreadLocal<ClassDescriptor>();
 
     private FieldSummary fieldSummary;
 
@@ -156,7 +163,7 @@ public class AnalysisContext {
 
     private TypeQualifierNullnessAnnotationDatabase tqNullnessDatabase;
 
-    private final HashSet<MethodDescriptor> skippedDueToInvokeDynamic;
+    private final Set<MethodDescriptor> skippedDueToInvokeDynamic;
 
     private final Project project;
 
@@ -172,18 +179,27 @@ public class AnalysisContext {
 
     private final Map<MethodInfo, MethodInfo> bridgeFrom;
 
+    private volatile TimeBudget timeBudget = TimeBudget.UNLIMITED;
+
+    /**
+     * Limits on the number of methods whose analyses the ClassContext of a
+     * class retains, see setMethodAnalysisLimit()
+     */
+    private final Map<ClassDescriptor, Integer> methodAnalysisLimits;
+
 
     public AnalysisContext(@Nonnull Project project) {
         requireNonNull(project);
         this.project = project;
         this.boolPropertySet = new BitSet();
         this.lookupFailureCallback = new DelegatingRepositoryLookupFailureCallback();
-        skippedDueToInvokeDynamic = new HashSet<>();
+        skippedDueToInvokeDynamic = Collections.synchronizedSet(new HashSet<MethodDescriptor>());
         equalsKindSummary = new EqualsKindSummary();
         unreadFieldsData = new UnreadFieldsData();
         suppressionMatcher = new SuppressionMatcher();
-        bridgeTo = new IdentityHashMap<>();
-        bridgeFrom = new IdentityHashMap<>();
+        bridgeTo = Collections.synchronizedMap(new IdentityHashMap<MethodInfo, MethodInfo>());
+        bridgeFrom = Collections.synchronizedMap(new IdentityHashMap<MethodInfo, MethodInfo>());
+        methodAnalysisLimits = Collections.synchronizedMap(new HashMap<ClassDescriptor, Integer>());
     }
 
     private void clear() {
@@ -204,15 +220,15 @@ public class AnalysisContext {
     }
 
     public ClassDescriptor getClassBeingAnalyzed() {
-        return classBeingAnalyzed;
+        return classBeingAnalyzed.get();
     }
 
     public void setClassBeingAnalyzed(@Nonnull ClassDescriptor classBeingAnalyzed) {
-        this.classBeingAnalyzed = classBeingAnalyzed;
+        this.classBeingAnalyzed.set(classBeingAnalyzed);
     }
 
     public void clearClassBeingAnalyzed() {
-        this.classBeingAnalyzed = null;
+        this.classBeingAnalyzed.remove();
     }
 
     public ClassSummary getClassSummary() {
@@ -476,6 +492,52 @@ public class AnalysisContext {
         }
     }
 
+    /**
+     * @return the time budgets of method analyses and detectors, never null
+     */
+    public @Nonnull TimeBudget getTimeBudget() {
+        return timeBudget;
+    }
+
+    public void setTimeBudget(@Nonnull TimeBudget timeBudget) {
+        this.timeBudget = requireNonNull(timeBudget);
+    }
+
+    /**
+     * Limit the number of methods of a class whose analyses are retained, see
+     * ClassContext.setMethodAnalysisLimit(). The limit is kept here, rather
+     * than only in the ClassContext, because the analysis cache may evict the
+     * ClassContext: the one built to replace it gets the same limit.
+     *
+     * @param desc
+     *            the class
+     * @param limit
+     *            maximum number of methods per thread whose analyses are
+     *            retained, or 0 for no limit
+     * @throws CheckedAnalysisException
+     *             if the ClassContext of the class can't be built
+     */
+    public void setMethodAnalysisLimit(ClassDescriptor desc, int limit) throws CheckedAnalysisException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        if (limit == 0) {
+            methodAnalysisLimits.remove(desc);
+        } else {
+            methodAnalysisLimits.put(desc, limit);
+        }
+        Global.getAnalysisCache().getClassAnalysis(ClassContext.class, desc).setMethodAnalysisLimit(limit);
+    }
+
+    /**
+     * @return maximum number of methods per thread whose analyses the
+     *         ClassContext of given class retains, or 0 for no limit
+     */
+    public int getMethodAnalysisLimit(ClassDescriptor desc) {
+        Integer limit = methodAnalysisLimits.get(desc);
+        return limit == null ? 0 : limit;
+    }
+
     public boolean isTooBig(ClassDescriptor desc) {
         IAnalysisCache analysisCache = Global.getAnalysisCache();
 
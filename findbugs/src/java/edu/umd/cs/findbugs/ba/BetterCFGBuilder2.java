@@ -636,7 +636,12 @@ public class BetterCFGBuilder2 implements CFGBuilder, EdgeTypes, Debug {
         if (i != null) {
             return i;
         }
-        int index = cpg.addFieldref(f.getSlashedClassName(), f.getName(), f.getSignature());
+        int index;
+        // the ConstantPoolGen is cached for the class and may be shared by
+        // analysis threads
+        synchronized (cpg) {
+            index = cpg.addFieldref(f.getSlashedClassName(), f.getName(), f.getSignature());
+        }
         addedFields.put(f, index);
         return index;
 
@@ -25,10 +25,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -95,6 +97,18 @@ public class ClassContext {
 
     private final Map<Class<?>, Map<MethodDescriptor, Object>> methodAnalysisObjectMap;
 
+    /**
+     * Maximum number of methods per thread whose analyses are retained, or 0
+     * for no limit
+     */
+    private int methodAnalysisLimit;
+
+    /**
+     * For each thread, the methods whose analyses are retained for it, least
+     * recently used first; only maintained if there is a limit
+     */
+    private Map<Thread, LinkedHashMap<MethodDescriptor, Boolean>> retainedMethods;
+
     /*
      * ----------------------------------------------------------------------
      * Public methods
@@ -116,15 +130,19 @@ public class ClassContext {
         this.jclass = jclass;
         this.analysisContext = analysisContext;
         this.methodAnalysisObjectMap = new HashMap<Class<?>, Map<MethodDescriptor, Object>>();
+        ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor(jclass);
         try {
-            classInfo = (ClassInfo) Global.getAnalysisCache().getClassAnalysis(XClass.class,
-                    DescriptorFactory.createClassDescriptor(jclass));
+            classInfo = (ClassInfo) Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
         } catch (CheckedAnalysisException e) {
             throw new AssertionError("No ClassInfo for " + jclass);
         }
+        if (analysisContext != null) {
+            // A ClassContext evicted from the analysis cache keeps its limit
+            setMethodAnalysisLimit(analysisContext.getMethodAnalysisLimit(classDescriptor));
+        }
     }
 
-    public Map<MethodDescriptor, Object> getObjectMap(Class<?> analysisClass) {
+    public synchronized Map<MethodDescriptor, Object> getObjectMap(Class<?> analysisClass) {
         Map<MethodDescriptor, Object> objectMap = methodAnalysisObjectMap.get(analysisClass);
         if (objectMap == null) {
             if (analysisClass == ValueNumberDataflow.class) {
@@ -150,12 +168,46 @@ public class ClassContext {
      * @param object
      *            the analysis object to cache
      */
-    public void putMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor, Object object) {
+    public synchronized void putMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor, Object object) {
         if (object == null) {
             throw new IllegalArgumentException();
         }
         Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
         objectMap.put(methodDescriptor, object);
+        if (retainedMethods != null && isLimited(analysisClass)) {
+            retainMethod(methodDescriptor);
+        }
+    }
+
+    /**
+     * Mark a method as most recently used by the current thread, and drop
+     * the analyses of the method it used least recently, unless another
+     * thread still uses them.
+     */
+    private void retainMethod(MethodDescriptor methodDescriptor) {
+        Thread thread = Thread.currentThread();
+        LinkedHashMap<MethodDescriptor, Boolean> methods = retainedMethods.get(thread);
+        if (methods == null) {
+            methods = new LinkedHashMap<MethodDescriptor, Boolean>(16, 0.75f, true);
+            retainedMethods.put(thread, methods);
+        }
+        methods.put(methodDescriptor, Boolean.TRUE);
+        if (methods.size() <= methodAnalysisLimit) {
+            return;
+        }
+        Iterator<MethodDescriptor> i = methods.keySet().iterator();
+        MethodDescriptor eldest = i.next();
+        i.remove();
+        for (LinkedHashMap<MethodDescriptor, Boolean> other : retainedMethods.values()) {
+            if (other.containsKey(eldest)) {
+                return;
+            }
+        }
+        for (Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry : methodAnalysisObjectMap.entrySet()) {
+            if (isLimited(entry.getKey())) {
+                entry.getValue().remove(eldest);
+            }
+        }
     }
 
     /**
@@ -167,13 +219,77 @@ public class ClassContext {
      *            method descriptor identifying the analyzed method
      * @return the analysis object
      */
-    public Object getMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
+    public synchronized Object getMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
         Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
-        return objectMap.get(methodDescriptor);
+        Object object = objectMap.get(methodDescriptor);
+        if (object != null && retainedMethods != null && isLimited(analysisClass)) {
+            retainMethod(methodDescriptor);
+        }
+        return object;
+    }
+
+    /**
+     * Get the number of method analysis results currently retained, not
+     * counting the Method objects, which are part of the JavaClass.
+     *
+     * @return the number of retained method analysis results
+     */
+    public synchronized int getMethodAnalysisCount() {
+        int count = 0;
+        for (Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry : methodAnalysisObjectMap.entrySet()) {
+            if (isLimited(entry.getKey())) {
+                count += entry.getValue().size();
+            }
+        }
+        return count;
     }
 
-    public void purgeAllMethodAnalyses() {
+    public synchronized void purgeAllMethodAnalyses() {
         methodAnalysisObjectMap.clear();
+        if (retainedMethods != null) {
+            retainedMethods.clear();
+        }
+    }
+
+    /**
+     * Limit the number of methods whose analyses are retained: when a thread
+     * uses the analyses of another method, all analyses of the method it
+     * used least recently are dropped, unless another thread still uses
+     * them, and recomputed when needed again. This bounds the memory needed
+     * to analyze a huge class to that of a few of its methods per thread.
+     * Use AnalysisContext.setMethodAnalysisLimit() to keep the limit when
+     * the analysis cache replaces this ClassContext.
+     *
+     * @param limit
+     *            maximum number of methods per thread whose analyses are
+     *            retained, or 0 for no limit (the default)
+     */
+    public synchronized void setMethodAnalysisLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        if (limit == methodAnalysisLimit) {
+            return;
+        }
+        methodAnalysisLimit = limit;
+        // Start afresh, rather than track the methods analyzed so far
+        purgeAllMethodAnalyses();
+        // Weak keys, so that threads which are done are forgotten
+        retainedMethods = limit > 0 ? new WeakHashMap<Thread, LinkedHashMap<MethodDescriptor, Boolean>>() : null;
+    }
+
+    public synchronized int getMethodAnalysisLimit() {
+        return methodAnalysisLimit;
+    }
+
+    /**
+     * Is the number of methods for which results of the given analysis are
+     * retained limited? The Method objects are part of the JavaClass, which
+     * is retained anyway, and are cached for all methods of the class at once,
+     * so they are not.
+     */
+    private static boolean isLimited(Class<?> analysisClass) {
+        return analysisClass != Method.class;
     }
 
     /**
@@ -182,7 +298,7 @@ public class ClassContext {
      * @param methodDescriptor
      *            method descriptor identifying method to purge
      */
-    public void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
+    public synchronized void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
         Set<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> entrySet = methodAnalysisObjectMap.entrySet();
         for (Iterator<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> i = entrySet.iterator(); i.hasNext();) {
             Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry = i.next();
@@ -430,8 +546,11 @@ public class ClassContext {
     static public BitSet getBytecodeSet(JavaClass clazz, Method method) {
 
         XMethod xmethod = XFactory.createXMethod(clazz, method);
-        if (cachedBitsets().containsKey(xmethod)) {
-            return cachedBitsets().get(xmethod);
+        MapCache<XMethod, BitSet> cachedBitsets = cachedBitsets();
+        synchronized (cachedBitsets) {
+            if (cachedBitsets.containsKey(xmethod)) {
+                return cachedBitsets.get(xmethod);
+            }
         }
         Code code = method.getCode();
         if (code == null) {
@@ -452,7 +571,9 @@ public class ClassContext {
         if (unpackedCode != null) {
             result = unpackedCode.getBytecodeSet();
         }
-        cachedBitsets().put(xmethod, result);
+        synchronized (cachedBitsets) {
+            cachedBitsets.put(xmethod, result);
+        }
         return result;
     }
 
@@ -464,14 +585,17 @@ public class ClassContext {
     static public Set<Integer> getLoopExitBranches(Method method, MethodGen methodGen) {
 
         XMethod xmethod = XFactory.createXMethod(methodGen);
-        if (cachedLoopExits().containsKey(xmethod)) {
-            Set<Integer> result = cachedLoopExits().get(xmethod);
-            if (result == null) {
-                AnalysisContext.logError("Null cachedLoopExits for " + xmethod, new NullPointerException());
-                assert false;
-                return Collections.<Integer> emptySet();
+        MapCache<XMethod, Set<Integer>> cachedLoopExits = cachedLoopExits();
+        synchronized (cachedLoopExits) {
+            if (cachedLoopExits.containsKey(xmethod)) {
+                Set<Integer> result = cachedLoopExits.get(xmethod);
+                if (result == null) {
+                    AnalysisContext.logError("Null cachedLoopExits for " + xmethod, new NullPointerException());
+                    assert false;
+                    return Collections.<Integer> emptySet();
+                }
+                return result;
             }
-            return result;
         }
         Code code = method.getCode();
         if (code == null) {
@@ -491,7 +615,9 @@ public class ClassContext {
             result = Collections.<Integer> emptySet();
         }
 
-        cachedLoopExits().put(xmethod, result);
+        synchronized (cachedLoopExits) {
+            cachedLoopExits.put(xmethod, result);
+        }
         return result;
     }
 
@@ -20,8 +20,12 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
 
 import org.apache.bcel.generic.InstructionHandle;
@@ -34,6 +38,8 @@ import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefSet;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.util.ClassName;
 
 /**
  * Perform dataflow analysis on a method using a control flow graph. Both
@@ -63,6 +69,28 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     private int numIterations;
 
+    /**
+     * Number of result fact changes so far, used by the worklist solver
+     */
+    private int worklistTimestamp;
+
+    /**
+     * Time budget of the running execution, and when it started
+     */
+    private TimeBudget timeBudget = TimeBudget.UNLIMITED;
+
+    private long startTime;
+
+    /**
+     * Number of blocks computed since the time budget was last checked
+     */
+    private int blocksSinceBudgetCheck;
+
+    /**
+     * Use the worklist solver if the analysis supports it
+     */
+    private boolean useWorklist = USE_WORKLIST;
+
     public static boolean DEBUG = SystemProperties.getBoolean("dataflow.debug");
 
     /**
@@ -103,6 +131,40 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
     // Maximum number of iterations before we assume there is a bug and give up.
     private static final int MAX_ITERS = SystemProperties.getInt("dataflow.maxiters", 97);
 
+    // Use the worklist solver for analyses which support it
+    private static final boolean USE_WORKLIST = SystemProperties.getBoolean("dataflow.worklist", true);
+
+    // Number of blocks computed between checks of the time budget
+    private static final int BLOCKS_PER_BUDGET_CHECK = 64;
+
+    /**
+     * Throw a TimeBudgetExceededException if the analysis of the method, or
+     * the running detector, exceeded its time budget.
+     */
+    private void checkTimeBudget() throws TimeBudgetExceededException {
+        blocksSinceBudgetCheck = 0;
+        if (timeBudget.isExceeded(startTime)) {
+            MethodGen methodGen = cfg.getMethodGen();
+            MethodDescriptor method = null;
+            if (methodGen != null) {
+                method = DescriptorFactory.instance().getMethodDescriptor(
+                        ClassName.toSlashedClassName(methodGen.getClassName()), methodGen.getName(),
+                        methodGen.getSignature(), methodGen.isStatic());
+            }
+            throw timeBudget.exceeded(analysis.getClass().getSimpleName(), method, startTime);
+        }
+    }
+
+    /**
+     * Called after computing a block: check the time budget every
+     * BLOCKS_PER_BUDGET_CHECK blocks.
+     */
+    private void blockComputed() throws TimeBudgetExceededException {
+        if (++blocksSinceBudgetCheck >= BLOCKS_PER_BUDGET_CHECK) {
+            checkTimeBudget();
+        }
+    }
+
     private String getFullyQualifiedMethodName() {
         String methodName;
         MethodGen methodGen = cfg.getMethodGen();
@@ -134,12 +196,31 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     }
 
+    /**
+     * Choose the solver used by execute(), overriding the dataflow.worklist
+     * property: both solvers must compute the same facts.
+     *
+     * @param useWorklist
+     *            true to use the worklist solver if the analysis supports
+     *            it, false to use the round-robin solver
+     */
+    void setUseWorklist(boolean useWorklist) {
+        this.useWorklist = useWorklist;
+    }
+
     /**
      * Run the algorithm. Afterwards, caller can use the getStartFact() and
      * getResultFact() methods to to get dataflow facts at start and result
      * points of each block.
      */
     public void execute() throws DataflowAnalysisException {
+        timeBudget = TimeBudget.current();
+        startTime = System.nanoTime();
+        checkTimeBudget();
+        if (useWorklist && analysis instanceof WorklistDataflowAnalysis) {
+            executeWorklist();
+            return;
+        }
         boolean change;
         boolean debugWas = DEBUG;
         if (DEBUG) {
@@ -188,6 +269,7 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                 throw new DataflowAnalysisException("Too many iterations (" + numIterations + ") in dataflow when analyzing "
                         + getFullyQualifiedMethodName());
             }
+            checkTimeBudget();
 
             analysis.startIteration();
 
@@ -229,6 +311,7 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
             while (i.hasNext()) {
 
                 BasicBlock block = i.next();
+                blockComputed();
 
                 // Get start fact for block.
                 Fact start = analysis.getStartFact(block);
@@ -305,57 +388,7 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                         continue;
                     }
 
-                    analysis.makeFactTop(start);
-                    predEdgeIter = logicalPredecessorEdgeIterator(block);
-                    while (predEdgeIter.hasNext()) {
-                        Edge edge = predEdgeIter.next();
-                        BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
-
-                        // Get the predecessor result fact
-                        Fact predFact = analysis.getResultFact(logicalPred);
-
-                        // Apply the edge transfer function.
-                        Fact edgeFact = analysis.createFact();
-                        analysis.copy(predFact, edgeFact);
-                        analysis.edgeTransfer(edge, edgeFact);
-
-                        if (DEBUG && !analysis.same(edgeFact, predFact)) {
-                            debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
-                                    + analysis.factToString(edgeFact));
-                        }
-
-                        // Merge the predecessor fact (possibly transformed
-                        // by the edge transfer function)
-                        // into the block's start fact.
-                        if (DEBUG) {
-                            if (analysis.isTop(start)) {
-                                debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
-                                        + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                            } else {
-                                debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
-                                        + analysis.factToString(edgeFact)
-
-                                        + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                            }
-                        }
-
-                        if (analysis instanceof UnconditionalValueDerefAnalysis) {
-                            ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
-                                    edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
-                        } else {
-                            analysis.meetInto(edgeFact, edge, start);
-                        }
-                        analysis.setLastUpdateTimestamp(start, timestamp);
-
-                        int pos = -1;
-                        if (block.getFirstInstruction() != null) {
-                            pos = block.getFirstInstruction().getPosition();
-                        }
-                        if (DEBUG) {
-                            System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
-                                    + " \n");
-                        }
-                    }
+                    meetPredecessors(block, start, rawPredCount, timestamp);
                 }
                 if (DEBUG) {
                     debug(block, "start fact is " + analysis.factToString(start) + "\n");
@@ -439,6 +472,175 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
         DEBUG = debugWas;
     }
 
+    /**
+     * Run the algorithm using a worklist: a block is only recomputed if the
+     * result fact of one of its logical predecessors changed since the block
+     * was last computed. Blocks on the worklist are visited in block order,
+     * wrapping around to the first block; each such sweep counts as one
+     * iteration. Each block may be computed at most MAX_ITERS times.
+     * <p>
+     * Every block is last computed from the final facts of its predecessors,
+     * so side information an analysis records per block or per edge (e.g.,
+     * where values become null) is up to date when the worklist is empty.
+     */
+    private void executeWorklist() throws DataflowAnalysisException {
+        if (DEBUG) {
+            reportAnalysis("Executing (worklist)");
+        }
+
+        // Position of each block in the block order, indexed by label
+        int[] orderIndex = new int[cfg.getNumVertexLabels()];
+        Arrays.fill(orderIndex, -1);
+        List<BasicBlock> blocks = new ArrayList<BasicBlock>(cfg.getNumBasicBlocks());
+        Iterator<BasicBlock> i = blockOrder.blockIterator();
+        while (i.hasNext()) {
+            BasicBlock block = i.next();
+            orderIndex[block.getLabel()] = blocks.size();
+            blocks.add(block);
+        }
+
+        BitSet worklist = new BitSet(blocks.size());
+        worklist.set(0, blocks.size());
+        analysis.startIteration();
+        solve(blocks, orderIndex, worklist);
+        analysis.finishIteration();
+
+        if (DEBUG) {
+            System.out.println("-- Quiescence achieved (worklist) after " + numIterations + " iterations, " + worklistTimestamp
+                    + " changes");
+        }
+    }
+
+    /**
+     * Compute blocks until the worklist is empty.
+     */
+    private void solve(List<BasicBlock> blocks, int[] orderIndex, BitSet worklist) throws DataflowAnalysisException {
+        // Number of times each block was computed
+        int[] visits = new int[blocks.size()];
+        int index = worklist.nextSetBit(0);
+        if (index >= 0) {
+            ++numIterations;
+        }
+        while (index >= 0) {
+            worklist.clear(index);
+            BasicBlock block = blocks.get(index);
+            if (++visits[index] > MAX_ITERS) {
+                throw new DataflowAnalysisException("Too many visits (" + visits[index] + ") of block " + block.getLabel()
+                        + " in dataflow when analyzing " + getFullyQualifiedMethodName());
+            }
+            blockComputed();
+
+            Fact start = analysis.getStartFact(block);
+            Fact result = analysis.getResultFact(block);
+            int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
+
+            if (block == logicalEntryBlock()) {
+                analysis.makeFactTop(start);
+                analysis.initEntryFact(start);
+            } else {
+                int rawPredCount = isForwards ? cfg.getNumIncomingEdges(block) : cfg.getNumOutgoingEdges(block);
+                meetPredecessors(block, start, rawPredCount, worklistTimestamp);
+            }
+
+            boolean resultWasTop = analysis.isTop(result);
+            Fact origResult = null;
+            if (!resultWasTop) {
+                origResult = analysis.createFact();
+                analysis.copy(result, origResult);
+            }
+
+            analysis.transfer(block, null, start, result);
+
+            boolean changed = resultWasTop ? !analysis.isTop(result) : !analysis.same(result, origResult);
+            if (changed) {
+                worklistTimestamp++;
+                analysis.setLastUpdateTimestamp(result, worklistTimestamp);
+                Iterator<Edge> succEdgeIter = isForwards ? cfg.outgoingEdgeIterator(block) : cfg.incomingEdgeIterator(block);
+                while (succEdgeIter.hasNext()) {
+                    Edge edge = succEdgeIter.next();
+                    BasicBlock logicalSucc = isForwards ? edge.getTarget() : edge.getSource();
+                    int succIndex = orderIndex[logicalSucc.getLabel()];
+                    if (succIndex >= 0) {
+                        worklist.set(succIndex);
+                    }
+                }
+            } else {
+                analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
+            }
+            if (DEBUG) {
+                debug(block, "result is " + analysis.factToString(result) + " @ timestamp "
+                        + analysis.getLastUpdateTimestamp(result) + "\n");
+            }
+
+            index = worklist.nextSetBit(index + 1);
+            if (index < 0) {
+                index = worklist.nextSetBit(0);
+                if (index >= 0) {
+                    ++numIterations;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the start fact of a block to the meet of the result facts of its
+     * logical predecessors, each transformed by the edge transfer function.
+     */
+    private void meetPredecessors(BasicBlock block, Fact start, int rawPredCount, int timestamp)
+            throws DataflowAnalysisException {
+        analysis.makeFactTop(start);
+        Iterator<Edge> predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            Edge edge = predEdgeIter.next();
+            BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
+
+            // Get the predecessor result fact
+            Fact predFact = analysis.getResultFact(logicalPred);
+
+            // Apply the edge transfer function.
+            Fact edgeFact = analysis.createFact();
+            analysis.copy(predFact, edgeFact);
+            analysis.edgeTransfer(edge, edgeFact);
+
+            if (DEBUG && !analysis.same(edgeFact, predFact)) {
+                debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
+                        + analysis.factToString(edgeFact));
+            }
+
+            // Merge the predecessor fact (possibly transformed
+            // by the edge transfer function)
+            // into the block's start fact.
+            if (DEBUG) {
+                if (analysis.isTop(start)) {
+                    debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
+                            + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
+                } else {
+                    debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
+                            + analysis.factToString(edgeFact)
+
+                            + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
+                }
+            }
+
+            if (analysis instanceof UnconditionalValueDerefAnalysis) {
+                ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
+                        edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
+            } else {
+                analysis.meetInto(edgeFact, edge, start);
+            }
+            analysis.setLastUpdateTimestamp(start, timestamp);
+
+            int pos = -1;
+            if (block.getFirstInstruction() != null) {
+                pos = block.getFirstInstruction().getPosition();
+            }
+            if (DEBUG) {
+                System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
+                        + " \n");
+            }
+        }
+    }
+
     private void reportAnalysis(String msg) {
         String shortAnalysisName = analysis.getClass().getName();
         int pkgEnd = shortAnalysisName.lastIndexOf('.');
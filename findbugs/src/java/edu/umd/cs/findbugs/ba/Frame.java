@@ -21,10 +21,10 @@ package edu.umd.cs.findbugs.ba;
 
 import static edu.umd.cs.findbugs.ba.Debug.VERIFY_INTEGRITY;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.ConstantPoolGen;
@@ -76,8 +76,14 @@ public abstract class Frame<ValueType> {
 
     /**
      * Array storing the values of local variables and operand stack slots.
+     * Only the first numSlots elements are in use.
      */
-    private final ArrayList<ValueType> slotList;
+    private ValueType[] slots;
+
+    /**
+     * Number of slots (locals plus stack values) in use.
+     */
+    private int numSlots;
 
     /**
      * Flag marking this frame as a special "TOP" value. Such Frames serve as
@@ -110,9 +116,35 @@ public abstract class Frame<ValueType> {
      */
     public Frame(int numLocals) {
         this.numLocals = numLocals;
-        this.slotList = new ArrayList<ValueType>(numLocals + DEFAULT_STACK_CAPACITY);
-        for (int i = 0; i < numLocals; ++i) {
-            slotList.add(null);
+        this.slots = newSlotArray(numLocals + DEFAULT_STACK_CAPACITY);
+        this.numSlots = numLocals;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ValueType> ValueType[] newSlotArray(int capacity) {
+        return (ValueType[]) new Object[capacity];
+    }
+
+    /**
+     * Make sure the slot array can hold at least given number of slots,
+     * growing it if necessary.
+     *
+     * @param minCapacity
+     *            number of slots the array must be able to hold
+     */
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= slots.length) {
+            return;
+        }
+        int capacity = Math.max(minCapacity, slots.length + (slots.length >> 1));
+        ValueType[] copy = newSlotArray(capacity);
+        System.arraycopy(slots, 0, copy, 0, numSlots);
+        slots = copy;
+    }
+
+    private void checkSlot(int n) {
+        if (n < 0 || n >= numSlots) {
+            throw new IndexOutOfBoundsException("Slot " + n + " of " + numSlots);
         }
     }
 
@@ -178,7 +210,8 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.add(value);
+        ensureCapacity(numSlots + 1);
+        slots[numSlots++] = value;
     }
 
     /**
@@ -192,10 +225,12 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        if (slotList.size() == numLocals) {
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack empty");
         }
-        return slotList.remove(slotList.size() - 1);
+        ValueType value = slots[--numSlots];
+        slots[numSlots] = null;
+        return value;
     }
 
     /**
@@ -208,11 +243,11 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() == numLocals) {
+        assert numSlots >= numLocals;
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack is empty");
         }
-        return slotList.get(slotList.size() - 1);
+        return slots[numSlots - 1];
     }
 
     /**
@@ -225,10 +260,7 @@ public abstract class Frame<ValueType> {
         if (valueList.length > stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack");
         }
-        int numSlots = slotList.size();
-        for (int i = numSlots - valueList.length, j = 0; i < numSlots; ++i, ++j) {
-            valueList[j] = slotList.get(i);
-        }
+        System.arraycopy(slots, numSlots - valueList.length, valueList, 0, valueList.length);
     }
 
     /**
@@ -249,8 +281,8 @@ public abstract class Frame<ValueType> {
         if (loc < 0) {
             throw new DataflowAnalysisException("can't get position " + loc + " of stack");
         }
-        int pos = slotList.size() - (loc + 1);
-        return slotList.get(pos);
+        int pos = numSlots - (loc + 1);
+        return slots[pos];
     }
 
     /**
@@ -265,7 +297,7 @@ public abstract class Frame<ValueType> {
         if (loc >= stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack: access=" + loc + ", avail=" + stackDepth);
         }
-        return slotList.size() - (loc + 1);
+        return numSlots - (loc + 1);
     }
 
     /**
@@ -427,7 +459,7 @@ public abstract class Frame<ValueType> {
             throw new IllegalArgumentException();
         }
 
-        return (slotList.size() - numArguments) + i;
+        return (numSlots - numArguments) + i;
     }
 
     /**
@@ -488,17 +520,16 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() > numLocals) {
-            slotList.subList(numLocals, slotList.size()).clear();
-        }
+        assert numSlots >= numLocals;
+        Arrays.fill(slots, numLocals, numSlots, null);
+        numSlots = numLocals;
     }
 
     /**
      * Get the depth of the Java operand stack.
      */
     public int getStackDepth() {
-        return slotList.size() - numLocals;
+        return numSlots - numLocals;
     }
 
     /**
@@ -512,15 +543,15 @@ public abstract class Frame<ValueType> {
      * Get the number of slots (locals plus stack values).
      */
     public int getNumSlots() {
-        return slotList.size();
+        return numSlots;
     }
 
     public boolean contains(ValueType value) {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        for (ValueType v : slotList) {
-            if (v.equals(value)) {
+        for (int i = 0; i < numSlots; ++i) {
+            if (slots[i].equals(value)) {
                 return true;
             }
         }
@@ -538,7 +569,8 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        return slotList.get(n);
+        checkSlot(n);
+        return slots[n];
     }
 
     /**
@@ -556,7 +588,8 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.set(n, value);
+        checkSlot(n);
+        slots[n] = value;
     }
 
     /**
@@ -605,30 +638,17 @@ public abstract class Frame<ValueType> {
      */
     public void copyFrom(Frame<ValueType> other) {
         lastUpdateTimestamp = other.lastUpdateTimestamp;
-        if (true) {
-            int size = slotList.size();
-            if (size == other.slotList.size()) {
-                for (int i = 0; i < size; i++) {
-                    slotList.set(i, other.slotList.get(i));
-                }
-            } else {
-                slotList.clear();
-                for (ValueType v : other.slotList) {
-                    slotList.add(v);
-                }
+        if (other != this) {
+            // Copy into our own array, which usually is big enough already.
+            // The other frame is only read: it may be a cached fact used by
+            // other threads.
+            ensureCapacity(other.numSlots);
+            System.arraycopy(other.slots, 0, slots, 0, other.numSlots);
+            if (numSlots > other.numSlots) {
+                Arrays.fill(slots, other.numSlots, numSlots, null);
             }
-        } else {
-            slotList.clear();
-            slotList.addAll(other.slotList);
-
-        }
-        /*
-         * Andrei, 27.02.2008: "optimized" code below takes ~18% overall FB
-         * execution time, code above only 5% int size = slotList.size(); if
-         * (size == other.slotList.size()) { for (int i = 0; i < size; i++)
-         * slotList.set(i, other.slotList.get(i)); } else { slotList.clear();
-         * for (ValueType v : other.slotList) slotList.add(v); }
-         */
+            numSlots = other.numSlots;
+        }
         isTop = other.isTop;
         isBottom = other.isBottom;
     }
@@ -690,10 +710,18 @@ public abstract class Frame<ValueType> {
      *         stack slots
      */
     public Collection<ValueType> allSlots() {
-        if (slotList == null) {
-            return Collections.<ValueType> emptyList();
-        }
-        return Collections.<ValueType> unmodifiableCollection(slotList);
+        return new AbstractList<ValueType>() {
+            @Override
+            public ValueType get(int index) {
+                checkSlot(index);
+                return slots[index];
+            }
+
+            @Override
+            public int size() {
+                return numSlots;
+            }
+        };
     }
 
     /**
@@ -0,0 +1,250 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.log.BudgetStatistics;
+
+/**
+ * Time budgets for the analysis of a single method and for applying a single
+ * detector to a single class. The budgets are enforced cooperatively:
+ * long-running analyses such as {@link Dataflow} check them from time to time
+ * and throw a {@link TimeBudgetExceededException} when one is exceeded.
+ * <p>
+ * Method analyses abandoned this way are remembered per thread, so that the
+ * engine can report them once the running detector is done (see
+ * {@link #takeMethodOverruns()}).
+ */
+public class TimeBudget {
+
+    /**
+     * No budgets: checking is (almost) free.
+     */
+    public static final TimeBudget UNLIMITED = new TimeBudget(0, 0, null);
+
+    private final long methodBudgetNanos;
+
+    private final long detectorBudgetNanos;
+
+    private final @CheckForNull BudgetStatistics statistics;
+
+    /**
+     * Per thread: deadline of the running detector, and the method analyses
+     * abandoned since the overruns were last taken.
+     */
+    private static class ThreadState {
+        boolean inDetector;
+
+        long detectorDeadline;
+
+        final List<TimeBudgetExceededException> methodOverruns = new ArrayList<TimeBudgetExceededException>();
+    }
+
+    private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param methodBudgetMillis
+     *            time budget for analyzing a method, or 0 for none
+     * @param detectorBudgetMillis
+     *            time budget for applying a detector to a class, or 0 for
+     *            none
+     * @param statistics
+     *            where to record method analyses abandoned because they
+     *            exceeded the budget, or null
+     */
+    public TimeBudget(long methodBudgetMillis, long detectorBudgetMillis, @CheckForNull BudgetStatistics statistics) {
+        if (methodBudgetMillis < 0 || detectorBudgetMillis < 0) {
+            throw new IllegalArgumentException("Negative time budget");
+        }
+        this.methodBudgetNanos = TimeUnit.MILLISECONDS.toNanos(methodBudgetMillis);
+        this.detectorBudgetNanos = TimeUnit.MILLISECONDS.toNanos(detectorBudgetMillis);
+        this.statistics = statistics;
+        if (statistics != null) {
+            statistics.setBudgets(methodBudgetMillis, detectorBudgetMillis);
+        }
+    }
+
+    /**
+     * Get the time budget of the current analysis context.
+     *
+     * @return the time budget, {@link #UNLIMITED} if there is no analysis
+     *         context
+     */
+    public static TimeBudget current() {
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        if (analysisContext == null) {
+            return UNLIMITED;
+        }
+        return analysisContext.getTimeBudget();
+    }
+
+    public boolean isUnlimited() {
+        return methodBudgetNanos == 0 && detectorBudgetNanos == 0;
+    }
+
+    /**
+     * @return the time budget for analyzing a method in milliseconds, or 0
+     *         if there is none
+     */
+    public long getMethodBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(methodBudgetNanos);
+    }
+
+    /**
+     * @return the time budget for applying a detector to a class in
+     *         milliseconds, or 0 if there is none
+     */
+    public long getDetectorBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(detectorBudgetNanos);
+    }
+
+    /**
+     * Check the budgets of a method analysis.
+     *
+     * @param analysis
+     *            name of the analysis, e.g. its class name
+     * @param method
+     *            the method being analyzed, if known
+     * @param startNanos
+     *            value of {@link System#nanoTime()} when the analysis of the
+     *            method started
+     * @throws TimeBudgetExceededException
+     *             if the analysis of the method, or the running detector,
+     *             exceeded its budget
+     */
+    public void check(String analysis, @CheckForNull MethodDescriptor method, long startNanos)
+            throws TimeBudgetExceededException {
+        if (isExceeded(startNanos)) {
+            throw exceeded(analysis, method, startNanos);
+        }
+    }
+
+    /**
+     * @param startNanos
+     *            value of {@link System#nanoTime()} when the analysis of the
+     *            method started
+     * @return true if the analysis of the method, or the running detector,
+     *         exceeded its budget
+     */
+    public boolean isExceeded(long startNanos) {
+        if (isUnlimited()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (methodBudgetNanos > 0 && now - startNanos > methodBudgetNanos) {
+            return true;
+        }
+        if (detectorBudgetNanos > 0) {
+            ThreadState state = threadState.get();
+            return state.inDetector && now - state.detectorDeadline > 0;
+        }
+        return false;
+    }
+
+    /**
+     * Create the exception to throw when {@link #isExceeded(long)} returned
+     * true. If the budget of the method analysis was exceeded, the method is
+     * recorded as abandoned.
+     *
+     * @param analysis
+     *            name of the analysis, e.g. its class name
+     * @param method
+     *            the method being analyzed, if known
+     * @param startNanos
+     *            value of {@link System#nanoTime()} when the analysis of the
+     *            method started
+     */
+    public TimeBudgetExceededException exceeded(String analysis, @CheckForNull MethodDescriptor method, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        long milliseconds = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        boolean methodBudgetExceeded = methodBudgetNanos > 0 && elapsed > methodBudgetNanos;
+        TimeBudgetExceededException e = new TimeBudgetExceededException(analysis, method, milliseconds,
+                !methodBudgetExceeded);
+        if (methodBudgetExceeded) {
+            threadState.get().methodOverruns.add(e);
+            if (statistics != null) {
+                statistics.record(BudgetStatistics.Kind.METHOD, method != null ? method.toString() : "?", analysis,
+                        milliseconds);
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Start applying a detector to a class on the current thread.
+     *
+     * @return value of {@link System#nanoTime()} when the detector started
+     */
+    public long startDetector() {
+        long now = System.nanoTime();
+        if (detectorBudgetNanos > 0) {
+            ThreadState state = threadState.get();
+            state.inDetector = true;
+            state.detectorDeadline = now + detectorBudgetNanos;
+        }
+        return now;
+    }
+
+    /**
+     * Finish applying a detector to a class on the current thread.
+     *
+     * @param startNanos
+     *            value returned by {@link #startDetector()}
+     * @return true if the detector exceeded its budget
+     */
+    public boolean endDetector(long startNanos) {
+        if (detectorBudgetNanos == 0) {
+            return false;
+        }
+        threadState.get().inDetector = false;
+        return System.nanoTime() - startNanos > detectorBudgetNanos;
+    }
+
+    /**
+     * Get the method analyses abandoned on the current thread since this
+     * method was last called.
+     */
+    public List<TimeBudgetExceededException> takeMethodOverruns() {
+        if (methodBudgetNanos == 0) {
+            return Collections.emptyList();
+        }
+        List<TimeBudgetExceededException> methodOverruns = threadState.get().methodOverruns;
+        if (methodOverruns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<TimeBudgetExceededException> result = new ArrayList<TimeBudgetExceededException>(methodOverruns);
+        methodOverruns.clear();
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Used to signal an analysis abandoned because it exceeded its time budget.
+ *
+ * @see TimeBudget
+ */
+public class TimeBudgetExceededException extends DataflowAnalysisException {
+    private static final long serialVersionUID = 1L;
+
+    private final String analysis;
+
+    private final @CheckForNull MethodDescriptor method;
+
+    private final long milliseconds;
+
+    private final boolean detectorBudget;
+
+    /**
+     * Constructor.
+     *
+     * @param analysis
+     *            name of the analysis which was abandoned
+     * @param method
+     *            the method being analyzed, if known
+     * @param milliseconds
+     *            time spent before the analysis was abandoned
+     * @param detectorBudget
+     *            true if the budget of the running detector was exceeded,
+     *            false if the budget of the method analysis was exceeded
+     */
+    public TimeBudgetExceededException(String analysis, @CheckForNull MethodDescriptor method, long milliseconds,
+            boolean detectorBudget) {
+        super((detectorBudget ? "Detector time budget exceeded while running " : "Time budget exceeded by ") + analysis
+                + (detectorBudget ? "" : " after " + milliseconds + " ms") + (method != null ? " analyzing " + method : ""));
+        this.analysis = analysis;
+        this.method = method;
+        this.milliseconds = milliseconds;
+        this.detectorBudget = detectorBudget;
+    }
+
+    public String getAnalysis() {
+        return analysis;
+    }
+
+    public @CheckForNull MethodDescriptor getMethod() {
+        return method;
+    }
+
+    public long getMilliseconds() {
+        return milliseconds;
+    }
+
+    /**
+     * @return true if the budget of the running detector was exceeded; the
+     *         analysis may well succeed when computed for another detector
+     */
+    public boolean isDetectorBudget() {
+        return detectorBudget;
+    }
+}
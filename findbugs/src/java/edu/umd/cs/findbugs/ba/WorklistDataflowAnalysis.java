@@ -0,0 +1,33 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+/**
+ * Marker interface for dataflow analyses which may be solved with a worklist,
+ * i.e., where a block only needs to be recomputed when the result fact of one
+ * of its logical predecessors changes. The analysis must not depend on every
+ * block being transferred once per iteration: startIteration() and
+ * finishIteration() are called around the whole worklist run rather than
+ * around each sweep over the blocks.
+ *
+ * @see Dataflow
+ */
+public interface WorklistDataflowAnalysis {
+}
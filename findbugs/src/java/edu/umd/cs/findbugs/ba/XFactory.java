@@ -20,11 +20,11 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -55,6 +55,7 @@ import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.analysis.FieldInfo;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
+import edu.umd.cs.findbugs.classfile.engine.bcel.LazyConstantPoolGen;
 import edu.umd.cs.findbugs.detect.BuildObligationPolicyDatabase;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
@@ -71,19 +72,23 @@ import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 public class XFactory {
     public static final boolean DEBUG_UNRESOLVED = SystemProperties.getBoolean("findbugs.xfactory.debugunresolved");
 
-    private final Set<ClassDescriptor> reflectiveClasses = new HashSet<ClassDescriptor>();
+    private final Set<ClassDescriptor> reflectiveClasses = newConcurrentSet();
 
-    private final Map<MethodDescriptor, XMethod> methods = new HashMap<MethodDescriptor, XMethod>();
+    private final Map<MethodDescriptor, XMethod> methods = new ConcurrentHashMap<MethodDescriptor, XMethod>();
 
-    private final Map<FieldDescriptor, XField> fields = new HashMap<FieldDescriptor, XField>();
+    private final Map<FieldDescriptor, XField> fields = new ConcurrentHashMap<FieldDescriptor, XField>();
 
-    private final Set<XMethod> calledMethods = new HashSet<XMethod>();
+    private final Set<XMethod> calledMethods = newConcurrentSet();
 
-    private final Set<XField> emptyArrays = new HashSet<XField>();
+    private final Set<XField> emptyArrays = newConcurrentSet();
 
-    private final Set<String> calledMethodSignatures = new HashSet<String>();
+    private final Set<String> calledMethodSignatures = newConcurrentSet();
 
-    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = new HashSet<MethodDescriptor>();
+    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = newConcurrentSet();
+
+    private static <E> Set<E> newConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<E, Boolean>());
+    }
 
     public void canonicalizeAll() {
         DescriptorFactory descriptorFactory = DescriptorFactory.instance();
@@ -130,7 +135,7 @@ public class XFactory {
     }
 
     public boolean isEmptyArrayField(@CheckForNull XField f) {
-        return emptyArrays.contains(f);
+        return f != null && emptyArrays.contains(f);
     }
 
     public boolean isCalled(XMethod m) {
@@ -460,6 +465,9 @@ public class XFactory {
     public final static boolean DEBUG_CIRCULARITY = SystemProperties.getBoolean("circularity.debug");
 
     public static XField createXField(FieldInstruction fieldInstruction, ConstantPoolGen cpg) {
+        if (cpg instanceof LazyConstantPoolGen) {
+            return createXField(((LazyConstantPoolGen) cpg).getFieldDescriptor(fieldInstruction));
+        }
         String className = fieldInstruction.getClassName(cpg);
         String fieldName = fieldInstruction.getName(cpg);
         String fieldSig = fieldInstruction.getSignature(cpg);
@@ -608,6 +616,9 @@ public class XFactory {
      * @return XMethod representing the method called by the InvokeInstruction
      */
     public static XMethod createXMethod(InvokeInstruction invokeInstruction, ConstantPoolGen cpg) {
+        if (cpg instanceof LazyConstantPoolGen) {
+            return createXMethod(((LazyConstantPoolGen) cpg).getMethodDescriptor(invokeInstruction));
+        }
         String className = invokeInstruction.getClassName(cpg);
         String methodName = invokeInstruction.getName(cpg);
         String methodSig = invokeInstruction.getSignature(cpg);
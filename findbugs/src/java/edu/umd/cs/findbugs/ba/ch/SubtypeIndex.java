@@ -0,0 +1,319 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+
+/**
+ * Index of the subtype relation of an InheritanceGraph, answering subtype
+ * queries in constant time.
+ * <p>
+ * Each class gets an integer id, its position in a preorder traversal of the
+ * tree formed by the direct superclass edges, so the subclasses of a class
+ * are the ids from its own up to the end of its subtree. The other supertype
+ * edges, to interfaces, are handled by giving each of their targets (and the
+ * superclasses of those, normally just java.lang.Object) a bit, and each
+ * class the set of bits of all such supertypes. Classes that implement no
+ * more interfaces than their superclass share its bit set.
+ * <p>
+ * The index is a snapshot of the graph. Since the supertypes of a class in
+ * the graph never change, supertype queries about indexed classes stay
+ * correct as the graph grows; subtype enumeration needs an index that is
+ * current.
+ */
+final class SubtypeIndex {
+
+    private static final BitSet NO_INTERFACES = new BitSet(0);
+
+    private final int numVertices;
+
+    private final int numEdges;
+
+    /** true if all vertices of the graph were indexed */
+    private final boolean complete;
+
+    private final Map<ClassDescriptor, Integer> idMap;
+
+    /** vertices, by id */
+    private final ClassVertex[] vertices;
+
+    /** end (exclusive) of the subtree of the direct superclass tree, by id */
+    private final int[] subtreeEnd;
+
+    /**
+     * bit of the class, by id, if it is a supertype reached by an edge other
+     * than a direct superclass edge; -1 if not
+     */
+    private final int[] interfaceBit;
+
+    /** bits of the supertypes outside of the superclass tree, by id */
+    private final BitSet[] interfaces;
+
+    /** true if there is a missing class among the supertypes, by id */
+    private final boolean[] incomplete;
+
+    SubtypeIndex(InheritanceGraph graph) {
+        this.numVertices = graph.getNumVertices();
+        this.numEdges = graph.getNumEdges();
+
+        // Order the vertices so that supertypes come before their subtypes.
+        // Vertices on (or below) a cycle are never ready, and are left out.
+        Map<ClassVertex, Integer> topologicalIndex = new HashMap<ClassVertex, Integer>();
+        List<ClassVertex> order = new ArrayList<ClassVertex>(numVertices);
+        List<ClassVertex> all = new ArrayList<ClassVertex>(numVertices);
+        for (ClassVertex vertex : graph.vertices()) {
+            topologicalIndex.put(vertex, all.size());
+            all.add(vertex);
+        }
+        int[] remaining = new int[all.size()];
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = graph.getNumOutgoingEdges(all.get(i));
+            if (remaining[i] == 0) {
+                order.add(all.get(i));
+            }
+        }
+        for (int i = 0; i < order.size(); i++) {
+            for (Iterator<InheritanceEdge> j = graph.incomingEdgeIterator(order.get(i)); j.hasNext();) {
+                int source = topologicalIndex.get(j.next().getSource());
+                if (--remaining[source] == 0) {
+                    order.add(all.get(source));
+                }
+            }
+        }
+        this.complete = order.size() == all.size();
+
+        // Number the vertices in preorder of the direct superclass tree
+        Map<ClassVertex, List<ClassVertex>> children = new HashMap<ClassVertex, List<ClassVertex>>();
+        List<ClassVertex> roots = new ArrayList<ClassVertex>();
+        for (ClassVertex vertex : order) {
+            ClassVertex parent = vertex.getDirectSuperclass();
+            if (parent == null) {
+                roots.add(vertex);
+            } else {
+                List<ClassVertex> list = children.get(parent);
+                if (list == null) {
+                    list = new ArrayList<ClassVertex>(2);
+                    children.put(parent, list);
+                }
+                list.add(vertex);
+            }
+        }
+        int n = order.size();
+        this.idMap = new HashMap<ClassDescriptor, Integer>(n * 4 / 3 + 1);
+        this.vertices = new ClassVertex[n];
+        this.subtreeEnd = new int[n];
+        for (ClassVertex root : roots) {
+            number(root, children);
+        }
+
+        // Give a bit to every supertype reached by an edge other than a
+        // direct superclass edge, and compute the transitive closure in
+        // topological order
+        this.interfaceBit = new int[n];
+        this.interfaces = new BitSet[n];
+        this.incomplete = new boolean[n];
+        int numBits = 0;
+        for (int i = 0; i < n; i++) {
+            interfaceBit[i] = -1;
+        }
+        for (ClassVertex vertex : order) {
+            int id = getId(vertex.getClassDescriptor());
+            ClassVertex parent = vertex.getDirectSuperclass();
+            BitSet bits = parent == null ? NO_INTERFACES : interfaces[getId(parent.getClassDescriptor())];
+            boolean missing = !vertex.isResolved();
+            boolean shared = true;
+            for (Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(vertex); i.hasNext();) {
+                int target = getId(i.next().getTarget().getClassDescriptor());
+                missing |= incomplete[target];
+                if (vertices[target] == parent) {
+                    continue;
+                }
+                if (shared) {
+                    bits = (BitSet) bits.clone();
+                    shared = false;
+                }
+                // the target and its superclasses (normally only
+                // java.lang.Object) become supertypes outside of the tree
+                for (int a = target; a >= 0; a = getParentId(vertices[a])) {
+                    if (interfaceBit[a] < 0) {
+                        interfaceBit[a] = numBits++;
+                    }
+                    bits.set(interfaceBit[a]);
+                }
+                bits.or(interfaces[target]);
+            }
+            if (!shared && parent != null && bits.equals(interfaces[getId(parent.getClassDescriptor())])) {
+                bits = interfaces[getId(parent.getClassDescriptor())];
+            }
+            interfaces[id] = bits;
+            incomplete[id] = missing;
+        }
+    }
+
+    private int getParentId(ClassVertex vertex) {
+        ClassVertex parent = vertex.getDirectSuperclass();
+        return parent == null ? -1 : getId(parent.getClassDescriptor());
+    }
+
+    private void number(ClassVertex root, Map<ClassVertex, List<ClassVertex>> children) {
+        // Iterative, in case of a very deep hierarchy
+        ArrayList<ClassVertex> stack = new ArrayList<ClassVertex>();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        stack.add(root);
+        ids.add(-1);
+        int next = idMap.size();
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            ClassVertex vertex = stack.get(top);
+            int id = ids.get(top);
+            if (id < 0) {
+                id = next++;
+                ids.set(top, id);
+                vertices[id] = vertex;
+                idMap.put(vertex.getClassDescriptor(), id);
+                List<ClassVertex> list = children.get(vertex);
+                if (list != null) {
+                    for (int i = list.size() - 1; i >= 0; i--) {
+                        stack.add(list.get(i));
+                        ids.add(-1);
+                    }
+                }
+                if (stack.size() - 1 > top) {
+                    continue;
+                }
+            }
+            // all children of the vertex are numbered
+            subtreeEnd[id] = next;
+            stack.remove(top);
+            ids.remove(top);
+        }
+    }
+
+    /**
+     * @return true if the index reflects the current state of the graph
+     */
+    boolean isCurrent(InheritanceGraph graph) {
+        return complete && graph.getNumVertices() == numVertices && graph.getNumEdges() == numEdges;
+    }
+
+    /**
+     * @return the id of the class, or -1 if it isn't indexed
+     */
+    int getId(ClassDescriptor classDescriptor) {
+        Integer id = idMap.get(classDescriptor);
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * @return true if there is a missing class among the supertypes of the
+     *         indexed class, so that not all supertype queries can be
+     *         answered
+     */
+    boolean hasMissingSupertypes(int id) {
+        return incomplete[id];
+    }
+
+    /**
+     * Determine whether an indexed class is a subtype of another class.
+     *
+     * @param subId
+     *            id of the possible subtype
+     * @param superDesc
+     *            the possible supertype
+     * @return true if the class is a subtype of superDesc, false if not
+     * @throws ClassNotFoundException
+     *             if a missing class prevents a definitive answer
+     */
+    boolean isSubtype(int subId, ClassDescriptor superDesc) throws ClassNotFoundException {
+        int superId = getId(superDesc);
+        if (superId >= 0) {
+            if (superId <= subId && subId < subtreeEnd[superId]) {
+                return true;
+            }
+            int bit = interfaceBit[superId];
+            if (bit >= 0 && interfaces[subId].get(bit)) {
+                return true;
+            }
+        }
+        if (incomplete[subId]) {
+            // As for SupertypeQueryResults: any missing classes will
+            // already have been reported.
+            throw new ClassNotFoundException();
+        }
+        return false;
+    }
+
+    /**
+     * Add all known subtypes of an indexed class, including the class itself,
+     * to a collection.
+     *
+     * @param id
+     *            id of the class
+     * @param result
+     *            collection to add the subtypes to
+     */
+    void addSubtypes(int id, Collection<ClassDescriptor> result) {
+        int bit = interfaceBit[id];
+        if (bit < 0) {
+            for (int i = id; i < subtreeEnd[id]; i++) {
+                result.add(vertices[i].getClassDescriptor());
+            }
+            return;
+        }
+        for (int i = 0; i < vertices.length; i++) {
+            if (i == id || interfaces[i].get(bit) || (id < i && i < subtreeEnd[id])) {
+                result.add(vertices[i].getClassDescriptor());
+            }
+        }
+    }
+
+    /**
+     * Determine whether an indexed class has a known subtype which is a
+     * class, rather than an interface.
+     *
+     * @param id
+     *            id of the class
+     * @return true if there is a known subclass
+     */
+    boolean hasKnownSubclass(int id) {
+        int bit = interfaceBit[id];
+        for (int i = id + 1; i < subtreeEnd[id]; i++) {
+            if (vertices[i].isResolved() && !vertices[i].isInterface()) {
+                return true;
+            }
+        }
+        if (bit >= 0) {
+            for (int i = 0; i < vertices.length; i++) {
+                if (interfaces[i].get(bit) && vertices[i].isResolved() && !vertices[i].isInterface()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
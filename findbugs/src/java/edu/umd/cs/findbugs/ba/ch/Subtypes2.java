@@ -28,6 +28,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.CheckForNull;
 
@@ -54,6 +56,9 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Class for performing class hierarchy queries. Does <em>not</em> require
  * JavaClass objects to be in memory. Instead, uses XClass objects.
+ * The inheritance graph is built lazily, so it and the query caches are
+ * guarded by a read/write lock to allow queries from analysis worker threads.
+ * Queries answered by the subtype index don't lock at all.
  *
  * @author David Hovemeyer
  */
@@ -65,6 +70,14 @@ public class Subtypes2 {
 
     public static final boolean DEBUG_QUERIES = SystemProperties.getBoolean("findbugs.subtypes2.debugqueries");
 
+    private static final boolean USE_SUBTYPE_INDEX = SystemProperties.getBoolean("findbugs.subtypes2.index", true);
+
+    /**
+     * Minimum number of queries answered without the subtype index before it
+     * is rebuilt for a graph that has grown.
+     */
+    private static final int MIN_QUERIES_BEFORE_REBUILD = 256;
+
     private final InheritanceGraph graph;
 
     private final Map<ClassDescriptor, ClassVertex> classDescriptorToVertexMap;
@@ -75,12 +88,28 @@ public class Subtypes2 {
 
     private final Set<XClass> xclassSet;
 
+    /**
+     * Immutable once built, so it may be read without locking
+     */
+    private volatile SubtypeIndex subtypeIndex;
+
+    private int queriesSinceIndexBuilt;
+
     private final DualKeyHashMap<ReferenceType, ReferenceType, ReferenceType> firstCommonSuperclassQueryCache;
 
     private final ObjectType SERIALIZABLE;
 
     private final ObjectType CLONEABLE;
 
+    /**
+     * Guards the inheritance graph, the query caches and the subtype index
+     * rebuild. Lookups in the graph and in plain HashMaps take the read lock;
+     * anything which may resolve a class, or uses a MapCache (whose get()
+     * reorders it), takes the write lock. Never take the write lock while
+     * holding the read lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     /**
      * Object to record the results of a supertype search.
      */
@@ -221,23 +250,40 @@ public class Subtypes2 {
      *            application XClass to add to the inheritance graph
      */
     public void addApplicationClass(XClass appXClass) {
-        for (XMethod m : appXClass.getXMethods()) {
-            if (m.isStub()) {
-                return;
+        lock.writeLock().lock();
+        try {
+            for (XMethod m : appXClass.getXMethods()) {
+                if (m.isStub()) {
+                    return;
+                }
             }
-        }
-        ClassVertex vertex = addClassAndGetClassVertex(appXClass);
-        vertex.markAsApplicationClass();
+            ClassVertex vertex = addClassAndGetClassVertex(appXClass);
+            vertex.markAsApplicationClass();
 
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public boolean isApplicationClass(ClassDescriptor descriptor) {
         assert descriptor != null;
+        lock.readLock().lock();
+        try {
+            ClassVertex vertex = classDescriptorToVertexMap.get(descriptor);
+            if (vertex != null && vertex.isResolved()) {
+                return vertex.isApplicationClass();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
         try {
             return resolveClassVertex(descriptor).isApplicationClass();
         } catch (ClassNotFoundException e) {
             AnalysisContext.reportMissingClass(e);
             return false;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -249,7 +295,12 @@ public class Subtypes2 {
      *            XClass to add to the inheritance graph
      */
     public void addClass(XClass xclass) {
-        addClassAndGetClassVertex(xclass);
+        lock.writeLock().lock();
+        try {
+            addClassAndGetClassVertex(xclass);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -401,13 +452,22 @@ public class Subtypes2 {
     boolean prevResult;
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
-        if (subDesc == prevSubDesc && prevSuperDesc == superDesc) {
+        SubtypeIndex currentIndex = getIndexOfSupertypes(subDesc);
+        if (currentIndex != null) {
+            return currentIndex.isSubtype(currentIndex.getId(subDesc), superDesc);
+        }
+        lock.writeLock().lock();
+        try {
+            if (subDesc == prevSubDesc && prevSuperDesc == superDesc) {
+                return prevResult;
+            }
+            prevResult = isSubtype0(subDesc, superDesc);
+            prevSubDesc = subDesc;
+            prevSuperDesc = superDesc;
             return prevResult;
+        } finally {
+            lock.writeLock().unlock();
         }
-        prevResult = isSubtype0(subDesc, superDesc);
-        prevSubDesc = subDesc;
-        prevSuperDesc = superDesc;
-        return prevResult;
     }
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor... superDesc) throws ClassNotFoundException {
@@ -416,6 +476,35 @@ public class Subtypes2 {
                 return true;
             }
         }
+        SubtypeIndex currentIndex = getIndexOfSupertypes(subDesc);
+        if (currentIndex != null) {
+            int subId = currentIndex.getId(subDesc);
+            for (ClassDescriptor s : superDesc) {
+                if (currentIndex.isSubtype(subId, s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            return isSubtypeOfAny(subDesc, superDesc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isSubtypeOfAny(ClassDescriptor subDesc, ClassDescriptor... superDesc) throws ClassNotFoundException {
+        SubtypeIndex index = getSubtypeIndex();
+        int subId = index == null ? -1 : index.getId(subDesc);
+        if (subId >= 0 && !index.hasMissingSupertypes(subId)) {
+            for (ClassDescriptor s : superDesc) {
+                if (index.isSubtype(subId, s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
         XClass xclass = AnalysisContext.currentXFactory().getXClass(subDesc);
         if (xclass != null) {
             ClassDescriptor xSuper = xclass.getSuperclassDescriptor();
@@ -425,6 +514,15 @@ public class Subtypes2 {
                 }
             }
         }
+        if (subId >= 0) {
+            for (ClassDescriptor s : superDesc) {
+                if (index.isSubtype(subId, s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        queriesSinceIndexBuilt++;
         SupertypeQueryResults supertypeQueryResults = getSupertypeQueryResults(subDesc);
         for (ClassDescriptor s : superDesc) {
             if (supertypeQueryResults.containsType(s)) {
@@ -449,6 +547,25 @@ public class Subtypes2 {
             return false;
         }
 
+        SubtypeIndex currentIndex = getIndexOfSupertypes(subDesc);
+        if (currentIndex != null) {
+            return currentIndex.isSubtype(currentIndex.getId(subDesc), superDesc);
+        }
+        lock.writeLock().lock();
+        try {
+            return computeIsSubtype(subDesc, superDesc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean computeIsSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
+        SubtypeIndex index = getSubtypeIndex();
+        int subId = index == null ? -1 : index.getId(subDesc);
+        if (subId >= 0 && !index.hasMissingSupertypes(subId)) {
+            return index.isSubtype(subId, superDesc);
+        }
+
         //        if (true) {
         // XXX call below causes 88% of all MissingClassException thrown (20000 on java* JDK7 classes)
         XClass xclass = AnalysisContext.currentXFactory().getXClass(subDesc);
@@ -485,6 +602,10 @@ public class Subtypes2 {
             System.out.println("CHECK: " + subDesc + " " + superDesc);
         }
          */
+        if (subId >= 0) {
+            return index.isSubtype(subId, superDesc);
+        }
+        queriesSinceIndexBuilt++;
         SupertypeQueryResults supertypeQueryResults = getSupertypeQueryResults(subDesc);
         // XXX call below causes 88% of all ClassNotFoundException thrown (20000 on java* JDK7 classes)
         return supertypeQueryResults.containsType(superDesc);
@@ -547,12 +668,27 @@ public class Subtypes2 {
             return a;
         }
 
-        ReferenceType answer = checkFirstCommonSuperclassQueryCache(a, b);
-        if (answer == null) {
-            answer = computeFirstCommonSuperclassOfReferenceTypes(a, b);
-            putFirstCommonSuperclassQueryCache(a, b, answer);
+        ReferenceType answer;
+        lock.readLock().lock();
+        try {
+            answer = checkFirstCommonSuperclassQueryCache(a, b);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (answer != null) {
+            return answer;
+        }
+        lock.writeLock().lock();
+        try {
+            answer = checkFirstCommonSuperclassQueryCache(a, b);
+            if (answer == null) {
+                answer = computeFirstCommonSuperclassOfReferenceTypes(a, b);
+                putFirstCommonSuperclassQueryCache(a, b, answer);
+            }
+            return answer;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return answer;
     }
 
     private ReferenceType computeFirstCommonSuperclassOfReferenceTypes(ReferenceType a, ReferenceType b)
@@ -704,13 +840,27 @@ public class Subtypes2 {
             return a;
         }
 
-        ObjectType firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
-        if (firstCommonSupertype == null) {
-            firstCommonSupertype = computeFirstCommonSuperclassOfObjectTypes(a, b);
-            firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+        ObjectType firstCommonSupertype;
+        lock.readLock().lock();
+        try {
+            firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (firstCommonSupertype != null) {
+            return firstCommonSupertype;
+        }
+        lock.writeLock().lock();
+        try {
+            firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
+            if (firstCommonSupertype == null) {
+                firstCommonSupertype = computeFirstCommonSuperclassOfObjectTypes(a, b);
+                firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+            }
+            return firstCommonSupertype;
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        return firstCommonSupertype;
     }
 
     private ObjectType computeFirstCommonSuperclassOfObjectTypes(ObjectType a, ObjectType b) throws ClassNotFoundException {
@@ -822,12 +972,24 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      */
     public Set<ClassDescriptor> getSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
-        Set<ClassDescriptor> result = subtypeSetMap.get(classDescriptor);
-        if (result == null) {
-            result = computeKnownSubtypes(classDescriptor);
-            subtypeSetMap.put(classDescriptor, result);
+        lock.writeLock().lock();
+        try {
+            Set<ClassDescriptor> result = subtypeSetMap.get(classDescriptor);
+            if (result == null) {
+                resolveClassVertex(classDescriptor);
+                SubtypeIndex index = getCurrentSubtypeIndex();
+                if (index != null) {
+                    result = new HashSet<ClassDescriptor>();
+                    index.addSubtypes(index.getId(classDescriptor), result);
+                } else {
+                    result = computeKnownSubtypes(classDescriptor);
+                }
+                subtypeSetMap.put(classDescriptor, result);
+            }
+            return result;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return result;
     }
 
     /**
@@ -855,9 +1017,24 @@ public class Subtypes2 {
      * @throws ClassNotFoundException
      */
     public Set<ClassDescriptor> getDirectSubtypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+        lock.readLock().lock();
+        try {
+            ClassVertex vertex = classDescriptorToVertexMap.get(classDescriptor);
+            if (vertex != null && vertex.isResolved()) {
+                return getDirectSubtypes(vertex);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            return getDirectSubtypes(resolveClassVertex(classDescriptor));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        ClassVertex startVertex = resolveClassVertex(classDescriptor);
-
+    private Set<ClassDescriptor> getDirectSubtypes(ClassVertex startVertex) {
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
         Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(startVertex);
         while (i.hasNext()) {
@@ -880,11 +1057,40 @@ public class Subtypes2 {
      */
     public Set<ClassDescriptor> getTransitiveCommonSubtypes(ClassDescriptor classDescriptor1, ClassDescriptor classDescriptor2)
             throws ClassNotFoundException {
-        Set<ClassDescriptor> subtypes1 = getSubtypes(classDescriptor1);
-        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>(subtypes1);
-        Set<ClassDescriptor> subtypes2 = getSubtypes(classDescriptor2);
-        result.retainAll(subtypes2);
-        return result;
+        lock.writeLock().lock();
+        try {
+            Set<ClassDescriptor> subtypes1 = getSubtypes(classDescriptor1);
+            resolveClassVertex(classDescriptor2);
+            SubtypeIndex index = getCurrentSubtypeIndex();
+            if (index != null) {
+                // Check each subtype of the first class against the second
+                // one, instead of enumerating the subtypes of both
+                Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+                for (ClassDescriptor subtype : subtypes1) {
+                    int subId = index.getId(subtype);
+                    if (subId >= 0 && isIndexedSubtype(index, subId, classDescriptor2)) {
+                        result.add(subtype);
+                    }
+                }
+                return result;
+            }
+            Set<ClassDescriptor> result = new HashSet<ClassDescriptor>(subtypes1);
+            Set<ClassDescriptor> subtypes2 = getSubtypes(classDescriptor2);
+            result.retainAll(subtypes2);
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean isIndexedSubtype(SubtypeIndex index, int subId, ClassDescriptor superDesc) {
+        try {
+            return index.isSubtype(subId, superDesc);
+        } catch (ClassNotFoundException e) {
+            // superDesc is a known supertype of all the classes it is
+            // really a supertype of
+            return false;
+        }
     }
 
 
@@ -894,7 +1100,12 @@ public class Subtypes2 {
      * @return Collection of all XClass objects
      */
     public Collection<XClass> getXClassCollection() {
-        return Collections.<XClass> unmodifiableCollection(xclassSet);
+        lock.readLock().lock();
+        try {
+            return Collections.<XClass> unmodifiableCollection(xclassSet);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -956,40 +1167,45 @@ public class Subtypes2 {
      *             if the start vertex cannot be resolved
      */
     public void traverseSupertypes(ClassDescriptor start, InheritanceGraphVisitor visitor) throws ClassNotFoundException {
-        LinkedList<SupertypeTraversalPath> workList = new LinkedList<SupertypeTraversalPath>();
+        lock.writeLock().lock();
+        try {
+            LinkedList<SupertypeTraversalPath> workList = new LinkedList<SupertypeTraversalPath>();
 
-        ClassVertex startVertex = resolveClassVertex(start);
-        workList.addLast(new SupertypeTraversalPath(startVertex));
+            ClassVertex startVertex = resolveClassVertex(start);
+            workList.addLast(new SupertypeTraversalPath(startVertex));
 
-        while (!workList.isEmpty()) {
-            SupertypeTraversalPath cur = workList.removeFirst();
+            while (!workList.isEmpty()) {
+                SupertypeTraversalPath cur = workList.removeFirst();
 
-            ClassVertex vertex = cur.getNext();
-            assert !cur.hasBeenSeen(vertex.getClassDescriptor());
-            cur.markSeen(vertex.getClassDescriptor());
+                ClassVertex vertex = cur.getNext();
+                assert !cur.hasBeenSeen(vertex.getClassDescriptor());
+                cur.markSeen(vertex.getClassDescriptor());
 
-            if (!visitor.visitClass(vertex.getClassDescriptor(), vertex.getXClass())) {
-                // Visitor doesn't want to continue on this path
-                continue;
-            }
+                if (!visitor.visitClass(vertex.getClassDescriptor(), vertex.getXClass())) {
+                    // Visitor doesn't want to continue on this path
+                    continue;
+                }
 
-            if (!vertex.isResolved()) {
-                // Unknown class - so, we don't know its immediate supertypes
-                continue;
-            }
+                if (!vertex.isResolved()) {
+                    // Unknown class - so, we don't know its immediate supertypes
+                    continue;
+                }
 
-            // Advance to direct superclass
-            ClassDescriptor superclassDescriptor = vertex.getXClass().getSuperclassDescriptor();
-            if (superclassDescriptor != null && traverseEdge(vertex, superclassDescriptor, false, visitor)) {
-                addToWorkList(workList, cur, superclassDescriptor);
-            }
+                // Advance to direct superclass
+                ClassDescriptor superclassDescriptor = vertex.getXClass().getSuperclassDescriptor();
+                if (superclassDescriptor != null && traverseEdge(vertex, superclassDescriptor, false, visitor)) {
+                    addToWorkList(workList, cur, superclassDescriptor);
+                }
 
-            // Advance to directly-implemented interfaces
-            for (ClassDescriptor ifaceDesc : vertex.getXClass().getInterfaceDescriptorList()) {
-                if (traverseEdge(vertex, ifaceDesc, true, visitor)) {
-                    addToWorkList(workList, cur, ifaceDesc);
+                // Advance to directly-implemented interfaces
+                for (ClassDescriptor ifaceDesc : vertex.getXClass().getInterfaceDescriptorList()) {
+                    if (traverseEdge(vertex, ifaceDesc, true, visitor)) {
+                        addToWorkList(workList, cur, ifaceDesc);
+                    }
                 }
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -1007,7 +1223,12 @@ public class Subtypes2 {
      *             if the start vertex cannot be resolved
      */
     public void traverseSupertypesDepthFirst(ClassDescriptor start, SupertypeTraversalVisitor visitor) throws ClassNotFoundException {
-        this.traverseSupertypesDepthFirstHelper(start, visitor, new HashSet<ClassDescriptor>());
+        lock.writeLock().lock();
+        try {
+            this.traverseSupertypesDepthFirstHelper(start, visitor, new HashSet<ClassDescriptor>());
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     private void traverseSupertypesDepthFirstHelper(ClassDescriptor cur, SupertypeTraversalVisitor visitor,
@@ -1079,6 +1300,62 @@ public class Subtypes2 {
                 supertypeVertex.getXClass());
     }
 
+    /**
+     * Get the subtype index. The index is built on first use; once the
+     * inheritance graph has grown, it is rebuilt after enough queries had to
+     * be answered without it to pay for the rebuild.
+     *
+     * @return the SubtypeIndex, or null if it is disabled
+     */
+    private @CheckForNull SubtypeIndex getSubtypeIndex() {
+        if (!USE_SUBTYPE_INDEX) {
+            return null;
+        }
+        if (subtypeIndex == null
+                || (queriesSinceIndexBuilt >= Math.max(MIN_QUERIES_BEFORE_REBUILD, graph.getNumVertices() / 8) && !subtypeIndex
+                        .isCurrent(graph))) {
+            long start = DEBUG ? System.nanoTime() : 0;
+            subtypeIndex = new SubtypeIndex(graph);
+            queriesSinceIndexBuilt = 0;
+            if (DEBUG) {
+                System.out.println("Built subtype index of " + graph.getNumVertices() + " classes in "
+                        + (System.nanoTime() - start) / 1000 + " us");
+            }
+        }
+        return subtypeIndex;
+    }
+
+    /**
+     * Get the subtype index without locking, if it can answer all supertype
+     * queries of the given class.
+     *
+     * @return the SubtypeIndex, or null if the class isn't indexed, or has a
+     *         missing supertype
+     */
+    private @CheckForNull SubtypeIndex getIndexOfSupertypes(ClassDescriptor classDescriptor) {
+        SubtypeIndex index = subtypeIndex;
+        if (index == null) {
+            return null;
+        }
+        int id = index.getId(classDescriptor);
+        return id >= 0 && !index.hasMissingSupertypes(id) ? index : null;
+    }
+
+    /**
+     * Get the subtype index, if it reflects the current inheritance graph,
+     * as needed to enumerate subtypes.
+     *
+     * @return the SubtypeIndex, or null if it is disabled or out of date
+     */
+    private @CheckForNull SubtypeIndex getCurrentSubtypeIndex() {
+        SubtypeIndex index = getSubtypeIndex();
+        if (index != null && !index.isCurrent(graph)) {
+            queriesSinceIndexBuilt++;
+            return null;
+        }
+        return index;
+    }
+
     /**
      * Compute set of known subtypes of class named by given ClassDescriptor.
      *
@@ -1118,40 +1395,50 @@ public class Subtypes2 {
 
 
     public boolean hasKnownSubclasses(ClassDescriptor classDescriptor) throws ClassNotFoundException {
+        lock.writeLock().lock();
+        try {
 
-        ClassVertex startVertex = resolveClassVertex(classDescriptor);
-        if (!startVertex.isInterface()) {
-            return true;
-        }
+            ClassVertex startVertex = resolveClassVertex(classDescriptor);
+            if (!startVertex.isInterface()) {
+                return true;
+            }
 
-        LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
+            SubtypeIndex index = getCurrentSubtypeIndex();
+            if (index != null) {
+                return index.hasKnownSubclass(index.getId(classDescriptor));
+            }
 
-        workList.addLast(startVertex);
+            LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
 
-        Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
+            workList.addLast(startVertex);
 
-        while (!workList.isEmpty()) {
-            ClassVertex current = workList.removeFirst();
+            Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
 
-            if (!result.add(current.getClassDescriptor())) {
-                // Already added this class
-                continue;
-            }
+            while (!workList.isEmpty()) {
+                ClassVertex current = workList.removeFirst();
 
-            // Add class to the result
-            if (current.isResolved() && !current.isInterface()) {
-                return true;
-            }
+                if (!result.add(current.getClassDescriptor())) {
+                    // Already added this class
+                    continue;
+                }
 
-            // Add all known subtype vertices to the work list
-            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getSource());
+                // Add class to the result
+                if (current.isResolved() && !current.isInterface()) {
+                    return true;
+                }
+
+                // Add all known subtype vertices to the work list
+                Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getSource());
+                }
             }
-        }
 
-        return false;
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     private Set<ClassDescriptor> computeKnownSupertypes(ClassDescriptor classDescriptor) throws ClassNotFoundException {
         LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
@@ -1192,12 +1479,17 @@ public class Subtypes2 {
      * @return SupertypeQueryResults for the class named by the ClassDescriptor
      */
     public SupertypeQueryResults getSupertypeQueryResults(ClassDescriptor classDescriptor) {
-        SupertypeQueryResults supertypeQueryResults = supertypeSetMap.get(classDescriptor);
-        if (supertypeQueryResults == null) {
-            supertypeQueryResults = computeSupertypes(classDescriptor);
-            supertypeSetMap.put(classDescriptor, supertypeQueryResults);
+        lock.writeLock().lock();
+        try {
+            SupertypeQueryResults supertypeQueryResults = supertypeSetMap.get(classDescriptor);
+            if (supertypeQueryResults == null) {
+                supertypeQueryResults = computeSupertypes(classDescriptor);
+                supertypeSetMap.put(classDescriptor, supertypeQueryResults);
+            }
+            return supertypeQueryResults;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return supertypeQueryResults;
     }
 
     /**
@@ -25,9 +25,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -245,10 +245,15 @@ public class TypeQualifierValue<A extends Annotation> {
         /**
          * Set of all known TypeQualifierValues.
          */
-        Set<TypeQualifierValue<?>> allKnownTypeQualifiers = new HashSet<TypeQualifierValue<?>>();
+        Set<TypeQualifierValue<?>> allKnownTypeQualifiers = new CopyOnWriteArraySet<TypeQualifierValue<?>>();
     }
 
-    private static ThreadLocal<Data> instance = new ThreadLocal<Data>() {
+    /**
+     * Inherited by analysis worker threads, so that all threads of an analysis
+     * agree on the set of known type qualifiers. Access to the interning map
+     * is guarded by the Data object.
+     */
+    private static InheritableThreadLocal<Data> instance = new InheritableThreadLocal<Data>() {
         @Override
         protected Data initialValue() {
             return new Data();
@@ -296,14 +301,25 @@ public class TypeQualifierValue<A extends Annotation> {
     @SuppressWarnings("rawtypes")
     public static @Nonnull
     TypeQualifierValue<?> getValue(ClassDescriptor desc, @CheckForNull  Object value) {
-        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue<?>> map = instance.get().typeQualifierMap;
-        TypeQualifierValue<?> result = map.get(desc, value);
-        if (result != null) {
-            return result;
+        Data data = instance.get();
+        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue<?>> map = data.typeQualifierMap;
+        synchronized (data) {
+            TypeQualifierValue<?> result = map.get(desc, value);
+            if (result != null) {
+                return result;
+            }
+        }
+        // Construct outside of the lock: the constructor consults the
+        // analysis cache, which may in turn intern other type qualifiers
+        TypeQualifierValue<?> result = new TypeQualifierValue(desc, value);
+        synchronized (data) {
+            TypeQualifierValue<?> existing = map.get(desc, value);
+            if (existing != null) {
+                return existing;
+            }
+            map.put(desc, value, result);
+            data.allKnownTypeQualifiers.add(result);
         }
-        result = new TypeQualifierValue(desc, value);
-        map.put(desc, value, result);
-        instance.get().allKnownTypeQualifiers.add(result);
         return result;
     }
     @SuppressWarnings("unchecked")
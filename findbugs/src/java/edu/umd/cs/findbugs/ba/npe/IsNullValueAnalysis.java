@@ -20,7 +20,9 @@
 package edu.umd.cs.findbugs.ba.npe;
 
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.CheckForNull;
@@ -51,6 +53,7 @@ import edu.umd.cs.findbugs.ba.JavaClassAndMethod;
 import edu.umd.cs.findbugs.ba.Location;
 import edu.umd.cs.findbugs.ba.NullnessAnnotation;
 import edu.umd.cs.findbugs.ba.SignatureConverter;
+import edu.umd.cs.findbugs.ba.WorklistDataflowAnalysis;
 import edu.umd.cs.findbugs.ba.XFactory;
 import edu.umd.cs.findbugs.ba.XMethod;
 import edu.umd.cs.findbugs.ba.XMethodParameter;
@@ -70,7 +73,7 @@ import edu.umd.cs.findbugs.classfile.MethodDescriptor;
  * @see IsNullValueFrameModelingVisitor
  */
 public class IsNullValueAnalysis extends FrameDataflowAnalysis<IsNullValue, IsNullValueFrame> implements EdgeTypes,
-IsNullValueAnalysisFeatures {
+IsNullValueAnalysisFeatures, WorklistDataflowAnalysis {
     static final boolean DEBUG = SystemProperties.getBoolean("inva.debug");
 
     static {
@@ -87,7 +90,15 @@ IsNullValueAnalysisFeatures {
 
     private final CFG cfg;
 
-    private final Set<LocationWhereValueBecomesNull> locationWhereValueBecomesNullSet;
+    /**
+     * Locations where values become null, recorded by the transfer of each
+     * block and the meet along each edge. Recomputing a block or edge
+     * replaces what it recorded before, so after the dataflow converges only
+     * locations found from the final facts remain.
+     */
+    private final Map<BasicBlock, Set<LocationWhereValueBecomesNull>> blockLocationWhereValueBecomesNullMap;
+
+    private final Map<Edge, Set<LocationWhereValueBecomesNull>> edgeLocationWhereValueBecomesNullMap;
 
     private final boolean trackValueNumbers;
 
@@ -114,7 +125,8 @@ IsNullValueAnalysisFeatures {
                 typeDataflow, trackValueNumbers);
         this.vnaDataflow = vnaDataflow;
         this.cfg = cfg;
-        this.locationWhereValueBecomesNullSet = new HashSet<LocationWhereValueBecomesNull>();
+        this.blockLocationWhereValueBecomesNullMap = new HashMap<BasicBlock, Set<LocationWhereValueBecomesNull>>();
+        this.edgeLocationWhereValueBecomesNullMap = new HashMap<Edge, Set<LocationWhereValueBecomesNull>>();
         this.pointerEqualityCheck = getForPointerEqualityCheck(cfg, vnaDataflow);
 
         if (DEBUG) {
@@ -278,6 +290,9 @@ IsNullValueAnalysisFeatures {
     @Override
     public void transfer(BasicBlock basicBlock, @CheckForNull InstructionHandle end, IsNullValueFrame start,
             IsNullValueFrame result) throws DataflowAnalysisException {
+        if (end == null) {
+            blockLocationWhereValueBecomesNullMap.remove(basicBlock);
+        }
         startTransfer();
         super.transfer(basicBlock, end, start, result);
         endTransfer(basicBlock, end, result);
@@ -401,6 +416,7 @@ IsNullValueAnalysisFeatures {
     public void meetInto(IsNullValueFrame fact, Edge edge, IsNullValueFrame result, boolean propagatePhiNodeInformation)
             throws DataflowAnalysisException {
 
+        edgeLocationWhereValueBecomesNullMap.remove(edge);
         if (fact.isValid()) {
             IsNullValueFrame tmpFact = null;
 
@@ -502,7 +518,8 @@ IsNullValueAnalysisFeatures {
                                         // Make a note of the value that has
                                         // become null
                                         // due to the if comparison.
-                                        addLocationWhereValueBecomesNull(new LocationWhereValueBecomesNull(atIf, valueTested));
+                                        addLocationWhereValueBecomesNull(edge, new LocationWhereValueBecomesNull(atIf,
+                                                valueTested));
                                         ValueNumber knownNonnull = getKnownNonnullDueToPointerDisequality(valueTested, atIf
                                                 .getHandle().getPosition());
                                         if (knownNonnull != null) {
@@ -618,17 +635,40 @@ IsNullValueAnalysisFeatures {
         // At the beginning of each iteration, clear the set of locations
         // where values become null. That way, after the final iteration
         // of dataflow analysis the set should be as accurate as possible.
-        locationWhereValueBecomesNullSet.clear();
+        blockLocationWhereValueBecomesNullMap.clear();
+        edgeLocationWhereValueBecomesNullMap.clear();
     }
 
     public void addLocationWhereValueBecomesNull(LocationWhereValueBecomesNull locationWhereValueBecomesNull) {
         // System.out.println("Location becomes null: " +
         // locationWhereValueBecomesNull );
-        locationWhereValueBecomesNullSet.add(locationWhereValueBecomesNull);
+        addTo(blockLocationWhereValueBecomesNullMap, locationWhereValueBecomesNull.getLocation().getBasicBlock(),
+                locationWhereValueBecomesNull);
+    }
+
+    private void addLocationWhereValueBecomesNull(Edge edge, LocationWhereValueBecomesNull locationWhereValueBecomesNull) {
+        addTo(edgeLocationWhereValueBecomesNullMap, edge, locationWhereValueBecomesNull);
+    }
+
+    private static <K> void addTo(Map<K, Set<LocationWhereValueBecomesNull>> map, K key,
+            LocationWhereValueBecomesNull locationWhereValueBecomesNull) {
+        Set<LocationWhereValueBecomesNull> locations = map.get(key);
+        if (locations == null) {
+            locations = new HashSet<LocationWhereValueBecomesNull>();
+            map.put(key, locations);
+        }
+        locations.add(locationWhereValueBecomesNull);
     }
 
     public Set<LocationWhereValueBecomesNull> getLocationWhereValueBecomesNullSet() {
-        return locationWhereValueBecomesNullSet;
+        Set<LocationWhereValueBecomesNull> result = new HashSet<LocationWhereValueBecomesNull>();
+        for (Set<LocationWhereValueBecomesNull> locations : blockLocationWhereValueBecomesNullMap.values()) {
+            result.addAll(locations);
+        }
+        for (Set<LocationWhereValueBecomesNull> locations : edgeLocationWhereValueBecomesNullMap.values()) {
+            result.addAll(locations);
+        }
+        return result;
     }
 
     @Override
@@ -913,7 +953,7 @@ IsNullValueAnalysisFeatures {
 
     }
 
-    public IsNullValueFrame getFactAtMidEdge(Edge edge) throws DataflowAnalysisException {
+    public synchronized IsNullValueFrame getFactAtMidEdge(Edge edge) throws DataflowAnalysisException {
         BasicBlock block = isForwards() ? edge.getSource() : edge.getTarget();
 
         IsNullValueFrame predFact = createFact();
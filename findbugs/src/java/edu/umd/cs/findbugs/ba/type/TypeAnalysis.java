@@ -61,6 +61,7 @@ import edu.umd.cs.findbugs.ba.Location;
 import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
 import edu.umd.cs.findbugs.ba.RepositoryLookupFailureCallback;
 import edu.umd.cs.findbugs.ba.SignatureConverter;
+import edu.umd.cs.findbugs.ba.WorklistDataflowAnalysis;
 import edu.umd.cs.findbugs.ba.generic.GenericSignatureParser;
 import edu.umd.cs.findbugs.ba.generic.GenericUtilities;
 import edu.umd.cs.findbugs.ba.vna.ValueNumber;
@@ -83,7 +84,7 @@ import edu.umd.cs.findbugs.ba.vna.ValueNumberFrame;
  * @see edu.umd.cs.findbugs.ba.DataflowAnalysis
  * @see TypeFrame
  */
-public class TypeAnalysis extends FrameDataflowAnalysis<Type, TypeFrame> implements EdgeTypes {
+public class TypeAnalysis extends FrameDataflowAnalysis<Type, TypeFrame> implements EdgeTypes, WorklistDataflowAnalysis {
 
     public static final boolean DEBUG = SystemProperties.getBoolean("ta.debug");
 
@@ -123,7 +124,7 @@ public class TypeAnalysis extends FrameDataflowAnalysis<Type, TypeFrame> impleme
             edgeExceptionMap.put(edge, exceptionSet);
         }
 
-        public ExceptionSet getEdgeExceptionSet(Edge edge) {
+        public synchronized ExceptionSet getEdgeExceptionSet(Edge edge) {
             ExceptionSet edgeExceptionSet = edgeExceptionMap.get(edge);
             if (edgeExceptionSet == null) {
                 edgeExceptionSet = exceptionSetFactory.createExceptionSet();
@@ -310,7 +311,7 @@ public class TypeAnalysis extends FrameDataflowAnalysis<Type, TypeFrame> impleme
      *            the Edge
      * @return the ExceptionSet
      */
-    public ExceptionSet getEdgeExceptionSet(Edge edge) {
+    public synchronized ExceptionSet getEdgeExceptionSet(Edge edge) {
         CachedExceptionSet cachedExceptionSet = thrownExceptionSetMap.get(edge.getSource());
         return cachedExceptionSet.getEdgeExceptionSet(edge);
     }
@@ -41,6 +41,7 @@ import edu.umd.cs.findbugs.ba.FrameDataflowAnalysis;
 import edu.umd.cs.findbugs.ba.Location;
 import edu.umd.cs.findbugs.ba.RepositoryLookupFailureCallback;
 import edu.umd.cs.findbugs.ba.SignatureParser;
+import edu.umd.cs.findbugs.ba.WorklistDataflowAnalysis;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 
 /**
@@ -55,7 +56,8 @@ import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
  * @see ValueNumber
  * @see edu.umd.cs.findbugs.ba.DominatorsAnalysis
  */
-public class ValueNumberAnalysis extends FrameDataflowAnalysis<ValueNumber, ValueNumberFrame> {
+public class ValueNumberAnalysis extends FrameDataflowAnalysis<ValueNumber, ValueNumberFrame> implements
+        WorklistDataflowAnalysis {
 
     private final static boolean TRACE =  SystemProperties.getBoolean("vna.trace");
 
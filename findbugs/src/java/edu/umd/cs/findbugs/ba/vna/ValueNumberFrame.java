@@ -322,7 +322,10 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
                 changed = !this.getAvailableLoadMap().isEmpty();
                 setAvailableLoadMap(Collections.<AvailableLoad, ValueNumber[]> emptyMap());
             } else if (!other.isTop()) {
-                for (Map.Entry<AvailableLoad, ValueNumber[]> e : getUpdateableAvailableLoadMap().entrySet()) {
+                // The load map may be shared with other frames: only make
+                // our own copy if some load actually gets a new value
+                Map<AvailableLoad, ValueNumber[]> updates = null;
+                for (Map.Entry<AvailableLoad, ValueNumber[]> e : getAvailableLoadMap().entrySet()) {
                     AvailableLoad load = e.getKey();
                     ValueNumber[] myVN = e.getValue();
                     ValueNumber[] otherVN = other.getAvailableLoadMap().get(load);
@@ -368,7 +371,7 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
                                         + " x " + Arrays.toString(otherVN) + " in " + System.identityHashCode(this));
                             }
                             changed = true;
-                            e.setValue(new ValueNumber[] { phi });
+                            updates = addUpdate(updates, load, phi);
                         } else {
                             if (RLE_DEBUG) {
                                 System.out.println("Reusing phi node : " + phi + " for " + load + " from "
@@ -376,19 +379,22 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
                                         + System.identityHashCode(this));
                             }
                             if (myVN.length != 1 || !myVN[0].equals(phi)) {
-                                e.setValue(new ValueNumber[] { phi });
+                                updates = addUpdate(updates, load, phi);
                             }
                         }
 
                     }
 
                 }
+                if (updates != null) {
+                    getUpdateableAvailableLoadMap().putAll(updates);
+                }
             }
             Map<ValueNumber, AvailableLoad> previouslyKnownAsOther = other.getPreviouslyKnownAs();
             if (getPreviouslyKnownAs() != previouslyKnownAsOther && previouslyKnownAsOther.size() != 0) {
                 if (getPreviouslyKnownAs().size() == 0) {
                     assignPreviouslyKnownAs(other);
-                } else {
+                } else if (!containsAll(getPreviouslyKnownAs(), previouslyKnownAsOther)) {
                     getUpdateablePreviouslyKnownAs().putAll(previouslyKnownAsOther);
                 }
             }
@@ -403,6 +409,32 @@ public class ValueNumberFrame extends Frame<ValueNumber> implements ValueNumberA
         }
     }
 
+    private static Map<AvailableLoad, ValueNumber[]> addUpdate(@CheckForNull Map<AvailableLoad, ValueNumber[]> updates,
+            AvailableLoad load, ValueNumber phi) {
+        if (updates == null) {
+            updates = new HashMap<AvailableLoad, ValueNumber[]>(4);
+        }
+        updates.put(load, new ValueNumber[] { phi });
+        return updates;
+    }
+
+    /**
+     * @return true if putting all entries of other into map wouldn't change
+     *         map
+     */
+    private static <K, V> boolean containsAll(Map<K, V> map, Map<K, V> other) {
+        if (other.size() > map.size()) {
+            return false;
+        }
+        for (Map.Entry<K, V> e : other.entrySet()) {
+            V value = map.get(e.getKey());
+            if (value == null || !value.equals(e.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     ValueNumber getMergedValue(int slot) {
         return mergedValueList.get(slot);
     }
@@ -24,6 +24,10 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.JumpInfo;
+import edu.umd.cs.findbugs.OpcodeStack.StackModel;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 
 /**
  * Base class for Detectors that want to scan the bytecode of a method and use
@@ -35,6 +39,8 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
 
     private final boolean isUsingCustomUserValue;
 
+    private boolean sharingStackModel;
+
     public OpcodeStackDetector() {
         super();
         isUsingCustomUserValue = getClass().isAnnotationPresent(OpcodeStack.CustomUserValue.class);
@@ -59,11 +65,32 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
             return;
         }
         stack = new OpcodeStack();
-        stack.resetForMethodEntry(this);
+        StackModel model = sharingStackModel ? getStackModel(obj) : null;
+        if (model != null) {
+            stack.resetForMethodEntry(this, model);
+        } else {
+            stack.resetForMethodEntry(this);
+        }
         super.visitCode(obj);
         stack = null;
     }
 
+    private StackModel getStackModel(Code obj) {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (analysisCache == null) {
+            return null;
+        }
+        try {
+            StackModel model = analysisCache.getMethodAnalysis(StackModel.class, getXMethod().getMethodDescriptor());
+            if (model != null && model.isModelOf(obj)) {
+                return model;
+            }
+        } catch (CheckedAnalysisException e) {
+            // model the stack ourselves
+        }
+        return null;
+    }
+
     @Override
     public boolean beforeOpcode(int seen) {
         stack.precomputation(this);
@@ -99,4 +126,31 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
     public final boolean isUsingCustomUserValue() {
         return isUsingCustomUserValue;
     }
+
+    /**
+     * @return true if this detector may replay the stack model shared by the
+     *         OpcodeStackDetectors of an analysis pass instead of modeling the
+     *         stack itself: it must use neither custom user values nor custom
+     *         jump info, and must not be annotated with
+     *         {@link edu.umd.cs.findbugs.OpcodeStack.ModifiesStack}
+     */
+    public boolean canShareStackModel() {
+        return !isUsingCustomUserValue && !(this instanceof WithCustomJumpInfo)
+                && !getClass().isAnnotationPresent(OpcodeStack.ModifiesStack.class);
+    }
+
+    /**
+     * Replay the stack model of each method shared through the analysis cache
+     * instead of modeling the stack. Only worth it if several detectors of
+     * the same analysis pass share the model.
+     *
+     * @see #canShareStackModel()
+     */
+    public void setSharingStackModel(boolean sharingStackModel) {
+        this.sharingStackModel = sharingStackModel && canShareStackModel();
+    }
+
+    public boolean isSharingStackModel() {
+        return sharingStackModel;
+    }
 }
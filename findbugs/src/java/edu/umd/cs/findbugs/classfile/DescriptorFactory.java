@@ -20,8 +20,8 @@
 package edu.umd.cs.findbugs.classfile;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -42,30 +42,34 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Factory for creating ClassDescriptors, MethodDescriptors, and
  * FieldDescriptors.
+ * <p>
+ * The factory is inherited by threads created from the analysis thread, so
+ * analysis worker threads share the same canonical descriptors. All methods
+ * may be called concurrently.
  *
  * @author David Hovemeyer
  */
 public class DescriptorFactory {
-    private static ThreadLocal<DescriptorFactory> instanceThreadLocal = new ThreadLocal<DescriptorFactory>() {
+    private static InheritableThreadLocal<DescriptorFactory> instanceThreadLocal = new InheritableThreadLocal<DescriptorFactory>() {
         @Override
         protected DescriptorFactory initialValue() {
             return new DescriptorFactory();
         }
     };
 
-    private final Map<String, ClassDescriptor> classDescriptorMap;
+    private final ConcurrentHashMap<String, ClassDescriptor> classDescriptorMap;
 
-    private final Map<String, ClassDescriptor> dottedClassDescriptorMap;
+    private final ConcurrentHashMap<String, ClassDescriptor> dottedClassDescriptorMap;
 
-    private final Map<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
+    private final ConcurrentHashMap<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
 
-    private final Map<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
+    private final ConcurrentHashMap<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
 
     private DescriptorFactory() {
-        this.classDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.dottedClassDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.methodDescriptorMap = new HashMap<MethodDescriptor, MethodDescriptor>();
-        this.fieldDescriptorMap = new HashMap<FieldDescriptor, FieldDescriptor>();
+        this.classDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.dottedClassDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.methodDescriptorMap = new ConcurrentHashMap<MethodDescriptor, MethodDescriptor>();
+        this.fieldDescriptorMap = new ConcurrentHashMap<FieldDescriptor, FieldDescriptor>();
     }
 
     private final MapCache<String, String> stringCache = new MapCache<String, String>(10000);
@@ -75,11 +79,13 @@ public class DescriptorFactory {
             return s;
         }
         DescriptorFactory df =  instanceThreadLocal.get();
-        String cached = df.stringCache.get(s);
-        if (cached != null) {
-            return cached;
+        synchronized (df.stringCache) {
+            String cached = df.stringCache.get(s);
+            if (cached != null) {
+                return cached;
+            }
+            df.stringCache.put(s, s);
         }
-        df.stringCache.put(s, s);
         return s;
     }
 
@@ -126,7 +132,10 @@ public class DescriptorFactory {
         ClassDescriptor classDescriptor = classDescriptorMap.get(className);
         if (classDescriptor == null) {
             classDescriptor = new ClassDescriptor(className);
-            classDescriptorMap.put(className, classDescriptor);
+            ClassDescriptor existing = classDescriptorMap.putIfAbsent(className, classDescriptor);
+            if (existing != null) {
+                classDescriptor = existing;
+            }
         }
         return classDescriptor;
     }
@@ -173,9 +182,8 @@ public class DescriptorFactory {
             throw new NullPointerException("className must be nonnull");
         }
         MethodDescriptor methodDescriptor = new MethodDescriptor(className, name, signature, isStatic);
-        MethodDescriptor existing = methodDescriptorMap.get(methodDescriptor);
+        MethodDescriptor existing = methodDescriptorMap.putIfAbsent(methodDescriptor, methodDescriptor);
         if (existing == null) {
-            methodDescriptorMap.put(methodDescriptor, methodDescriptor);
             existing = methodDescriptor;
         }
         return existing;
@@ -236,9 +244,8 @@ public class DescriptorFactory {
      */
     public FieldDescriptor getFieldDescriptor(@SlashedClassName String className, String name, String signature, boolean isStatic) {
         FieldDescriptor fieldDescriptor = new FieldDescriptor(className, name, signature, isStatic);
-        FieldDescriptor existing = fieldDescriptorMap.get(fieldDescriptor);
+        FieldDescriptor existing = fieldDescriptorMap.putIfAbsent(fieldDescriptor, fieldDescriptor);
         if (existing == null) {
-            fieldDescriptorMap.put(fieldDescriptor, fieldDescriptor);
             existing = fieldDescriptor;
         }
         return existing;
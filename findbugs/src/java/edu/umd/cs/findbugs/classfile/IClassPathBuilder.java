@@ -53,6 +53,16 @@ public interface IClassPathBuilder {
      */
     public void scanNestedArchives(boolean scanNestedArchives);
 
+    /**
+     * Set the number of threads used to open and scan codebases. This should
+     * be called before the build() method is called.
+     *
+     * @param numThreads
+     *            number of threads; 1 (the default) to scan all codebases on
+     *            the calling thread
+     */
+    public void setNumThreads(int numThreads);
+
     /**
      * Build the classpath.
      *
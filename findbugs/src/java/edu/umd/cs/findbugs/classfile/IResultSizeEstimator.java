@@ -0,0 +1,39 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile;
+
+/**
+ * Optional interface for class analysis engines whose results can be
+ * weighed. When the analysis cache runs with a memory budget, results of
+ * recomputable engines are evicted based on these estimates; results of
+ * engines not implementing this interface get a fixed default weight.
+ *
+ * @see IClassAnalysisEngine#canRecompute()
+ */
+public interface IResultSizeEstimator<ResultType> {
+    /**
+     * Estimate the memory retained by an analysis result.
+     *
+     * @param result
+     *            an analysis result produced by this engine
+     * @return approximate number of bytes retained by the result
+     */
+    public long estimateRetainedSize(ResultType result);
+}
@@ -31,7 +31,10 @@ import java.util.Set;
 
 import javax.annotation.CheckForNull;
 
+import org.apache.bcel.Constants;
+
 import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.asm.FBClassReader;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XField;
@@ -41,8 +44,10 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldOrMethodDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
 import edu.umd.cs.findbugs.classfile.engine.SelfMethodCalls;
 import edu.umd.cs.findbugs.util.MultiMap;
 import edu.umd.cs.findbugs.util.TopologicalSort;
@@ -62,7 +67,7 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
     private final MethodInfo[] xMethods;
 
-    private final MethodInfo[] methodsInCallOrder;
+    private volatile MethodInfo[] methodsInCallOrder;
 
     private final ClassDescriptor immediateEnclosingClass;
 
@@ -72,9 +77,21 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
     final private String source;
 
-    private final boolean usesConcurrency;
+    private boolean usesConcurrency;
+
+    private boolean hasStubs;
+
+    /**
+     * The called classes found when parsing the code of a class parsed
+     * without it
+     */
+    private @CheckForNull Set<ClassDescriptor> calledClassDescriptors;
 
-    private final boolean hasStubs;
+    /**
+     * True until the code of a class parsed without it is parsed, see
+     * {@link #parseCode()}
+     */
+    private volatile boolean hasUnparsedCode;
 
     @CheckForNull
     AnnotatedObject containingScope;
@@ -103,6 +120,14 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
         boolean hasStubs;
 
+        boolean hasUnparsedCode;
+
+        /**
+         * Builders of the methods of a class whose code is parsed after the
+         * class, with the signatures of the methods they bridge to
+         */
+        private final Map<MethodInfo.Builder, String> methodCode = new IdentityHashMap<MethodInfo.Builder, String>();
+
         private static String arguments(String signature) {
             int i = signature.indexOf('(');
             if (i == -1) {
@@ -176,10 +201,12 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
                 methods = methodInfoList.toArray(new MethodInfo[methodInfoList.size()]);
             }
 
-            return new ClassInfo(classDescriptor, classSourceSignature, superclassDescriptor, interfaceDescriptorList,
-                    codeBaseEntry, accessFlags, source, majorVersion, minorVersion, referencedClassDescriptorList,
-                    calledClassDescriptors, classAnnotations, fields, methods, immediateEnclosingClass, usesConcurrency,
-                    hasStubs);
+            ClassInfo classInfo = new ClassInfo(classDescriptor, classSourceSignature, superclassDescriptor,
+                    interfaceDescriptorList, codeBaseEntry, accessFlags, source, majorVersion, minorVersion,
+                    referencedClassDescriptorList, calledClassDescriptors, classAnnotations, fields, methods,
+                    immediateEnclosingClass, usesConcurrency, hasStubs);
+            classInfo.hasUnparsedCode = hasUnparsedCode;
+            return classInfo;
         }
 
         public void setSource(String source) {
@@ -234,6 +261,33 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
             hasStubs = true;
         }
 
+        /**
+         * The code of (some methods of) the class was not parsed: it is
+         * parsed when one of its code-derived properties is first asked for.
+         */
+        public void setHasUnparsedCode() {
+            hasUnparsedCode = true;
+        }
+
+        /**
+         * Add the code-derived properties of a method of a class parsed
+         * without its code.
+         *
+         * @param method
+         *            builder filled in by parsing the code of the method
+         * @param bridgedSignature
+         *            signature of the method it bridges to, or null
+         */
+        public void addMethodCode(MethodInfo.Builder method, @CheckForNull String bridgedSignature) {
+            methodCode.put(method, bridgedSignature);
+            if (method.usesConcurrency) {
+                usesConcurrency = true;
+            }
+            if (method.isStub) {
+                hasStubs = true;
+            }
+        }
+
     }
 
     private MethodInfo[] computeMethodsInCallOrder() {
@@ -299,7 +353,6 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
         this.classAnnotations = Util.immutableMap(classAnnotations);
         this.usesConcurrency = usesConcurrency;
         this.hasStubs = hasStubs;
-        this.methodsInCallOrder = computeMethodsInCallOrder();
         /*
         if (false) {
             System.out.println("Methods in call order for " + classDescriptor);
@@ -322,7 +375,73 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
     }
 
     public List<? extends XMethod> getXMethodsInCallOrder() {
-        return Arrays.asList(methodsInCallOrder);
+        MethodInfo[] result = methodsInCallOrder;
+        if (result == null) {
+            result = computeMethodsInCallOrder();
+            methodsInCallOrder = result;
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Parse the code of a class that was parsed without it (see
+     * {@link ClassParserUsingASM#parseSignatures(Builder)}), filling in the
+     * code-derived properties of the class and its methods.
+     */
+    synchronized void parseCode() {
+        if (!hasUnparsedCode) {
+            return;
+        }
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (analysisCache == null) {
+            // Can't parse without an analysis cache: maybe later
+            return;
+        }
+        try {
+            FBClassReader reader = analysisCache.getClassAnalysis(FBClassReader.class, this);
+            Builder code = new Builder();
+            new ClassParserUsingASM(reader, this, getCodeBaseEntry()).parseCode(code);
+            AnalysisContext context = AnalysisContext.currentAnalysisContext();
+            for (Map.Entry<MethodInfo.Builder, String> e : code.methodCode.entrySet()) {
+                MethodInfo.Builder methodCode = e.getKey();
+                MethodInfo method = (MethodInfo) findMethod(methodCode.methodName, methodCode.methodSignature,
+                        (methodCode.accessFlags & Constants.ACC_STATIC) != 0);
+                if (method == null) {
+                    continue;
+                }
+                method.setCode(methodCode);
+                String bridgedSignature = e.getValue();
+                if (bridgedSignature != null) {
+                    for (MethodInfo m : xMethods) {
+                        if (m.getName().equals(method.getName()) && m.getSignature().equals(bridgedSignature)) {
+                            context.setBridgeMethod(method, m);
+                        }
+                    }
+                }
+            }
+            usesConcurrency |= code.usesConcurrency;
+            hasStubs |= code.hasStubs;
+            calledClassDescriptors = code.calledClassDescriptors;
+        } catch (CheckedAnalysisException e) {
+            AnalysisContext.logError("Error parsing code of " + this, e);
+        } finally {
+            for (MethodInfo m : xMethods) {
+                m.setCodeParsed();
+            }
+            hasUnparsedCode = false;
+        }
+    }
+
+    @Override
+    public Set<ClassDescriptor> getCalledClassDescriptors() {
+        if (hasUnparsedCode) {
+            parseCode();
+        }
+        Set<ClassDescriptor> result = calledClassDescriptors;
+        if (result != null) {
+            return result;
+        }
+        return super.getCalledClassDescriptors();
     }
 
     @Override
@@ -493,11 +612,17 @@ public class ClassInfo extends ClassNameAndSuperclassInfo implements XClass {
 
     @Override
     public boolean usesConcurrency() {
+        if (hasUnparsedCode) {
+            parseCode();
+        }
         return usesConcurrency;
     }
 
     @Override
     public boolean hasStubs() {
+        if (hasUnparsedCode) {
+            parseCode();
+        }
         return hasStubs;
     }
 
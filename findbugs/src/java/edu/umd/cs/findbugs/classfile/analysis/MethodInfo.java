@@ -45,6 +45,7 @@ import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.FieldOrMethodDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
@@ -98,6 +99,8 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         MethodDescriptor accessMethodForMethod;
         FieldDescriptor accessMethodForField;
 
+        boolean hasUnparsedCode;
+
         final Map<ClassDescriptor, AnnotationValue> methodAnnotations = new HashMap<ClassDescriptor, AnnotationValue>(4);
 
         final Map<Integer, Map<ClassDescriptor, AnnotationValue>> methodParameterAnnotations = new HashMap<Integer, Map<ClassDescriptor, AnnotationValue>>(
@@ -185,14 +188,24 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
             map.put(annotationClass, value);
         }
 
+        /**
+         * The code of the method was not parsed: its code-derived properties
+         * are filled in when first asked for.
+         */
+        public void setHasUnparsedCode() {
+            hasUnparsedCode = true;
+        }
+
         public MethodInfo build() {
             if (variableHasName != 0) {
                 variableIsSynthetic |= (~variableHasName);
             }
-            return new MethodInfo(className, methodName, methodSignature, methodSourceSignature, accessFlags,
+            MethodInfo method = new MethodInfo(className, methodName, methodSignature, methodSourceSignature, accessFlags,
                     isUnconditionalThrower, isUnsupported, usesConcurrency, hasBackBranch, isStub, isIdentity,
                     usesInvokeDynamic, methodCallCount, exceptions, accessMethodForMethod,
                     accessMethodForField, methodAnnotations, methodParameterAnnotations, variableIsSynthetic);
+            method.hasUnparsedCode = hasUnparsedCode;
+            return method;
         }
 
         public void setIsUnconditionalThrower() {
@@ -221,17 +234,23 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         }
     }
 
-    final int accessFlags;
+    int accessFlags;
 
-    final long variableIsSynthetic;
+    long variableIsSynthetic;
 
-    final int methodCallCount;
+    int methodCallCount;
 
-    final boolean usesConcurrency;
+    boolean usesConcurrency;
 
-    final boolean hasBackBranch;
+    boolean hasBackBranch;
 
-    final boolean isStub;
+    boolean isStub;
+
+    /**
+     * True until the code-derived properties of a method of a class parsed
+     * without its code are filled in, see {@link ClassInfo#parseCode()}
+     */
+    private volatile boolean hasUnparsedCode;
 
     final String methodSourceSignature;
 
@@ -299,6 +318,14 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         this.methodSourceSignature = DescriptorFactory.canonicalizeString(methodSourceSignature);
         this.methodAnnotations = Util.immutableMap(methodAnnotations);
         this.methodParameterAnnotations = Util.immutableMap(methodParameterAnnotations);
+        setCodeProperties(isUnconditionalThrower, isUnsupported, usesConcurrency, hasBackBranch, isStub, isIdentity,
+                usesInvokeDynamic, methodCallCount, accessMethodForMethod, accessMethodForField, variableIsSynthetic);
+    }
+
+    private void setCodeProperties(boolean isUnconditionalThrower, boolean isUnsupported, boolean usesConcurrency,
+            boolean hasBackBranch, boolean isStub, boolean isIdentity, boolean usesInvokeDynamic, int methodCallCount,
+            @CheckForNull MethodDescriptor accessMethodForMethod, @CheckForNull FieldDescriptor accessMethodForField,
+            long variableIsSynthetic) {
         if (isUnconditionalThrower) {
             getUnconditionalthrowers().put(this, null);
         }
@@ -325,6 +352,57 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         this.variableIsSynthetic = variableIsSynthetic;
     }
 
+    /**
+     * Fill in the code-derived properties of a method whose code was not
+     * parsed along with its class.
+     *
+     * @param code
+     *            builder for this method, filled in by parsing its code
+     */
+    void setCode(Builder code) {
+        if (code.variableHasName != 0) {
+            code.variableIsSynthetic |= (~code.variableHasName);
+        }
+        accessFlags = code.accessFlags;
+        MethodInfoDatabase database = getDatabase();
+        synchronized (database) {
+            setCodeProperties(code.isUnconditionalThrower, code.isUnsupported, usesConcurrency || code.usesConcurrency,
+                    code.hasBackBranch, code.isStub, code.isIdentity, code.usesInvokeDynamic, code.methodCallCount,
+                    code.accessMethodForMethod, code.accessMethodForField, code.variableIsSynthetic);
+        }
+    }
+
+    boolean hasUnparsedCode() {
+        return hasUnparsedCode;
+    }
+
+    void setCodeParsed() {
+        hasUnparsedCode = false;
+    }
+
+    /**
+     * Parse the code of the class of this method if it was parsed without it.
+     */
+    private void parseCode() {
+        if (!hasUnparsedCode) {
+            return;
+        }
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (analysisCache == null) {
+            // Can't parse without an analysis cache: maybe later
+            return;
+        }
+        try {
+            XClass xClass = analysisCache.getClassAnalysis(XClass.class, getClassDescriptor());
+            if (xClass instanceof ClassInfo) {
+                ((ClassInfo) xClass).parseCode();
+            }
+        } catch (CheckedAnalysisException e) {
+            AnalysisContext.logError("Error parsing code of " + this, e);
+        }
+        hasUnparsedCode = false;
+    }
+
     @Override
     public @CheckForNull
     String[] getThrownExceptions() {
@@ -335,22 +413,26 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
 
     @Override
     public boolean isUnconditionalThrower() {
+        parseCode();
         return getUnconditionalthrowers().containsKey(this);
     }
 
     @Override
     public boolean isIdentity() {
+        parseCode();
         return getIdentitymethods().containsKey(this);
     }
 
     @Override
     public boolean usesInvokeDynamic() {
+        parseCode();
         return getInvokeDynamicMethods().containsKey(this);
     }
 
 
     @Override
     public boolean isUnsupported() {
+        parseCode();
         return getUnsupportedmethods().containsKey(this);
     }
 
@@ -361,6 +443,7 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
 
     @Override
     public boolean isVariableSynthetic(int param) {
+        parseCode();
         if (param >= 64) {
             return false;
         }
@@ -368,6 +451,7 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
     }
 
     public int getMethodCallCount() {
+        parseCode();
         return methodCallCount;
     }
 
@@ -442,8 +526,10 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
         throw new ClassCastException("Can't compare a " + this.getClass().getName() + " to a " + rhs.getClass().getName());
     }
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Get the access flags. Stubs are marked ACC_SYNTHETIC when their code is
+     * parsed, which this doesn't force for a class parsed without its code:
+     * use {@link #isSynthetic()} to find out whether a method is synthetic.
      *
      * @see edu.umd.cs.findbugs.ba.AccessibleEntity#getAccessFlags()
      */
@@ -499,6 +585,8 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
 
     @Override
     public boolean isSynthetic() {
+        // stubs are marked synthetic when their code is parsed
+        parseCode();
         return checkFlag(Constants.ACC_SYNTHETIC);
     }
 
@@ -654,26 +742,38 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
      */
     @Override
     public boolean usesConcurrency() {
+        parseCode();
         return usesConcurrency;
     }
 
 
     public boolean hasBackBranch() {
+        parseCode();
         return hasBackBranch;
     }
     @Override
     public boolean isStub() {
+        parseCode();
         return isStub;
     }
 
     @Override
     public @CheckForNull
     MethodDescriptor getAccessMethodForMethod() {
+        // only access$ methods are recognized when parsing the code
+        if (!getName().startsWith("access$")) {
+            return null;
+        }
+        parseCode();
         return getAccessmethodformethod().get(this);
     }
     @Override
     public @CheckForNull
     FieldDescriptor getAccessMethodForField() {
+        if (!getName().startsWith("access$")) {
+            return null;
+        }
+        parseCode();
         return getAccessmethodforfield().get(this);
     }
 
@@ -684,6 +784,7 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
      */
     @Override
     public XMethod bridgeFrom() {
+        parseCode();
         return AnalysisContext.currentAnalysisContext().getBridgeFrom(this);
     }
 
@@ -694,6 +795,7 @@ public class MethodInfo extends MethodDescriptor implements XMethod {
      */
     @Override
     public XMethod bridgeTo() {
+        parseCode();
         return AnalysisContext.currentAnalysisContext().getBridgeTo(this);
 
     }
@@ -27,6 +27,7 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.ICodeBase;
 import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.MissingClassException;
 import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
@@ -39,7 +40,8 @@ import edu.umd.cs.findbugs.io.IO;
  *
  * @author David Hovemeyer
  */
-public class ClassDataAnalysisEngine extends RecomputableClassAnalysisEngine<ClassData> {
+public class ClassDataAnalysisEngine extends RecomputableClassAnalysisEngine<ClassData> implements
+        IResultSizeEstimator<ClassData> {
 
     @Override
     public ClassData analyze(IAnalysisCache analysisCache, ClassDescriptor descriptor) throws CheckedAnalysisException {
@@ -87,6 +89,11 @@ public class ClassDataAnalysisEngine extends RecomputableClassAnalysisEngine<Cla
         analysisCache.registerClassAnalysisEngine(ClassData.class, this);
     }
 
+    @Override
+    public long estimateRetainedSize(ClassData result) {
+        return 64 + result.getData().length;
+    }
+
     private static class VirtualCodeBaseEntry implements ICodeBaseEntry {
 
         private final ClassDescriptor descriptor;
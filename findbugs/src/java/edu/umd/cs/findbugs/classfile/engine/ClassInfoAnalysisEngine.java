@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs.classfile.engine;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.asm.FBClassReader;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
@@ -36,6 +37,9 @@ import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
  * @author David Hovemeyer
  */
 public class ClassInfoAnalysisEngine implements IClassAnalysisEngine<XClass> {
+    private static final boolean PARSE_LIBRARY_CODE_LAZILY = SystemProperties.getBoolean(
+            "findbugs.classparser.lazyLibraryCode", true);
+
     /*
      * private static final boolean USE_ASM_CLASS_PARSER =
      * SystemProperties.getBoolean("findbugs.classparser.asm"); static { if
@@ -73,10 +77,16 @@ public class ClassInfoAnalysisEngine implements IClassAnalysisEngine<XClass> {
         // Read the class info
 
         FBClassReader reader = analysisCache.getClassAnalysis(FBClassReader.class, descriptor);
-        ClassParserInterface parser = new ClassParserUsingASM(reader, descriptor, classData.getCodeBaseEntry());
+        ClassParserUsingASM parser = new ClassParserUsingASM(reader, descriptor, classData.getCodeBaseEntry());
 
         ClassInfo.Builder classInfoBuilder = new ClassInfo.Builder();
-        parser.parse(classInfoBuilder);
+        if (PARSE_LIBRARY_CODE_LAZILY && !classData.getCodeBaseEntry().getCodeBase().isApplicationCodeBase()) {
+            // Most library classes are never analyzed: parse their code only
+            // if a detector asks for a code-derived property
+            parser.parseSignatures(classInfoBuilder);
+        } else {
+            parser.parse(classInfoBuilder);
+        }
         ClassInfo classInfo = classInfoBuilder.build();
 
         if (!classInfo.getClassDescriptor().equals(descriptor)) {
@@ -77,7 +77,19 @@ public class ClassParserUsingASM implements ClassParserInterface {
 
     private final ICodeBaseEntry codeBaseEntry;
 
+    /**
+     * How the methods of the class are parsed
+     */
+    private enum CodeMode {
+        /** Parse methods with their code */
+        PARSE,
+        /** Skip the code of methods, which is parsed later if needed */
+        SKIP,
+        /** Parse just the code of methods, for a class parsed with SKIP */
+        ONLY
+    }
 
+    private CodeMode codeMode = CodeMode.PARSE;
 
     /**
      * @author pugh
@@ -467,14 +479,33 @@ public class ClassParserUsingASM implements ClassParserInterface {
                 // + " is thrower");
             }
             mBuilder.setNumberMethodCalls(methodCallCount);
-            MethodInfo methodInfo = mBuilder.build();
             Builder classBuilder = (ClassInfo.Builder) cBuilder;
+            if (codeMode == CodeMode.ONLY) {
+                if (isBridge && bridgedMethodSignature != null && !bridgedMethodSignature.equals(methodDesc)) {
+                    classBuilder.addMethodCode(mBuilder, bridgedMethodSignature);
+                } else {
+                    classBuilder.addMethodCode(mBuilder, null);
+                }
+                return;
+            }
+            if (codeMode == CodeMode.SKIP && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+                mBuilder.setHasUnparsedCode();
+                classBuilder.setHasUnparsedCode();
+            }
+            MethodInfo methodInfo = mBuilder.build();
             if (isBridge && bridgedMethodSignature != null && !bridgedMethodSignature.equals(methodDesc)) {
                 classBuilder.addBridgeMethodDescriptor(methodInfo, bridgedMethodSignature);
             } else {
                 classBuilder.addMethodDescriptor(methodInfo);
             }
 
+            if (codeMode == CodeMode.SKIP) {
+                // the rest is known once the code is parsed
+                if ((access & Opcodes.ACC_SYNCHRONIZED) != 0) {
+                    classBuilder.setUsesConcurrency();
+                }
+                return;
+            }
             if (methodInfo.usesConcurrency()) {
                 classBuilder.setUsesConcurrency();
             }
@@ -563,6 +594,9 @@ public class ClassParserUsingASM implements ClassParserInterface {
                 if (desc == null) {
                     throw new NullPointerException("Description cannot be null");
                 }
+                if (codeMode == CodeMode.ONLY) {
+                    return null;
+                }
                 if (cBuilder instanceof ClassInfo.Builder) {
                     final ClassInfo.Builder cBuilder2 = (ClassInfo.Builder) cBuilder;
                     if ((access & Opcodes.ACC_VOLATILE) != 0 || desc.contains("util/concurrent")) {
@@ -633,7 +667,11 @@ public class ClassParserUsingASM implements ClassParserInterface {
                 }
 
             }
-        }, ClassReader.SKIP_FRAMES);
+        }, codeMode == CodeMode.SKIP ? ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES : ClassReader.SKIP_FRAMES);
+        if (codeMode == CodeMode.ONLY) {
+            cBuilder.setCalledClassDescriptors(calledClassSet);
+            return;
+        }
         HashSet<ClassDescriptor> referencedClassSet = new HashSet<ClassDescriptor>();
 
         // collect class references
@@ -699,4 +737,41 @@ public class ClassParserUsingASM implements ClassParserInterface {
         parse((ClassNameAndSuperclassInfo.Builder) builder);
 
     }
+
+    /**
+     * Parse a class without the code of its methods. The code-derived
+     * properties of the class and its methods (called classes, unconditional
+     * throwers, access methods, ...) are filled in by {@link #parseCode(Builder)}
+     * when one of them is first asked for.
+     *
+     * @param builder
+     *            a ClassInfo.Builder
+     */
+    public void parseSignatures(ClassInfo.Builder builder) throws InvalidClassFileFormatException {
+        codeMode = CodeMode.SKIP;
+        try {
+            parse(builder);
+        } finally {
+            codeMode = CodeMode.PARSE;
+        }
+    }
+
+    /**
+     * Parse the code of the methods of a class parsed by
+     * {@link #parseSignatures(Builder)}. The code-derived properties of each
+     * method are added to the builder with
+     * {@link ClassInfo.Builder#addMethodCode(MethodInfo.Builder, String)}; no
+     * ClassInfo or MethodInfo is built.
+     *
+     * @param builder
+     *            a ClassInfo.Builder collecting the code-derived properties
+     */
+    public void parseCode(ClassInfo.Builder builder) throws InvalidClassFileFormatException {
+        codeMode = CodeMode.ONLY;
+        try {
+            parse((ClassNameAndSuperclassInfo.Builder) builder);
+        } finally {
+            codeMode = CodeMode.PARSE;
+        }
+    }
 }
@@ -21,11 +21,13 @@ package edu.umd.cs.findbugs.classfile.engine.asm;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.InvalidClassFileFormatException;
 import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
 
@@ -34,7 +36,8 @@ import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
  *
  * @author David Hovemeyer
  */
-public class ClassNodeAnalysisEngine extends RecomputableClassAnalysisEngine<ClassNode> {
+public class ClassNodeAnalysisEngine extends RecomputableClassAnalysisEngine<ClassNode> implements
+        IResultSizeEstimator<ClassNode> {
 
     /*
      * (non-Javadoc)
@@ -74,4 +77,14 @@ public class ClassNodeAnalysisEngine extends RecomputableClassAnalysisEngine<Cla
         analysisCache.registerClassAnalysisEngine(ClassNode.class, this);
     }
 
+    @Override
+    public long estimateRetainedSize(ClassNode classNode) {
+        long size = 256 + 96L * classNode.fields.size();
+        for (Object o : classNode.methods) {
+            MethodNode m = (MethodNode) o;
+            size += 192 + 48L * m.instructions.size();
+        }
+        return size;
+    }
+
 }
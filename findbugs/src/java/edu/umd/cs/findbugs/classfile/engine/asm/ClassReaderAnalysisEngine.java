@@ -23,6 +23,7 @@ import edu.umd.cs.findbugs.asm.FBClassReader;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 
@@ -31,7 +32,8 @@ import edu.umd.cs.findbugs.classfile.analysis.ClassData;
  *
  * @author David Hovemeyer
  */
-public class ClassReaderAnalysisEngine extends RecomputableClassAnalysisEngine<FBClassReader> {
+public class ClassReaderAnalysisEngine extends RecomputableClassAnalysisEngine<FBClassReader> implements
+        IResultSizeEstimator<FBClassReader> {
 
     /*
      * (non-Javadoc)
@@ -62,4 +64,10 @@ public class ClassReaderAnalysisEngine extends RecomputableClassAnalysisEngine<F
         analysisCache.registerClassAnalysisEngine(FBClassReader.class, this);
     }
 
+    @Override
+    public long estimateRetainedSize(FBClassReader classReader) {
+        // the class bytes (shared with ClassData) plus the constant pool index
+        return 64 + classReader.b.length / 2;
+    }
+
 }
@@ -19,13 +19,16 @@
 
 package edu.umd.cs.findbugs.classfile.engine.bcel;
 
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
 
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
 
 /**
@@ -34,7 +37,8 @@ import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
  *
  * @author David Hovemeyer
  */
-public class ClassContextClassAnalysisEngine extends RecomputableClassAnalysisEngine<ClassContext> {
+public class ClassContextClassAnalysisEngine extends RecomputableClassAnalysisEngine<ClassContext> implements
+        IResultSizeEstimator<ClassContext> {
 
     /*
      * (non-Javadoc)
@@ -51,6 +55,27 @@ public class ClassContextClassAnalysisEngine extends RecomputableClassAnalysisEn
         return classContext;
     }
 
+    /**
+     * Estimate the memory retained by the method analyses of a ClassContext
+     * (the JavaClass is weighed separately). CFGs and dataflow facts grow
+     * with the code of the method, so each analysis is charged by the
+     * average code length of the class's methods.
+     */
+    @Override
+    public long estimateRetainedSize(ClassContext classContext) {
+        long codeLength = 0;
+        int methods = 0;
+        for (Method m : classContext.getJavaClass().getMethods()) {
+            Code code = m.getCode();
+            if (code != null) {
+                codeLength += code.getLength();
+                methods++;
+            }
+        }
+        long perAnalysis = 256 + (methods > 0 ? 64 * codeLength / methods : 0);
+        return 512 + perAnalysis * classContext.getMethodAnalysisCount();
+    }
+
     /*
      * (non-Javadoc)
      *
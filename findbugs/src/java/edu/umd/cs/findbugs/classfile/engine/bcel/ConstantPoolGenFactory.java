@@ -20,20 +20,23 @@
 package edu.umd.cs.findbugs.classfile.engine.bcel;
 
 import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.generic.ClassGen;
 import org.apache.bcel.generic.ConstantPoolGen;
 
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.RecomputableClassAnalysisEngine;
 
 /**
  * Analysis engine to produce ConstantPoolGen objects for an analyzed class.
+ * These are {@link LazyConstantPoolGen}s, which read the constant pool of the
+ * JavaClass in place.
  *
  * @author David Hovemeyer
  */
-public class ConstantPoolGenFactory extends RecomputableClassAnalysisEngine<ConstantPoolGen> {
+public class ConstantPoolGenFactory extends RecomputableClassAnalysisEngine<ConstantPoolGen> implements
+        IResultSizeEstimator<ConstantPoolGen> {
 
     /*
      * (non-Javadoc)
@@ -44,8 +47,8 @@ public class ConstantPoolGenFactory extends RecomputableClassAnalysisEngine<Cons
      */
     @Override
     public ConstantPoolGen analyze(IAnalysisCache analysisCache, ClassDescriptor descriptor) throws CheckedAnalysisException {
-        ClassGen classGen = new ClassGen(analysisCache.getClassAnalysis(JavaClass.class, descriptor));
-        return classGen.getConstantPool();
+        JavaClass jclass = analysisCache.getClassAnalysis(JavaClass.class, descriptor);
+        return new LazyConstantPoolGen(jclass.getConstantPool());
     }
 
     /*
@@ -60,4 +63,11 @@ public class ConstantPoolGenFactory extends RecomputableClassAnalysisEngine<Cons
         analysisCache.registerClassAnalysisEngine(ConstantPoolGen.class, this);
     }
 
+    @Override
+    public long estimateRetainedSize(ConstantPoolGen cpg) {
+        // the constants are shared with the JavaClass: just the memoized
+        // references, unless lookup tables were built
+        return 128 + 16L * cpg.getSize();
+    }
+
 }
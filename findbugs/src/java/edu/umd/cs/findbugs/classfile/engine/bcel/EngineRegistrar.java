@@ -39,6 +39,7 @@ import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.ReflectionDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.analysis.MethodInfo.MethodInfoDatabase;
+import edu.umd.cs.findbugs.visitclass.DecodedCode;
 
 /**
  * Register BCEL-framework analysis engines.
@@ -69,8 +70,8 @@ public class EngineRegistrar implements IAnalysisEngineRegistrar {
         new BlockTypeAnalysisFactory(), new CallListDataflowFactory(), new UnconditionalValueDerefDataflowFactory(),
         new CompactLocationNumberingFactory(),  new ReturnPathTypeDataflowFactory(),
         new ForwardTypeQualifierDataflowFactoryFactory(), new BackwardTypeQualifierDataflowFactoryFactory(),
-        new OpcodeStack.JumpInfoFactory(), new StackMapAnalysisFactory(), new ObligationDataflowFactory(),
-        new ValueRangeAnalysisFactory(), new FinallyDuplicatesInfoFactory()};
+        new OpcodeStack.JumpInfoFactory(), new OpcodeStack.StackModelFactory(), new StackMapAnalysisFactory(), new ObligationDataflowFactory(),
+        new ValueRangeAnalysisFactory(), new FinallyDuplicatesInfoFactory(), new DecodedCode.Factory()};
 
     private static final IDatabaseFactory<?>[] databaseFactoryList = {
         // new ReflectionDatabaseFactory<Subtypes>(Subtypes.class),
@@ -78,6 +78,7 @@ public class IsNullValueDataflowFactory extends AnalysisFactory<IsNullValueDataf
 
         IsNullValueDataflow invDataflow = new IsNullValueDataflow(cfg, invAnalysis);
         invDataflow.execute();
+        invAnalysis.enableFactAtLocationCache(getCompactLocationNumbering(analysisCache, descriptor));
         if (ClassContext.DUMP_DATAFLOW_ANALYSIS) {
             invDataflow.dumpDataflow(invAnalysis);
         }
@@ -23,7 +23,11 @@ import java.io.IOException;
 
 import org.apache.bcel.Repository;
 import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumberTable;
+import org.apache.bcel.classfile.LocalVariableTable;
+import org.apache.bcel.classfile.Method;
 
 import edu.umd.cs.findbugs.AnalysisCacheToRepositoryAdapter;
 import edu.umd.cs.findbugs.SystemProperties;
@@ -31,6 +35,7 @@ import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
 import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 
@@ -39,7 +44,7 @@ import edu.umd.cs.findbugs.classfile.analysis.ClassData;
  *
  * @author David Hovemeyer
  */
-public class JavaClassAnalysisEngine implements IClassAnalysisEngine<JavaClass> {
+public class JavaClassAnalysisEngine implements IClassAnalysisEngine<JavaClass>, IResultSizeEstimator<JavaClass> {
     private static final boolean DEBUG_MISSING_CLASSES = SystemProperties.getBoolean("findbugs.debug.missingclasses");
 
     private static final String JVM_VERSION = SystemProperties.getProperty("java.runtime.version");
@@ -85,6 +90,29 @@ public class JavaClassAnalysisEngine implements IClassAnalysisEngine<JavaClass>
         analysisCache.registerClassAnalysisEngine(JavaClass.class, this);
     }
 
+    @Override
+    public long estimateRetainedSize(JavaClass javaClass) {
+        // Rough per-object costs of the BCEL classfile representation
+        long size = 256 + 48L * javaClass.getConstantPool().getLength();
+        size += 96L * javaClass.getFields().length;
+        for (Method m : javaClass.getMethods()) {
+            size += 160;
+            Code code = m.getCode();
+            if (code != null) {
+                size += 64 + code.getLength() + 32L * code.getExceptionTable().length;
+                LineNumberTable lines = code.getLineNumberTable();
+                if (lines != null) {
+                    size += 24L * lines.getTableLength();
+                }
+                LocalVariableTable locals = code.getLocalVariableTable();
+                if (locals != null) {
+                    size += 48L * locals.getTableLength();
+                }
+            }
+        }
+        return size;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -0,0 +1,335 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.engine.bcel;
+
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.FieldInstruction;
+import org.apache.bcel.generic.InvokeInstruction;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.util.ClassName;
+
+/**
+ * A ConstantPoolGen reading the constant pool of a parsed class in place.
+ * <p>
+ * A plain ConstantPoolGen copies the constants and hashes every one of them
+ * into lookup tables, which only the lookup and add methods need. Most
+ * analyses just read constants, so the tables (and the copy) are built only
+ * when a lookup or add method is first called. Resolved field and method
+ * references are memoized by constant pool index.
+ *
+ * @see ConstantPoolGenFactory
+ */
+public class LazyConstantPoolGen extends ConstantPoolGen {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ConstantPool constantPool;
+
+    /** A full ConstantPoolGen, once a lookup or add method was called */
+    private volatile ConstantPoolGen tables;
+
+    private MethodDescriptor[] methodDescriptors;
+
+    private FieldDescriptor[] fieldDescriptors;
+
+    public LazyConstantPoolGen(ConstantPool constantPool) {
+        this.constantPool = constantPool;
+        constants = constantPool.getConstantPool();
+        size = constants.length;
+        index = constants.length;
+    }
+
+    private ConstantPoolGen tables() {
+        ConstantPoolGen result = tables;
+        if (result == null) {
+            synchronized (this) {
+                result = tables;
+                if (result == null) {
+                    result = new ConstantPoolGen(Arrays.copyOf(constants, index));
+                    tables = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the method referenced by an invoke instruction of the class.
+     *
+     * @param inv
+     *            an invoke instruction of the class
+     * @return the MethodDescriptor of the method inv.getClassName(this),
+     *         inv.getName(this), inv.getSignature(this)
+     */
+    public MethodDescriptor getMethodDescriptor(InvokeInstruction inv) {
+        int i = inv.getIndex();
+        boolean isStatic = inv.getOpcode() == Constants.INVOKESTATIC;
+        MethodDescriptor[] cache = methodDescriptors;
+        if (cache == null) {
+            cache = new MethodDescriptor[constants.length];
+            methodDescriptors = cache;
+        }
+        MethodDescriptor result = cached(cache, i);
+        if (result == null || result.isStatic() != isStatic) {
+            result = DescriptorFactory.instance().getMethodDescriptor(ClassName.toSlashedClassName(inv.getClassName(this)),
+                    inv.getName(this), inv.getSignature(this), isStatic);
+            if (i >= 0 && i < cache.length) {
+                cache[i] = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the field referenced by a field instruction of the class.
+     *
+     * @param fins
+     *            a field instruction of the class
+     * @return the FieldDescriptor of the field fins.getClassName(this),
+     *         fins.getName(this), fins.getSignature(this)
+     */
+    public FieldDescriptor getFieldDescriptor(FieldInstruction fins) {
+        int i = fins.getIndex();
+        int opcode = fins.getOpcode();
+        boolean isStatic = opcode == Constants.GETSTATIC || opcode == Constants.PUTSTATIC;
+        FieldDescriptor[] cache = fieldDescriptors;
+        if (cache == null) {
+            cache = new FieldDescriptor[constants.length];
+            fieldDescriptors = cache;
+        }
+        FieldDescriptor result = cached(cache, i);
+        if (result == null || result.isStatic() != isStatic) {
+            result = DescriptorFactory.instance().getFieldDescriptor(ClassName.toSlashedClassName(fins.getClassName(this)),
+                    fins.getName(this), fins.getSignature(this), isStatic);
+            if (i >= 0 && i < cache.length) {
+                cache[i] = result;
+            }
+        }
+        return result;
+    }
+
+    @CheckForNull
+    private static <T> T cached(T[] cache, int i) {
+        if (i < 0 || i >= cache.length) {
+            return null;
+        }
+        return cache[i];
+    }
+
+    @Override
+    public Constant getConstant(int i) {
+        ConstantPoolGen t = tables;
+        if (t != null) {
+            return t.getConstant(i);
+        }
+        return constants[i];
+    }
+
+    @Override
+    public ConstantPool getConstantPool() {
+        ConstantPoolGen t = tables;
+        if (t != null) {
+            return t.getConstantPool();
+        }
+        return constantPool;
+    }
+
+    @Override
+    public int getSize() {
+        ConstantPoolGen t = tables;
+        if (t != null) {
+            return t.getSize();
+        }
+        return index;
+    }
+
+    @Override
+    public ConstantPool getFinalConstantPool() {
+        return tables().getFinalConstantPool();
+    }
+
+    @Override
+    public String toString() {
+        return tables().toString();
+    }
+
+    @Override
+    public void setConstant(int i, Constant c) {
+        tables().setConstant(i, c);
+    }
+
+    @Override
+    public int addConstant(Constant c, ConstantPoolGen cp) {
+        return tables().addConstant(c, cp);
+    }
+
+    @Override
+    public int lookupString(String str) {
+        return tables().lookupString(str);
+    }
+
+    @Override
+    public int addString(String str) {
+        return tables().addString(str);
+    }
+
+    @Override
+    public int lookupClass(String str) {
+        return tables().lookupClass(str);
+    }
+
+    @Override
+    public int addClass(String str) {
+        return tables().addClass(str);
+    }
+
+    @Override
+    public int addClass(ObjectType type) {
+        return tables().addClass(type);
+    }
+
+    @Override
+    public int addArrayClass(ArrayType type) {
+        return tables().addArrayClass(type);
+    }
+
+    @Override
+    public int lookupInteger(int n) {
+        return tables().lookupInteger(n);
+    }
+
+    @Override
+    public int addInteger(int n) {
+        return tables().addInteger(n);
+    }
+
+    @Override
+    public int lookupFloat(float n) {
+        return tables().lookupFloat(n);
+    }
+
+    @Override
+    public int addFloat(float n) {
+        return tables().addFloat(n);
+    }
+
+    @Override
+    public int lookupUtf8(String n) {
+        return tables().lookupUtf8(n);
+    }
+
+    @Override
+    public int addUtf8(String n) {
+        return tables().addUtf8(n);
+    }
+
+    @Override
+    public int lookupLong(long n) {
+        return tables().lookupLong(n);
+    }
+
+    @Override
+    public int addLong(long n) {
+        return tables().addLong(n);
+    }
+
+    @Override
+    public int lookupDouble(double n) {
+        return tables().lookupDouble(n);
+    }
+
+    @Override
+    public int addDouble(double n) {
+        return tables().addDouble(n);
+    }
+
+    @Override
+    public int lookupNameAndType(String name, String signature) {
+        return tables().lookupNameAndType(name, signature);
+    }
+
+    @Override
+    public int addNameAndType(String name, String signature) {
+        return tables().addNameAndType(name, signature);
+    }
+
+    @Override
+    public int lookupMethodref(String className, String methodName, String signature) {
+        return tables().lookupMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public int lookupMethodref(MethodGen method) {
+        return tables().lookupMethodref(method);
+    }
+
+    @Override
+    public int addMethodref(String className, String methodName, String signature) {
+        return tables().addMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public int addMethodref(MethodGen method) {
+        return tables().addMethodref(method);
+    }
+
+    @Override
+    public int lookupInterfaceMethodref(String className, String methodName, String signature) {
+        return tables().lookupInterfaceMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public int lookupInterfaceMethodref(MethodGen method) {
+        return tables().lookupInterfaceMethodref(method);
+    }
+
+    @Override
+    public int addInterfaceMethodref(String className, String methodName, String signature) {
+        return tables().addInterfaceMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public int addInterfaceMethodref(MethodGen method) {
+        return tables().addInterfaceMethodref(method);
+    }
+
+    @Override
+    public int lookupFieldref(String className, String fieldName, String signature) {
+        return tables().lookupFieldref(className, fieldName, signature);
+    }
+
+    @Override
+    public int addFieldref(String className, String fieldName, String signature) {
+        return tables().addFieldref(className, fieldName, signature);
+    }
+}
@@ -23,8 +23,12 @@ import static java.util.Objects.requireNonNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -37,7 +41,10 @@ import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.asm.FBClassReader;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.Dataflow;
+import edu.umd.cs.findbugs.ba.DataflowAnalysis;
 import edu.umd.cs.findbugs.ba.Debug;
+import edu.umd.cs.findbugs.ba.TimeBudgetExceededException;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
@@ -47,14 +54,29 @@ import edu.umd.cs.findbugs.classfile.IClassPath;
 import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IErrorLogger;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.UncheckedAnalysisException;
+import edu.umd.cs.findbugs.log.CacheStatistics;
 import edu.umd.cs.findbugs.log.Profiler;
-import edu.umd.cs.findbugs.util.MapCache;
 
 /**
  * Implementation of IAnalysisCache. This object is responsible for registering
  * class and method analysis engines and caching analysis results.
+ * <p>
+ * The cache may be used by several analysis threads. Each class or method
+ * analysis result is computed at most once: a thread asking for a result
+ * which another thread is computing waits for it (see {@link PendingAnalysis}).
+ * Results are kept in lock-striped maps, and analysis engines are run without
+ * holding any lock. A method analysis eagerly put in the cache by the engine
+ * computing it (e.g., the CFG, which is still pruned afterwards), and the
+ * results of that method computed on top of it, are only seen by the thread
+ * computing it until the computation is done.
+ * <p>
+ * By default, results of recomputable analyses are bounded by a fixed number
+ * of entries per analysis type. If a memory budget is set, they are weighed
+ * instead (see {@link IResultSizeEstimator}) and the least recently used
+ * results of all types are evicted when the budget is exceeded.
  *
  * @author David Hovemeyer
  */
@@ -85,10 +107,47 @@ public class AnalysisCache implements IAnalysisCache {
 
     private final Map<Class<?>, IDatabaseFactory<?>> databaseFactoryMap;
 
-    private final Map<Class<?>, Map<ClassDescriptor, Object>> classAnalysisMap;
+    private final ConcurrentHashMap<Class<?>, StripedResultMap<ClassDescriptor>> classAnalysisMap;
+
+    /**
+     * Class and method analysis results currently being computed.
+     */
+    private final ConcurrentHashMap<ResultKey, PendingAnalysis> pendingResults;
+
+    /**
+     * Keys of the results the calling thread is computing, innermost last.
+     */
+    private final ThreadLocal<ArrayList<ResultKey>> computing = new ThreadLocal<ArrayList<ResultKey>>() {
+        @Override
+        protected ArrayList<ResultKey> initialValue() {
+            return new ArrayList<ResultKey>();
+        }
+    };
+
+    /**
+     * Method analysis results private to the calling thread, by method.
+     */
+    private final ThreadLocal<Map<MethodDescriptor, PrivateResults>> privateResults = new ThreadLocal<Map<MethodDescriptor, PrivateResults>>() {
+        @Override
+        protected Map<MethodDescriptor, PrivateResults> initialValue() {
+            return new HashMap<MethodDescriptor, PrivateResults>();
+        }
+    };
 
     private final Map<Class<?>, Object> databaseMap;
 
+    /**
+     * Pinned class analysis results.
+     */
+    private final ConcurrentHashMap<ResultKey, PinnedResult> pinnedResults = new ConcurrentHashMap<ResultKey, PinnedResult>();
+
+    private @CheckForNull CacheBudget budget;
+
+    /**
+     * Hit, miss and eviction counts of purged class analysis maps.
+     */
+    private final Map<Class<?>, long[]> purgedCounts = new HashMap<Class<?>, long[]>();
+
     private final Map<?, ?> analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
 
     @Override
@@ -138,6 +197,96 @@ public class AnalysisCache implements IAnalysisCache {
 
     static final AbnormalAnalysisResult NULL_ANALYSIS_RESULT = new AbnormalAnalysisResult();
 
+    /**
+     * Key of an analysis result: the analysis class and the class or method
+     * descriptor.
+     */
+    private static final class ResultKey {
+        final Class<?> analysisClass;
+
+        final Object descriptor;
+
+        ResultKey(Class<?> analysisClass, Object descriptor) {
+            this.analysisClass = analysisClass;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public int hashCode() {
+            return analysisClass.hashCode() * 31 + descriptor.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResultKey)) {
+                return false;
+            }
+            ResultKey other = (ResultKey) o;
+            return analysisClass == other.analysisClass && descriptor.equals(other.descriptor);
+        }
+    }
+
+    private static final class PinnedResult {
+        final Object result;
+
+        /** How many times the result is pinned; guarded by pinnedResults */
+        int count = 1;
+
+        PinnedResult(Object result) {
+            this.result = result;
+        }
+    }
+
+    /**
+     * Results of a method which the calling thread keeps to itself while it
+     * computes the result eagerly put in the cache, since that result is not
+     * finished yet.
+     */
+    private static final class PrivateResults {
+        /**
+         * Key of the result eagerly put in the cache.
+         */
+        final ResultKey owner;
+
+        final Map<Class<?>, Object> results = new HashMap<Class<?>, Object>();
+
+        /**
+         * Computations of private results other threads may be waiting
+         * for, completed when the results are published.
+         */
+        final Map<Class<?>, PendingAnalysis> pending = new LinkedHashMap<Class<?>, PendingAnalysis>();
+
+        PrivateResults(ResultKey owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Computation of a single analysis result.
+     */
+    private interface ResultComputation {
+        /**
+         * @return the cached result, or null if there is none
+         */
+        @CheckForNull
+        Object lookup();
+
+        /**
+         * @return the result, an AbnormalAnalysisResult if the analysis
+         *         returned null or failed
+         */
+        @Nonnull
+        Object compute();
+
+        /**
+         * Cache the result, unless a result is already cached.
+         *
+         * @return the cached result
+         */
+        @Nonnull
+        Object store(Object result);
+    }
+
     @SuppressWarnings("unchecked")
     static <E> E checkedCast(Class<E> analysisClass, Object o) {
         if (SystemProperties.ASSERTIONS_ENABLED) {
@@ -160,10 +309,111 @@ public class AnalysisCache implements IAnalysisCache {
         this.classAnalysisEngineMap = new HashMap<Class<?>, IClassAnalysisEngine<?>>();
         this.methodAnalysisEngineMap = new HashMap<Class<?>, IMethodAnalysisEngine<?>>();
         this.databaseFactoryMap = new HashMap<Class<?>, IDatabaseFactory<?>>();
-        this.classAnalysisMap = new HashMap<Class<?>, Map<ClassDescriptor, Object>>();
+        this.classAnalysisMap = new ConcurrentHashMap<Class<?>, StripedResultMap<ClassDescriptor>>();
+        this.pendingResults = new ConcurrentHashMap<ResultKey, PendingAnalysis>();
         this.databaseMap = new HashMap<Class<?>, Object>();
     }
 
+    /**
+     * Bound the memory retained by results of recomputable class analyses,
+     * instead of bounding the number of results of each analysis type. Must
+     * be called before any results are cached.
+     *
+     * @param maxBytes
+     *            the budget, in bytes
+     */
+    public void setMemoryBudget(long maxBytes) {
+        if (!classAnalysisMap.isEmpty()) {
+            throw new IllegalStateException("Memory budget must be set before analysis results are cached");
+        }
+        budget = new CacheBudget(maxBytes);
+    }
+
+    /**
+     * Keep a class analysis result until it is unpinned, even if it is
+     * evicted from the cache. Analysis threads pin the ClassContext of the
+     * class they apply detectors to, so that all the method analyses the
+     * detectors ask for belong to the same ClassContext (and CFGs).
+     *
+     * @param analysisClass
+     *            the analysis class
+     * @param classDescriptor
+     *            the class
+     * @return the pinned result
+     * @throws CheckedAnalysisException
+     *             if the result cannot be computed (nothing is pinned then)
+     */
+    public <E> E pinClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor)
+            throws CheckedAnalysisException {
+        E result = getClassAnalysis(analysisClass, classDescriptor);
+        ResultKey key = new ResultKey(analysisClass, classDescriptor);
+        synchronized (pinnedResults) {
+            PinnedResult pinned = pinnedResults.get(key);
+            if (pinned == null) {
+                pinnedResults.put(key, new PinnedResult(result));
+                return result;
+            }
+            pinned.count++;
+            return checkedCast(analysisClass, pinned.result);
+        }
+    }
+
+    /**
+     * Release a class analysis result pinned by pinClassAnalysis().
+     *
+     * @param analysisClass
+     *            the analysis class
+     * @param classDescriptor
+     *            the class
+     */
+    public void unpinClassAnalysis(Class<?> analysisClass, @Nonnull ClassDescriptor classDescriptor) {
+        ResultKey key = new ResultKey(analysisClass, classDescriptor);
+        synchronized (pinnedResults) {
+            PinnedResult pinned = pinnedResults.get(key);
+            if (pinned == null) {
+                throw new IllegalStateException("Not pinned: " + analysisClass.getName() + " of " + classDescriptor);
+            }
+            if (--pinned.count == 0) {
+                pinnedResults.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Record hit, miss and eviction counts of the class analysis results.
+     *
+     * @param stats
+     *            the statistics to update
+     */
+    public void recordStatistics(CacheStatistics stats) {
+        CacheBudget b = budget;
+        stats.setBudget(b != null ? b.getMaxBytes() : 0);
+        Map<Class<?>, long[]> counts = new HashMap<Class<?>, long[]>();
+        synchronized (purgedCounts) {
+            for (Map.Entry<Class<?>, long[]> e : purgedCounts.entrySet()) {
+                counts.put(e.getKey(), e.getValue().clone());
+            }
+        }
+        for (Map.Entry<Class<?>, StripedResultMap<ClassDescriptor>> e : classAnalysisMap.entrySet()) {
+            addCounts(counts, e.getKey(), e.getValue());
+        }
+        for (Map.Entry<Class<?>, long[]> e : counts.entrySet()) {
+            long[] c = e.getValue();
+            stats.record(e.getKey().getName(), c[0], c[1], c[2]);
+        }
+    }
+
+    private static void addCounts(Map<Class<?>, long[]> counts, Class<?> analysisClass, StripedResultMap<?> map) {
+        long[] c = counts.get(analysisClass);
+        if (c == null) {
+            c = new long[3];
+            counts.put(analysisClass, c);
+        }
+        c[0] += map.getHits();
+        c[1] += map.getMisses();
+        c[2] += map.getEvictions();
+    }
+
     @Override
     public IClassPath getClassPath() {
         return classPath;
@@ -175,6 +425,7 @@ public class AnalysisCache implements IAnalysisCache {
 
         try {
             Map<ClassDescriptor, ClassContext> map = getAllClassAnalysis(ClassContext.class);
+            // values() of the striped map is a snapshot
             Collection<?> allClassContexts = map.values();
             for (Object c : allClassContexts) {
                 if (c instanceof ClassContext) {
@@ -188,7 +439,7 @@ public class AnalysisCache implements IAnalysisCache {
 
     @SuppressWarnings("unchecked")
     private <E> Map<ClassDescriptor, E> getAllClassAnalysis(Class<E> analysisClass)  {
-        Map<ClassDescriptor, Object> descriptorMap
+        Map<ClassDescriptor, ?> descriptorMap
         = findOrCreateDescriptorMap(classAnalysisMap, classAnalysisEngineMap,
                 analysisClass);
         return (Map<ClassDescriptor, E>) descriptorMap;
@@ -196,14 +447,25 @@ public class AnalysisCache implements IAnalysisCache {
 
     @Override
     public void purgeClassAnalysis(Class<?> analysisClass) {
-        classAnalysisMap.remove(analysisClass);
+        StripedResultMap<ClassDescriptor> map = classAnalysisMap.remove(analysisClass);
+        if (map != null) {
+            synchronized (purgedCounts) {
+                addCounts(purgedCounts, analysisClass, map);
+            }
+            // Release the memory charged to the budget
+            map.dispose();
+        }
     }
 
     /**
      * Cleans up all cached data
      */
-    public void dispose(){
+    public synchronized void dispose(){
+        for (StripedResultMap<ClassDescriptor> map : classAnalysisMap.values()) {
+            map.dispose();
+        }
         classAnalysisMap.clear();
+        pendingResults.clear();
         classAnalysisEngineMap.clear();
         analysisLocals.clear();
         databaseFactoryMap.clear();
@@ -225,41 +487,75 @@ public class AnalysisCache implements IAnalysisCache {
      * @param map non null, pre-filled map with analysis data for given type
      */
     public <E> void reuseClassAnalysis(Class<E> analysisClass, Map<ClassDescriptor, Object> map) {
-        Map<ClassDescriptor, Object> myMap = classAnalysisMap.get(analysisClass);
-        if (myMap != null) {
-            myMap.putAll(map);
-        } else {
-            myMap = createMap(classAnalysisEngineMap, analysisClass);
-            myMap.putAll(map);
-            classAnalysisMap.put(analysisClass, myMap);
-        }
+        StripedResultMap<ClassDescriptor> myMap = findOrCreateDescriptorMap(classAnalysisMap, classAnalysisEngineMap, analysisClass);
+        myMap.putAll(map);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <E> E getClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor) throws CheckedAnalysisException {
         requireNonNull(classDescriptor, "classDescriptor is null");
         // Get the descriptor->result map for this analysis class,
         // creating if necessary
-        Map<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap,
+        StripedResultMap<ClassDescriptor> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap,
                 classAnalysisEngineMap,
                 analysisClass);
 
         // See if there is a cached result in the descriptor map
-        Object analysisResult = descriptorMap.get(classDescriptor);
+        Object analysisResult = descriptorMap.lookup(classDescriptor);
+        if (analysisResult == null && !pinnedResults.isEmpty()) {
+            PinnedResult pinned = pinnedResults.get(new ResultKey(analysisClass, classDescriptor));
+            if (pinned != null) {
+                // Evicted while pinned: cache it again
+                analysisResult = descriptorMap.storeIfAbsent(classDescriptor, pinned.result);
+            }
+        }
         if (analysisResult == null) {
             // No cached result - compute (or recompute)
+            analysisResult = computeOnce(new ResultKey(analysisClass, classDescriptor),
+                    new ClassResultComputation<E>(analysisClass, classDescriptor, descriptorMap));
+        }
+
+        // Abnormal analysis result?
+        if (analysisResult instanceof AbnormalAnalysisResult) {
+            return checkedCast(analysisClass, ((AbnormalAnalysisResult) analysisResult).returnOrThrow());
+        }
+
+        return checkedCast(analysisClass, analysisResult);
+    }
+
+    private class ClassResultComputation<E> implements ResultComputation {
+        private final Class<E> analysisClass;
+
+        private final ClassDescriptor classDescriptor;
 
+        private final StripedResultMap<ClassDescriptor> descriptorMap;
+
+        ClassResultComputation(Class<E> analysisClass, ClassDescriptor classDescriptor,
+                StripedResultMap<ClassDescriptor> descriptorMap) {
+            this.analysisClass = analysisClass;
+            this.classDescriptor = classDescriptor;
+            this.descriptorMap = descriptorMap;
+        }
+
+        @Override
+        public Object lookup() {
+            return descriptorMap.get(classDescriptor);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object compute() {
             IAnalysisEngine<ClassDescriptor, E> engine = (IAnalysisEngine<ClassDescriptor, E>) classAnalysisEngineMap
                     .get(analysisClass);
             if (engine == null) {
                 throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
             }
             Profiler profiler = getProfiler();
+            Object analysisResult;
             // Perform the analysis
             try {
                 profiler.start(engine.getClass());
-                analysisResult = engine.analyze(this, classDescriptor);
+                analysisResult = engine.analyze(AnalysisCache.this, classDescriptor);
 
                 // If engine returned null, we need to construct
                 // an AbnormalAnalysisResult object to record that fact.
@@ -285,17 +581,126 @@ public class AnalysisCache implements IAnalysisCache {
             } finally {
                 profiler.end(engine.getClass());
             }
+            return analysisResult;
+        }
 
-            // Save the result
-            descriptorMap.put(classDescriptor, analysisResult);
+        @Override
+        public Object store(Object result) {
+            return descriptorMap.storeIfAbsent(classDescriptor, result);
         }
+    }
 
-        // Abnormal analysis result?
-        if (analysisResult instanceof AbnormalAnalysisResult) {
-            return checkedCast(analysisClass, ((AbnormalAnalysisResult) analysisResult).returnOrThrow());
+    /**
+     * Compute an analysis result, unless another thread is already computing
+     * it, in which case we wait for that thread's result.
+     *
+     * @param key
+     *            key of the result
+     * @param computation
+     *            computes and caches the result
+     * @return the result
+     */
+    private Object computeOnce(ResultKey key, ResultComputation computation) {
+        PendingAnalysis pending = new PendingAnalysis();
+        PendingAnalysis inProgress = pendingResults.putIfAbsent(key, pending);
+        if (inProgress != null) {
+            Object result = inProgress.await();
+            if (result != null) {
+                return result;
+            }
+            // The other thread failed, or waiting would deadlock
+            return computeAndStore(key, computation);
+        }
+        Object result = null;
+        try {
+            // Another thread may have finished just before we registered
+            result = computation.lookup();
+            if (result == null) {
+                result = computeAndStore(key, computation);
+            }
+            return result;
+        } finally {
+            PrivateResults scope = key.descriptor instanceof MethodDescriptor ? privateResults.get().get(key.descriptor) : null;
+            if (scope != null && scope.results.containsKey(key.analysisClass)) {
+                // Others may only have the result once it is published
+                scope.pending.put(key.analysisClass, pending);
+            } else {
+                pendingResults.remove(key);
+                pending.complete(isTransient(result) ? null : result);
+            }
         }
+    }
 
-        return checkedCast(analysisClass, analysisResult);
+    private Object computeAndStore(ResultKey key, ResultComputation computation) {
+        ArrayList<ResultKey> keys = computing.get();
+        keys.add(key);
+        Object result;
+        try {
+            result = computation.compute();
+        } finally {
+            keys.remove(keys.size() - 1);
+            if (key.descriptor instanceof MethodDescriptor) {
+                publishPrivateResults(key);
+            }
+        }
+        if (isTransient(result)) {
+            return result;
+        }
+        return computation.store(result);
+    }
+
+    /**
+     * Make the private results of a method visible to other threads, if the
+     * given computation put a result of the method eagerly in the cache.
+     *
+     * @param key
+     *            the key of the computation which is done
+     */
+    private void publishPrivateResults(ResultKey key) {
+        MethodDescriptor methodDescriptor = (MethodDescriptor) key.descriptor;
+        Map<MethodDescriptor, PrivateResults> scopes = privateResults.get();
+        PrivateResults scope = scopes.get(methodDescriptor);
+        if (scope == null || !scope.owner.equals(key)) {
+            return;
+        }
+        scopes.remove(methodDescriptor);
+        try {
+            ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+            synchronized (classContext) {
+                for (Map.Entry<Class<?>, Object> e : scope.results.entrySet()) {
+                    if (classContext.getMethodAnalysis(e.getKey(), methodDescriptor) == null) {
+                        classContext.putMethodAnalysis(e.getKey(), methodDescriptor, e.getValue());
+                    }
+                }
+            }
+            reweighClassContext(classContext, methodDescriptor);
+        } catch (CheckedAnalysisException e) {
+            IllegalStateException ise = new IllegalStateException("Unexpected exception adding method analysis to cache");
+            ise.initCause(e);
+            throw ise;
+        } finally {
+            for (Map.Entry<Class<?>, PendingAnalysis> e : scope.pending.entrySet()) {
+                ResultKey pendingKey = new ResultKey(e.getKey(), methodDescriptor);
+                pendingResults.remove(pendingKey);
+                // Results purged meanwhile are computed again by the waiters
+                Object result = scope.results.get(e.getKey());
+                e.getValue().complete(isTransient(result) ? null : result);
+            }
+        }
+    }
+
+    /**
+     * Is the result an analysis abandoned because the running detector
+     * exceeded its time budget? Such results are neither cached nor shared
+     * with other threads, since the analysis may well succeed for another
+     * detector.
+     */
+    static boolean isTransient(@CheckForNull Object result) {
+        if (!(result instanceof AbnormalAnalysisResult)) {
+            return false;
+        }
+        CheckedAnalysisException e = ((AbnormalAnalysisResult) result).checkedAnalysisException;
+        return e instanceof TimeBudgetExceededException && ((TimeBudgetExceededException) e).isDetectorBudget();
     }
 
     @Override
@@ -315,9 +720,51 @@ public class AnalysisCache implements IAnalysisCache {
     public <E> E getMethodAnalysis(Class<E> analysisClass, @Nonnull MethodDescriptor methodDescriptor) throws CheckedAnalysisException {
         requireNonNull(methodDescriptor, "methodDescriptor is null");
         ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
-        Object object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+        Object object = getPrivateResult(analysisClass, methodDescriptor);
+        if (object == null) {
+            object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+        }
 
         if (object == null) {
+            object = computeOnce(new ResultKey(analysisClass, methodDescriptor),
+                    new MethodResultComputation<E>(classContext, analysisClass, methodDescriptor));
+        }
+        if (Debug.VERIFY_INTEGRITY && object == null) {
+            throw new IllegalStateException("AnalysisFactory failed to produce a result object");
+        }
+
+        if (object instanceof AbnormalAnalysisResult) {
+            return checkedCast(analysisClass, ((AbnormalAnalysisResult) object).returnOrThrow());
+        }
+
+        return checkedCast(analysisClass, object);
+    }
+
+    private class MethodResultComputation<E> implements ResultComputation {
+        private final ClassContext classContext;
+
+        private final Class<E> analysisClass;
+
+        private final MethodDescriptor methodDescriptor;
+
+        MethodResultComputation(ClassContext classContext, Class<E> analysisClass, MethodDescriptor methodDescriptor) {
+            this.classContext = classContext;
+            this.analysisClass = analysisClass;
+            this.methodDescriptor = methodDescriptor;
+        }
+
+        @Override
+        public Object lookup() {
+            Object result = getPrivateResult(analysisClass, methodDescriptor);
+            if (result != null) {
+                return result;
+            }
+            return classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+        }
+
+        @Override
+        public Object compute() {
+            Object object;
             try {
                 object = analyzeMethod(classContext, analysisClass, methodDescriptor);
                 if (object == null) {
@@ -328,19 +775,44 @@ public class AnalysisCache implements IAnalysisCache {
             } catch (CheckedAnalysisException e) {
                 object = new AbnormalAnalysisResult(e);
             }
-
-            classContext.putMethodAnalysis(analysisClass, methodDescriptor, object);
-
-        }
-        if (Debug.VERIFY_INTEGRITY && object == null) {
-            throw new IllegalStateException("AnalysisFactory failed to produce a result object");
+            return object;
         }
 
-        if (object instanceof AbnormalAnalysisResult) {
-            return checkedCast(analysisClass, ((AbnormalAnalysisResult) object).returnOrThrow());
+        @Override
+        public Object store(Object result) {
+            PrivateResults scope = privateResults.get().get(methodDescriptor);
+            if (scope != null) {
+                Object existing = scope.results.get(analysisClass);
+                if (existing != null) {
+                    return existing;
+                }
+                scope.results.put(analysisClass, result);
+                return result;
+            }
+            synchronized (classContext) {
+                Object existing = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+                if (existing != null) {
+                    return existing;
+                }
+                classContext.putMethodAnalysis(analysisClass, methodDescriptor, result);
+            }
+            reweighClassContext(classContext, methodDescriptor);
+            return result;
         }
+    }
 
-        return checkedCast(analysisClass, object);
+    /**
+     * Weigh a ClassContext again after a method analysis was added to it, if
+     * the cache runs with a memory budget.
+     */
+    private void reweighClassContext(ClassContext classContext, MethodDescriptor methodDescriptor) {
+        if (budget == null) {
+            return;
+        }
+        StripedResultMap<ClassDescriptor> map = classAnalysisMap.get(ClassContext.class);
+        if (map != null) {
+            map.reweigh(methodDescriptor.getClassDescriptor(), classContext);
+        }
     }
 
     /**
@@ -372,12 +844,32 @@ public class AnalysisCache implements IAnalysisCache {
         }
     }
 
+    @CheckForNull
+    private Object getPrivateResult(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
+        PrivateResults scope = privateResults.get().get(methodDescriptor);
+        return scope != null ? scope.results.get(analysisClass) : null;
+    }
+
     @Override
     public <E> void eagerlyPutMethodAnalysis(Class<E> analysisClass, @Nonnull MethodDescriptor methodDescriptor, E analysisObject) {
+        ResultKey key = new ResultKey(analysisClass, methodDescriptor);
+        if (computing.get().contains(key)) {
+            // Not finished: keep it, and the results computed from it, to the
+            // calling thread until its computation is done
+            Map<MethodDescriptor, PrivateResults> scopes = privateResults.get();
+            PrivateResults scope = scopes.get(methodDescriptor);
+            if (scope == null) {
+                scope = new PrivateResults(key);
+                scopes.put(methodDescriptor, scope);
+            }
+            scope.results.put(analysisClass, analysisObject);
+            return;
+        }
         try {
             ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
             assert analysisClass.isInstance(analysisObject);
             classContext.putMethodAnalysis(analysisClass, methodDescriptor, analysisObject);
+            reweighClassContext(classContext, methodDescriptor);
         } catch (CheckedAnalysisException e) {
             IllegalStateException ise = new IllegalStateException("Unexpected exception adding method analysis to cache");
             ise.initCause(e);
@@ -388,6 +880,16 @@ public class AnalysisCache implements IAnalysisCache {
 
     @Override
     public void purgeMethodAnalyses(@Nonnull MethodDescriptor methodDescriptor) {
+        PrivateResults scope = privateResults.get().get(methodDescriptor);
+        if (scope != null) {
+            for (Iterator<Class<?>> i = scope.results.keySet().iterator(); i.hasNext();) {
+                Class<?> cls = i.next();
+                // As in ClassContext.purgeMethodAnalyses()
+                if (DataflowAnalysis.class.isAssignableFrom(cls) || Dataflow.class.isAssignableFrom(cls)) {
+                    i.remove();
+                }
+            }
+        }
         try {
 
             ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
@@ -413,39 +915,53 @@ public class AnalysisCache implements IAnalysisCache {
      *            the analysis map
      * @return the descriptor to analysis object map
      */
-    private static <DescriptorType> Map<DescriptorType, Object> findOrCreateDescriptorMap(
-            final Map<Class<?>, Map<DescriptorType, Object>> analysisClassToDescriptorMapMap,
+    private <DescriptorType> StripedResultMap<DescriptorType> findOrCreateDescriptorMap(
+            final ConcurrentHashMap<Class<?>, StripedResultMap<DescriptorType>> analysisClassToDescriptorMapMap,
             final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, ?>> engineMap,
                     final Class<?> analysisClass) {
-        Map<DescriptorType, Object> descriptorMap = analysisClassToDescriptorMapMap.get(analysisClass);
+        StripedResultMap<DescriptorType> descriptorMap = analysisClassToDescriptorMapMap.get(analysisClass);
         if (descriptorMap == null) {
             descriptorMap = createMap(engineMap, analysisClass);
-            analysisClassToDescriptorMapMap.put(analysisClass, descriptorMap);
+            StripedResultMap<DescriptorType> existing = analysisClassToDescriptorMapMap.putIfAbsent(analysisClass, descriptorMap);
+            if (existing != null) {
+                descriptorMap = existing;
+            }
         }
         return descriptorMap;
     }
 
-    private static <DescriptorType> Map<DescriptorType, Object> createMap(
+    @SuppressWarnings("unchecked")
+    private <DescriptorType> StripedResultMap<DescriptorType> createMap(
             final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, ?>> engineMap,
                     final Class<?> analysisClass) {
-        Map<DescriptorType, Object> descriptorMap;
-        // Create a MapCache that allows the analysis engine to
-        // decide that analysis results should be retained indefinitely.
+        // Create a bounded map unless the analysis engine
+        // decides that analysis results should be retained indefinitely.
         IAnalysisEngine<DescriptorType, ?> engine = engineMap.get(analysisClass);
+        int maxCapacity;
         if (analysisClass.equals(JavaClass.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_JAVACLASS_RESULTS_TO_CACHE);
+            maxCapacity = MAX_JAVACLASS_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(FBClassReader.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_FBCLASSREADER_RESULTS_TO_CACHE);
+            maxCapacity = MAX_FBCLASSREADER_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(ConstantPoolGen.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE);
+            maxCapacity = MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(ClassContext.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(10);
+            // A ClassContext grows as method analyses are added to it, so
+            // it is weighed again each time (see reweighClassContext())
+            maxCapacity = 10;
         } else if (engine instanceof IClassAnalysisEngine && ((IClassAnalysisEngine<?>) engine).canRecompute()) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CLASS_RESULTS_TO_CACHE);
+            maxCapacity = MAX_CLASS_RESULTS_TO_CACHE;
         } else {
-            descriptorMap = new HashMap<DescriptorType, Object>();
+            return new StripedResultMap<DescriptorType>(0);
         }
-        return descriptorMap;
+        CacheBudget b = budget;
+        if (b != null) {
+            IResultSizeEstimator<Object> estimator = null;
+            if (engine instanceof IResultSizeEstimator) {
+                estimator = (IResultSizeEstimator<Object>) engine;
+            }
+            return new StripedResultMap<DescriptorType>(b, estimator);
+        }
+        return new StripedResultMap<DescriptorType>(maxCapacity);
     }
 
     @Override
@@ -471,7 +987,7 @@ public class AnalysisCache implements IAnalysisCache {
     public @CheckForNull <E> E getOptionalDatabase(Class<E> databaseClass) {
         return getDatabase(databaseClass, true);
     }
-    public <E> E getDatabase(Class<E> databaseClass, boolean optional) {
+    public synchronized <E> E getDatabase(Class<E> databaseClass, boolean optional) {
         Object database = databaseMap.get(databaseClass);
 
         if (database == null) {
@@ -503,7 +1019,7 @@ public class AnalysisCache implements IAnalysisCache {
     }
 
     @Override
-    public <E> void eagerlyPutDatabase(Class<E> databaseClass, E database) {
+    public synchronized <E> void eagerlyPutDatabase(Class<E> databaseClass, E database) {
         databaseMap.put(databaseClass, database);
     }
 
@@ -0,0 +1,122 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by the weighted result maps of an analysis cache.
+ * When the estimated size of all cached results exceeds the budget, the least
+ * recently used results (over all weighted maps) are evicted.
+ * <p>
+ * Access times come from a clock which only advances when a result is
+ * stored, so that lookups don't contend on it. Stores get even times and
+ * lookups odd times, so a result looked up after another one was stored
+ * counts as more recently used.
+ */
+class CacheBudget {
+
+    private final long maxBytes;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The weighted maps, by identity; guarded by this object's lock.
+     */
+    private final Set<StripedResultMap<?>> maps = Collections
+            .newSetFromMap(new IdentityHashMap<StripedResultMap<?>, Boolean>());
+
+    /**
+     * @param maxBytes
+     *            the budget, in bytes
+     */
+    CacheBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    synchronized void addMap(StripedResultMap<?> map) {
+        maps.add(map);
+    }
+
+    synchronized void removeMap(StripedResultMap<?> map) {
+        maps.remove(map);
+    }
+
+    long currentTime() {
+        return 2 * clock.get() + 1;
+    }
+
+    long advanceTime() {
+        return 2 * clock.incrementAndGet();
+    }
+
+    /**
+     * Account for a change in the size of cached results, evicting results
+     * if the budget is exceeded.
+     *
+     * @param delta
+     *            change in size, in bytes
+     */
+    void charge(long delta) {
+        if (usedBytes.addAndGet(delta) > maxBytes) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        // One thread evicts at a time; the others wait, and find the budget
+        // met again
+        synchronized (this) {
+            while (usedBytes.get() > maxBytes) {
+                StripedResultMap<?> victim = null;
+                int victimStripe = -1;
+                long oldest = Long.MAX_VALUE;
+                for (StripedResultMap<?> map : maps) {
+                    for (int i = 0, n = map.getNumStripes(); i < n; i++) {
+                        long access = map.getEldestAccess(i);
+                        if (access < oldest) {
+                            oldest = access;
+                            victim = map;
+                            victimStripe = i;
+                        }
+                    }
+                }
+                if (victim == null) {
+                    // nothing left to evict
+                    return;
+                }
+                usedBytes.addAndGet(-victim.evictEldest(victimStripe));
+            }
+        }
+    }
+}
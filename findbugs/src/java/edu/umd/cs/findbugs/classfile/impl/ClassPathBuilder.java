@@ -25,8 +25,10 @@ import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -34,6 +36,14 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -155,6 +165,41 @@ public class ClassPathBuilder implements IClassPathBuilder {
         }
     }
 
+    /**
+     * A codebase opened for a worklist item, and scanned if the item calls
+     * for it. When several threads are used, this is done in advance by a
+     * background thread; the results are used when the item is processed.
+     */
+    static class ScannedCodeBase {
+        final WorkListItem item;
+
+        ICodeBase codeBase;
+
+        /** IOException or ResourceNotFoundException opening the codebase */
+        Exception openFailure;
+
+        /** All entries of the codebase, or null if it was not scanned */
+        List<ICodeBaseEntry> entries;
+
+        /** The entries whose class names are parsed */
+        final List<ICodeBaseEntry> classEntries = new ArrayList<ICodeBaseEntry>();
+
+        /**
+         * For each chunk of class entries, the parsed class names (see
+         * {@link ClassPathBuilder#parseClassName(ICodeBaseEntry)})
+         */
+        final List<Future<Object[]>> parsedClassNames = new ArrayList<Future<Object[]>>();
+
+        ScannedCodeBase(WorkListItem item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Number of class entries parsed by one task
+     */
+    private static final int PARSE_CHUNK_SIZE = 256;
+
     // Fields
     private final IClassFactory classFactory;
 
@@ -170,6 +215,24 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
     private boolean scanNestedArchives;
 
+    private int numThreads = 1;
+
+    /**
+     * Threads opening and scanning codebases, or null if all is done on the
+     * calling thread
+     */
+    private ExecutorService executor;
+
+    /**
+     * Codebases being opened in advance, for each worklist item
+     */
+    private final Map<WorkListItem, Future<ScannedCodeBase>> prefetched = new IdentityHashMap<WorkListItem, Future<ScannedCodeBase>>();
+
+    /**
+     * Locators of the codebases being opened in advance
+     */
+    private final Set<String> prefetchedLocators = new HashSet<String>();
+
     /**
      * Constructor.
      *
@@ -211,6 +274,11 @@ public class ClassPathBuilder implements IClassPathBuilder {
         this.scanNestedArchives = scanNestedArchives;
     }
 
+    @Override
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -222,13 +290,34 @@ public class ClassPathBuilder implements IClassPathBuilder {
     @Override
     public void build(IClassPath classPath, IClassPathBuilderProgress progress) throws CheckedAnalysisException, IOException,
     InterruptedException {
-        // Discover all directly and indirectly referenced codebases
-        processWorkList(classPath, projectWorkList, progress);
+        if (numThreads > 1) {
+            // Make sure the threads share the descriptor factory
+            DescriptorFactory.instance();
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FindBugs classpath scanner " + count.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        try {
+            // Discover all directly and indirectly referenced codebases
+            processWorkList(classPath, projectWorkList, progress);
 
-        // If not already located, try to locate any additional codebases
-        // containing classes required for analysis.
-        if (!discoveredCodeBaseList.isEmpty()) {
-            locateCodebasesRequiredForAnalysis(classPath, progress);
+            // If not already located, try to locate any additional codebases
+            // containing classes required for analysis.
+            if (!discoveredCodeBaseList.isEmpty()) {
+                locateCodebasesRequiredForAnalysis(classPath, progress);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
         }
 
         // Add all discovered codebases to the classpath
@@ -562,125 +651,290 @@ public class ClassPathBuilder implements IClassPathBuilder {
             throws InterruptedException, IOException, ResourceNotFoundException {
         // Build the classpath, scanning codebases for nested archives
         // and referenced codebases.
-        while (!workList.isEmpty()) {
-            WorkListItem item = workList.removeFirst();
-            if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                progress.startArchive(item.toString());
+        try {
+            while (!workList.isEmpty()) {
+                if (executor != null) {
+                    prefetch(workList);
+                }
+                processWorkListItem(workList, progress);
             }
-            if (DEBUG) {
-                System.out.println("Working: " + item.getCodeBaseLocator());
+        } finally {
+            closePrefetched();
+        }
+    }
+
+    /**
+     * Process the first item of the worklist.
+     */
+    private void processWorkListItem(LinkedList<WorkListItem> workList, IClassPathBuilderProgress progress)
+            throws InterruptedException, IOException, ResourceNotFoundException {
+        WorkListItem item = workList.removeFirst();
+        if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+            progress.startArchive(item.toString());
+        }
+        if (DEBUG) {
+            System.out.println("Working: " + item.getCodeBaseLocator());
+        }
+
+        DiscoveredCodeBase discoveredCodeBase;
+
+        // See if we have encountered this codebase before
+        discoveredCodeBase = discoveredCodeBaseMap.get(item.getCodeBaseLocator().toString());
+        if (discoveredCodeBase != null) {
+            // If the codebase is not an app codebase and
+            // the worklist item says that it is an app codebase,
+            // change it. Otherwise, we have nothing to do.
+            if (!discoveredCodeBase.getCodeBase().isApplicationCodeBase() && item.isAppCodeBase()) {
+                discoveredCodeBase.getCodeBase().setApplicationCodeBase(true);
             }
 
-            DiscoveredCodeBase discoveredCodeBase;
+            return;
+        }
 
-            // See if we have encountered this codebase before
-            discoveredCodeBase = discoveredCodeBaseMap.get(item.getCodeBaseLocator().toString());
-            if (discoveredCodeBase != null) {
-                // If the codebase is not an app codebase and
-                // the worklist item says that it is an app codebase,
-                // change it. Otherwise, we have nothing to do.
-                if (!discoveredCodeBase.getCodeBase().isApplicationCodeBase() && item.isAppCodeBase()) {
-                    discoveredCodeBase.getCodeBase().setApplicationCodeBase(true);
-                }
+        // Detect .java files, which are probably human error
+        if (isJavaFile(item)) {
+            if (DEBUG){
+                System.err.println("Ignoring .java file \"" + ((FilesystemCodeBaseLocator) item.getCodeBaseLocator()).getPathName()
+                        + "\" specified in classpath or auxclasspath");
+            }
+            return;
+        }
 
-                continue;
+        // If we are working on an application codebase,
+        // then failing to open/scan it is a fatal error.
+        // We issue warnings about problems with aux codebases,
+        // but continue anyway.
+
+        try {
+            // Open the codebase and add it to the classpath
+            ScannedCodeBase scanned = getScannedCodeBase(item);
+            if (scanned.openFailure instanceof IOException) {
+                throw (IOException) scanned.openFailure;
+            } else if (scanned.openFailure != null) {
+                throw (ResourceNotFoundException) scanned.openFailure;
             }
+            discoveredCodeBase = new DiscoveredCodeBase(scanned.codeBase);
 
-            // Detect .java files, which are probably human error
-            if (item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator) {
-                FilesystemCodeBaseLocator l = (FilesystemCodeBaseLocator) item.getCodeBaseLocator();
-                if (l.getPathName().endsWith(".java")) {
-                    if (DEBUG){
-                        System.err.println("Ignoring .java file \"" + l.getPathName() + "\" specified in classpath or auxclasspath");
+            // Note that this codebase has been visited
+            discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
+            discoveredCodeBaseList.addLast(discoveredCodeBase);
+
+            // If it is a scannable codebase, check it for nested archives.
+            // In addition, if it is an application codebase then
+            // make a list of application classes.
+            if (scanned.entries != null) {
+                scanCodebase(workList, discoveredCodeBase, scanned);
+            }
+
+            // Check for a Jar manifest for additional aux classpath
+            // entries.
+            scanJarManifestForClassPathEntries(workList, discoveredCodeBase.getCodeBase());
+        } catch (IOException e) {
+            if (item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+                if (e instanceof FileNotFoundException) {
+                    if(item.isAppCodeBase()){
+                        errorLogger.logError("File from project not found: " + item.getCodeBaseLocator(), e);
+                    } else {
+                        errorLogger.logError("File from auxiliary classpath not found: " + item.getCodeBaseLocator(), e);
                     }
-                    continue;
+                } else {
+                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
                 }
             }
+        } catch (ResourceNotFoundException e) {
+            if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+                errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+            }
+        }
 
-            // If we are working on an application codebase,
-            // then failing to open/scan it is a fatal error.
-            // We issue warnings about problems with aux codebases,
-            // but continue anyway.
+        if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+            progress.finishArchive();
+        }
+    }
 
-            try {
-                // Open the codebase and add it to the classpath
-                discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
-                discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
-                discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
-
-                // Note that this codebase has been visited
-                discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
-                discoveredCodeBaseList.addLast(discoveredCodeBase);
-
-                // If it is a scannable codebase, check it for nested archives.
-                // In addition, if it is an application codebase then
-                // make a list of application classes.
-                if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
-                        && ( discoveredCodeBase.codeBase.isApplicationCodeBase()
-                                || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED)
-                        ) {
-                    scanCodebase(classPath, workList, discoveredCodeBase);
-                }
+    private static boolean isJavaFile(WorkListItem item) {
+        return item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator
+                && ((FilesystemCodeBaseLocator) item.getCodeBaseLocator()).getPathName().endsWith(".java");
+    }
 
-                // Check for a Jar manifest for additional aux classpath
-                // entries.
-                scanJarManifestForClassPathEntries(workList, discoveredCodeBase.getCodeBase());
-            } catch (IOException e) {
-                if (item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                    if (e instanceof FileNotFoundException) {
-                        if(item.isAppCodeBase()){
-                            errorLogger.logError("File from project not found: " + item.getCodeBaseLocator(), e);
-                        } else {
-                            errorLogger.logError("File from auxiliary classpath not found: " + item.getCodeBaseLocator(), e);
-                        }
-                    } else {
-                        errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
-                    }
+    /**
+     * Start opening and scanning the codebases of worklist items in advance.
+     * Only the first item for each codebase is considered; if another item
+     * for the codebase ends up being processed first, the results are not
+     * used.
+     */
+    private void prefetch(LinkedList<WorkListItem> workList) {
+        for (final WorkListItem item : workList) {
+            String locator = item.getCodeBaseLocator().toString();
+            if (prefetched.containsKey(item) || isJavaFile(item) || discoveredCodeBaseMap.containsKey(locator)
+                    || !prefetchedLocators.add(locator)) {
+                continue;
+            }
+            prefetched.put(item, executor.submit(new Callable<ScannedCodeBase>() {
+                @Override
+                public ScannedCodeBase call() throws InterruptedException {
+                    return openCodeBase(item);
                 }
-            } catch (ResourceNotFoundException e) {
-                if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+            }));
+        }
+    }
+
+    /**
+     * Close the codebases opened in advance which were not used.
+     */
+    private void closePrefetched() {
+        for (Future<ScannedCodeBase> future : prefetched.values()) {
+            try {
+                ScannedCodeBase scanned = future.get();
+                if (scanned.codeBase != null) {
+                    scanned.codeBase.close();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Nothing to close
             }
+        }
+        prefetched.clear();
+        prefetchedLocators.clear();
+    }
 
-            if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                progress.finishArchive();
+    /**
+     * Get the codebase of a worklist item, opened and scanned.
+     */
+    private ScannedCodeBase getScannedCodeBase(WorkListItem item) throws InterruptedException {
+        Future<ScannedCodeBase> future = prefetched.remove(item);
+        if (future == null) {
+            return openCodeBase(item);
+        }
+        prefetchedLocators.remove(item.getCodeBaseLocator().toString());
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new IllegalStateException("Error opening codebase " + item.getCodeBaseLocator(), cause);
+        }
+    }
+
+    /**
+     * Open the codebase of a worklist item. If it is a scannable codebase
+     * which is part of the application or was specified by the user, list
+     * its entries and start parsing the names of the classes of application
+     * codebases. May be called on any thread.
+     */
+    private ScannedCodeBase openCodeBase(WorkListItem item) throws InterruptedException {
+        ScannedCodeBase scanned = new ScannedCodeBase(item);
+        try {
+            scanned.codeBase = item.getCodeBaseLocator().openCodeBase();
+        } catch (IOException e) {
+            scanned.openFailure = e;
+            return scanned;
+        } catch (ResourceNotFoundException e) {
+            scanned.openFailure = e;
+            return scanned;
+        }
+        ICodeBase codeBase = scanned.codeBase;
+        codeBase.setApplicationCodeBase(item.isAppCodeBase());
+        codeBase.setHowDiscovered(item.getHowDiscovered());
+        if (!(codeBase instanceof IScannableCodeBase)
+                || !(item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED)) {
+            return scanned;
+        }
+
+        if (DEBUG) {
+            System.out.println("Scanning " + codeBase.getCodeBaseLocator());
+        }
+        scanned.entries = new ArrayList<ICodeBaseEntry>();
+        ICodeBaseIterator i = ((IScannableCodeBase) codeBase).iterator();
+        while (i.hasNext()) {
+            ICodeBaseEntry entry = i.next();
+            scanned.entries.add(entry);
+            if (!NO_PARSE_CLASS_NAMES && codeBase.isApplicationCodeBase()
+                    && DescriptorFactory.isClassResource(entry.getResourceName()) && !(entry instanceof SingleFileCodeBaseEntry)) {
+                scanned.classEntries.add(entry);
+            }
+        }
+
+        for (int start = 0; start < scanned.classEntries.size(); start += PARSE_CHUNK_SIZE) {
+            final List<ICodeBaseEntry> chunk = scanned.classEntries.subList(start,
+                    Math.min(start + PARSE_CHUNK_SIZE, scanned.classEntries.size()));
+            Callable<Object[]> parseChunk = new Callable<Object[]>() {
+                @Override
+                public Object[] call() {
+                    Object[] result = new Object[chunk.size()];
+                    for (int k = 0; k < result.length; k++) {
+                        result[k] = parseClassName(chunk.get(k));
+                    }
+                    return result;
+                }
+            };
+            FutureTask<Object[]> task = new FutureTask<Object[]>(parseChunk);
+            if (executor != null) {
+                executor.execute(task);
+            } else {
+                task.run();
             }
+            scanned.parsedClassNames.add(task);
         }
+        return scanned;
     }
 
     /**
-     * Scan given codebase in order to
+     * Process the entries of a scanned codebase in order to
      * <ul>
      * <li>check the codebase for nested archives (adding any found to the
      * worklist)
      * <li>build a list of class resources found in the codebase
      * </ul>
+     * and give class entries their true names.
      *
      * @param workList
      *            the worklist
      * @param discoveredCodeBase
      *            the codebase to scan
+     * @param scanned
+     *            the entries of the codebase
      * @throws InterruptedException
      */
-    private void scanCodebase(IClassPath classPath, LinkedList<WorkListItem> workList, DiscoveredCodeBase discoveredCodeBase)
+    private void scanCodebase(LinkedList<WorkListItem> workList, DiscoveredCodeBase discoveredCodeBase, ScannedCodeBase scanned)
             throws InterruptedException {
-        if (DEBUG) {
-            System.out.println("Scanning " + discoveredCodeBase.getCodeBase().getCodeBaseLocator());
-        }
-
         IScannableCodeBase codeBase = (IScannableCodeBase) discoveredCodeBase.getCodeBase();
 
-        ICodeBaseIterator i = codeBase.iterator();
-        while (i.hasNext()) {
-            ICodeBaseEntry entry = i.next();
-            if (VERBOSE) {
-                System.out.println("Entry: " + entry.getResourceName());
+        int classIndex = 0;
+        for (Future<Object[]> chunk : scanned.parsedClassNames) {
+            Object[] parsed;
+            try {
+                parsed = chunk.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (RuntimeException) cause;
             }
+            for (Object trueResourceName : parsed) {
+                ICodeBaseEntry entry = scanned.classEntries.get(classIndex++);
+                if (trueResourceName instanceof String) {
+                    if (!trueResourceName.equals(entry.getResourceName())) {
+                        entry.overrideResourceName((String) trueResourceName);
+                    }
+                } else {
+                    errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry,
+                            (Throwable) trueResourceName);
+                }
+            }
+        }
 
-            if (!NO_PARSE_CLASS_NAMES && codeBase.isApplicationCodeBase()
-                    && DescriptorFactory.isClassResource(entry.getResourceName()) && !(entry instanceof SingleFileCodeBaseEntry)) {
-                parseClassName(entry);
+        for (ICodeBaseEntry entry : scanned.entries) {
+            if (VERBOSE) {
+                System.out.println("Entry: " + entry.getResourceName());
             }
 
             // Note the resource exists in this codebase
@@ -702,12 +956,14 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
     /**
      * Attempt to parse data of given resource in order to divine the real name
-     * of the class contained in the resource.
+     * of the class contained in the resource. May be called on any thread.
      *
      * @param entry
      *            the resource
+     * @return the real resource name of the class, or the exception thrown
+     *         while parsing the resource
      */
-    private void parseClassName(ICodeBaseEntry entry) {
+    private static Object parseClassName(ICodeBaseEntry entry) {
         DataInputStream in = null;
         try {
             InputStream resourceIn = entry.openResource();
@@ -719,14 +975,11 @@ public class ClassPathBuilder implements IClassPathBuilder {
             ClassNameAndSuperclassInfo.Builder builder = new ClassNameAndSuperclassInfo.Builder();
             parser.parse(builder);
 
-            String trueResourceName = builder.build().getClassDescriptor().toResourceName();
-            if (!trueResourceName.equals(entry.getResourceName())) {
-                entry.overrideResourceName(trueResourceName);
-            }
+            return builder.build().getClassDescriptor().toResourceName();
         } catch (IOException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            return e;
         } catch (InvalidClassFileFormatException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            return e;
         } finally {
             IO.close(in);
         }
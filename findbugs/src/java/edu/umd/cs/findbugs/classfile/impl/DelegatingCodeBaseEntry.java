@@ -45,6 +45,13 @@ public class DelegatingCodeBaseEntry implements ICodeBaseEntry {
         this.delegateCodeBaseEntry = delegateCodeBaseEntry;
     }
 
+    /**
+     * @return the entry this entry delegates to
+     */
+    public ICodeBaseEntry getDelegateCodeBaseEntry() {
+        return delegateCodeBaseEntry;
+    }
+
     /*
      * (non-Javadoc)
      *
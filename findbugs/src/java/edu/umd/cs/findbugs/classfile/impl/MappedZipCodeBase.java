@@ -0,0 +1,447 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
+
+/**
+ * Implementation of ICodeBase reading a zip or jar file from memory: either a
+ * memory mapping of the file, or the contents of an archive nested in another
+ * MappedZipCodeBase. The central directory is read once into a sorted name
+ * index, and entries are read directly from memory.
+ * <p>
+ * Only archives using stored and deflated entries, without encryption or
+ * ZIP64 extensions, are supported; the constructors throw ZipException for
+ * others, so that {@link ZipCodeBaseFactory} can fall back on another
+ * implementation.
+ * <p>
+ * The mapping of a file is only released when the codebase is garbage
+ * collected, so the file stays open (and on some platforms locked) until
+ * then. Zip files are therefore only mapped if the findbugs.zip.mapped
+ * property is set; archives nested in a mapped file are always read from
+ * memory.
+ */
+public class MappedZipCodeBase extends AbstractScannableCodeBase {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    static final int STORED = 0;
+
+    static final int DEFLATED = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer contents;
+
+    private final String pathName;
+
+    /** Entry names, in central directory order */
+    private final String[] names;
+
+    /** Offsets of the local headers of the entries */
+    private final int[] localHeaderOffsets;
+
+    private final int[] compressedSizes;
+
+    private final int[] sizes;
+
+    private final byte[] methods;
+
+    /** Modification times of the entries, in MS-DOS format */
+    private final int[] dosTimes;
+
+    /** Entry indexes, sorted by entry name */
+    private final int[] sortedIndex;
+
+    /**
+     * Open a zip file.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param file
+     *            the zip file
+     */
+    public MappedZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
+        this(codeBaseLocator, map(file), file.getPath());
+        setLastModifiedTime(file.lastModified());
+    }
+
+    /**
+     * Read a zip archive in memory.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param contents
+     *            the archive; it must not be modified while the codebase is
+     *            used
+     * @param pathName
+     *            the file name of the archive, or null if it is not a file
+     */
+    public MappedZipCodeBase(ICodeBaseLocator codeBaseLocator, ByteBuffer contents, @CheckForNull String pathName)
+            throws ZipException {
+        super(codeBaseLocator);
+        this.contents = contents.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.pathName = pathName;
+
+        ByteBuffer buf = this.contents;
+        int end = findEndOfCentralDirectory(buf);
+        int numEntries = buf.getShort(end + 10) & 0xffff;
+        long directorySize = buf.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = buf.getInt(end + 16) & 0xffffffffL;
+        if (numEntries == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL) {
+            throw new ZipException("ZIP64 archives are not supported: " + this);
+        }
+        if (directoryOffset + directorySize > end) {
+            throw new ZipException("Invalid central directory in " + this);
+        }
+
+        names = new String[numEntries];
+        localHeaderOffsets = new int[numEntries];
+        compressedSizes = new int[numEntries];
+        sizes = new int[numEntries];
+        methods = new byte[numEntries];
+        dosTimes = new int[numEntries];
+        int pos = (int) directoryOffset;
+        for (int i = 0; i < numEntries; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > end || buf.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry in " + this);
+            }
+            int flags = buf.getShort(pos + 8) & 0xffff;
+            int method = buf.getShort(pos + 10) & 0xffff;
+            if ((flags & 1) != 0 || (method != STORED && method != DEFLATED)) {
+                throw new ZipException("Unsupported entry in " + this);
+            }
+            long compressedSize = buf.getInt(pos + 20) & 0xffffffffL;
+            long size = buf.getInt(pos + 24) & 0xffffffffL;
+            long localHeaderOffset = buf.getInt(pos + 42) & 0xffffffffL;
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE || localHeaderOffset >= directoryOffset) {
+                throw new ZipException("Unsupported entry size in " + this);
+            }
+            int nameLength = buf.getShort(pos + 28) & 0xffff;
+            int extraLength = buf.getShort(pos + 30) & 0xffff;
+            int commentLength = buf.getShort(pos + 32) & 0xffff;
+            names[i] = getString(buf, pos + CENTRAL_HEADER_SIZE, nameLength);
+            methods[i] = (byte) method;
+            dosTimes[i] = buf.getInt(pos + 12);
+            compressedSizes[i] = (int) compressedSize;
+            sizes[i] = (int) size;
+            localHeaderOffsets[i] = (int) localHeaderOffset;
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        sortedIndex = sortByName(names);
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Zip file too large to map: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private int findEndOfCentralDirectory(ByteBuffer buf) throws ZipException {
+        int limit = Math.max(0, buf.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int pos = buf.limit() - END_SIZE; pos >= limit; pos--) {
+            if (buf.getInt(pos) == END_SIGNATURE) {
+                return pos;
+            }
+        }
+        throw new ZipException("No central directory in " + this);
+    }
+
+    private static String getString(ByteBuffer buf, int pos, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buf.duplicate();
+        view.position(pos);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static int[] sortByName(final String[] names) {
+        Integer[] index = new Integer[names.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        Arrays.sort(index, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int cmp = names[o1].compareTo(names[o2]);
+                // Keep the first of entries with the same name first
+                return cmp != 0 ? cmp : o1.compareTo(o2);
+            }
+        });
+        int[] result = new int[index.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = index[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the first entry with given name, or -1 if there is
+     *         none
+     */
+    private int findEntry(String name) {
+        int low = 0;
+        int high = sortedIndex.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = names[sortedIndex[mid]].compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                if (cmp == 0) {
+                    found = sortedIndex[mid];
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public ICodeBaseEntry lookupResource(String resourceName) {
+        // Translate resource name, in case a resource name
+        // has been overridden and the resource is being accessed
+        // using the overridden name.
+        resourceName = translateResourceName(resourceName);
+
+        int index = findEntry(resourceName);
+        if (index < 0) {
+            return null;
+        }
+        return new MappedZipCodeBaseEntry(this, index);
+    }
+
+    @Override
+    public ICodeBaseIterator iterator() {
+        return new ICodeBaseIterator() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                scanForNextEntry();
+                return next < names.length;
+            }
+
+            @Override
+            public ICodeBaseEntry next() throws InterruptedException {
+                scanForNextEntry();
+                if (next >= names.length) {
+                    throw new NoSuchElementException();
+                }
+                addLastModifiedTime(getTime(next));
+                return new MappedZipCodeBaseEntry(MappedZipCodeBase.this, next++);
+            }
+
+            private void scanForNextEntry() {
+                while (next < names.length && names[next].endsWith("/")) {
+                    next++;
+                }
+            }
+        };
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    int getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Get the modification time of an entry.
+     *
+     * @return the time in milliseconds since the epoch, or -1 if the entry
+     *         has no valid time
+     */
+    long getTime(int index) {
+        int dosTime = dosTimes[index];
+        if (dosTime == 0) {
+            return -1L;
+        }
+        Calendar calendar = new GregorianCalendar(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1,
+                (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Get the data of an entry, as stored in the archive.
+     *
+     * @return a new buffer holding the (possibly compressed) data
+     */
+    private ByteBuffer getRawData(int index) throws ZipException {
+        int pos = localHeaderOffsets[index];
+        ByteBuffer buf = contents;
+        if (pos + LOCAL_HEADER_SIZE > buf.limit() || buf.getInt(pos) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + names[index] + " in " + this);
+        }
+        int start = pos + LOCAL_HEADER_SIZE + (buf.getShort(pos + 26) & 0xffff) + (buf.getShort(pos + 28) & 0xffff);
+        if (start + compressedSizes[index] > buf.limit()) {
+            throw new ZipException("Truncated entry " + names[index] + " in " + this);
+        }
+        ByteBuffer data = buf.duplicate();
+        data.position(start);
+        data.limit(start + compressedSizes[index]);
+        return data.slice();
+    }
+
+    /**
+     * Get the uncompressed data of an entry. The data of stored entries is
+     * not copied.
+     */
+    ByteBuffer getData(int index) throws IOException {
+        ByteBuffer data = getRawData(index);
+        if (methods[index] == STORED) {
+            return data;
+        }
+        // The inflater needs an extra dummy byte when not expecting a header
+        byte[] input = new byte[data.remaining() + 1];
+        data.get(input, 0, input.length - 1);
+        byte[] output = new byte[sizes[index]];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < output.length) {
+                int n = inflater.inflate(output, length, output.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != output.length) {
+                throw new ZipException("Invalid compressed data for " + names[index] + " in " + this);
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Invalid compressed data for " + names[index] + " in " + this);
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    InputStream openEntry(int index) throws IOException {
+        ByteBuffer data = getData(index);
+        if (data.hasArray()) {
+            return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        return new ByteBufferInputStream(data);
+    }
+
+    @Override
+    public String getPathName() {
+        return pathName;
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released by the garbage collector
+    }
+
+    @Override
+    public String toString() {
+        return pathName != null ? pathName : String.valueOf(getCodeBaseLocator());
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Implementation of ICodeBaseEntry for resources in memory-mapped zipfile
+ * codebases.
+ */
+public class MappedZipCodeBaseEntry extends AbstractScannableCodeBaseEntry {
+    private final MappedZipCodeBase codeBase;
+
+    private final int index;
+
+    MappedZipCodeBaseEntry(MappedZipCodeBase codeBase, int index) {
+        this.codeBase = codeBase;
+        this.index = index;
+    }
+
+    @Override
+    public int getNumBytes() {
+        return codeBase.getSize(index);
+    }
+
+    @Override
+    public InputStream openResource() throws IOException {
+        return codeBase.openEntry(index);
+    }
+
+    /**
+     * Get the uncompressed contents of the entry. Stored entries are not
+     * copied, but read directly from the archive.
+     *
+     * @return a new buffer holding the contents
+     */
+    public ByteBuffer getContents() throws IOException {
+        return codeBase.getData(index);
+    }
+
+    @Override
+    public AbstractScannableCodeBase getCodeBase() {
+        return codeBase;
+    }
+
+    @Override
+    public String getRealResourceName() {
+        return codeBase.getName(index);
+    }
+
+    @Override
+    public ClassDescriptor getClassDescriptor() {
+        return DescriptorFactory.createClassDescriptorFromResourceName(getResourceName());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        MappedZipCodeBaseEntry other = (MappedZipCodeBaseEntry) obj;
+        return this.codeBase.equals(other.codeBase) && this.index == other.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return 7919 * codeBase.hashCode() + index;
+    }
+
+    @Override
+    public String toString() {
+        return getCodeBase() + ":" + getResourceName();
+    }
+}
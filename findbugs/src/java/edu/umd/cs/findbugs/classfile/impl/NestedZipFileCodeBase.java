@@ -35,9 +35,10 @@ import edu.umd.cs.findbugs.io.IO;
 
 /**
  * A scannable code base class for a zip (or Jar) file nested inside some other
- * codebase. These are handled by extracting the nested zip/jar file to a
- * temporary file, and delegating to an internal ZipFileCodeBase that reads from
- * the temporary file.
+ * codebase. Archives nested in a memory-mapped archive are read in place by an
+ * internal MappedZipCodeBase. Others are handled by extracting the nested
+ * zip/jar file to a temporary file, and delegating to an internal
+ * ZipFileCodeBase that reads from the temporary file.
  *
  * @author David Hovemeyer
  */
@@ -61,6 +62,17 @@ public class NestedZipFileCodeBase extends AbstractScannableCodeBase {
         this.parentCodeBase = codeBaseLocator.getParentCodeBase();
         this.resourceName = codeBaseLocator.getResourceName();
 
+        ICodeBaseEntry resource = parentCodeBase.lookupResource(resourceName);
+        if (resource == null) {
+            throw new ResourceNotFoundException(resourceName);
+        }
+
+        // Archives nested in memory-mapped archives are read in place
+        delegateCodeBase = ZipCodeBaseFactory.makeNestedZipCodeBase(codeBaseLocator, resource);
+        if (delegateCodeBase != null) {
+            return;
+        }
+
         InputStream inputStream = null;
         OutputStream outputStream = null;
         try {
@@ -72,10 +84,6 @@ public class NestedZipFileCodeBase extends AbstractScannableCodeBase {
             // Copy nested zipfile to the temporary file
             // FIXME: potentially long blocking operation - should be
             // interruptible
-            ICodeBaseEntry resource = parentCodeBase.lookupResource(resourceName);
-            if (resource == null) {
-                throw new ResourceNotFoundException(resourceName);
-            }
             inputStream = resource.openResource();
             outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
             IO.copy(inputStream, outputStream);
@@ -137,7 +145,7 @@ public class NestedZipFileCodeBase extends AbstractScannableCodeBase {
     @Override
     public void close() {
         delegateCodeBase.close();
-        if (!tempFile.delete()) {
+        if (tempFile != null && !tempFile.delete()) {
             AnalysisContext.logError("Could not delete " + tempFile);
         }
     }
@@ -0,0 +1,116 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * An analysis result which is being computed by some thread. Other threads
+ * asking for the same result wait for it instead of computing it again.
+ * <p>
+ * A thread never waits if that would close a cycle of threads waiting for
+ * each other's results (e.g., thread 1 computes A which needs B, while thread
+ * 2 computes B which needs A); it is told to compute the result itself
+ * instead. The wait chain is checked again periodically, since the owner may
+ * start waiting after the calling thread did.
+ */
+final class PendingAnalysis {
+
+    /**
+     * For each waiting thread, the computation it waits for.
+     */
+    private static final ConcurrentHashMap<Thread, PendingAnalysis> waitingFor = new ConcurrentHashMap<Thread, PendingAnalysis>();
+
+    /**
+     * How long to wait before checking the wait chain again.
+     */
+    private static final long POLL_MILLIS = 50;
+
+    private final Thread owner = Thread.currentThread();
+
+    private boolean done;
+
+    private Object result;
+
+    /**
+     * Publish the result of the computation and wake up waiting threads.
+     *
+     * @param result
+     *            the result, or null if the computation failed and waiting
+     *            threads should compute the result themselves
+     */
+    synchronized void complete(@CheckForNull Object result) {
+        this.result = result;
+        this.done = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the result of the computation.
+     *
+     * @return the result, or null if the calling thread should compute the
+     *         result itself
+     */
+    @CheckForNull
+    Object await() {
+        Thread current = Thread.currentThread();
+        waitingFor.put(current, this);
+        try {
+            if (wouldDeadlock(current)) {
+                return null;
+            }
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!done) {
+                    try {
+                        wait(POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    if (!done && wouldDeadlock(current)) {
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                current.interrupt();
+            }
+            synchronized (this) {
+                return result;
+            }
+        } finally {
+            waitingFor.remove(current);
+        }
+    }
+
+    private boolean wouldDeadlock(Thread current) {
+        PendingAnalysis p = this;
+        // The chain can only be as long as the number of waiting threads
+        for (int i = 0, n = waitingFor.size(); p != null && i <= n; i++) {
+            if (p.owner == current) {
+                return true;
+            }
+            p = waitingFor.get(p.owner);
+        }
+        return false;
+    }
+}
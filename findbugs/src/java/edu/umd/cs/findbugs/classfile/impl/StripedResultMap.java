@@ -0,0 +1,447 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
+
+/**
+ * Map of analysis results which may be accessed by several threads. Entries
+ * are spread over a number of independently locked stripes.
+ * <p>
+ * A map is either unbounded, bounded by a maximum number of entries (each
+ * stripe evicting its least recently used entries once it holds more than its
+ * share), or weighted: each entry is charged its estimated size against a
+ * {@link CacheBudget} shared by all weighted maps, which evicts the least
+ * recently used entries of all those maps when the budget is exceeded.
+ *
+ * @param <K>
+ *            descriptor type
+ */
+class StripedResultMap<K> extends AbstractMap<K, Object> {
+
+    private static final int MAX_STRIPES = 16;
+
+    /**
+     * Minimum number of entries in a bounded stripe, so that small caches
+     * keep (nearly) global LRU behavior.
+     */
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    /**
+     * Weight of results whose engine doesn't estimate their size.
+     */
+    static final long DEFAULT_RESULT_SIZE = 4096;
+
+    /**
+     * A cached value in a weighted map.
+     */
+    private static final class Weighed {
+        final Object value;
+
+        /** Estimated size; guarded by the stripe lock */
+        long size;
+
+        /** Budget clock at last access; guarded by the stripe lock */
+        long lastAccess;
+
+        Weighed(Object value, long size, long lastAccess) {
+            this.value = value;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Stripe<K> extends LinkedHashMap<K, Object> {
+        private static final long serialVersionUID = 1L;
+
+        final int maxCapacity;
+
+        long hits, misses, evictions, retainedSize;
+
+        Stripe(int maxCapacity) {
+            super(16, 0.75f, true);
+            this.maxCapacity = maxCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Object> eldest) {
+            if (maxCapacity > 0 && size() > maxCapacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final Stripe<K>[] stripes;
+
+    private final @CheckForNull CacheBudget budget;
+
+    private final @CheckForNull IResultSizeEstimator<Object> estimator;
+
+    /**
+     * Create an unbounded or count-bounded map.
+     *
+     * @param maxCapacity
+     *            maximum number of entries, or a value &lt;= 0 if the map is
+     *            unbounded
+     */
+    StripedResultMap(int maxCapacity) {
+        this(maxCapacity, null, null);
+    }
+
+    /**
+     * Create a weighted map.
+     *
+     * @param budget
+     *            the budget the map's entries are charged against
+     * @param estimator
+     *            estimates the size of results, or null to use the default
+     *            size for each entry
+     */
+    StripedResultMap(CacheBudget budget, @CheckForNull IResultSizeEstimator<Object> estimator) {
+        this(0, budget, estimator);
+        budget.addMap(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StripedResultMap(int maxCapacity, @CheckForNull CacheBudget budget, @CheckForNull IResultSizeEstimator<Object> estimator) {
+        this.budget = budget;
+        this.estimator = estimator;
+        int numStripes = MAX_STRIPES;
+        if (maxCapacity > 0) {
+            while (numStripes > 1 && maxCapacity / numStripes < MIN_STRIPE_CAPACITY) {
+                numStripes /= 2;
+            }
+        }
+        stripes = (Stripe<K>[]) new Stripe<?>[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe<K>(maxCapacity > 0 ? Math.max(1, maxCapacity / numStripes) : 0);
+        }
+    }
+
+    private Stripe<K> stripeFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private Object unwrap(Object o) {
+        if (budget != null && o != null) {
+            Weighed w = (Weighed) o;
+            w.lastAccess = budget.currentTime();
+            return w.value;
+        }
+        return o;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Stripe<K> stripe = stripeFor(key);
+        // lookups reorder the entries, so even reads must be guarded
+        synchronized (stripe) {
+            return unwrap(stripe.get(key));
+        }
+    }
+
+    /**
+     * Get a value, recording a cache hit or miss.
+     */
+    Object lookup(K key) {
+        Stripe<K> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Object result = unwrap(stripe.get(key));
+            if (result != null) {
+                stripe.hits++;
+            } else {
+                stripe.misses++;
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    private Object wrap(Object value) {
+        if (budget == null) {
+            return value;
+        }
+        long size = DEFAULT_RESULT_SIZE;
+        if (estimator != null && !(value instanceof AnalysisCache.AbnormalAnalysisResult)) {
+            size = estimator.estimateRetainedSize(value);
+        }
+        return new Weighed(value, size, budget.advanceTime());
+    }
+
+    private long sizeOf(Object o) {
+        return budget != null && o != null ? ((Weighed) o).size : 0;
+    }
+
+    @Override
+    public Object put(K key, Object value) {
+        Object wrapped = wrap(value);
+        Stripe<K> stripe = stripeFor(key);
+        Object old;
+        synchronized (stripe) {
+            old = stripe.put(key, wrapped);
+            stripe.retainedSize += sizeOf(wrapped) - sizeOf(old);
+        }
+        if (budget != null) {
+            budget.charge(sizeOf(wrapped) - sizeOf(old));
+            return old != null ? ((Weighed) old).value : null;
+        }
+        return old;
+    }
+
+    /**
+     * Store a value unless the key already has one.
+     *
+     * @return the value now stored for the key
+     */
+    Object storeIfAbsent(K key, Object value) {
+        Object wrapped = wrap(value);
+        Stripe<K> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Object existing = stripe.get(key);
+            if (existing != null) {
+                return unwrap(existing);
+            }
+            stripe.put(key, wrapped);
+            stripe.retainedSize += sizeOf(wrapped);
+        }
+        if (budget != null) {
+            budget.charge(sizeOf(wrapped));
+        }
+        return value;
+    }
+
+    /**
+     * Estimate the size of a value of a weighted map again, e.g. because
+     * results were added to it.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, which is only weighed again if it is still the
+     *            value stored for the key
+     */
+    void reweigh(K key, Object value) {
+        if (budget == null || estimator == null) {
+            return;
+        }
+        long size = estimator.estimateRetainedSize(value);
+        Stripe<K> stripe = stripeFor(key);
+        long delta;
+        synchronized (stripe) {
+            // get() moves the entry last, so it counts as an access
+            Weighed w = (Weighed) stripe.get(key);
+            if (w == null || w.value != value) {
+                return;
+            }
+            w.lastAccess = budget.currentTime();
+            delta = size - w.size;
+            w.size = size;
+            stripe.retainedSize += delta;
+        }
+        budget.charge(delta);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Stripe<K> stripe = stripeFor(key);
+        Object old;
+        synchronized (stripe) {
+            old = stripe.remove(key);
+            stripe.retainedSize -= sizeOf(old);
+        }
+        if (budget != null && old != null) {
+            budget.charge(-sizeOf(old));
+            return ((Weighed) old).value;
+        }
+        return old;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe<K> stripe : stripes) {
+            long size;
+            synchronized (stripe) {
+                stripe.clear();
+                size = stripe.retainedSize;
+                stripe.retainedSize = 0;
+            }
+            if (budget != null) {
+                budget.charge(-size);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the entries; changes to the map are not reflected
+     * in the returned set.
+     */
+    @Override
+    public Set<Map.Entry<K, Object>> entrySet() {
+        List<Map.Entry<K, Object>> entries = new ArrayList<Map.Entry<K, Object>>();
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<K, Object> e : stripe.entrySet()) {
+                    Object value = e.getValue();
+                    if (budget != null) {
+                        value = ((Weighed) value).value;
+                    }
+                    entries.add(new SimpleImmutableEntry<K, Object>(e.getKey(), value));
+                }
+            }
+        }
+        return new EntrySnapshot<K>(entries);
+    }
+
+    /**
+     * Remove all entries, and detach a weighted map from its budget.
+     */
+    void dispose() {
+        clear();
+        if (budget != null) {
+            budget.removeMap(this);
+        }
+    }
+
+    int getNumStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Get the time of last access of the least recently used entry of a
+     * stripe of a weighted map.
+     *
+     * @return the access time, or Long.MAX_VALUE if the stripe is empty
+     */
+    long getEldestAccess(int stripeIndex) {
+        Stripe<K> stripe = stripes[stripeIndex];
+        synchronized (stripe) {
+            Iterator<Object> i = stripe.values().iterator();
+            return i.hasNext() ? ((Weighed) i.next()).lastAccess : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Evict the least recently used entry of a stripe of a weighted map.
+     *
+     * @return the size of the evicted entry
+     */
+    long evictEldest(int stripeIndex) {
+        Stripe<K> stripe = stripes[stripeIndex];
+        synchronized (stripe) {
+            Iterator<Object> i = stripe.values().iterator();
+            if (!i.hasNext()) {
+                return 0;
+            }
+            long size = ((Weighed) i.next()).size;
+            i.remove();
+            stripe.retainedSize -= size;
+            stripe.evictions++;
+            return size;
+        }
+    }
+
+    /**
+     * @return number of lookups which found a cached result
+     */
+    long getHits() {
+        long result = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.hits;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of lookups which found no cached result
+     */
+    long getMisses() {
+        long result = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.misses;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of entries evicted to keep the map within its bounds
+     */
+    long getEvictions() {
+        long result = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.evictions;
+            }
+        }
+        return result;
+    }
+
+    private static class EntrySnapshot<K> extends AbstractSet<Map.Entry<K, Object>> {
+        private final List<Map.Entry<K, Object>> entries;
+
+        EntrySnapshot(List<Map.Entry<K, Object>> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, Object>> iterator() {
+            return entries.iterator();
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+}
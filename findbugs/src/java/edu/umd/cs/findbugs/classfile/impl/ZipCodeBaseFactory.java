@@ -23,7 +23,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.zip.ZipException;
 
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
 import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
 import edu.umd.cs.findbugs.log.Profiler;
 
@@ -32,10 +36,25 @@ import edu.umd.cs.findbugs.log.Profiler;
  */
 public class ZipCodeBaseFactory {
 
+    /**
+     * Read zip files using memory mappings. Off by default, since a mapped
+     * file stays open until the codebase is garbage collected, which keeps
+     * it locked on Windows.
+     */
+    private static final boolean USE_MAPPED_ZIP = SystemProperties.getBoolean("findbugs.zip.mapped");
+
     public static AbstractScannableCodeBase makeZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
         Profiler profiler = Global.getAnalysisCache().getProfiler();
         profiler.start(ZipCodeBaseFactory.class);
         try {
+            if (USE_MAPPED_ZIP) {
+                try {
+                    return new MappedZipCodeBase(codeBaseLocator, file);
+                } catch (IOException e) {
+                    // Unsupported zip file; ZipFileCodeBase reports the
+                    // problem if the file can't be read at all
+                }
+            }
             return new ZipFileCodeBase(codeBaseLocator, file);
         } catch (ZipException e) {
             // May be too many zip entries
@@ -45,7 +64,28 @@ public class ZipCodeBaseFactory {
         }
     }
 
-
-
-
+    /**
+     * Read a zip archive nested in another codebase directly from memory,
+     * if the archive is an entry of a memory-mapped zip file.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator of the nested archive
+     * @param resource
+     *            the entry holding the nested archive
+     * @return the codebase, or null if the archive can't be read from memory
+     */
+    public static @CheckForNull AbstractScannableCodeBase makeNestedZipCodeBase(ICodeBaseLocator codeBaseLocator,
+            ICodeBaseEntry resource) throws IOException {
+        while (resource instanceof DelegatingCodeBaseEntry) {
+            resource = ((DelegatingCodeBaseEntry) resource).getDelegateCodeBaseEntry();
+        }
+        if (!(resource instanceof MappedZipCodeBaseEntry)) {
+            return null;
+        }
+        try {
+            return new MappedZipCodeBase(codeBaseLocator, ((MappedZipCodeBaseEntry) resource).getContents(), null);
+        } catch (ZipException e) {
+            return null;
+        }
+    }
 }
@@ -25,14 +25,14 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
 /**
  * This detector is currently disabled by default.
  * It generates false positives when creating directory entries.
  *
  */
-public class EmptyZipFileEntry extends BytecodeScanningDetector implements StatelessDetector {
+public class EmptyZipFileEntry extends BytecodeScanningDetector implements ClassLocalDetector {
 
     private final BugReporter bugReporter;
 
@@ -28,13 +28,13 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.OpcodeStack.Item;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
-import edu.umd.cs.findbugs.StatelessDetector;
 import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 
-public class FindFloatEquality extends OpcodeStackDetector implements StatelessDetector {
+public class FindFloatEquality extends OpcodeStackDetector implements ClassLocalDetector {
     private static final int SAW_NOTHING = 0;
 
     private static final int SAW_COMP = 1;
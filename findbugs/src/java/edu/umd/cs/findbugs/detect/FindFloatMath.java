@@ -22,9 +22,9 @@ package edu.umd.cs.findbugs.detect;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
-public class FindFloatMath extends BytecodeScanningDetector implements StatelessDetector {
+public class FindFloatMath extends BytecodeScanningDetector implements ClassLocalDetector {
     private final BugReporter bugReporter;
 
     public FindFloatMath(BugReporter bugReporter) {
@@ -25,7 +25,7 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
 //   2:   astore_1
 //   3:   monitorenter
@@ -34,7 +34,7 @@ import edu.umd.cs.findbugs.StatelessDetector;
 //   8:   aload_1
 //   9:   monitorexit
 
-public class FindNakedNotify extends BytecodeScanningDetector implements StatelessDetector {
+public class FindNakedNotify extends BytecodeScanningDetector implements ClassLocalDetector {
     int stage = 0;
 
     private final BugReporter bugReporter;
@@ -25,11 +25,11 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
-import edu.umd.cs.findbugs.StatelessDetector;
 import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 
-public class FindNonShortCircuit extends OpcodeStackDetector implements StatelessDetector {
+public class FindNonShortCircuit extends OpcodeStackDetector implements ClassLocalDetector {
 
     int stage1 = 0;
 
@@ -25,10 +25,10 @@ import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.ba.Hierarchy;
 
-public class FindRunInvocations extends BytecodeScanningDetector implements StatelessDetector {
+public class FindRunInvocations extends BytecodeScanningDetector implements ClassLocalDetector {
 
     private final BugReporter bugReporter;
 
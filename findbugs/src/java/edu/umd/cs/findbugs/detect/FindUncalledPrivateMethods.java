@@ -33,15 +33,15 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.MethodAnnotation;
-import edu.umd.cs.findbugs.StatelessDetector;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.util.ClassName;
 
 /**
  * Detector to find private methods that are never called.
  */
-public class FindUncalledPrivateMethods extends BytecodeScanningDetector implements StatelessDetector {
+public class FindUncalledPrivateMethods extends BytecodeScanningDetector implements ClassLocalDetector {
     private final BugReporter bugReporter;
 
     private String className;
@@ -24,7 +24,7 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
 //   2:   astore_1
 //   3:   monitorenter
@@ -33,7 +33,7 @@ import edu.umd.cs.findbugs.StatelessDetector;
 //   8:   aload_1
 //   9:   monitorexit
 
-public class FindUnconditionalWait extends BytecodeScanningDetector implements StatelessDetector {
+public class FindUnconditionalWait extends BytecodeScanningDetector implements ClassLocalDetector {
     int stage = 0;
 
     private final BugReporter bugReporter;
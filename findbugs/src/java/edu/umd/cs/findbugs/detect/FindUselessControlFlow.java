@@ -30,7 +30,7 @@ import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
 /**
  * A Detector to look for useless control flow. For example,
@@ -51,7 +51,7 @@ import edu.umd.cs.findbugs.StatelessDetector;
  *
  * @author David Hovemeyer
  */
-public class FindUselessControlFlow extends BytecodeScanningDetector implements StatelessDetector {
+public class FindUselessControlFlow extends BytecodeScanningDetector implements ClassLocalDetector {
     private static final BitSet ifInstructionSet = new BitSet();
 
     static {
@@ -24,7 +24,7 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
 /**
  * Find comparisons involving values computed with bitwise operations whose
@@ -32,7 +32,7 @@ import edu.umd.cs.findbugs.StatelessDetector;
  *
  * @author Tom Truscott <trt@unx.sas.com>
  */
-public class IncompatMask extends BytecodeScanningDetector implements StatelessDetector {
+public class IncompatMask extends BytecodeScanningDetector implements ClassLocalDetector {
     int state;
 
     long arg0, arg1;
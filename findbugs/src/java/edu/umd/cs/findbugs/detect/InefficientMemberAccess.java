@@ -25,13 +25,13 @@ import org.apache.bcel.generic.Type;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.InnerClassAccess;
 import edu.umd.cs.findbugs.ba.SignatureParser;
 
-public class InefficientMemberAccess extends BytecodeScanningDetector implements StatelessDetector {
+public class InefficientMemberAccess extends BytecodeScanningDetector implements ClassLocalDetector {
 
     public static final String ACCESS_PREFIX = "access$";
 
@@ -32,7 +32,7 @@ import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
@@ -45,7 +45,7 @@ import edu.umd.cs.findbugs.classfile.MethodDescriptor;
  *
  * @author Dave Brosius
  */
-public class InefficientToArray extends BytecodeScanningDetector implements StatelessDetector {
+public class InefficientToArray extends BytecodeScanningDetector implements ClassLocalDetector {
     private static final boolean DEBUG = SystemProperties.getBoolean("ita.debug");
 
     private static final List<MethodDescriptor> methods = Collections.singletonList(new MethodDescriptor("", "toArray",
@@ -40,7 +40,7 @@ import org.apache.bcel.generic.ReturnInstruction;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.ByteCodePatternDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.BasicBlock;
 import edu.umd.cs.findbugs.ba.CFG;
@@ -79,7 +79,7 @@ import edu.umd.cs.findbugs.classfile.Global;
  * @author David Hovemeyer
  */
 
-public final class LazyInit extends ByteCodePatternDetector implements StatelessDetector {
+public final class LazyInit extends ByteCodePatternDetector implements ClassLocalDetector {
     private final BugReporter bugReporter;
 
     private static final boolean DEBUG = SystemProperties.getBoolean("lazyinit.debug");
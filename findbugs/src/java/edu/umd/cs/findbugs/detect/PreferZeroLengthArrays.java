@@ -27,10 +27,10 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
-import edu.umd.cs.findbugs.StatelessDetector;
 
-public class PreferZeroLengthArrays extends BytecodeScanningDetector implements StatelessDetector {
+public class PreferZeroLengthArrays extends BytecodeScanningDetector implements ClassLocalDetector {
     boolean nullOnTOS = false;
 
     private final BugReporter bugReporter;
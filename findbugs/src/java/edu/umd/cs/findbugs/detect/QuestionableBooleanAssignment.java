@@ -24,9 +24,9 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 
-public class QuestionableBooleanAssignment extends BytecodeScanningDetector implements StatelessDetector {
+public class QuestionableBooleanAssignment extends BytecodeScanningDetector implements ClassLocalDetector {
     public static final int SEEN_NOTHING = 0;
 
     public static final int SEEN_ICONST_0_OR_1 = 1;
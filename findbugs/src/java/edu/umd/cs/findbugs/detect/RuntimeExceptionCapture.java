@@ -37,9 +37,9 @@ import org.apache.bcel.generic.InstructionHandle;
 import edu.umd.cs.findbugs.BugAccumulator;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
-import edu.umd.cs.findbugs.StatelessDetector;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.BasicBlock;
 import edu.umd.cs.findbugs.ba.CFG;
@@ -67,7 +67,7 @@ import edu.umd.cs.findbugs.util.ClassName;
  * @author Bill Pugh
  * @author David Hovemeyer
  */
-public class RuntimeExceptionCapture extends OpcodeStackDetector implements StatelessDetector {
+public class RuntimeExceptionCapture extends OpcodeStackDetector implements ClassLocalDetector {
     private static final boolean DEBUG = SystemProperties.getBoolean("rec.debug");
 
     private final BugReporter bugReporter;
@@ -28,14 +28,14 @@ import org.apache.bcel.classfile.Method;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.ba.ClassContext;
 
 /**
  * looks for calls to Thread.interrupted from a non static context, especially
  * when that context is not 'currentThread()'.
  */
-public class SuspiciousThreadInterrupted extends BytecodeScanningDetector implements StatelessDetector {
+public class SuspiciousThreadInterrupted extends BytecodeScanningDetector implements ClassLocalDetector {
     public static final int SEEN_NOTHING = 0;
 
     public static final int SEEN_CURRENTTHREAD = 1;
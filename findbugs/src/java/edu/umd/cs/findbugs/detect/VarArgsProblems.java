@@ -26,7 +26,7 @@ import org.apache.bcel.classfile.Code;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.StatelessDetector;
+import edu.umd.cs.findbugs.ClassLocalDetector;
 import edu.umd.cs.findbugs.TypeAnnotation;
 
 /* Look for sequences of the form:
@@ -39,7 +39,7 @@ import edu.umd.cs.findbugs.TypeAnnotation;
  INVOKESTATIC Arrays.asList(Object[]) : List
  */
 
-public class VarArgsProblems extends BytecodeScanningDetector implements StatelessDetector {
+public class VarArgsProblems extends BytecodeScanningDetector implements ClassLocalDetector {
 
     private final BugReporter bugReporter;
 
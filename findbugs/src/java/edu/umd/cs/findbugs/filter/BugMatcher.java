@@ -69,6 +69,18 @@ public class BugMatcher implements Matcher {
         return result1 || result2 || result3;
     }
 
+    StringSetMatch getCodes() {
+        return codes;
+    }
+
+    StringSetMatch getPatterns() {
+        return patterns;
+    }
+
+    StringSetMatch getCategories() {
+        return categories;
+    }
+
     @Override
     public int hashCode() {
         return codes.hashCode() + patterns.hashCode() + categories.hashCode();
@@ -49,6 +49,14 @@ public class ClassMatcher implements Matcher {
         this.role = role;
     }
 
+    NameMatch getClassName() {
+        return className;
+    }
+
+    String getRole() {
+        return role;
+    }
+
     @Override
     public boolean match(BugInstance bugInstance) {
         ClassAnnotation classAnnotation = bugInstance.getPrimaryClass();
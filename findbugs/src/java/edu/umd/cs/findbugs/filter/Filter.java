@@ -54,6 +54,12 @@ public class Filter extends OrMatcher {
 
     private final IdentityHashMap<Matcher, Boolean> disabled = new IdentityHashMap<Matcher, Boolean>();
 
+    /**
+     * Index of the enabled matchers, built on demand and discarded whenever
+     * the matchers change
+     */
+    private volatile FilterIndex index;
+
     /**
      * Constructor for empty filter
      *
@@ -106,6 +112,7 @@ public class Filter extends OrMatcher {
 
     public void disable(Matcher m) {
         disabled.put(m, true);
+        index = null;
     }
 
     public boolean isEnabled(Matcher m) {
@@ -114,6 +121,7 @@ public class Filter extends OrMatcher {
 
     public void enable(Matcher m) {
         disabled.remove(m);
+        index = null;
     }
 
     public static Filter parseFilter(String fileName) throws IOException {
@@ -161,6 +169,7 @@ public class Filter extends OrMatcher {
      */
     public void softAdd(Matcher child) {
         super.addChild(child);
+        index = null;
     }
 
     @Override
@@ -173,24 +182,43 @@ public class Filter extends OrMatcher {
     public void removeChild(Matcher child) {
         enable(child);// Remove from disabled before removing it
         super.removeChild(child);
+        index = null;
     }
 
     @Override
     public void clear() {
         disabled.clear();
         super.clear();
+        index = null;
     }
 
+    /**
+     * Determine whether any of the enabled matchers matches a BugInstance.
+     * Rather than evaluating all of the matchers, only those which can
+     * possibly match the BugInstance, according to its bug pattern, bug code,
+     * category and class, are evaluated. Matchers must not be modified once
+     * they have been added to the filter.
+     */
     @Override
     public boolean match(BugInstance bugInstance) {
-        Iterator<Matcher> i = childIterator();
-        while (i.hasNext()) {
-            Matcher child = i.next();
-            if (isEnabled(child) && child.match(bugInstance)) {
-                return true;
-            }
+        return getIndex().match(bugInstance);
+    }
+
+    /**
+     * @return number of enabled matchers which can't be indexed, and are
+     *         evaluated for every BugInstance
+     */
+    int getNumUnindexedMatchers() {
+        return getIndex().getNumUnindexed();
+    }
+
+    private FilterIndex getIndex() {
+        FilterIndex result = index;
+        if (result == null) {
+            result = new FilterIndex(this);
+            index = result;
         }
-        return false;
+        return result;
     }
 
     /**
@@ -0,0 +1,440 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+
+/**
+ * An index of the enabled top-level matchers of a {@link Filter}, used to
+ * evaluate only the matchers which can possibly match a given BugInstance.
+ * <p>
+ * For each matcher, a "guard" is derived: a set of keys (bug pattern, bug
+ * code, category, primary class name, package or class name prefix) such that
+ * the matcher can only match a BugInstance having one of the keys. Matchers
+ * are filed under the keys of their guard, and matching a BugInstance
+ * evaluates only the matchers filed under its own keys. Matchers without a
+ * guard, such as regular expressions which don't start with a literal, or
+ * relational matchers, are evaluated for every BugInstance.
+ * <p>
+ * The index is immutable; the Filter builds a new one whenever its matchers
+ * change.
+ */
+final class FilterIndex {
+
+    private static final int CLASS = 0;
+
+    private static final int PACKAGE = 1;
+
+    private static final int TYPE = 2;
+
+    private static final int PREFIX = 3;
+
+    private static final int CODE = 4;
+
+    private static final int CATEGORY = 5;
+
+    /**
+     * Rough cost of evaluating a key, i.e., how many BugInstances are
+     * expected to have it; used to pick the most selective guard of an And.
+     */
+    private static final int[] COST = { 1, 4, 8, 16, 32, 256 };
+
+    /** Characters with a special meaning in regular expressions */
+    private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+    /** Regular expression suffix of a Package matcher */
+    private static final String PACKAGE_SUFFIX = "\\.[^.]+";
+
+    private final Map<String, List<Matcher>> byType = new HashMap<String, List<Matcher>>();
+
+    private final Map<String, List<Matcher>> byCode = new HashMap<String, List<Matcher>>();
+
+    private final Map<String, List<Matcher>> byCategory = new HashMap<String, List<Matcher>>();
+
+    private final Map<String, List<Matcher>> byClass = new HashMap<String, List<Matcher>>();
+
+    private final Map<String, List<Matcher>> byPackage = new HashMap<String, List<Matcher>>();
+
+    private final TrieNode byPrefix = new TrieNode();
+
+    private boolean anyPrefix;
+
+    private final List<Matcher> unindexed = new ArrayList<Matcher>();
+
+    /**
+     * Build the index of the enabled top-level matchers of a filter.
+     *
+     * @param filter
+     *            the Filter
+     */
+    FilterIndex(Filter filter) {
+        for (Iterator<Matcher> i = filter.childIterator(); i.hasNext();) {
+            Matcher child = i.next();
+            if (!filter.isEnabled(child)) {
+                continue;
+            }
+            List<Key> guard = getGuard(child);
+            if (guard == null) {
+                unindexed.add(child);
+                continue;
+            }
+            for (Key key : guard) {
+                file(key, child);
+            }
+        }
+    }
+
+    /**
+     * @return number of matchers which are evaluated for every BugInstance
+     */
+    int getNumUnindexed() {
+        return unindexed.size();
+    }
+
+    /**
+     * Determine whether any of the indexed matchers matches a BugInstance.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     * @return true if one of the matchers matches the BugInstance
+     */
+    boolean match(BugInstance bugInstance) {
+        if (!byType.isEmpty() && matchAny(byType.get(bugInstance.getType().trim()), bugInstance)) {
+            return true;
+        }
+        if (!byCode.isEmpty() && matchAny(byCode.get(bugInstance.getAbbrev().trim()), bugInstance)) {
+            return true;
+        }
+        if (!byCategory.isEmpty()
+                && matchAny(byCategory.get(bugInstance.getBugPattern().getCategory().trim()), bugInstance)) {
+            return true;
+        }
+        if (!byClass.isEmpty() || !byPackage.isEmpty() || anyPrefix) {
+            ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+            if (primaryClass != null && matchClass(primaryClass.getClassName(), bugInstance)) {
+                return true;
+            }
+        }
+        return matchAny(unindexed, bugInstance);
+    }
+
+    private boolean matchClass(String className, BugInstance bugInstance) {
+        if (matchAny(byClass.get(className), bugInstance)) {
+            return true;
+        }
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot >= 0 && !byPackage.isEmpty()
+                && matchAny(byPackage.get(className.substring(0, lastDot)), bugInstance)) {
+            return true;
+        }
+        TrieNode node = byPrefix;
+        for (int i = 0; i < className.length() && node != null; i++) {
+            node = node.getChild(className.charAt(i));
+            if (node != null && matchAny(node.matchers, bugInstance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchAny(@CheckForNull List<Matcher> matchers, BugInstance bugInstance) {
+        if (matchers == null) {
+            return false;
+        }
+        for (Matcher m : matchers) {
+            if (m.match(bugInstance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void file(Key key, Matcher matcher) {
+        switch (key.kind) {
+        case CLASS:
+            add(byClass, key.value, matcher);
+            break;
+        case PACKAGE:
+            add(byPackage, key.value, matcher);
+            break;
+        case TYPE:
+            add(byType, key.value, matcher);
+            break;
+        case CODE:
+            add(byCode, key.value, matcher);
+            break;
+        case CATEGORY:
+            add(byCategory, key.value, matcher);
+            break;
+        case PREFIX:
+            TrieNode node = byPrefix;
+            for (int i = 0; i < key.value.length(); i++) {
+                node = node.getOrAddChild(key.value.charAt(i));
+            }
+            if (node.matchers == null) {
+                node.matchers = new ArrayList<Matcher>(2);
+            }
+            addOnce(node.matchers, matcher);
+            anyPrefix = true;
+            break;
+        default:
+            throw new IllegalStateException("Unknown key kind " + key.kind);
+        }
+    }
+
+    private static void add(Map<String, List<Matcher>> map, String key, Matcher matcher) {
+        List<Matcher> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Matcher>(2);
+            map.put(key, list);
+        }
+        addOnce(list, matcher);
+    }
+
+    private static void addOnce(List<Matcher> list, Matcher matcher) {
+        if (list.isEmpty() || list.get(list.size() - 1) != matcher) {
+            list.add(matcher);
+        }
+    }
+
+    /**
+     * Get the guard of a matcher: a list of keys such that the matcher can
+     * only match BugInstances having at least one of them.
+     *
+     * @param m
+     *            the Matcher
+     * @return the guard (an empty guard means the matcher never matches), or
+     *         null if the matcher may match any BugInstance
+     */
+    static @CheckForNull
+    List<Key> getGuard(Matcher m) {
+        if (m instanceof BugMatcher) {
+            BugMatcher bugMatcher = (BugMatcher) m;
+            List<Key> guard = new ArrayList<Key>();
+            addKeys(guard, TYPE, bugMatcher.getPatterns());
+            addKeys(guard, CODE, bugMatcher.getCodes());
+            addKeys(guard, CATEGORY, bugMatcher.getCategories());
+            return guard;
+        }
+        if (m instanceof ClassMatcher) {
+            ClassMatcher classMatcher = (ClassMatcher) m;
+            String role = classMatcher.getRole();
+            if (role != null && !"".equals(role)) {
+                return null;
+            }
+            Key key = getClassKey(classMatcher.getClassName().getSpec());
+            return key == null ? null : Collections.singletonList(key);
+        }
+        if (m instanceof Filter) {
+            // respects its own enabled/disabled state
+            return null;
+        }
+        if (m instanceof OrMatcher) {
+            List<Key> guard = new ArrayList<Key>();
+            for (Matcher child : ((OrMatcher) m).getChildren()) {
+                List<Key> childGuard = getGuard(child);
+                if (childGuard == null) {
+                    return null;
+                }
+                guard.addAll(childGuard);
+            }
+            return guard;
+        }
+        if (m instanceof AndMatcher) {
+            List<Key> best = null;
+            int bestCost = Integer.MAX_VALUE;
+            for (Matcher child : ((AndMatcher) m).getChildren()) {
+                List<Key> childGuard = getGuard(child);
+                if (childGuard != null) {
+                    int cost = getCost(childGuard);
+                    if (cost < bestCost) {
+                        best = childGuard;
+                        bestCost = cost;
+                    }
+                }
+            }
+            return best;
+        }
+        return null;
+    }
+
+    private static void addKeys(List<Key> guard, int kind, StringSetMatch values) {
+        for (String value : values.getValues()) {
+            guard.add(new Key(kind, value));
+        }
+    }
+
+    private static int getCost(List<Key> guard) {
+        int cost = 0;
+        for (Key key : guard) {
+            cost += COST[key.kind];
+        }
+        return cost;
+    }
+
+    /**
+     * Get the key of a class name specification, as used by
+     * {@link NameMatch}: an exact class name, the package of a Package
+     * matcher, or the literal prefix of a regular expression.
+     *
+     * @param spec
+     *            the class name specification
+     * @return the key, or null if the specification may match any class name
+     */
+    static @CheckForNull
+    Key getClassKey(@CheckForNull String spec) {
+        if (spec == null) {
+            return null;
+        }
+        if (!spec.startsWith("~")) {
+            return new Key(CLASS, spec);
+        }
+        String regex = spec.substring(1);
+        if (hasAlternation(regex)) {
+            return null;
+        }
+        if (regex.endsWith(PACKAGE_SUFFIX)) {
+            String packageRegex = regex.substring(0, regex.length() - PACKAGE_SUFFIX.length());
+            StringBuilder packageName = new StringBuilder();
+            if (getLiteralPrefix(packageRegex, packageName) == packageRegex.length()) {
+                return new Key(PACKAGE, packageName.toString());
+            }
+        }
+        StringBuilder literal = new StringBuilder();
+        int end = getLiteralPrefix(regex, literal);
+        if (end == regex.length()) {
+            return new Key(CLASS, literal.toString());
+        }
+        if ("?*+{".indexOf(regex.charAt(end)) >= 0 && literal.length() > 0) {
+            // the quantifier applies to the last character of the literal
+            literal.setLength(literal.length() - 1);
+        }
+        if (literal.length() == 0) {
+            return null;
+        }
+        return new Key(PREFIX, literal.toString());
+    }
+
+    /**
+     * Get the literal prefix of a regular expression.
+     *
+     * @param regex
+     *            the regular expression
+     * @param literal
+     *            the (unescaped) literal prefix is appended to this
+     * @return the index of the first character after the literal prefix
+     */
+    private static int getLiteralPrefix(String regex, StringBuilder literal) {
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    break;
+                }
+                literal.append(regex.charAt(i + 1));
+                i += 2;
+            } else if (REGEX_META.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static boolean hasAlternation(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class Key {
+        final int kind;
+
+        final String value;
+
+        Key(int kind, String value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + value;
+        }
+    }
+
+    /**
+     * A node of the trie of class name prefixes.
+     */
+    private static final class TrieNode {
+        private char[] chars = new char[0];
+
+        private TrieNode[] children = new TrieNode[0];
+
+        @CheckForNull
+        List<Matcher> matchers;
+
+        @CheckForNull
+        TrieNode getChild(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        TrieNode getOrAddChild(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insert = -i - 1;
+            char[] newChars = new char[chars.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(chars, insert, newChars, insert + 1, chars.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            TrieNode child = new TrieNode();
+            newChars[insert] = c;
+            newChildren[insert] = child;
+            chars = newChars;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs.filter;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -66,6 +67,13 @@ public class StringSetMatch {
         return strings.isEmpty();
     }
 
+    /**
+     * @return the (trimmed) values in the value set
+     */
+    Set<String> getValues() {
+        return Collections.unmodifiableSet(strings);
+    }
+
     /**
      * Returns true if the given string is contained in the value set.
      *
@@ -0,0 +1,197 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import edu.umd.cs.findbugs.xml.XMLWriteable;
+
+/**
+ * Analysis time budgets and the units of work abandoned because they
+ * exceeded them.
+ *
+ * @see edu.umd.cs.findbugs.ba.TimeBudget
+ */
+public class BudgetStatistics implements XMLWriteable {
+
+    /**
+     * Maximum number of overruns listed individually; all overruns are
+     * counted.
+     */
+    static final int MAX_LISTED_OVERRUNS = 100;
+
+    /**
+     * Kind of budget which was exceeded.
+     */
+    public enum Kind {
+        /** the analysis of a single method */
+        METHOD,
+        /** a single detector applied to a single class */
+        DETECTOR
+    }
+
+    /**
+     * A unit of work which exceeded its budget.
+     */
+    public static class Overrun {
+        private final Kind kind;
+
+        private final String unit;
+
+        private final String analysis;
+
+        private final long milliseconds;
+
+        public Overrun(Kind kind, String unit, String analysis, long milliseconds) {
+            this.kind = kind;
+            this.unit = unit;
+            this.analysis = analysis;
+            this.milliseconds = milliseconds;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the method or class which was abandoned
+         */
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return the analysis or detector which exceeded the budget
+         */
+        public String getAnalysis() {
+            return analysis;
+        }
+
+        /**
+         * @return the time spent before the unit was abandoned
+         */
+        public long getMilliseconds() {
+            return milliseconds;
+        }
+    }
+
+    private final List<Overrun> overruns = new ArrayList<Overrun>();
+
+    private int methodOverruns;
+
+    private int detectorOverruns;
+
+    private long methodBudget;
+
+    private long detectorBudget;
+
+    /**
+     * @param methodBudget
+     *            time budget in milliseconds for analyzing a method, or 0 if
+     *            there is none
+     * @param detectorBudget
+     *            time budget in milliseconds for applying a detector to a
+     *            class, or 0 if there is none
+     */
+    public synchronized void setBudgets(long methodBudget, long detectorBudget) {
+        this.methodBudget = methodBudget;
+        this.detectorBudget = detectorBudget;
+    }
+
+    public synchronized long getMethodBudget() {
+        return methodBudget;
+    }
+
+    public synchronized long getDetectorBudget() {
+        return detectorBudget;
+    }
+
+    /**
+     * Record a unit of work which was abandoned because it exceeded its
+     * budget.
+     */
+    public synchronized void record(Kind kind, String unit, String analysis, long milliseconds) {
+        if (kind == Kind.METHOD) {
+            methodOverruns++;
+        } else {
+            detectorOverruns++;
+        }
+        if (overruns.size() < MAX_LISTED_OVERRUNS) {
+            overruns.add(new Overrun(kind, unit, analysis, milliseconds));
+        }
+    }
+
+    public synchronized int getMethodOverruns() {
+        return methodOverruns;
+    }
+
+    public synchronized int getDetectorOverruns() {
+        return detectorOverruns;
+    }
+
+    /**
+     * @return the first overruns, in the order they were recorded
+     */
+    public synchronized Collection<Overrun> getOverruns() {
+        return new ArrayList<Overrun>(overruns);
+    }
+
+    public synchronized void clear() {
+        overruns.clear();
+        methodOverruns = 0;
+        detectorOverruns = 0;
+        methodBudget = 0;
+        detectorBudget = 0;
+    }
+
+    @Override
+    public synchronized void writeXML(XMLOutput xmlOutput) throws IOException {
+        if (methodBudget == 0 && detectorBudget == 0) {
+            return;
+        }
+        xmlOutput.startTag("TimeBudgetStats");
+        if (methodBudget > 0) {
+            xmlOutput.addAttribute("methodBudget", String.valueOf(methodBudget));
+        }
+        if (detectorBudget > 0) {
+            xmlOutput.addAttribute("detectorBudget", String.valueOf(detectorBudget));
+        }
+        xmlOutput.addAttribute("methodOverruns", String.valueOf(methodOverruns));
+        xmlOutput.addAttribute("detectorOverruns", String.valueOf(detectorOverruns));
+        if (overruns.isEmpty()) {
+            xmlOutput.stopTag(true);
+            return;
+        }
+        xmlOutput.stopTag(false);
+        for (Overrun o : overruns) {
+            xmlOutput.startTag("BudgetOverrun");
+            xmlOutput.addAttribute("kind", o.kind.name());
+            xmlOutput.addAttribute("unit", o.unit);
+            xmlOutput.addAttribute("analysis", o.analysis);
+            xmlOutput.addAttribute("milliseconds", String.valueOf(o.milliseconds));
+            xmlOutput.stopTag(true);
+        }
+        xmlOutput.closeTag("TimeBudgetStats");
+    }
+}
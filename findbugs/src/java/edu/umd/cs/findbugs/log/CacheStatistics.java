@@ -0,0 +1,128 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import edu.umd.cs.findbugs.xml.XMLWriteable;
+
+/**
+ * Hit, miss and eviction counts of the analysis cache, per analysis type.
+ */
+public class CacheStatistics implements XMLWriteable {
+
+    /**
+     * Counts for one analysis type.
+     */
+    public static class Entry {
+        private final String analysis;
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        public Entry(String analysis, long hits, long misses, long evictions) {
+            this.analysis = analysis;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public String getAnalysis() {
+            return analysis;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+
+    private final SortedMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+    private long budget;
+
+    /**
+     * Record the counts for an analysis type, replacing earlier counts.
+     *
+     * @param analysis
+     *            name of the analysis result class
+     */
+    public synchronized void record(String analysis, long hits, long misses, long evictions) {
+        entries.put(analysis, new Entry(analysis, hits, misses, evictions));
+    }
+
+    /**
+     * @param budget
+     *            the memory budget of the cache in bytes, or 0 if the cache
+     *            is bounded by entry counts
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized Collection<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        budget = 0;
+    }
+
+    @Override
+    public synchronized void writeXML(XMLOutput xmlOutput) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        xmlOutput.startTag("AnalysisCacheStats");
+        if (budget > 0) {
+            xmlOutput.addAttribute("budget", String.valueOf(budget));
+        }
+        xmlOutput.stopTag(false);
+        for (Entry e : entries.values()) {
+            xmlOutput.startTag("CacheStats");
+            xmlOutput.addAttribute("analysis", e.analysis);
+            xmlOutput.addAttribute("hits", String.valueOf(e.hits));
+            xmlOutput.addAttribute("misses", String.valueOf(e.misses));
+            xmlOutput.addAttribute("evictions", String.valueOf(e.evictions));
+            xmlOutput.stopTag(true);
+        }
+        xmlOutput.closeTag("AnalysisCacheStats");
+    }
+}
@@ -19,14 +19,22 @@
 
 package edu.umd.cs.findbugs.log;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EmptyStackException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Stack;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,10 +43,22 @@ import java.util.concurrent.atomic.AtomicLong;
 import edu.umd.cs.findbugs.FindBugs2;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.xml.XMLOutput;
 import edu.umd.cs.findbugs.xml.XMLWriteable;
 
 /**
+ * Measures the time spent in the classes (analysis engines, detectors, ...)
+ * that call {@link #start(Class)} and {@link #end(Class)}, and reports the
+ * totals for each class.
+ * <p>
+ * In hierarchical mode the profiler also records, for each thread, a call
+ * tree of the timed classes and of the contexts (the classes being analyzed)
+ * they run in, so that it shows which detector needed which analysis for
+ * which class. The call tree is written to the XML profile and, if the
+ * findbugs.profiler.collapsedStacks property names a file, to that file in
+ * the collapsed stack format read by flame graph tools.
+ *
  * @author pugh
  */
 public class Profiler implements XMLWriteable {
@@ -46,9 +66,41 @@ public class Profiler implements XMLWriteable {
     final static boolean REPORT = SystemProperties.getBoolean("profiler.report");
     final static boolean MAX_CONTEXT = SystemProperties.getBoolean("findbugs.profiler.maxcontext");
 
+    /** File to write the collapsed call stacks to, at the end of the analysis */
+    final static String COLLAPSED_STACKS_FILE = SystemProperties.getProperty("findbugs.profiler.collapsedStacks");
+
+    final static boolean HIERARCHICAL = SystemProperties.getBoolean("findbugs.profiler.hierarchical")
+            || COLLAPSED_STACKS_FILE != null;
+
     public Profiler() {
-        startTimes = new Stack<Clock>();
+        this(HIERARCHICAL);
+    }
+
+    /**
+     * @param hierarchical
+     *            true if the profiler should record call trees as well as the
+     *            totals for each class
+     */
+    public Profiler(boolean hierarchical) {
+        startTimes = new ThreadLocal<Stack<Clock>>() {
+            @Override
+            protected Stack<Clock> initialValue() {
+                return new Stack<Clock>();
+            }
+        };
         profile = new ConcurrentHashMap<Class<?>, Profile>();
+        if (hierarchical) {
+            callTrees = new ThreadLocal<CallTree>() {
+                @Override
+                protected CallTree initialValue() {
+                    CallTree tree = new CallTree();
+                    allCallTrees.add(tree);
+                    return tree;
+                }
+            };
+        } else {
+            callTrees = null;
+        }
         if (REPORT) {
             System.err.println("Profiling activated");
         }
@@ -208,22 +260,132 @@ public class Profiler implements XMLWriteable {
 
     }
 
-    final Stack<Clock> startTimes;
+    /**
+     * A node of a call tree: a timed class or a context, as reached from the
+     * path of its ancestors.
+     */
+    static class CallNode {
+        final String name;
+
+        final Map<String, CallNode> children;
+
+        /** time in nanoseconds, not counting the time spent in children */
+        long selfTime;
+
+        int calls;
+
+        CallNode(String name, Map<String, CallNode> children) {
+            this.name = name;
+            this.children = children;
+        }
+
+        CallNode(String name) {
+            this(name, new HashMap<String, CallNode>());
+        }
+
+        CallNode getChild(String childName) {
+            CallNode child = children.get(childName);
+            if (child == null) {
+                child = new CallNode(childName);
+                children.put(childName, child);
+            }
+            return child;
+        }
+
+        /**
+         * @return the time in nanoseconds spent in this node and its children
+         */
+        long getTotalTime() {
+            long result = selfTime;
+            for (CallNode child : children.values()) {
+                result += child.getTotalTime();
+            }
+            return result;
+        }
+
+        /**
+         * Add a copy of the given node and its children to this node's
+         * children; the children of the result are sorted by name.
+         */
+        void addSorted(CallNode node) {
+            CallNode child = children.get(node.name);
+            if (child == null) {
+                child = new CallNode(node.name, new TreeMap<String, CallNode>());
+                children.put(node.name, child);
+            }
+            child.selfTime += node.selfTime;
+            child.calls += node.calls;
+            for (CallNode grandChild : node.children.values()) {
+                child.addSorted(grandChild);
+            }
+        }
+    }
+
+    /**
+     * The call tree of one thread, with the path from its root to the node
+     * being timed.
+     */
+    static class CallTree {
+        final CallNode root = new CallNode("");
+
+        final ArrayList<CallNode> path = new ArrayList<CallNode>();
+
+        void enter(String name) {
+            CallNode parent = path.isEmpty() ? root : path.get(path.size() - 1);
+            path.add(parent.getChild(name));
+        }
+
+        void exit(long time) {
+            CallNode node = path.remove(path.size() - 1);
+            node.calls++;
+            node.selfTime += time;
+        }
+    }
+
+    /**
+     * Timing stacks are kept per thread, since analysis worker threads time
+     * their own engines and detectors; totals are merged in {@link #profile}.
+     */
+    final ThreadLocal<Stack<Clock>> startTimes;
+
+    /** The call tree of each thread, or null if not in hierarchical mode */
+    final ThreadLocal<CallTree> callTrees;
+
+    final Queue<CallTree> allCallTrees = new ConcurrentLinkedQueue<CallTree>();
 
     final ConcurrentMap<Class<?>, Profile> profile;
 
-    final Stack<Object> context = new Stack<Object>();
+    final ThreadLocal<Stack<Object>> contextStack = new ThreadLocal<Stack<Object>>() {
+        @Override
+        protected Stack<Object> initialValue() {
+            return new Stack<Object>();
+        }
+    };
 
     public void startContext(Object context) {
-        this.context.push(context);
+        contextStack.get().push(context);
+        if (callTrees != null) {
+            callTrees.get().enter(String.valueOf(context));
+        }
     }
 
     public void endContext(Object context) {
-        Object o = this.context.pop();
+        Object o = contextStack.get().pop();
         assert o == context;
+        if (callTrees != null) {
+            callTrees.get().exit(0);
+        }
+    }
+
+    /**
+     * @return true if this profiler records call trees
+     */
+    public boolean isHierarchical() {
+        return callTrees != null;
     }
 
     private Object getContext() {
+        Stack<Object> context = contextStack.get();
         if (context.size() == 0) {
             return "";
         }
@@ -236,11 +398,14 @@ public class Profiler implements XMLWriteable {
     public void start(Class<?> c) {
         long currentNanoTime = System.nanoTime();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         if (!stack.isEmpty()) {
             stack.peek().accumulateTime(currentNanoTime);
         }
         stack.push(new Clock(c, currentNanoTime));
+        if (callTrees != null) {
+            callTrees.get().enter(c.getName());
+        }
         // System.err.println("push " + c.getSimpleName());
 
     }
@@ -249,7 +414,7 @@ public class Profiler implements XMLWriteable {
         // System.err.println("pop " + c.getSimpleName());
         long currentNanoTime = System.nanoTime();
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         Clock ending = stack.pop();
         if (ending.clazz != c) {
             throw new AssertionError("Asked to end timing for " + c + " but top of stack is " + ending.clazz
@@ -261,6 +426,9 @@ public class Profiler implements XMLWriteable {
             restarting.restartClock(currentNanoTime);
         }
         long accumulatedTime = ending.accumulatedTime;
+        if (callTrees != null) {
+            callTrees.get().exit(accumulatedTime);
+        }
         if (accumulatedTime == 0) {
             return;
         }
@@ -369,6 +537,18 @@ public class Profiler implements XMLWriteable {
      * class statistics based on total time spent fot a class
      */
     public void report() {
+        if (COLLAPSED_STACKS_FILE != null && isHierarchical()) {
+            try {
+                PrintWriter out = UTF8.printWriter(new File(COLLAPSED_STACKS_FILE));
+                try {
+                    writeCollapsedStacks(out);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Can't write collapsed stacks to " + COLLAPSED_STACKS_FILE + ": " + e);
+            }
+        }
         if (!REPORT) {
             return;
         }
@@ -417,7 +597,86 @@ public class Profiler implements XMLWriteable {
      */
     public void clear() {
         profile.clear();
-        startTimes.clear();
+        startTimes.get().clear();
+        if (callTrees != null) {
+            for (CallTree tree : allCallTrees) {
+                tree.root.children.clear();
+            }
+            callTrees.get().path.clear();
+        }
+    }
+
+    /**
+     * Get the call trees of all threads merged in a single tree. Only call
+     * this once the timed threads are done.
+     *
+     * @return the root of the merged tree, with the children of each node
+     *         sorted by name
+     */
+    CallNode getMergedCallTree() {
+        CallNode result = new CallNode("", new TreeMap<String, CallNode>());
+        for (CallTree tree : allCallTrees) {
+            for (CallNode node : tree.root.children.values()) {
+                result.addSorted(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the call trees in the collapsed stack format of flame graph
+     * tools: one line for each path, with the names along the path separated
+     * by semicolons, followed by the time spent in the last one, in
+     * microseconds.
+     *
+     * @param out
+     *            where to write the stacks to
+     */
+    public void writeCollapsedStacks(PrintWriter out) {
+        if (!isHierarchical()) {
+            throw new IllegalStateException("Profiler doesn't record call trees");
+        }
+        StringBuilder stack = new StringBuilder();
+        for (CallNode node : getMergedCallTree().children.values()) {
+            writeCollapsedStacks(node, stack, out);
+        }
+        out.flush();
+    }
+
+    private static void writeCollapsedStacks(CallNode node, StringBuilder stack, PrintWriter out) {
+        int length = stack.length();
+        if (length > 0) {
+            stack.append(';');
+        }
+        stack.append(node.name.replace(';', ':').replace(' ', '_'));
+        long selfMicros = TimeUnit.MICROSECONDS.convert(node.selfTime, TimeUnit.NANOSECONDS);
+        if (selfMicros > 0) {
+            out.print(stack);
+            out.print(' ');
+            out.println(selfMicros);
+        }
+        for (CallNode child : node.children.values()) {
+            writeCollapsedStacks(child, stack, out);
+        }
+        stack.setLength(length);
+    }
+
+    private static void writeCallProfiles(CallNode node, String parentStack, XMLOutput xmlOutput) throws IOException {
+        long timeMillis = TimeUnit.MILLISECONDS.convert(node.getTotalTime(), TimeUnit.NANOSECONDS);
+        if (timeMillis <= 10) {
+            return;
+        }
+        String stack = parentStack.isEmpty() ? node.name : parentStack + ";" + node.name;
+        xmlOutput.startTag("CallProfile");
+        xmlOutput.addAttribute("stack", stack);
+        xmlOutput.addAttribute("totalMilliseconds", String.valueOf(timeMillis));
+        xmlOutput.addAttribute("selfMilliseconds",
+                String.valueOf(TimeUnit.MILLISECONDS.convert(node.selfTime, TimeUnit.NANOSECONDS)));
+        xmlOutput.addAttribute("invocations", String.valueOf(node.calls));
+        xmlOutput.stopTag(true);
+        for (CallNode child : node.children.values()) {
+            writeCallProfiles(child, stack, xmlOutput);
+        }
     }
 
     public Profile getProfile(Class<?> c) {
@@ -464,6 +723,11 @@ public class Profiler implements XMLWriteable {
                 break;
             }
         }
+        if (isHierarchical()) {
+            for (CallNode node : getMergedCallTree().children.values()) {
+                writeCallProfiles(node, "", xmlOutput);
+            }
+        }
         xmlOutput.closeTag("FindBugsProfile");
     }
 }
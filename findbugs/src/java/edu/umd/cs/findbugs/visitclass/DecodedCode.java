@@ -0,0 +1,584 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.visitclass;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+
+/**
+ * The instructions of a method, decoded once so that every
+ * {@link DismantleBytecode} visiting the method can replay them instead of
+ * parsing the code bytes again. Constant pool operands are resolved when the
+ * code is decoded; instructions referring to the same constant share the
+ * resolved {@link ConstantRef}.
+ * <p>
+ * Instances are immutable, and are obtained from the analysis cache.
+ */
+public class DecodedCode {
+
+    private static final byte WIDE = 1;
+
+    private static final byte REGISTER_LOAD = 2;
+
+    private static final byte REGISTER_STORE = 4;
+
+    /**
+     * A resolved constant pool operand.
+     */
+    static class ConstantRef {
+        final Constant constant;
+
+        final @SlashedClassName String classConstant;
+
+        final ClassDescriptor classDescriptor;
+
+        final String name;
+
+        final String sig;
+
+        final String string;
+
+        ConstantRef(Constant constant, ConstantPool constantPool) {
+            this.constant = constant;
+            String classConstant = null;
+            String name = null;
+            String sig = null;
+            String string = null;
+            if (constant instanceof ConstantClass) {
+                classConstant = getString(constantPool, ((ConstantClass) constant).getNameIndex());
+            } else if (constant instanceof ConstantString) {
+                string = getString(constantPool, ((ConstantString) constant).getStringIndex());
+            } else if (constant instanceof ConstantCP) {
+                ConstantCP cp = (ConstantCP) constant;
+                ConstantClass clazz = (ConstantClass) constantPool.getConstant(cp.getClassIndex());
+                classConstant = getString(constantPool, clazz.getNameIndex());
+                ConstantNameAndType nameAndType = (ConstantNameAndType) constantPool.getConstant(cp.getNameAndTypeIndex());
+                name = getString(constantPool, nameAndType.getNameIndex());
+                sig = getString(constantPool, nameAndType.getSignatureIndex());
+            } else if (constant instanceof ConstantInvokeDynamic) {
+                ConstantNameAndType nameAndType = (ConstantNameAndType) constantPool.getConstant(((ConstantInvokeDynamic) constant)
+                        .getNameAndTypeIndex());
+                name = getString(constantPool, nameAndType.getNameIndex());
+                sig = getString(constantPool, nameAndType.getSignatureIndex());
+            }
+            this.classConstant = classConstant;
+            this.classDescriptor = classConstant != null ? DescriptorFactory.createClassDescriptor(classConstant) : null;
+            this.name = name;
+            this.sig = sig;
+            this.string = string;
+        }
+
+        private static String getString(ConstantPool constantPool, int index) {
+            return ((ConstantUtf8) constantPool.getConstant(index)).getBytes();
+        }
+    }
+
+    /**
+     * The jump table of a tableswitch or lookupswitch instruction, sorted by
+     * offset.
+     */
+    static class SwitchTable {
+        final int defaultOffset;
+
+        final int low;
+
+        final int high;
+
+        final int[] offsets;
+
+        final int[] labels;
+
+        SwitchTable(int defaultOffset, int low, int high, int[] offsets, int[] labels) {
+            this.defaultOffset = defaultOffset;
+            this.low = low;
+            this.high = high;
+            this.offsets = offsets;
+            this.labels = labels;
+        }
+    }
+
+    private final Code code;
+
+    private final int size;
+
+    /** pc of each instruction, followed by the pc after the last one */
+    private final int[] pcs;
+
+    private final byte[] opcodes;
+
+    private final byte[] flags;
+
+    /** register operand, or -1 */
+    private final int[] registers;
+
+    /** branch offset or int operand */
+    private final int[] operands;
+
+    private final ConstantRef[] constants;
+
+    private final @CheckForNull SwitchTable[] switchTables;
+
+    private final @CheckForNull String badBytecode;
+
+    private final @CheckForNull IOException truncated;
+
+    public DecodedCode(Code code, ConstantPool constantPool) {
+        this.code = code;
+        byte[] codeBytes = code.getCode();
+        int maxSize = codeBytes.length;
+        int[] pcs = new int[maxSize + 1];
+        byte[] opcodes = new byte[maxSize];
+        byte[] flags = new byte[maxSize];
+        int[] registers = new int[maxSize];
+        int[] operands = new int[maxSize];
+        ConstantRef[] constants = new ConstantRef[maxSize];
+        SwitchTable[] switchTables = null;
+        Map<Integer, ConstantRef> resolved = new HashMap<Integer, ConstantRef>();
+        String badBytecode = null;
+        IOException truncated = null;
+
+        int n = 0;
+        int i = 0;
+        try {
+            while (i < codeBytes.length) {
+                int pc = i;
+                int opcode = readUnsignedByte(codeBytes, i++);
+                byte flag = 0;
+                int register = -1;
+                int operand = 0;
+                ConstantRef constant = null;
+                SwitchTable switchTable = null;
+                int argCount = Constants.NO_OF_OPERANDS[opcode];
+                if (argCount == Constants.UNPREDICTABLE) {
+                    if (opcode == Constants.LOOKUPSWITCH || opcode == Constants.TABLESWITCH) {
+                        i += (4 - (i & 3)) & 3;
+                        int defaultOffset = readInt(codeBytes, i);
+                        i += 4;
+                        int[] switchOffsets;
+                        int[] switchLabels;
+                        int low = 0;
+                        int high = 0;
+                        if (opcode == Constants.LOOKUPSWITCH) {
+                            int npairs = readInt(codeBytes, i);
+                            i += 4;
+                            checkAvailable(codeBytes, i, npairs, 8);
+                            switchOffsets = new int[npairs];
+                            switchLabels = new int[npairs];
+                            for (int o = 0; o < npairs; o++) {
+                                switchLabels[o] = readInt(codeBytes, i);
+                                switchOffsets[o] = readInt(codeBytes, i + 4);
+                                i += 8;
+                            }
+                        } else {
+                            low = readInt(codeBytes, i);
+                            high = readInt(codeBytes, i + 4);
+                            i += 8;
+                            int npairs = high - low + 1;
+                            checkAvailable(codeBytes, i, npairs, 4);
+                            switchOffsets = new int[npairs];
+                            switchLabels = new int[npairs];
+                            for (int o = 0; o < npairs; o++) {
+                                switchLabels[o] = o + low;
+                                switchOffsets[o] = readInt(codeBytes, i);
+                                i += 4;
+                            }
+                        }
+                        sortByOffset(switchOffsets, switchLabels);
+                        switchTable = new SwitchTable(defaultOffset, low, high, switchOffsets, switchLabels);
+                        if (switchTables == null) {
+                            switchTables = new SwitchTable[maxSize];
+                        }
+                    } else if (opcode == Constants.WIDE) {
+                        flag |= WIDE;
+                        opcode = readUnsignedByte(codeBytes, i++);
+                        switch (opcode) {
+                        case Constants.ILOAD:
+                        case Constants.FLOAD:
+                        case Constants.ALOAD:
+                        case Constants.LLOAD:
+                        case Constants.DLOAD:
+                        case Constants.ISTORE:
+                        case Constants.FSTORE:
+                        case Constants.ASTORE:
+                        case Constants.LSTORE:
+                        case Constants.DSTORE:
+                        case Constants.RET:
+                            register = readUnsignedShort(codeBytes, i);
+                            i += 2;
+                            break;
+                        case Constants.IINC:
+                            register = readUnsignedShort(codeBytes, i);
+                            operand = (short) readUnsignedShort(codeBytes, i + 2);
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalStateException(String.format("bad wide bytecode %d: %s", opcode,
+                                    Constants.OPCODE_NAMES[opcode]));
+                        }
+                    } else {
+                        throw new IllegalStateException(String.format("bad unpredicatable bytecode %d: %s", opcode,
+                                Constants.OPCODE_NAMES[opcode]));
+                    }
+                } else {
+                    if (argCount < 0) {
+                        throw new IllegalStateException(String.format("bad length for bytecode %d: %s", opcode,
+                                Constants.OPCODE_NAMES[opcode]));
+                    }
+                    for (int k = 0; k < Constants.TYPE_OF_OPERANDS[opcode].length; k++) {
+                        int v;
+                        int t = Constants.TYPE_OF_OPERANDS[opcode][k];
+                        int m = DismantleBytecode.MEANING_OF_OPERANDS[opcode][k];
+                        boolean unsigned = (m == DismantleBytecode.M_CP || m == DismantleBytecode.M_R || m == DismantleBytecode.M_UINT);
+                        switch (t) {
+                        case Constants.T_BYTE:
+                            v = unsigned ? readUnsignedByte(codeBytes, i) : (byte) readUnsignedByte(codeBytes, i);
+                            i++;
+                            break;
+                        case Constants.T_SHORT:
+                            v = unsigned ? readUnsignedShort(codeBytes, i) : (short) readUnsignedShort(codeBytes, i);
+                            i += 2;
+                            break;
+                        case Constants.T_INT:
+                            v = readInt(codeBytes, i);
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalStateException();
+                        }
+                        switch (m) {
+                        case DismantleBytecode.M_CP:
+                            constant = resolved.get(v);
+                            if (constant == null) {
+                                constant = new ConstantRef(constantPool.getConstant(v), constantPool);
+                                resolved.put(v, constant);
+                            }
+                            break;
+                        case DismantleBytecode.M_R:
+                            register = v;
+                            break;
+                        case DismantleBytecode.M_BR:
+                        case DismantleBytecode.M_UINT:
+                        case DismantleBytecode.M_INT:
+                            operand = v;
+                            break;
+                        case DismantleBytecode.M_PAD:
+                            break;
+                        default:
+                            throw new IllegalStateException("Unexpecting meaning " + m);
+                        }
+                    }
+                }
+
+                switch (opcode) {
+                case Constants.IINC:
+                    flag |= REGISTER_LOAD | REGISTER_STORE;
+                    break;
+                case Constants.ILOAD_0:
+                case Constants.ILOAD_1:
+                case Constants.ILOAD_2:
+                case Constants.ILOAD_3:
+                    register = opcode - Constants.ILOAD_0;
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.ALOAD_0:
+                case Constants.ALOAD_1:
+                case Constants.ALOAD_2:
+                case Constants.ALOAD_3:
+                    register = opcode - Constants.ALOAD_0;
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.FLOAD_0:
+                case Constants.FLOAD_1:
+                case Constants.FLOAD_2:
+                case Constants.FLOAD_3:
+                    register = opcode - Constants.FLOAD_0;
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.DLOAD_0:
+                case Constants.DLOAD_1:
+                case Constants.DLOAD_2:
+                case Constants.DLOAD_3:
+                    register = opcode - Constants.DLOAD_0;
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.LLOAD_0:
+                case Constants.LLOAD_1:
+                case Constants.LLOAD_2:
+                case Constants.LLOAD_3:
+                    register = opcode - Constants.LLOAD_0;
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.ILOAD:
+                case Constants.FLOAD:
+                case Constants.ALOAD:
+                case Constants.LLOAD:
+                case Constants.DLOAD:
+                    flag |= REGISTER_LOAD;
+                    break;
+                case Constants.ISTORE_0:
+                case Constants.ISTORE_1:
+                case Constants.ISTORE_2:
+                case Constants.ISTORE_3:
+                    register = opcode - Constants.ISTORE_0;
+                    flag |= REGISTER_STORE;
+                    break;
+                case Constants.ASTORE_0:
+                case Constants.ASTORE_1:
+                case Constants.ASTORE_2:
+                case Constants.ASTORE_3:
+                    register = opcode - Constants.ASTORE_0;
+                    flag |= REGISTER_STORE;
+                    break;
+                case Constants.FSTORE_0:
+                case Constants.FSTORE_1:
+                case Constants.FSTORE_2:
+                case Constants.FSTORE_3:
+                    register = opcode - Constants.FSTORE_0;
+                    flag |= REGISTER_STORE;
+                    break;
+                case Constants.DSTORE_0:
+                case Constants.DSTORE_1:
+                case Constants.DSTORE_2:
+                case Constants.DSTORE_3:
+                    register = opcode - Constants.DSTORE_0;
+                    flag |= REGISTER_STORE;
+                    break;
+                case Constants.LSTORE_0:
+                case Constants.LSTORE_1:
+                case Constants.LSTORE_2:
+                case Constants.LSTORE_3:
+                    register = opcode - Constants.LSTORE_0;
+                    flag |= REGISTER_STORE;
+                    break;
+                case Constants.ISTORE:
+                case Constants.FSTORE:
+                case Constants.ASTORE:
+                case Constants.LSTORE:
+                case Constants.DSTORE:
+                    flag |= REGISTER_STORE;
+                    break;
+                default:
+                    break;
+                }
+
+                pcs[n] = pc;
+                opcodes[n] = (byte) opcode;
+                flags[n] = flag;
+                registers[n] = register;
+                operands[n] = operand;
+                constants[n] = constant;
+                if (switchTable != null) {
+                    switchTables[n] = switchTable;
+                }
+                n++;
+                pcs[n] = i;
+            }
+        } catch (IllegalStateException e) {
+            badBytecode = e.getMessage();
+        } catch (IOException e) {
+            truncated = e;
+        }
+
+        this.size = n;
+        this.pcs = n == maxSize ? pcs : Arrays.copyOf(pcs, n + 1);
+        this.opcodes = n == maxSize ? opcodes : Arrays.copyOf(opcodes, n);
+        this.flags = n == maxSize ? flags : Arrays.copyOf(flags, n);
+        this.registers = n == maxSize ? registers : Arrays.copyOf(registers, n);
+        this.operands = n == maxSize ? operands : Arrays.copyOf(operands, n);
+        this.constants = n == maxSize ? constants : Arrays.copyOf(constants, n);
+        this.switchTables = switchTables == null || n == maxSize ? switchTables : Arrays.copyOf(switchTables, n);
+        this.badBytecode = badBytecode;
+        this.truncated = truncated;
+    }
+
+    private static int readUnsignedByte(byte[] codeBytes, int i) throws EOFException {
+        if (i >= codeBytes.length) {
+            throw new EOFException();
+        }
+        return codeBytes[i] & 0xff;
+    }
+
+    private static int readUnsignedShort(byte[] codeBytes, int i) throws EOFException {
+        if (i + 2 > codeBytes.length) {
+            throw new EOFException();
+        }
+        return ((codeBytes[i] & 0xff) << 8) | (codeBytes[i + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] codeBytes, int i) throws EOFException {
+        if (i + 4 > codeBytes.length) {
+            throw new EOFException();
+        }
+        return (codeBytes[i] << 24) | ((codeBytes[i + 1] & 0xff) << 16) | ((codeBytes[i + 2] & 0xff) << 8)
+                | (codeBytes[i + 3] & 0xff);
+    }
+
+    private static void checkAvailable(byte[] codeBytes, int i, int count, int entrySize) throws EOFException {
+        if (count < 0 || (long) count * entrySize > codeBytes.length - i) {
+            throw new EOFException();
+        }
+    }
+
+    private static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
+        int npairs = switchOffsets.length;
+        // Sort by offset
+        for (int j = 0; j < npairs; j++) {
+            int min = j;
+            for (int k = j + 1; k < npairs; k++) {
+                if (switchOffsets[min] > switchOffsets[k]) {
+                    min = k;
+                }
+            }
+            if (min > j) {
+                int tmp = switchOffsets[min];
+                switchOffsets[min] = switchOffsets[j];
+                switchOffsets[j] = tmp;
+                tmp = switchLabels[min];
+                switchLabels[min] = switchLabels[j];
+                switchLabels[j] = tmp;
+            }
+        }
+    }
+
+    /**
+     * @return true if this is the decoding of the given Code attribute
+     */
+    public boolean isDecodingOf(Code code) {
+        return this.code == code;
+    }
+
+    /**
+     * @return the number of instructions decoded
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the pc of an instruction. For <code>index == size()</code> this is
+     * the pc following the last instruction decoded.
+     */
+    public int getPC(int index) {
+        return pcs[index];
+    }
+
+    public int getOpcode(int index) {
+        return opcodes[index] & 0xff;
+    }
+
+    public boolean isWide(int index) {
+        return (flags[index] & WIDE) != 0;
+    }
+
+    public boolean isRegisterLoad(int index) {
+        return (flags[index] & REGISTER_LOAD) != 0;
+    }
+
+    public boolean isRegisterStore(int index) {
+        return (flags[index] & REGISTER_STORE) != 0;
+    }
+
+    /**
+     * @return the register operand, or -1 if the instruction has none
+     */
+    public int getRegister(int index) {
+        return registers[index];
+    }
+
+    /**
+     * @return the branch offset or int operand of the instruction
+     */
+    public int getOperand(int index) {
+        return operands[index];
+    }
+
+    @CheckForNull
+    ConstantRef getConstant(int index) {
+        return constants[index];
+    }
+
+    @CheckForNull
+    SwitchTable getSwitchTable(int index) {
+        return switchTables == null ? null : switchTables[index];
+    }
+
+    /**
+     * If the code could not be decoded completely, the description of the
+     * bad bytecode following the last instruction decoded.
+     */
+    @CheckForNull
+    public String getBadBytecode() {
+        return badBytecode;
+    }
+
+    /**
+     * If the code ended in the middle of an instruction, the exception
+     * reporting it.
+     */
+    @CheckForNull
+    public IOException getTruncated() {
+        return truncated;
+    }
+
+    public static class Factory extends AnalysisFactory<DecodedCode> {
+
+        public Factory() {
+            super("Decoded bytecode", DecodedCode.class);
+        }
+
+        @Override
+        public @CheckForNull DecodedCode analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor)
+                throws CheckedAnalysisException {
+            Method method = getMethod(analysisCache, descriptor);
+            Code code = method.getCode();
+            if (code == null) {
+                return null;
+            }
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+            return new DecodedCode(code, jclass.getConstantPool());
+        }
+    }
+}
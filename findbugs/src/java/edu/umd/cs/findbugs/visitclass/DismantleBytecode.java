@@ -19,9 +19,6 @@
 
 package edu.umd.cs.findbugs.visitclass;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.text.NumberFormat;
 
 import javax.annotation.CheckForNull;
@@ -36,10 +33,8 @@ import org.apache.bcel.classfile.ConstantFieldref;
 import org.apache.bcel.classfile.ConstantFloat;
 import org.apache.bcel.classfile.ConstantInteger;
 import org.apache.bcel.classfile.ConstantInterfaceMethodref;
-import org.apache.bcel.classfile.ConstantInvokeDynamic;
 import org.apache.bcel.classfile.ConstantLong;
 import org.apache.bcel.classfile.ConstantMethodref;
-import org.apache.bcel.classfile.ConstantNameAndType;
 import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.LineNumberTable;
 
@@ -54,6 +49,7 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 import edu.umd.cs.findbugs.util.ClassName;
@@ -489,27 +485,6 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         referencedXField = null;
     }
 
-    private static void sortByOffset(int[] switchOffsets, int[] switchLabels) {
-        int npairs = switchOffsets.length;
-        // Sort by offset
-        for (int j = 0; j < npairs; j++) {
-            int min = j;
-            for (int k = j + 1; k < npairs; k++) {
-                if (switchOffsets[min] > switchOffsets[k]) {
-                    min = k;
-                }
-            }
-            if (min > j) {
-                int tmp = switchOffsets[min];
-                switchOffsets[min] = switchOffsets[j];
-                switchOffsets[j] = tmp;
-                tmp = switchLabels[min];
-                switchLabels[min] = switchLabels[j];
-                switchLabels[j] = tmp;
-            }
-        }
-    }
-
     public int getMaxPC() {
         return codeBytes.length - 1;
     }
@@ -540,420 +515,178 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         sizePrevOpcodeBuffer = 0;
         currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
 
-        int switchLow = 1000000;
-        int switchHigh = -1000000;
         codeBytes = obj.getCode();
-        DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(codeBytes));
-
         lineNumberTable = obj.getLineNumberTable();
 
-        try {
-            for (int i = 0; i < codeBytes.length;) {
-                resetState();
-                PC = i;
-                opcodeIsWide = false;
-                opcode = byteStream.readUnsignedByte();
-
-                sizePrevOpcodeBuffer++;
-                currentPosInPrevOpcodeBuffer++;
-                if (currentPosInPrevOpcodeBuffer >= prevOpcode.length) {
-                    currentPosInPrevOpcodeBuffer = 0;
-                }
-                prevOpcode[currentPosInPrevOpcodeBuffer] = opcode;
-                i++;
-                // System.out.println(OPCODE_NAMES[opCode]);
-                int byteStreamArgCount = NO_OF_OPERANDS[opcode];
-                if (byteStreamArgCount == UNPREDICTABLE) {
-
-                    if (opcode == LOOKUPSWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4) {
-                            pad = 0;
-                        }
-                        int count = pad;
-                        while (count > 0) {
-                            count -= byteStream.skipBytes(count);
-                        }
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
-                        branchTarget = branchOffset + PC;
-                        i += 4;
-                        int npairs = byteStream.readInt();
-                        i += 4;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = byteStream.readInt();
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 8;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == TABLESWITCH) {
-                        int pad = 4 - (i & 3);
-                        if (pad == 4) {
-                            pad = 0;
-                        }
-                        int count = pad;
-                        while (count > 0) {
-                            count -= byteStream.skipBytes(count);
-                        }
-                        i += pad;
-                        defaultSwitchOffset = byteStream.readInt();
-                        branchOffset = defaultSwitchOffset;
+        DecodedCode decodedCode = getDecodedCode(obj);
+        for (int n = 0; n < decodedCode.size(); n++) {
+            resetState();
+            PC = decodedCode.getPC(n);
+            nextPC = decodedCode.getPC(n + 1);
+            opcode = decodedCode.getOpcode(n);
+            opcodeIsWide = decodedCode.isWide(n);
+
+            sizePrevOpcodeBuffer++;
+            currentPosInPrevOpcodeBuffer++;
+            if (currentPosInPrevOpcodeBuffer >= prevOpcode.length) {
+                currentPosInPrevOpcodeBuffer = 0;
+            }
+            prevOpcode[currentPosInPrevOpcodeBuffer] = opcode;
+
+            registerOperand = decodedCode.getRegister(n);
+            isRegisterLoad = decodedCode.isRegisterLoad(n);
+            isRegisterStore = decodedCode.isRegisterStore(n);
+            refFieldIsStatic = opcode == GETSTATIC || opcode == PUTSTATIC;
+
+            DecodedCode.SwitchTable switchTable = decodedCode.getSwitchTable(n);
+            if (switchTable != null) {
+                defaultSwitchOffset = switchTable.defaultOffset;
+                branchOffset = defaultSwitchOffset;
+                branchTarget = branchOffset + PC;
+                // Detectors get their own copy of the jump table
+                switchOffsets = switchTable.offsets.clone();
+                switchLabels = switchTable.labels.clone();
+            } else {
+                for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+                    switch (MEANING_OF_OPERANDS[opcode][k]) {
+                    case M_BR:
+                        branchOffset = decodedCode.getOperand(n);
                         branchTarget = branchOffset + PC;
-                        i += 4;
-                        switchLow = byteStream.readInt();
-                        i += 4;
-                        switchHigh = byteStream.readInt();
-                        i += 4;
-                        int npairs = switchHigh - switchLow + 1;
-                        switchOffsets = new int[npairs];
-                        switchLabels = new int[npairs];
-                        for (int o = 0; o < npairs; o++) {
-                            switchLabels[o] = o + switchLow;
-                            switchOffsets[o] = byteStream.readInt();
-                            i += 4;
-                        }
-                        sortByOffset(switchOffsets, switchLabels);
-                    } else if (opcode == WIDE) {
-                        opcodeIsWide = true;
-                        opcode = byteStream.readUnsignedByte();
-                        i++;
-                        switch (opcode) {
-                        case ILOAD:
-                        case FLOAD:
-                        case ALOAD:
-                        case LLOAD:
-                        case DLOAD:
-                        case ISTORE:
-                        case FSTORE:
-                        case ASTORE:
-                        case LSTORE:
-                        case DSTORE:
-                        case RET:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            break;
-                        case IINC:
-                            registerOperand = byteStream.readUnsignedShort();
-                            i += 2;
-                            intConstant = byteStream.readShort();
-                            i += 2;
-                            break;
-                        default:
-                            throw new IllegalStateException(String.format("bad wide bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
-                        }
-                    } else {
-                        throw new IllegalStateException(String.format("bad unpredicatable bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
-                    }
-                } else {
-                    if (byteStreamArgCount < 0) {
-                        throw new IllegalStateException(String.format("bad length for bytecode %d: %s" , opcode, OPCODE_NAMES[opcode]));
+                        branchFallThrough = nextPC;
+                        break;
+                    case M_CP:
+                        setConstantOperand(decodedCode.getConstant(n));
+                        break;
+                    case M_UINT:
+                    case M_INT:
+                        intConstant = decodedCode.getOperand(n);
+                        break;
+                    default:
+                        break;
                     }
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-
-                        int v;
-                        int t = TYPE_OF_OPERANDS[opcode][k];
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        boolean unsigned = (m == M_CP || m == M_R || m == M_UINT);
-                        switch (t) {
-                        case T_BYTE:
-                            if (unsigned) {
-                                v = byteStream.readUnsignedByte();
-                            } else {
-                                v = byteStream.readByte();
-                            }
-                            /*
-                             * System.out.print("Read byte " + v);
-                             * System.out.println(" with meaning" + m);
-                             */
-                            i++;
-                            break;
-                        case T_SHORT:
-                            if (unsigned) {
-                                v = byteStream.readUnsignedShort();
-                            } else {
-                                v = byteStream.readShort();
-                            }
-                            i += 2;
-                            break;
-                        case T_INT:
-                            v = byteStream.readInt();
-                            i += 4;
-                            break;
-                        default:
-                            throw new IllegalStateException();
-                        }
-                        switch (m) {
-                        case M_BR:
-                            branchOffset = v;
-                            branchTarget = v + PC;
-                            branchFallThrough = i;
-                            break;
-                        case M_CP:
-                            constantRefOperand = getConstantPool().getConstant(v);
-                            if (constantRefOperand instanceof ConstantClass) {
-                                ConstantClass clazz = (ConstantClass) constantRefOperand;
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-
-                            } else if (constantRefOperand instanceof ConstantInteger) {
-                                intConstant = ((ConstantInteger) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantLong) {
-                                longConstant = ((ConstantLong) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantFloat) {
-                                floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantDouble) {
-                                doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
-                            } else if (constantRefOperand instanceof ConstantString) {
-                                int s = ((ConstantString) constantRefOperand).getStringIndex();
-
-                                stringConstantOperand = getStringFromIndex(s);
-                            } else if (constantRefOperand instanceof ConstantCP) {
-                                ConstantCP cp = (ConstantCP) constantRefOperand;
-                                ConstantClass clazz = (ConstantClass) getConstantPool().getConstant(cp.getClassIndex());
-                                classConstantOperand = getStringFromIndex(clazz.getNameIndex());
-                                referencedClass = DescriptorFactory.createClassDescriptor(classConstantOperand);
-                                referencedXClass = null;
-                                ConstantNameAndType sig = (ConstantNameAndType) getConstantPool().getConstant(
-                                        cp.getNameAndTypeIndex());
-                                nameConstantOperand = getStringFromIndex(sig.getNameIndex());
-                                sigConstantOperand = getStringFromIndex(sig.getSignatureIndex());
-                                refConstantOperand = null;
-                            } else if (constantRefOperand instanceof ConstantInvokeDynamic) {
-                                ConstantInvokeDynamic id = (ConstantInvokeDynamic) constantRefOperand;
-                                ConstantNameAndType sig = (ConstantNameAndType) getConstantPool().getConstant(
-                                        id.getNameAndTypeIndex());
-                                nameConstantOperand = getStringFromIndex(sig.getNameIndex());
-                                sigConstantOperand = getStringFromIndex(sig.getSignatureIndex());
-
-
-                            }
-                            break;
-                        case M_R:
-                            registerOperand = v;
-                            break;
-                        case M_UINT:
-                        case M_INT:
-                            intConstant = v;
-                            break;
-                        case M_PAD:
-                            break;
-                        default:
-                            throw new IllegalStateException("Unexpecting meaning " + m);
-                        }
-                    }
-
-                }
-                switch (opcode) {
-                case IINC:
-                    isRegisterLoad = true;
-                    isRegisterStore = true;
-                    break;
-                case ILOAD_0:
-                case ILOAD_1:
-                case ILOAD_2:
-                case ILOAD_3:
-                    registerOperand = opcode - ILOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case ALOAD_0:
-                case ALOAD_1:
-                case ALOAD_2:
-                case ALOAD_3:
-                    registerOperand = opcode - ALOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case FLOAD_0:
-                case FLOAD_1:
-                case FLOAD_2:
-                case FLOAD_3:
-                    registerOperand = opcode - FLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case DLOAD_0:
-                case DLOAD_1:
-                case DLOAD_2:
-                case DLOAD_3:
-                    registerOperand = opcode - DLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-
-                case LLOAD_0:
-                case LLOAD_1:
-                case LLOAD_2:
-                case LLOAD_3:
-                    registerOperand = opcode - LLOAD_0;
-                    isRegisterLoad = true;
-                    break;
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    isRegisterLoad = true;
-                    break;
-
-                case ISTORE_0:
-                case ISTORE_1:
-                case ISTORE_2:
-                case ISTORE_3:
-                    registerOperand = opcode - ISTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case ASTORE_0:
-                case ASTORE_1:
-                case ASTORE_2:
-                case ASTORE_3:
-                    registerOperand = opcode - ASTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case FSTORE_0:
-                case FSTORE_1:
-                case FSTORE_2:
-                case FSTORE_3:
-                    registerOperand = opcode - FSTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case DSTORE_0:
-                case DSTORE_1:
-                case DSTORE_2:
-                case DSTORE_3:
-                    registerOperand = opcode - DSTORE_0;
-                    isRegisterStore = true;
-                    break;
-
-                case LSTORE_0:
-                case LSTORE_1:
-                case LSTORE_2:
-                case LSTORE_3:
-                    registerOperand = opcode - LSTORE_0;
-                    isRegisterStore = true;
-                    break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    isRegisterStore = true;
-                    break;
-                default:
-                    break;
                 }
+            }
 
-                switch (opcode) {
-                case ILOAD:
-                case FLOAD:
-                case ALOAD:
-                case LLOAD:
-                case DLOAD:
-                    // registerKind = opcode - ILOAD;
-                    break;
-                case ISTORE:
-                case FSTORE:
-                case ASTORE:
-                case LSTORE:
-                case DSTORE:
-                    // registerKind = opcode - ISTORE;
-                    break;
-                case RET:
-                    // registerKind = R_REF;
-                    break;
-                case GETSTATIC:
-                case PUTSTATIC:
-                    refFieldIsStatic = true;
-                    break;
-                case GETFIELD:
-                case PUTFIELD:
-                    refFieldIsStatic = false;
-                    break;
-                default:
-                    break;
-                }
+            if (beforeOpcode(opcode)) {
+                sawOpcode(opcode);
+            }
+            afterOpcode(opcode);
 
-                nextPC = i;
-                if (beforeOpcode(opcode)) {
-                    sawOpcode(opcode);
+            if (opcode == TABLESWITCH) {
+                sawInt(switchTable.low);
+                sawInt(switchTable.high);
+                for (int o = 0; o <= switchTable.high - switchTable.low; o++) {
+                    sawBranchTo(switchOffsets[o] + PC);
                 }
-                afterOpcode(opcode);
-
-                if (opcode == TABLESWITCH) {
-                    sawInt(switchLow);
-                    sawInt(switchHigh);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o <= switchHigh - switchLow; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else if (opcode == LOOKUPSWITCH) {
-                    sawInt(switchOffsets.length);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o < switchOffsets.length; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                        sawInt(switchLabels[o]);
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else {
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        switch (m) {
-                        case M_BR:
-                            sawBranchTo(branchOffset + PC);
-                            break;
-                        case M_CP:
-                            if (constantRefOperand instanceof ConstantInteger) {
-                                sawInt(intConstant);
-                            } else if (constantRefOperand instanceof ConstantLong) {
-                                sawLong(longConstant);
-                            } else if (constantRefOperand instanceof ConstantFloat) {
-                                sawFloat(floatConstant);
-                            } else if (constantRefOperand instanceof ConstantDouble) {
-                                sawDouble(doubleConstant);
-                            } else if (constantRefOperand instanceof ConstantString) {
-                                sawString(stringConstantOperand);
-                            } else if (constantRefOperand instanceof ConstantFieldref) {
-                                sawField();
-                            } else if (constantRefOperand instanceof ConstantMethodref) {
-                                sawMethod();
-                            } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
-                                sawIMethod();
-                            } else if (constantRefOperand instanceof ConstantClass) {
-                                sawClass();
-                            }
-                            break;
-                        case M_R:
-                            sawRegister(registerOperand);
-                            break;
-                        case M_INT:
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else if (opcode == LOOKUPSWITCH) {
+                sawInt(switchOffsets.length);
+                for (int o = 0; o < switchOffsets.length; o++) {
+                    sawBranchTo(switchOffsets[o] + PC);
+                    sawInt(switchLabels[o]);
+                }
+                sawBranchTo(defaultSwitchOffset + PC);
+            } else {
+                for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+                    int m = MEANING_OF_OPERANDS[opcode][k];
+                    switch (m) {
+                    case M_BR:
+                        sawBranchTo(branchOffset + PC);
+                        break;
+                    case M_CP:
+                        if (constantRefOperand instanceof ConstantInteger) {
                             sawInt(intConstant);
-                            break;
-                        default:
-                            break;
+                        } else if (constantRefOperand instanceof ConstantLong) {
+                            sawLong(longConstant);
+                        } else if (constantRefOperand instanceof ConstantFloat) {
+                            sawFloat(floatConstant);
+                        } else if (constantRefOperand instanceof ConstantDouble) {
+                            sawDouble(doubleConstant);
+                        } else if (constantRefOperand instanceof ConstantString) {
+                            sawString(stringConstantOperand);
+                        } else if (constantRefOperand instanceof ConstantFieldref) {
+                            sawField();
+                        } else if (constantRefOperand instanceof ConstantMethodref) {
+                            sawMethod();
+                        } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
+                            sawIMethod();
+                        } else if (constantRefOperand instanceof ConstantClass) {
+                            sawClass();
                         }
+                        break;
+                    case M_R:
+                        sawRegister(registerOperand);
+                        break;
+                    case M_INT:
+                        sawInt(intConstant);
+                        break;
+                    default:
+                        break;
                     }
                 }
             }
-        } catch (IOException e) {
-            AnalysisContext.logError("Error while dismantling bytecode", e);
-            assert false;
         }
 
-        try {
-            byteStream.close();
-        } catch (IOException e) {
+        if (decodedCode.getBadBytecode() != null) {
+            throw new IllegalStateException(decodedCode.getBadBytecode());
+        }
+        if (decodedCode.getTruncated() != null) {
+            AnalysisContext.logError("Error while dismantling bytecode", decodedCode.getTruncated());
             assert false;
         }
     }
 
+    /**
+     * Get the decoded instructions of the code being visited: shared through
+     * the analysis cache when visiting a method of the class being analyzed,
+     * decoded just for this visit otherwise.
+     */
+    private DecodedCode getDecodedCode(Code obj) {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        XMethod xMethod = getXMethod();
+        if (analysisCache != null && xMethod != null) {
+            try {
+                DecodedCode decodedCode = analysisCache.getMethodAnalysis(DecodedCode.class, xMethod.getMethodDescriptor());
+                if (decodedCode != null && decodedCode.isDecodingOf(obj)) {
+                    return decodedCode;
+                }
+            } catch (CheckedAnalysisException e) {
+                // decode it ourselves
+                assert true;
+            }
+        }
+        return new DecodedCode(obj, getConstantPool());
+    }
+
+    private void setConstantOperand(@CheckForNull DecodedCode.ConstantRef constant) {
+        if (constant == null) {
+            return;
+        }
+        constantRefOperand = constant.constant;
+        if (constantRefOperand instanceof ConstantInteger) {
+            intConstant = ((ConstantInteger) constantRefOperand).getBytes();
+        } else if (constantRefOperand instanceof ConstantLong) {
+            longConstant = ((ConstantLong) constantRefOperand).getBytes();
+        } else if (constantRefOperand instanceof ConstantFloat) {
+            floatConstant = ((ConstantFloat) constantRefOperand).getBytes();
+        } else if (constantRefOperand instanceof ConstantDouble) {
+            doubleConstant = ((ConstantDouble) constantRefOperand).getBytes();
+        } else if (constantRefOperand instanceof ConstantCP) {
+            refConstantOperand = null;
+        }
+        if (constant.classConstant != null) {
+            classConstantOperand = constant.classConstant;
+            referencedClass = constant.classDescriptor;
+        }
+        if (constant.name != null) {
+            nameConstantOperand = constant.name;
+            sigConstantOperand = constant.sig;
+        }
+        if (constant.string != null) {
+            stringConstantOperand = constant.string;
+        }
+    }
+
     public void sawDouble(double seen) {
     }
 
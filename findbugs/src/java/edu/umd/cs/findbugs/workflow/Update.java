@@ -20,6 +20,7 @@ package edu.umd.cs.findbugs.workflow;
 import java.io.File;
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -32,6 +33,7 @@ import java.util.TreeSet;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
+import edu.umd.cs.findbugs.BugAnnotation;
 import edu.umd.cs.findbugs.BugCollection;
 import edu.umd.cs.findbugs.BugDesignation;
 import edu.umd.cs.findbugs.BugInstance;
@@ -39,6 +41,7 @@ import edu.umd.cs.findbugs.BugRanker;
 import edu.umd.cs.findbugs.ClassAnnotation;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.LocalVariableAnnotation;
 import edu.umd.cs.findbugs.PackageStats;
 import edu.umd.cs.findbugs.PackageStats.ClassStats;
 import edu.umd.cs.findbugs.SloppyBugComparator;
@@ -341,6 +344,12 @@ public class Update {
             System.out.println(resultCollection.getCollection().size() + " resulting bugs");
         }
          */
+        // Don't keep the merged collections reachable while the next
+        // version is read. Each version is still read into a whole
+        // collection; only the merged result and the version being merged
+        // are kept in memory.
+        mapFromNewToOldBug.clear();
+        matchedOldBugs.clear();
         return resultCollection;
 
     }
@@ -601,11 +610,78 @@ public class Update {
 
     }
 
+    /**
+     * Get a key for a bug, such that bugs the comparator considers equal have
+     * the same key. Matching only compares bugs with the same key, so it
+     * doesn't have to keep all bugs in one big sorted map.
+     * <p>
+     * The key is the bug type (or abbreviation, if the comparator doesn't
+     * match exact bug patterns) and the rewritten primary class, which every
+     * comparator used by Update compares before the version-sensitive parts of
+     * a bug. A VersionInsensitiveBugComparator is only transitive on bugs
+     * without unknown local variable names, see
+     * {@link #hasUnknownLocalVariable(BugCollection)}; the caller must not
+     * split its map otherwise.
+     */
+    static String getMatchKey(Comparator<BugInstance> bugInstanceComparator, BugInstance bug) {
+        if (bugInstanceComparator instanceof SortedBugCollection.BugInstanceComparator) {
+            ClassAnnotation primaryClass = bug.getPrimaryClass();
+            if (primaryClass == null) {
+                return bug.getType();
+            }
+            return bug.getType() + ":" + primaryClass.getClassName();
+        }
+        if (bugInstanceComparator instanceof VersionInsensitiveBugComparator) {
+            VersionInsensitiveBugComparator comparator = (VersionInsensitiveBugComparator) bugInstanceComparator;
+            String pattern = comparator.isExactBugPatternMatch() ? bug.getType() : bug.getAbbrev();
+            // the comparator pairs up the significant class annotations
+            for (Iterator<BugAnnotation> i = bug.annotationIterator(); i.hasNext();) {
+                BugAnnotation annotation = i.next();
+                if (annotation instanceof ClassAnnotation && annotation.isSignificant()) {
+                    return pattern + ":"
+                            + comparator.getClassNameRewriter().rewriteClassName(((ClassAnnotation) annotation).getClassName());
+                }
+            }
+            return pattern;
+        }
+        if (bugInstanceComparator instanceof SloppyBugComparator) {
+            ClassAnnotation primaryClass = bug.getPrimaryClass();
+            if (primaryClass == null) {
+                return bug.getAbbrev();
+            }
+            return bug.getAbbrev() + ":"
+                    + ((SloppyBugComparator) bugInstanceComparator).getClassNameRewriter().rewriteClassName(primaryClass.getClassName());
+        }
+        return "";
+    }
+
+    /**
+     * Does any bug in the collection have a local variable named "?"?
+     * VersionInsensitiveBugComparator treats that name as equal to any other
+     * name, so it isn't transitive on such bugs, and which old bug a TreeMap
+     * lookup finds depends on all the bugs in the map. Splitting the map by
+     * match key would then change the matches.
+     */
+    static boolean hasUnknownLocalVariable(BugCollection collection) {
+        for (BugInstance bug : collection.getCollection()) {
+            for (Iterator<BugAnnotation> i = bug.annotationIterator(); i.hasNext();) {
+                BugAnnotation annotation = i.next();
+                if (annotation instanceof LocalVariableAnnotation && !annotation.isSignificant()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
             BugCollection newCollection, MatchOldBugs matchOld) {
 
-        TreeMap<BugInstance, LinkedList<BugInstance>> set = new TreeMap<BugInstance, LinkedList<BugInstance>>(
-                bugInstanceComparator);
+        boolean useMatchKeys = !(bugInstanceComparator instanceof VersionInsensitiveBugComparator)
+                || !hasUnknownLocalVariable(origCollection) && !hasUnknownLocalVariable(newCollection);
+
+        // old bugs, grouped by match key, and then by the comparator
+        HashMap<String, TreeMap<BugInstance, LinkedList<BugInstance>>> buckets = new HashMap<String, TreeMap<BugInstance, LinkedList<BugInstance>>>();
         //        int oldBugs = 0;
         //        int newBugs = 0;
         //        int matchedBugs = 0;
@@ -613,6 +689,12 @@ public class Update {
             if (!matchedOldBugs.containsKey(bug)) {
                 if (matchOld.match(bug)) {
                     //                    oldBugs++;
+                    String key = useMatchKeys ? getMatchKey(bugInstanceComparator, bug) : "";
+                    TreeMap<BugInstance, LinkedList<BugInstance>> set = buckets.get(key);
+                    if (set == null) {
+                        set = new TreeMap<BugInstance, LinkedList<BugInstance>>(bugInstanceComparator);
+                        buckets.put(key, set);
+                    }
                     LinkedList<BugInstance> q = set.get(bug);
                     if (q == null) {
                         q = new LinkedList<BugInstance>();
@@ -627,6 +709,11 @@ public class Update {
         for (BugInstance bug : newCollection.getCollection()) {
             if (!mapFromNewToOldBug.containsKey(bug)) {
                 //                newBugs++;
+                TreeMap<BugInstance, LinkedList<BugInstance>> set = buckets.get(useMatchKeys ? getMatchKey(
+                        bugInstanceComparator, bug) : "");
+                if (set == null) {
+                    continue;
+                }
                 LinkedList<BugInstance> q = set.get(bug);
                 if (q == null) {
                     continue;
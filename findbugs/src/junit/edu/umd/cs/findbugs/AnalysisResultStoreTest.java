@@ -0,0 +1,201 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.FieldGen;
+import org.apache.bcel.generic.InstructionConstants;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+
+import edu.umd.cs.findbugs.config.UserPreferences;
+
+/**
+ * Check that the warnings reported with a result store are the warnings of
+ * a full analysis, when a class changes which other, unchanged classes
+ * depend on.
+ */
+public class AnalysisResultStoreTest extends TestCase {
+
+    private File classDir;
+
+    private File storeDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        classDir = createTempDir();
+        storeDir = createTempDir();
+        DetectorFactoryCollection.resetInstance(new DetectorFactoryCollection());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DetectorFactoryCollection.resetInstance(null);
+        delete(classDir);
+        delete(storeDir);
+    }
+
+    /**
+     * Holder.value is only read by Reader, which never changes, and first
+     * not written at all, then written by Writer.
+     */
+    public void testFieldWrittenInChangedClassReadInUnchangedClass() throws Exception {
+        writeHolder();
+        writeReader();
+        writeWriter(false);
+        Set<String> before = analyze(storeDir);
+        assertTrue(before.toString(), containsWarningOf(before, "UWF_"));
+        Map<String, String> keysBefore = readKeys();
+
+        writeWriter(true);
+        Set<String> after = analyze(storeDir);
+        Map<String, String> keysAfter = readKeys();
+        assertEquals(keysBefore.get("Reader"), keysAfter.get("Reader"));
+        assertFalse(keysBefore.get("Writer").equals(keysAfter.get("Writer")));
+
+        assertEquals(analyze(null), after);
+        assertFalse(after.toString(), containsWarningOf(after, "UWF_"));
+        assertFalse(after.toString(), containsWarningOf(after, "URF_"));
+    }
+
+    private Set<String> analyze(File resultStore) throws IOException, InterruptedException {
+        FindBugs2 engine = new FindBugs2();
+        Project project = new Project();
+        project.addFile(classDir.getPath());
+        engine.setProject(project);
+        engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+        BugCollectionBugReporter bugReporter = new BugCollectionBugReporter(project);
+        bugReporter.setPriorityThreshold(Priorities.LOW_PRIORITY);
+        bugReporter.setRankThreshold(BugRanker.VISIBLE_RANK_MAX);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(UserPreferences.createDefaultUserPreferences());
+        engine.setNoClassOk(true);
+        engine.setResultCacheDirectory(resultStore == null ? null : resultStore.getPath());
+        engine.execute();
+
+        Set<String> result = new TreeSet<String>();
+        for (BugInstance bug : bugReporter.getBugCollection()) {
+            result.add(bug.getType() + " " + bug.getPrimaryClass().getClassName() + " " + bug.getPriority());
+        }
+        return result;
+    }
+
+    private static boolean containsWarningOf(Set<String> warnings, String prefix) {
+        for (String warning : warnings) {
+            if (warning.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, String> readKeys() throws IOException {
+        Map<String, String> result = new TreeMap<String, String>();
+        BufferedReader in = new BufferedReader(new FileReader(new File(storeDir, "classes.txt")));
+        try {
+            // The first line describes the configuration
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                int split = line.indexOf(' ');
+                result.put(line.substring(0, split), line.substring(split + 1));
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private void writeHolder() throws IOException {
+        ClassGen cg = new ClassGen("Holder", "java.lang.Object", "Holder.java", Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+        cg.addEmptyConstructor(Constants.ACC_PUBLIC);
+        cg.addField(new FieldGen(0, Type.INT, "value", cg.getConstantPool()).getField());
+        cg.getJavaClass().dump(new File(classDir, "Holder.class"));
+    }
+
+    private void writeReader() throws IOException {
+        ClassGen cg = new ClassGen("Reader", "java.lang.Object", "Reader.java", Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+        cg.addEmptyConstructor(Constants.ACC_PUBLIC);
+        InstructionFactory factory = new InstructionFactory(cg);
+        InstructionList il = new InstructionList();
+        il.append(InstructionConstants.ALOAD_1);
+        il.append(factory.createGetField("Holder", "value", Type.INT));
+        il.append(InstructionConstants.IRETURN);
+        addMethod(cg, "get", Type.INT, il);
+        cg.getJavaClass().dump(new File(classDir, "Reader.class"));
+    }
+
+    private void writeWriter(boolean writesValue) throws IOException {
+        ClassGen cg = new ClassGen("Writer", "java.lang.Object", "Writer.java", Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+        cg.addEmptyConstructor(Constants.ACC_PUBLIC);
+        InstructionFactory factory = new InstructionFactory(cg);
+        InstructionList il = new InstructionList();
+        if (writesValue) {
+            il.append(InstructionConstants.ALOAD_1);
+            il.append(InstructionConstants.ICONST_1);
+            il.append(factory.createPutField("Holder", "value", Type.INT));
+        }
+        il.append(InstructionConstants.RETURN);
+        addMethod(cg, "set", Type.VOID, il);
+        cg.getJavaClass().dump(new File(classDir, "Writer.class"));
+    }
+
+    private static void addMethod(ClassGen cg, String name, Type returnType, InstructionList il) {
+        MethodGen mg = new MethodGen(Constants.ACC_PUBLIC, returnType, new Type[] { new ObjectType("Holder") },
+                new String[] { "h" }, name, cg.getClassName(), il, cg.getConstantPool());
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        cg.addMethod(mg.getMethod());
+        il.dispose();
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("fbtest", null);
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Could not create temp dir");
+        }
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
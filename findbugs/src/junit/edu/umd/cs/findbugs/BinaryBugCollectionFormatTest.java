@@ -0,0 +1,90 @@
+package edu.umd.cs.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class BinaryBugCollectionFormatTest extends TestCase {
+
+    private static final String XML = "<BugCollection version='1.3.10-dev-20100728' sequence='2' timestamp='1280333223462' analysisTimestamp='1280333224881' release='r2'>"
+            + "  <Project projectName='p'><Jar>/tmp/a.jar</Jar><SrcDir>/tmp/src</SrcDir></Project>"
+            + "  <BugInstance type='MS_MUTABLE_ARRAY' priority='1' first='1' last='2' introducedByChange='true' oldInstanceHash='0123' reviews='4' consensus='NOT_A_BUG'>"
+            + "    <UserAnnotation designation='BAD_ANALYSIS' user='someone' timestamp='1280333223462'>Not &amp; never</UserAnnotation>"
+            + "    <Class classname='org.apache.bcel.Constants'>"
+            + "      <SourceLine classname='org.apache.bcel.Constants' start='210' end='1443' sourcefile='Constants.java' sourcepath='org/apache/bcel/Constants.java'/>"
+            + "    </Class>"
+            + "    <Field classname='org.apache.bcel.Constants' name='ACCESS_NAMES' signature='[Ljava/lang/String;' sourceSignature='[TT;' isStatic='true'>"
+            + "      <SourceLine classname='org.apache.bcel.Constants' sourcefile='Constants.java' sourcepath='org/apache/bcel/Constants.java'/>"
+            + "    </Field>"
+            + "    <Method classname='org.apache.bcel.Constants' name='m' signature='(I)V' isStatic='false' role='METHOD_CALLED'>"
+            + "      <SourceLine classname='org.apache.bcel.Constants' start='3' end='9' startBytecode='0' endBytecode='40' sourcefile='Constants.java'/>"
+            + "    </Method>"
+            + "    <Type descriptor='Ljava/util/List;' typeParameters='&lt;Ljava/lang/String;&gt;' role='TYPE_EXPECTED'/>"
+            + "    <Int value='-42' role='INT_VALUE'/>"
+            + "    <String value='a \"string\" &lt;here&gt;'/>"
+            + "    <LocalVariable name='x' register='3' pc='17' role='LOCAL_VARIABLE_NAMED'/>"
+            + "    <SourceLine classname='org.apache.bcel.Constants' start='210' end='210' startBytecode='89' endBytecode='89' sourcefile='Constants.java' sourcepath='org/apache/bcel/Constants.java'/>"
+            + "    <Property name='b' value='2'/>"
+            + "    <Property name='a' value='1'/>"
+            + "  </BugInstance>"
+            + "  <BugInstance type='NP_NULL_ON_SOME_PATH' priority='2' last='1' removedByChange='true' isInCloud='false'>"
+            + "    <Class classname='p.Q'/>"
+            + "  </BugInstance>"
+            + "  <Errors errors='1' missingClasses='1'>"
+            + "    <MissingClass>p.Missing</MissingClass>"
+            + "  </Errors>"
+            + "  <FindBugsSummary timestamp='Mon, 20 Jul 2015 19:49:23 +0000' total_classes='2' referenced_classes='3' total_bugs='2' total_size='20' num_packages='2'>"
+            + "    <PackageStats package='p' total_bugs='1' total_types='1' total_size='10'>"
+            + "      <ClassStats class='p.Q' sourceFile='Q.java' interface='false' size='10' bugs='1'/>"
+            + "    </PackageStats>"
+            + "  </FindBugsSummary>"
+            + "  <ClassFeatures/>"
+            + "  <History>"
+            + "    <AppVersion sequence='0' timestamp='1280333220000' release='r0' codeSize='10' numClasses='1'/>"
+            + "    <AppVersion sequence='1' timestamp='1280333221000' release='r1' codeSize='20' numClasses='2'/>"
+            + "  </History>"
+            + "</BugCollection>";
+
+    private static String toXML(SortedBugCollection bc) throws Exception {
+        StringWriter writer = new StringWriter();
+        bc.writeXML(writer);
+        // reading the annotation text sets the designation's timestamp, and
+        // timing and profile data differ from one read to the next
+        return writer.toString().replaceAll("(<UserAnnotation[^>]*) timestamp=\"\\d+\"", "$1")
+                .replaceAll(" (cpu|clock)_seconds=\"[^\"]*\"", "").replaceAll(" (peak|alloc)_mbytes=\"[^\"]*\"", "")
+                .replaceAll("(?s)<FindBugsProfile>.*</FindBugsProfile>", "");
+    }
+
+    public void testRoundTrip() throws Exception {
+        SortedBugCollection original = new SortedBugCollection();
+        original.readXML(new StringReader(XML));
+        assertEquals(2, original.getCollection().size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        original.writeBinary(bytes);
+        assertTrue(BinaryBugCollectionFormat.isBinary(new ByteArrayInputStream(bytes.toByteArray())));
+
+        SortedBugCollection copy = new SortedBugCollection();
+        copy.readXML(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(toXML(original), toXML(copy));
+
+        BugInstance bug = copy.getCollection().iterator().next();
+        assertEquals("MS_MUTABLE_ARRAY", bug.getType());
+        assertEquals("Not & never", bug.getAnnotationText());
+        assertEquals(4, bug.getXmlProps().getReviewCount());
+        assertEquals("1", bug.getProperty("a"));
+    }
+
+    public void testUnsupportedVersion() throws Exception {
+        byte[] bytes = { 'F', 'B', 'B', 'C', BinaryBugCollectionFormat.VERSION + 1 };
+        try {
+            new SortedBugCollection().readXML(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+}
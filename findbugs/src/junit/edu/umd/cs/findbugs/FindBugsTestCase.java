@@ -22,6 +22,7 @@ package edu.umd.cs.findbugs;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 import junit.framework.TestCase;
@@ -66,10 +67,16 @@ public abstract class FindBugsTestCase extends TestCase {
     private static final class TestRunnerThread extends Thread {
         private final RunnableWithExceptions runnable;
 
+        private final String[] auxClasspathEntries;
+
+        private final Class<?>[] applicationClasses;
+
         private JUnitDetectorAdapter detectorAdapter;
 
-        private TestRunnerThread(RunnableWithExceptions runnable) {
+        private TestRunnerThread(RunnableWithExceptions runnable, String[] auxClasspathEntries, Class<?>[] applicationClasses) {
             this.runnable = runnable;
+            this.auxClasspathEntries = auxClasspathEntries;
+            this.applicationClasses = applicationClasses;
         }
 
         /**
@@ -107,17 +114,29 @@ public abstract class FindBugsTestCase extends TestCase {
             try {
                 // Create a class file to analyze
                 tmpfile = createEmptyClassFile(tmpdir);
+                for (Class<?> c : applicationClasses) {
+                    copyClassFile(c, tmpdir);
+                }
 
                 // Unfortunately there's quite a bit of gobbledygook required
                 // to set up a FindBugs2.
 
                 FindBugs2 engine = new FindBugs2();
 
-                engine.setBugReporter(new PrintingBugReporter());
+                engine.setBugReporter(new PrintingBugReporter() {
+                    @Override
+                    public void finish() {
+                        // don't close System.out, the test runner still uses it
+                        outputStream.flush();
+                    }
+                });
 
                 // Analyze the temporary directory we just created
                 Project project = new Project();
                 project.addFile(tmpdir.getAbsolutePath());
+                for (String entry : auxClasspathEntries) {
+                    project.addAuxClasspathEntry(entry);
+                }
 
                 engine.setProject(project);
                 PluginLoader fakeLoader = new PluginLoader(true, tmpfile.toURL());
@@ -150,9 +169,6 @@ public abstract class FindBugsTestCase extends TestCase {
             } catch (Throwable t) {
                 t.printStackTrace();
             } finally {
-                if (tmpfile != null) {
-                    deleteAndLog(tmpfile);
-                }
                 deleteAndLog(tmpdir);
                 DetectorFactoryCollection.resetInstance(null);
 
@@ -160,6 +176,12 @@ public abstract class FindBugsTestCase extends TestCase {
         }
 
         void deleteAndLog(File f) {
+            File[] children = f.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    deleteAndLog(child);
+                }
+            }
             if (!f.delete()) {
                 System.err.println("Could not delete " + f);
             }
@@ -179,6 +201,35 @@ public abstract class FindBugsTestCase extends TestCase {
             }
             return outFile;
         }
+
+        /**
+         * Copy the class file of a test class into the analyzed directory.
+         */
+        private void copyClassFile(Class<?> c, File tmpdir) throws IOException {
+            String resourceName = c.getName().replace('.', '/') + ".class";
+            File outFile = new File(tmpdir, resourceName);
+            if (!outFile.getParentFile().isDirectory() && !outFile.getParentFile().mkdirs()) {
+                throw new IOException("Could not create " + outFile.getParentFile());
+            }
+            InputStream in = c.getClassLoader().getResourceAsStream(resourceName);
+            if (in == null) {
+                throw new IOException("Could not find " + resourceName);
+            }
+            try {
+                OutputStream out = new FileOutputStream(outFile);
+                try {
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ((n = in.read(buf)) >= 0) {
+                        out.write(buf, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
     }
 
     /**
@@ -192,8 +243,43 @@ public abstract class FindBugsTestCase extends TestCase {
      * @throws Exception
      */
     protected void executeFindBugsTest(final RunnableWithExceptions runnable) throws Exception {
-        TestRunnerThread thread = new TestRunnerThread(runnable);
+        executeFindBugsTest(runnable, new String[0]);
+    }
 
+    /**
+     * Execute some JUnit test code inside a Detector2 class running inside a
+     * FindBugs2 analysis run, with more classes on the aux classpath.
+     *
+     * @param runnable
+     *            a RunnableWithExceptions object whose run() method has some
+     *            JUnit test code
+     * @param auxClasspathEntries
+     *            aux classpath entries of the analysis
+     * @throws Exception
+     */
+    protected void executeFindBugsTest(final RunnableWithExceptions runnable, String... auxClasspathEntries) throws Exception {
+        execute(new TestRunnerThread(runnable, auxClasspathEntries, new Class<?>[0]));
+    }
+
+    /**
+     * Execute some JUnit test code inside a Detector2 class running inside a
+     * FindBugs2 analysis run, with the given test classes analyzed as
+     * application classes.
+     *
+     * @param runnable
+     *            a RunnableWithExceptions object whose run() method has some
+     *            JUnit test code
+     * @param applicationClasses
+     *            classes whose class files are added to the analyzed
+     *            application codebase
+     * @throws Exception
+     */
+    protected void executeFindBugsTestOnClasses(final RunnableWithExceptions runnable, Class<?>... applicationClasses)
+            throws Exception {
+        execute(new TestRunnerThread(runnable, new String[0], applicationClasses));
+    }
+
+    private void execute(TestRunnerThread thread) throws Exception {
         thread.start();
         try {
             thread.join();
@@ -206,4 +292,16 @@ public abstract class FindBugsTestCase extends TestCase {
         }
         thread.getDetectorAdapter().finishTest();
     }
+
+    /**
+     * Get the directory or jar file a class was loaded from, e.g. to analyze
+     * classes of the tests.
+     *
+     * @param c
+     *            the class
+     * @return the path of its codebase
+     */
+    protected static String getCodeBase(Class<?> c) throws Exception {
+        return new File(c.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
 }
@@ -41,4 +41,37 @@ public class OpcodeStackItemTest extends TestCase {
         assertEquals(0,m2.getConstant());
     }
 
+    public void testImmutableItem() {
+        OpcodeStack.Item item = new OpcodeStack.Item("I", 0).makeImmutable();
+        try {
+            item.setSpecialKind(OpcodeStack.Item.NON_NEGATIVE);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        OpcodeStack.Item copy = new OpcodeStack.Item(item);
+        assertFalse(copy.isImmutable());
+        assertEquals(item, copy);
+        copy.setSpecialKind(OpcodeStack.Item.NON_NEGATIVE);
+        assertEquals(OpcodeStack.Item.NOT_SPECIAL, item.getSpecialKind());
+    }
+
+    public void testPcMap() {
+        OpcodeStack.PcMap map = new OpcodeStack.PcMap();
+        OpcodeStack.Item[] items = { new OpcodeStack.Item("I") };
+        for (int pc = 0; pc < 1000; pc += 3) {
+            map.put(pc, items);
+        }
+        assertEquals(334, map.size());
+        assertSame(items, map.get(999));
+        assertNull(map.get(998));
+        int[] pcs = map.pcs();
+        assertEquals(0, pcs[0]);
+        assertEquals(3, pcs[1]);
+        assertEquals(999, pcs[333]);
+        map.clear();
+        assertNull(map.get(999));
+        assertEquals(0, map.size());
+    }
+
 }
@@ -0,0 +1,211 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Method;
+
+import edu.umd.cs.findbugs.OpcodeStack.StackModel;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.bcel.BCELUtil;
+import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+
+/**
+ * Check that an OpcodeStackDetector replaying the shared stack model sees the
+ * same stack states as one modeling the stack itself.
+ */
+public class OpcodeStackModelTest extends FindBugsTestCase {
+
+    /**
+     * Methods with backward branches, switches and exception handlers.
+     */
+    static class Fixture {
+        int count;
+
+        int loops(int[] a, int n) {
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < a.length; j++) {
+                    if (a[j] < 0) {
+                        continue;
+                    }
+                    sum += a[j];
+                }
+            }
+            while (sum > 1000) {
+                sum /= 2;
+            }
+            return sum;
+        }
+
+        Object switches(Object o, int k) {
+            Object result = null;
+            do {
+                switch (k % 4) {
+                case 0:
+                    result = o;
+                    break;
+                case 1:
+                    result = new int[k];
+                    k--;
+                    break;
+                case 2:
+                    result = "two";
+                    break;
+                default:
+                    k -= 2;
+                }
+                switch (k) {
+                case -100:
+                    return null;
+                case 1000:
+                    result = this;
+                    break;
+                default:
+                    break;
+                }
+            } while (k > 0);
+            return result;
+        }
+
+        String handlers(Object[] values) {
+            StringBuilder b = new StringBuilder();
+            int i = 0;
+            while (true) {
+                try {
+                    if (values[i] == null) {
+                        return b.toString();
+                    }
+                    b.append(values[i].hashCode());
+                    i++;
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    return null;
+                } finally {
+                    count++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records what it sees of the stack before and after each instruction.
+     */
+    static class StackRecorder extends OpcodeStackDetector {
+        final List<String> states = new ArrayList<String>();
+
+        private int codeLength;
+
+        @Override
+        public void visit(Code obj) {
+            codeLength = obj.getCode().length;
+            states.add("method " + getMethodName());
+            super.visit(obj);
+        }
+
+        @Override
+        public boolean beforeOpcode(int seen) {
+            boolean result = super.beforeOpcode(seen);
+            record("before");
+            return result;
+        }
+
+        @Override
+        public void afterOpcode(int seen) {
+            super.afterOpcode(seen);
+            record("after");
+        }
+
+        @Override
+        public void sawOpcode(int seen) {
+            // everything is recorded before and after the opcode
+        }
+
+        private void record(String when) {
+            StringBuilder b = new StringBuilder();
+            b.append(when).append(' ').append(getPC()).append(':');
+            if (stack.isTop()) {
+                b.append(" TOP");
+            } else {
+                b.append(" stack");
+                for (int i = 0; i < stack.getStackDepth(); i++) {
+                    b.append(' ').append(stack.getStackItem(i));
+                }
+                b.append(" locals");
+                for (int i = 0; i < stack.getNumLocalValues(); i++) {
+                    b.append(' ').append(stack.getLVValue(i));
+                }
+            }
+            b.append(" lastUpdate");
+            for (int i = 0; i < stack.getNumLastUpdates(); i++) {
+                b.append(' ').append(stack.getLastUpdate(i));
+            }
+            b.append(" jumpTargets");
+            for (int pc = 0; pc < codeLength; pc++) {
+                if (stack.isJumpTarget(pc)) {
+                    b.append(' ').append(pc);
+                    if (stack.hasIncomingBranches(pc)) {
+                        b.append('*');
+                    }
+                }
+            }
+            states.add(b.toString());
+        }
+    }
+
+    public void testReplayedModelIsModeledStack() throws Exception {
+        executeFindBugsTestOnClasses(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache analysisCache = Global.getAnalysisCache();
+                ClassContext classContext = analysisCache.getClassAnalysis(ClassContext.class,
+                        DescriptorFactory.createClassDescriptor(Fixture.class));
+
+                StackRecorder modeling = new StackRecorder();
+                modeling.visitClassContext(classContext);
+
+                StackRecorder replaying = new StackRecorder();
+                replaying.setSharingStackModel(true);
+                assertTrue(replaying.isSharingStackModel());
+                replaying.visitClassContext(classContext);
+
+                // the model was computed, so the detector replayed it
+                for (Method method : classContext.getJavaClass().getMethods()) {
+                    if (method.getCode() != null) {
+                        StackModel model = analysisCache.getMethodAnalysis(StackModel.class, BCELUtil.getMethodDescriptor(
+                                classContext.getJavaClass(), method));
+                        assertNotNull(method.getName(), model);
+                        assertTrue(method.getName(), model.isModelOf(method.getCode()));
+                    }
+                }
+                assertTrue(modeling.states.size() > 100);
+                for (int i = 0; i < modeling.states.size(); i++) {
+                    assertEquals(modeling.states.get(i), replaying.states.get(i));
+                }
+                assertEquals(modeling.states.size(), replaying.states.size());
+            }
+        }, Fixture.class);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+
+public class PluginMessageIndexTest extends TestCase {
+
+    private static final String TRANSLATION = "<MessageCollection>"
+            + "<Plugin><ShortDescription>Traduction</ShortDescription><BugsUrl>fr.html</BugsUrl></Plugin>"
+            + "<Detector class='a.Detector'><Details>Details traduits</Details></Detector>"
+            + "<BugPattern type='XX_TRANSLATED'><ShortDescription>Traduit</ShortDescription></BugPattern>"
+            + "</MessageCollection>";
+
+    private static final String MESSAGES = "<MessageCollection>"
+            + "<Plugin><ShortDescription>Default</ShortDescription><Details>Plugin details</Details>"
+            + "<BugsUrl>en.html</BugsUrl></Plugin>"
+            + "<Detector class='a.Detector'><Details>Details</Details></Detector>"
+            + "<Detector class='b.Detector'></Detector>"
+            + "<Detector class='b.Detector'><Details>Second</Details></Detector>"
+            + "<BugPattern type='XX_TRANSLATED'><ShortDescription>Translated</ShortDescription></BugPattern>"
+            + "<BugPattern type='XX_DEFAULT'><ShortDescription>Default</ShortDescription></BugPattern>"
+            + "<FindBugsMain cmd='list'><Description>List</Description></FindBugsMain>"
+            + "</MessageCollection>";
+
+    private Document translation;
+
+    private Document messages;
+
+    private PluginMessageIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        translation = DocumentHelper.parseText(TRANSLATION);
+        messages = DocumentHelper.parseText(MESSAGES);
+        index = new PluginMessageIndex(Arrays.asList(translation, messages));
+    }
+
+    public void testPrecedence() {
+        assertEquals("Traduit", index.find("BugPattern", "XX_TRANSLATED").elementText("ShortDescription"));
+        assertEquals("Default", index.find("BugPattern", "XX_DEFAULT").elementText("ShortDescription"));
+        assertNull(index.find("BugPattern", "XX_MISSING"));
+        assertEquals("Details traduits", index.find("Detector", "a.Detector", "Details").getText());
+        assertEquals("List", index.find("FindBugsMain", "list", "Description").getText());
+    }
+
+    public void testChildLookup() {
+        // like the XPath queries, fall back on later elements missing the child
+        assertEquals("Second", index.find("Detector", "b.Detector", "Details").getText());
+        assertEquals("Traduction", index.find("Plugin", "", "ShortDescription").getText());
+        assertEquals("Plugin details", index.find("Plugin", "", "Details").getText());
+        assertNull(index.find("Plugin", "", "AllBugsUrl"));
+    }
+
+    public void testPluginElementOfSameDocument() {
+        assertEquals("fr.html", index.findPluginElement(index.find("BugPattern", "XX_TRANSLATED"), "BugsUrl").getText());
+        assertEquals("en.html", index.findPluginElement(index.find("BugPattern", "XX_DEFAULT"), "BugsUrl").getText());
+    }
+}
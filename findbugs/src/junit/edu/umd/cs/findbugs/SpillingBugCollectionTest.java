@@ -0,0 +1,84 @@
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpillingBugCollectionTest extends TestCase {
+
+    private SortedBugCollection sorted;
+
+    private SpillingBugCollection spilling;
+
+    @Override
+    protected void setUp() throws Exception {
+        sorted = new SortedBugCollection();
+        spilling = new SpillingBugCollection(new ProjectStats(), new Project(), 3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        spilling.dispose();
+    }
+
+    private static BugInstance bug(String className, int value) {
+        return new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass(className).addInt(value);
+    }
+
+    private void add(String className, int value) {
+        sorted.add(bug(className, value));
+        spilling.add(bug(className, value));
+    }
+
+    private static List<String> keys(Iterator<BugInstance> i) {
+        List<String> result = new ArrayList<String>();
+        while (i.hasNext()) {
+            BugInstance b = i.next();
+            result.add(b.getInstanceKey() + "#" + b.getInstanceOccurrenceNum() + "/" + b.getInstanceOccurrenceMax());
+        }
+        return result;
+    }
+
+    public void testMergedOrder() {
+        String[] classes = { "p.Q", "p.A", "p.Z", "p.M", "p.B", "p.A", "p.Y", "p.C", "p.Q" };
+        for (int i = 0; i < classes.length; i++) {
+            add(classes[i], i % 4);
+        }
+        assertTrue(spilling.getNumRuns() > 0);
+        assertEquals(keys(sorted.iterator()), keys(spilling.iterator()));
+        assertEquals(sorted.getCollection().size(), spilling.getCollection().size());
+    }
+
+    public void testDuplicatesAcrossRuns() {
+        for (int i = 0; i < 10; i++) {
+            add("p.A", i % 4);
+        }
+        assertTrue(spilling.getNumRuns() > 1);
+        assertEquals(4, spilling.getCollection().size());
+        assertEquals(keys(sorted.iterator()), keys(spilling.iterator()));
+    }
+
+    public void testOccurrenceNumbers() {
+        // same instance hash, different source lines
+        for (int i = 0; i < 7; i++) {
+            sorted.add(bug("p.C", 1).addSourceLine(new SourceLineAnnotation("p.C", "C.java", i, i, i, i)));
+            spilling.add(bug("p.C", 1).addSourceLine(new SourceLineAnnotation("p.C", "C.java", i, i, i, i)));
+        }
+        assertTrue(spilling.getNumRuns() > 0);
+        sorted.computeBugHashes();
+        spilling.computeBugHashes();
+        assertEquals(keys(sorted.iterator()), keys(spilling.iterator()));
+    }
+
+    public void testDispose() {
+        for (int i = 0; i < 7; i++) {
+            add("p.C" + i, i);
+        }
+        assertTrue(spilling.getNumRuns() > 0);
+        spilling.dispose();
+        assertEquals(0, spilling.getNumRuns());
+        assertEquals(7 % 3, spilling.getCollection().size());
+    }
+}
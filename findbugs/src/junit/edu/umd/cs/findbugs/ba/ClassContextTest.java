@@ -0,0 +1,106 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import edu.umd.cs.findbugs.FindBugsTestCase;
+import edu.umd.cs.findbugs.RunnableWithExceptions;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Check that a ClassContext with a method analysis limit drops the analyses
+ * of the methods used least recently, and keeps the limit when the analysis
+ * cache replaces it.
+ */
+public class ClassContextTest extends FindBugsTestCase {
+
+    static class Fixture {
+        int a(int x) {
+            return x > 0 ? x : -x;
+        }
+
+        int b(int x) {
+            return x * 2;
+        }
+
+        int c(int x) {
+            return x + 1;
+        }
+    }
+
+    private static MethodDescriptor method(String name) {
+        return DescriptorFactory.instance().getMethodDescriptor(Fixture.class.getName().replace('.', '/'), name, "(I)I",
+                false);
+    }
+
+    public void testAnalysesOfThirdMethodDropped() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache cache = Global.getAnalysisCache();
+                ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor(Fixture.class);
+                AnalysisContext.currentAnalysisContext().setMethodAnalysisLimit(classDescriptor, 2);
+                ClassContext classContext = cache.getClassAnalysis(ClassContext.class, classDescriptor);
+                assertEquals(2, classContext.getMethodAnalysisLimit());
+
+                MethodDescriptor a = method("a");
+                CFG cfgA = cache.getMethodAnalysis(CFG.class, a);
+                cache.getMethodAnalysis(CFG.class, method("b"));
+                assertSame(cfgA, classContext.getMethodAnalysis(CFG.class, a));
+
+                // a is now used more recently than b, so c replaces b
+                cache.getMethodAnalysis(CFG.class, method("c"));
+                assertNull(classContext.getMethodAnalysis(CFG.class, method("b")));
+                assertSame(cfgA, classContext.getMethodAnalysis(CFG.class, a));
+
+                // and recomputing b drops c
+                CFG cfgB = cache.getMethodAnalysis(CFG.class, method("b"));
+                assertNotNull(cfgB);
+                assertNull(classContext.getMethodAnalysis(CFG.class, method("c")));
+                assertSame(cfgB, cache.getMethodAnalysis(CFG.class, method("b")));
+            }
+        }, getCodeBase(Fixture.class));
+    }
+
+    public void testLimitKeptWhenClassContextReplaced() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache cache = Global.getAnalysisCache();
+                ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor(Fixture.class);
+                AnalysisContext.currentAnalysisContext().setMethodAnalysisLimit(classDescriptor, 2);
+                ClassContext classContext = cache.getClassAnalysis(ClassContext.class, classDescriptor);
+
+                cache.purgeClassAnalysis(ClassContext.class);
+                ClassContext rebuilt = cache.getClassAnalysis(ClassContext.class, classDescriptor);
+                assertNotSame(classContext, rebuilt);
+                assertEquals(2, rebuilt.getMethodAnalysisLimit());
+
+                cache.getMethodAnalysis(CFG.class, method("a"));
+                cache.getMethodAnalysis(CFG.class, method("b"));
+                cache.getMethodAnalysis(CFG.class, method("c"));
+                assertNull(rebuilt.getMethodAnalysis(CFG.class, method("a")));
+            }
+        }, getCodeBase(Fixture.class));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.Iterator;
+
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.MethodGen;
+
+import edu.umd.cs.findbugs.FindBugsTestCase;
+import edu.umd.cs.findbugs.RunnableWithExceptions;
+import edu.umd.cs.findbugs.ba.type.ExceptionSetFactory;
+import edu.umd.cs.findbugs.ba.type.TypeAnalysis;
+import edu.umd.cs.findbugs.ba.type.TypeDataflow;
+import edu.umd.cs.findbugs.ba.type.TypeFrame;
+import edu.umd.cs.findbugs.ba.vna.LoadedFieldSet;
+import edu.umd.cs.findbugs.ba.vna.MergeTree;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberAnalysis;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberDataflow;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberFrame;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Check that the worklist and round-robin dataflow solvers compute the same
+ * facts, and that the worklist solver transfers fewer blocks.
+ */
+public class DataflowSolverTest extends FindBugsTestCase {
+
+    /**
+     * Methods with loops, nested loops, switches and exception handlers.
+     */
+    static class Fixture {
+        int count;
+
+        int loops(int[] a, int n) {
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < a.length; j++) {
+                    if (a[j] < 0) {
+                        continue;
+                    }
+                    if (a[j] > 100) {
+                        break;
+                    }
+                    sum += a[j];
+                }
+            }
+            while (sum > 1000) {
+                sum /= 2;
+            }
+            return sum;
+        }
+
+        Object switches(Object o, int k) {
+            Object result = null;
+            do {
+                switch (k % 4) {
+                case 0:
+                    result = o;
+                    break;
+                case 1:
+                    result = new int[k];
+                    k--;
+                    break;
+                case 2:
+                    result = this;
+                    // fall through
+                case 3:
+                    k -= 2;
+                    break;
+                default:
+                    result = null;
+                }
+            } while (k > 0);
+            return result;
+        }
+
+        int handlers(Object[] values) {
+            int i = 0;
+            while (true) {
+                try {
+                    if (values[i] == null) {
+                        return i;
+                    }
+                    count += values[i].hashCode();
+                    i++;
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    return -1;
+                } finally {
+                    count++;
+                }
+            }
+        }
+    }
+
+    public void testSolversComputeSameFacts() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache cache = Global.getAnalysisCache();
+                XClass xclass = cache.getClassAnalysis(XClass.class, DescriptorFactory.createClassDescriptor(Fixture.class));
+                int compared = 0;
+                for (XMethod xmethod : xclass.getXMethods()) {
+                    if (xmethod.getName().equals("<init>")) {
+                        continue;
+                    }
+                    MethodDescriptor descriptor = xmethod.getMethodDescriptor();
+                    compareValueNumbers(cache, descriptor);
+                    compareTypes(cache, descriptor);
+                    compared++;
+                }
+                assertEquals(3, compared);
+            }
+        }, getCodeBase(Fixture.class));
+    }
+
+    /**
+     * Type analysis which counts how often blocks are transferred.
+     */
+    static class CountingTypeAnalysis extends TypeAnalysis {
+        int transfers;
+
+        CountingTypeAnalysis(IAnalysisCache cache, MethodDescriptor descriptor, CFG cfg) throws Exception {
+            super(cache.getMethodAnalysis(Method.class, descriptor), cache.getMethodAnalysis(MethodGen.class, descriptor), cfg,
+                    cache.getMethodAnalysis(DepthFirstSearch.class, descriptor), AnalysisContext.currentAnalysisContext()
+                    .getLookupFailureCallback(), cache.getMethodAnalysis(ExceptionSetFactory.class, descriptor));
+        }
+
+        @Override
+        public void transfer(BasicBlock basicBlock, InstructionHandle end, TypeFrame start, TypeFrame result)
+                throws DataflowAnalysisException {
+            if (end == null) {
+                transfers++;
+            }
+            super.transfer(basicBlock, end, start, result);
+        }
+    }
+
+    public void testWorklistTransfersFewerBlocks() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache cache = Global.getAnalysisCache();
+                XClass xclass = cache.getClassAnalysis(XClass.class, DescriptorFactory.createClassDescriptor(Fixture.class));
+                for (XMethod xmethod : xclass.getXMethods()) {
+                    if (xmethod.getName().equals("<init>")) {
+                        continue;
+                    }
+                    MethodDescriptor descriptor = xmethod.getMethodDescriptor();
+                    CFG cfg = cache.getMethodAnalysis(CFG.class, descriptor);
+                    int[] transfers = new int[2];
+                    for (int i = 0; i < transfers.length; i++) {
+                        CountingTypeAnalysis analysis = new CountingTypeAnalysis(cache, descriptor, cfg);
+                        Dataflow<TypeFrame, TypeAnalysis> dataflow = new TypeDataflow(cfg, analysis);
+                        dataflow.setUseWorklist(i == 0);
+                        dataflow.execute();
+                        transfers[i] = analysis.transfers;
+                    }
+                    String where = xmethod.getName() + ": " + transfers[0] + " worklist, " + transfers[1] + " round-robin transfers";
+                    assertTrue(where, transfers[0] < transfers[1]);
+                    // each block is transferred once, and again only where
+                    // the facts of its predecessors changed
+                    assertTrue(where, transfers[0] >= cfg.getNumBasicBlocks());
+                    assertTrue(where, transfers[0] < 2 * cfg.getNumBasicBlocks());
+                }
+            }
+        }, getCodeBase(Fixture.class));
+    }
+
+    private static void compareValueNumbers(IAnalysisCache cache, MethodDescriptor descriptor) throws Exception {
+        @SuppressWarnings("unchecked")
+        Dataflow<ValueNumberFrame, ValueNumberAnalysis>[] dataflows = new Dataflow[2];
+        for (int i = 0; i < dataflows.length; i++) {
+            ValueNumberAnalysis analysis = new ValueNumberAnalysis(cache.getMethodAnalysis(MethodGen.class, descriptor),
+                    cache.getMethodAnalysis(DepthFirstSearch.class, descriptor), cache.getMethodAnalysis(LoadedFieldSet.class,
+                            descriptor), AnalysisContext.currentAnalysisContext().getLookupFailureCallback());
+            analysis.setMergeTree(new MergeTree(analysis.getFactory()));
+            dataflows[i] = new ValueNumberDataflow(cache.getMethodAnalysis(CFG.class, descriptor), analysis);
+            dataflows[i].setUseWorklist(i == 0);
+            dataflows[i].execute();
+        }
+        assertSameFacts(descriptor, dataflows[0], dataflows[1]);
+    }
+
+    private static void compareTypes(IAnalysisCache cache, MethodDescriptor descriptor) throws Exception {
+        @SuppressWarnings("unchecked")
+        Dataflow<TypeFrame, TypeAnalysis>[] dataflows = new Dataflow[2];
+        for (int i = 0; i < dataflows.length; i++) {
+            CFG cfg = cache.getMethodAnalysis(CFG.class, descriptor);
+            TypeAnalysis analysis = new TypeAnalysis(cache.getMethodAnalysis(Method.class, descriptor), cache.getMethodAnalysis(
+                    MethodGen.class, descriptor), cfg, cache.getMethodAnalysis(DepthFirstSearch.class, descriptor), AnalysisContext
+                    .currentAnalysisContext().getLookupFailureCallback(), cache.getMethodAnalysis(ExceptionSetFactory.class,
+                            descriptor));
+            dataflows[i] = new TypeDataflow(cfg, analysis);
+            dataflows[i].setUseWorklist(i == 0);
+            dataflows[i].execute();
+        }
+        assertSameFacts(descriptor, dataflows[0], dataflows[1]);
+    }
+
+    private static <Fact, AnalysisType extends DataflowAnalysis<Fact>> void assertSameFacts(MethodDescriptor descriptor,
+            Dataflow<Fact, AnalysisType> worklist, Dataflow<Fact, AnalysisType> roundRobin) {
+        AnalysisType analysis = worklist.getAnalysis();
+        for (Iterator<BasicBlock> i = worklist.getCFG().blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            String where = descriptor.getName() + ", block " + block.getLabel();
+            Fact start = worklist.getStartFact(block);
+            Fact otherStart = roundRobin.getStartFact(block);
+            assertTrue(where + ": " + start + " != " + otherStart, analysis.same(start, otherStart));
+            Fact result = worklist.getResultFact(block);
+            Fact otherResult = roundRobin.getResultFact(block);
+            assertTrue(where + ": " + result + " != " + otherResult, analysis.same(result, otherResult));
+        }
+    }
+}
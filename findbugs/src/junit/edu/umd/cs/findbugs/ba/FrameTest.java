@@ -0,0 +1,157 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2005, University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+/**
+ * Frames reuse their slot array when copied into: check that modifying a
+ * copy (or the original) doesn't affect the other.
+ */
+public class FrameTest extends TestCase {
+
+    static class StringFrame extends Frame<String> {
+        StringFrame(int numLocals) {
+            super(numLocals);
+        }
+    }
+
+    StringFrame frame;
+
+    @Override
+    protected void setUp() throws Exception {
+        frame = new StringFrame(2);
+        frame.setValid();
+        frame.setValue(0, "a");
+        frame.setValue(1, "b");
+        frame.pushValue("c");
+    }
+
+    private StringFrame copy(StringFrame orig) {
+        StringFrame copy = new StringFrame(orig.getNumLocals());
+        copy.copyFrom(orig);
+        return copy;
+    }
+
+    private static void assertSlots(Frame<String> frame, String... values) {
+        assertEquals(Arrays.asList(values), new ArrayList<String>(frame.allSlots()));
+    }
+
+    public void testCopyIsSame() {
+        StringFrame copy = copy(frame);
+        assertTrue(copy.sameAs(frame));
+        assertTrue(frame.sameAs(copy));
+        assertSlots(copy, "a", "b", "c");
+    }
+
+    public void testSetValueInCopy() {
+        StringFrame copy = copy(frame);
+        copy.setValue(1, "x");
+        assertSlots(copy, "a", "x", "c");
+        assertSlots(frame, "a", "b", "c");
+        assertFalse(copy.sameAs(frame));
+    }
+
+    public void testSetValueInOriginal() {
+        StringFrame copy = copy(frame);
+        frame.setValue(2, "x");
+        assertSlots(frame, "a", "b", "x");
+        assertSlots(copy, "a", "b", "c");
+    }
+
+    public void testPushAndPopInCopy() throws DataflowAnalysisException {
+        StringFrame copy = copy(frame);
+        assertEquals("c", copy.popValue());
+        copy.pushValue("d");
+        copy.pushValue("e");
+        assertSlots(copy, "a", "b", "d", "e");
+        assertSlots(frame, "a", "b", "c");
+        assertEquals("c", frame.getTopValue());
+    }
+
+    public void testClearStackInCopy() {
+        StringFrame copy = copy(frame);
+        copy.clearStack();
+        copy.pushValue("e");
+        assertSlots(copy, "a", "b", "e");
+        assertSlots(frame, "a", "b", "c");
+    }
+
+    public void testCopyOfCopy() {
+        StringFrame copy = copy(frame);
+        StringFrame copy2 = copy(copy);
+        copy.setValue(0, "x");
+        copy2.setValue(0, "y");
+        assertSlots(frame, "a", "b", "c");
+        assertSlots(copy, "x", "b", "c");
+        assertSlots(copy2, "y", "b", "c");
+    }
+
+    public void testAllSlotsIsView() throws DataflowAnalysisException {
+        Collection<String> slots = frame.allSlots();
+        frame.setValue(0, "x");
+        frame.popValue();
+        assertEquals(Arrays.asList("x", "b"), new ArrayList<String>(slots));
+    }
+
+    public void testCopyIntoDeeperStack() {
+        StringFrame deeper = copy(frame);
+        deeper.pushValue("d");
+        deeper.pushValue("e");
+        deeper.copyFrom(frame);
+        assertSlots(deeper, "a", "b", "c");
+        deeper.pushValue("f");
+        assertSlots(deeper, "a", "b", "c", "f");
+        assertSlots(frame, "a", "b", "c");
+    }
+
+    public void testCopyFromDeeperStack() {
+        StringFrame deeper = copy(frame);
+        for (int i = 0; i < 20; ++i) {
+            deeper.pushValue("s" + i);
+        }
+        StringFrame copy = new StringFrame(2);
+        copy.copyFrom(deeper);
+        assertEquals(deeper.getNumSlots(), copy.getNumSlots());
+        assertTrue(copy.sameAs(deeper));
+    }
+
+    public void testGrowStack() throws DataflowAnalysisException {
+        for (int i = 0; i < 20; ++i) {
+            frame.pushValue("s" + i);
+        }
+        assertEquals(21, frame.getStackDepth());
+        assertEquals("s19", frame.getTopValue());
+        assertEquals("c", frame.getStackValue(20));
+    }
+
+    public void testSlotOutOfRange() {
+        try {
+            frame.getValue(3);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
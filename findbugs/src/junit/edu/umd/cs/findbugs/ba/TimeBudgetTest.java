@@ -0,0 +1,115 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.log.BudgetStatistics;
+
+public class TimeBudgetTest extends TestCase {
+
+    private static final MethodDescriptor METHOD = DescriptorFactory.instance().getMethodDescriptor("p/C", "m", "()V",
+            false);
+
+    private static long millisAgo(long millis) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public void testUnlimited() throws Exception {
+        TimeBudget budget = TimeBudget.UNLIMITED;
+        assertTrue(budget.isUnlimited());
+        assertFalse(budget.isExceeded(millisAgo(1000000)));
+        budget.check("Analysis", METHOD, millisAgo(1000000));
+        assertFalse(budget.endDetector(budget.startDetector()));
+        assertTrue(budget.takeMethodOverruns().isEmpty());
+    }
+
+    public void testMethodBudget() {
+        BudgetStatistics statistics = new BudgetStatistics();
+        TimeBudget budget = new TimeBudget(1000, 0, statistics);
+        assertEquals(1000, statistics.getMethodBudget());
+        assertFalse(budget.isExceeded(System.nanoTime()));
+        assertTrue(budget.isExceeded(millisAgo(2000)));
+        try {
+            budget.check("Analysis", METHOD, millisAgo(2000));
+            fail();
+        } catch (TimeBudgetExceededException e) {
+            assertFalse(e.isDetectorBudget());
+            assertEquals("Analysis", e.getAnalysis());
+            assertEquals(METHOD, e.getMethod());
+            assertTrue(e.getMilliseconds() >= 2000);
+        }
+        assertEquals(1, statistics.getMethodOverruns());
+        assertEquals(0, statistics.getDetectorOverruns());
+        BudgetStatistics.Overrun overrun = statistics.getOverruns().iterator().next();
+        assertEquals(BudgetStatistics.Kind.METHOD, overrun.getKind());
+        assertEquals(METHOD.toString(), overrun.getUnit());
+
+        List<TimeBudgetExceededException> overruns = budget.takeMethodOverruns();
+        assertEquals(1, overruns.size());
+        assertEquals(METHOD, overruns.get(0).getMethod());
+        assertTrue(budget.takeMethodOverruns().isEmpty());
+    }
+
+    public void testDetectorBudget() throws Exception {
+        BudgetStatistics statistics = new BudgetStatistics();
+        TimeBudget budget = new TimeBudget(0, 1, statistics);
+        long methodStart = System.nanoTime();
+        // Not within a detector
+        Thread.sleep(5);
+        assertFalse(budget.isExceeded(methodStart));
+
+        long detectorStart = budget.startDetector();
+        Thread.sleep(5);
+        try {
+            budget.check("Analysis", METHOD, System.nanoTime());
+            fail();
+        } catch (TimeBudgetExceededException e) {
+            assertTrue(e.isDetectorBudget());
+        }
+        assertTrue(budget.endDetector(detectorStart));
+        assertFalse(budget.isExceeded(methodStart));
+
+        // Only method overruns are recorded by the budget
+        assertEquals(0, statistics.getMethodOverruns());
+        assertTrue(budget.takeMethodOverruns().isEmpty());
+    }
+
+    public void testDetectorBudgetIsPerThread() throws Exception {
+        final TimeBudget budget = new TimeBudget(0, 1, null);
+        budget.startDetector();
+        Thread.sleep(5);
+        assertTrue(budget.isExceeded(System.nanoTime()));
+        final boolean[] exceeded = new boolean[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                exceeded[0] = budget.isExceeded(System.nanoTime());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertFalse(exceeded[0]);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.ch;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Compare the answers of a SubtypeIndex with searches of the
+ * InheritanceGraph, on generated hierarchies.
+ */
+public class SubtypeIndexTest extends TestCase {
+
+    private InheritanceGraph graph;
+
+    private List<ClassVertex> vertices;
+
+    private ClassVertex object;
+
+    @Override
+    protected void setUp() throws Exception {
+        graph = new InheritanceGraph();
+        vertices = new ArrayList<ClassVertex>();
+        object = addClass("java/lang/Object", false);
+    }
+
+    private ClassVertex addClass(String name, final boolean isInterface) {
+        // The vertices only need to know whether the class is an interface;
+        // a ClassInfo can't be built without an analysis cache
+        XClass xclass = (XClass) Proxy.newProxyInstance(XClass.class.getClassLoader(), new Class<?>[] { XClass.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("isInterface".equals(method.getName())) {
+                            return isInterface;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        ClassVertex vertex = ClassVertex.createResolvedClassVertex(DescriptorFactory.createClassDescriptor(name), xclass);
+        add(vertex);
+        return vertex;
+    }
+
+    private ClassVertex addMissingClass(String name, boolean isInterface) {
+        ClassVertex vertex = ClassVertex.createMissingClassVertex(DescriptorFactory.createClassDescriptor(name), isInterface);
+        add(vertex);
+        return vertex;
+    }
+
+    private void add(ClassVertex vertex) {
+        graph.addVertex(vertex);
+        vertices.add(vertex);
+        if (vertex.isInterface()) {
+            graph.createEdge(vertex, object);
+        }
+    }
+
+    private static Set<ClassVertex> reachable(ClassVertex start, InheritanceGraph graph, boolean up) {
+        Set<ClassVertex> result = new HashSet<ClassVertex>();
+        LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
+        workList.add(start);
+        while (!workList.isEmpty()) {
+            ClassVertex vertex = workList.removeFirst();
+            if (result.add(vertex)) {
+                Iterator<InheritanceEdge> i = up ? graph.outgoingEdgeIterator(vertex) : graph.incomingEdgeIterator(vertex);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.add(up ? edge.getTarget() : edge.getSource());
+                }
+            }
+        }
+        return result;
+    }
+
+    private void generate(long seed, int numClasses, String prefix) {
+        Random random = new Random(seed);
+        List<ClassVertex> classes = new ArrayList<ClassVertex>();
+        List<ClassVertex> interfaces = new ArrayList<ClassVertex>();
+        classes.add(object);
+        for (int i = 0; i < numClasses; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 3) {
+                ClassVertex iface = kind == 0 && random.nextBoolean() ? addMissingClass(prefix + "/MissingI" + i, true) : addClass(
+                        prefix + "/I" + i, true);
+                if (iface.isResolved()) {
+                    for (int j = random.nextInt(3); j > 0 && !interfaces.isEmpty(); j--) {
+                        graph.createEdge(iface, interfaces.get(random.nextInt(interfaces.size())));
+                    }
+                }
+                interfaces.add(iface);
+            } else if (kind == 3) {
+                classes.add(addMissingClass(prefix + "/Missing" + i, false));
+            } else {
+                ClassVertex c = addClass(prefix + "/C" + i, false);
+                graph.createEdge(c, classes.get(random.nextInt(classes.size())));
+                for (int j = random.nextInt(3); j > 0 && !interfaces.isEmpty(); j--) {
+                    ClassVertex iface = interfaces.get(random.nextInt(interfaces.size()));
+                    if (graph.lookupEdge(c, iface) == null) {
+                        graph.createEdge(c, iface);
+                    }
+                }
+                classes.add(c);
+            }
+        }
+    }
+
+    private void checkIndex(SubtypeIndex index) {
+        for (ClassVertex sub : vertices) {
+            int subId = index.getId(sub.getClassDescriptor());
+            if (subId < 0) {
+                continue;
+            }
+            Set<ClassVertex> supertypes = reachable(sub, graph, true);
+            boolean incomplete = false;
+            for (ClassVertex supertype : supertypes) {
+                incomplete |= !supertype.isResolved();
+            }
+            for (ClassVertex sup : vertices) {
+                String query = sub + " <: " + sup;
+                try {
+                    boolean result = index.isSubtype(subId, sup.getClassDescriptor());
+                    assertEquals(query, supertypes.contains(sup), result);
+                    assertTrue(query, result || !incomplete);
+                } catch (ClassNotFoundException e) {
+                    assertTrue(query, incomplete && !supertypes.contains(sup));
+                }
+            }
+
+            Set<ClassDescriptor> expected = new HashSet<ClassDescriptor>();
+            boolean hasSubclass = false;
+            for (ClassVertex subtype : reachable(sub, graph, false)) {
+                expected.add(subtype.getClassDescriptor());
+                hasSubclass |= subtype != sub && subtype.isResolved() && !subtype.isInterface();
+            }
+            Set<ClassDescriptor> subtypes = new HashSet<ClassDescriptor>();
+            index.addSubtypes(subId, subtypes);
+            assertEquals(sub.toString(), expected, subtypes);
+            assertEquals(sub.toString(), hasSubclass, index.hasKnownSubclass(subId));
+        }
+    }
+
+    public void testGeneratedHierarchies() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            setUp();
+            generate(seed, 150, "p");
+            SubtypeIndex index = new SubtypeIndex(graph);
+            assertTrue(index.isCurrent(graph));
+            checkIndex(index);
+        }
+    }
+
+    public void testGrowingGraph() throws Exception {
+        generate(42, 100, "p");
+        SubtypeIndex index = new SubtypeIndex(graph);
+        int numIndexed = vertices.size();
+        generate(43, 100, "q");
+        assertFalse(index.isCurrent(graph));
+        // Supertype queries about the classes indexed before stay correct
+        for (ClassVertex sub : vertices.subList(0, numIndexed)) {
+            Set<ClassVertex> supertypes = reachable(sub, graph, true);
+            for (ClassVertex sup : vertices) {
+                try {
+                    assertEquals(supertypes.contains(sup), index.isSubtype(index.getId(sub.getClassDescriptor()),
+                            sup.getClassDescriptor()));
+                } catch (ClassNotFoundException e) {
+                    assertFalse(supertypes.contains(sup));
+                }
+            }
+        }
+        checkIndex(new SubtypeIndex(graph));
+    }
+
+    public void testCycle() throws Exception {
+        ClassVertex a = addClass("p/A", false);
+        ClassVertex b = addClass("p/B", false);
+        ClassVertex c = addClass("p/C", false);
+        ClassVertex d = addClass("p/D", false);
+        graph.createEdge(a, b);
+        graph.createEdge(b, a);
+        graph.createEdge(c, a);
+        graph.createEdge(d, object);
+        SubtypeIndex index = new SubtypeIndex(graph);
+        assertFalse(index.isCurrent(graph));
+        assertEquals(-1, index.getId(a.getClassDescriptor()));
+        assertEquals(-1, index.getId(c.getClassDescriptor()));
+        assertTrue(index.isSubtype(index.getId(d.getClassDescriptor()), object.getClassDescriptor()));
+        assertFalse(index.isSubtype(index.getId(d.getClassDescriptor()), a.getClassDescriptor()));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.npe;
+
+import java.util.Iterator;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.MethodGen;
+
+import edu.umd.cs.findbugs.FindBugsTestCase;
+import edu.umd.cs.findbugs.RunnableWithExceptions;
+import edu.umd.cs.findbugs.ba.AssertionMethods;
+import edu.umd.cs.findbugs.ba.CFG;
+import edu.umd.cs.findbugs.ba.DepthFirstSearch;
+import edu.umd.cs.findbugs.ba.JavaClassAndMethod;
+import edu.umd.cs.findbugs.ba.Location;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.ba.type.TypeDataflow;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberDataflow;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Check that the cached null value facts at each location are the facts
+ * computed by replaying the transfer function.
+ */
+public class IsNullValueFactCacheTest extends FindBugsTestCase {
+
+    static class Fixture {
+        Object field;
+
+        int nullChecks(Object a, Object b) {
+            int n = 0;
+            if (a == null) {
+                a = b;
+            }
+            while (b != null) {
+                n += b.hashCode();
+                b = n > 10 ? null : a;
+            }
+            if (a instanceof String && field != null) {
+                n += field.hashCode();
+            }
+            return n + a.hashCode();
+        }
+
+        Object switches(Object o, int k) {
+            Object result = null;
+            for (int i = 0; i < k; i++) {
+                switch (i % 3) {
+                case 0:
+                    result = o;
+                    break;
+                case 1:
+                    result = null;
+                    break;
+                default:
+                    if (result == null) {
+                        result = this;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    public void testCachedFactsAreRecomputedFacts() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                IAnalysisCache cache = Global.getAnalysisCache();
+                ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor(Fixture.class);
+                XClass xclass = cache.getClassAnalysis(XClass.class, classDescriptor);
+                int locations = 0;
+                for (XMethod xmethod : xclass.getXMethods()) {
+                    locations += compareFacts(cache, xmethod.getMethodDescriptor());
+                }
+                assertTrue(locations > 0);
+            }
+        }, getCodeBase(Fixture.class));
+    }
+
+    private static int compareFacts(IAnalysisCache cache, MethodDescriptor descriptor) throws Exception {
+        // The cached dataflow has the fact cache enabled
+        IsNullValueDataflow cached = cache.getMethodAnalysis(IsNullValueDataflow.class, descriptor);
+
+        CFG cfg = cache.getMethodAnalysis(CFG.class, descriptor);
+        IsNullValueAnalysis analysis = new IsNullValueAnalysis(descriptor, cache.getMethodAnalysis(MethodGen.class, descriptor),
+                cfg, cache.getMethodAnalysis(ValueNumberDataflow.class, descriptor), cache.getMethodAnalysis(
+                        TypeDataflow.class, descriptor), cache.getMethodAnalysis(DepthFirstSearch.class, descriptor),
+                        cache.getClassAnalysis(AssertionMethods.class, descriptor.getClassDescriptor()));
+        analysis.setClassAndMethod(new JavaClassAndMethod(cache.getClassAnalysis(JavaClass.class,
+                descriptor.getClassDescriptor()), cache.getMethodAnalysis(Method.class, descriptor)));
+        IsNullValueDataflow recomputed = new IsNullValueDataflow(cfg, analysis);
+        recomputed.execute();
+
+        int count = 0;
+        for (Iterator<Location> i = cfg.locationIterator(); i.hasNext();) {
+            Location location = i.next();
+            IsNullValueFrame fact = cached.getFactAtLocation(location);
+            IsNullValueFrame expected = recomputed.getFactAtLocation(location);
+            assertTrue(descriptor.getName() + " at " + location + ": " + fact + " != " + expected, analysis.same(fact, expected));
+            fact = cached.getFactAfterLocation(location);
+            expected = recomputed.getFactAfterLocation(location);
+            assertTrue(descriptor.getName() + " after " + location + ": " + fact + " != " + expected, analysis.same(fact, expected));
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.umd.cs.findbugs.FindBugsTestCase;
+import edu.umd.cs.findbugs.RunnableWithExceptions;
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
+
+/**
+ * Check that a library class parsed without its code, whose code is parsed
+ * when a code-derived property is first asked for, has the properties it
+ * has when its code is parsed along with it.
+ */
+public class LazyCodeParseTest extends FindBugsTestCase {
+
+    static class Fixture implements Comparable<Fixture> {
+        private int value;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        class Inner {
+            int get() {
+                return value;
+            }
+
+            void increment() {
+                value++;
+            }
+        }
+
+        Object identity(Object o) {
+            return o;
+        }
+
+        void thrower() {
+            throw new IllegalStateException();
+        }
+
+        void unsupported() {
+            throw new UnsupportedOperationException();
+        }
+
+        void stub() {
+            throw new RuntimeException("Stub!");
+        }
+
+        synchronized int loop(int n) {
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += Integer.valueOf(i).hashCode();
+            }
+            return sum;
+        }
+
+        void locked() {
+            lock.lock();
+            try {
+                value++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int compareTo(Fixture o) {
+            return value - o.value;
+        }
+    }
+
+    public void testLazyParseIsEagerParse() throws Exception {
+        executeFindBugsTest(new RunnableWithExceptions() {
+            @Override
+            public void run() throws Throwable {
+                compare(DescriptorFactory.createClassDescriptor(Fixture.class));
+                compare(DescriptorFactory.createClassDescriptor(Fixture.Inner.class));
+            }
+        }, getCodeBase(Fixture.class));
+    }
+
+    private static void compare(ClassDescriptor descriptor) throws Exception {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        // The fixture is on the aux classpath, so its code isn't parsed yet
+        ClassInfo lazy = (ClassInfo) analysisCache.getClassAnalysis(XClass.class, descriptor);
+        MethodInfo first = (MethodInfo) lazy.getXMethods().get(0);
+        assertTrue(first.hasUnparsedCode());
+        first.getAccessFlags();
+        assertTrue("getAccessFlags() parsed the code", first.hasUnparsedCode());
+
+        List<String> lazyProperties = properties(lazy);
+        assertFalse(first.hasUnparsedCode());
+
+        ClassInfo.Builder builder = new ClassInfo.Builder();
+        new ClassParserUsingASM(analysisCache.getClassAnalysis(FBClassReader.class, descriptor), descriptor,
+                lazy.getCodeBaseEntry()).parse(builder);
+        ClassInfo eager = builder.build();
+        assertFalse(((MethodInfo) eager.getXMethods().get(0)).hasUnparsedCode());
+
+        List<String> eagerProperties = properties(eager);
+        for (int i = 0; i < eagerProperties.size(); i++) {
+            assertEquals(eagerProperties.get(i), lazyProperties.get(i));
+        }
+        assertEquals(eagerProperties.size(), lazyProperties.size());
+    }
+
+    private static List<String> properties(ClassInfo classInfo) {
+        List<String> result = new ArrayList<String>();
+        result.add("usesConcurrency " + classInfo.usesConcurrency());
+        result.add("hasStubs " + classInfo.hasStubs());
+        result.add("called " + new TreeSet<ClassDescriptor>(classInfo.getCalledClassDescriptors()));
+        List<String> callOrder = new ArrayList<String>();
+        for (XMethod m : classInfo.getXMethodsInCallOrder()) {
+            callOrder.add(m.getName() + m.getSignature());
+        }
+        result.add("call order " + callOrder);
+        for (XMethod xmethod : classInfo.getXMethods()) {
+            MethodInfo m = (MethodInfo) xmethod;
+            String name = m.getName() + m.getSignature() + " ";
+            // isSynthetic() first: it parses the code, getAccessFlags() doesn't
+            result.add(name + "isSynthetic " + m.isSynthetic());
+            result.add(name + "accessFlags " + m.getAccessFlags());
+            result.add(name + "isUnconditionalThrower " + m.isUnconditionalThrower());
+            result.add(name + "isUnsupported " + m.isUnsupported());
+            result.add(name + "isIdentity " + m.isIdentity());
+            result.add(name + "isStub " + m.isStub());
+            result.add(name + "usesConcurrency " + m.usesConcurrency());
+            result.add(name + "usesInvokeDynamic " + m.usesInvokeDynamic());
+            result.add(name + "hasBackBranch " + m.hasBackBranch());
+            result.add(name + "methodCallCount " + m.getMethodCallCount());
+            StringBuilder synthetic = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                synthetic.append(m.isVariableSynthetic(i) ? '1' : '0');
+            }
+            result.add(name + "variableIsSynthetic " + synthetic);
+            result.add(name + "accessMethodForMethod " + m.getAccessMethodForMethod());
+            result.add(name + "accessMethodForField " + m.getAccessMethodForField());
+            result.add(name + "bridgeTo " + describe(m.bridgeTo()));
+            result.add(name + "bridgeFrom " + describe(m.bridgeFrom()));
+            result.add(name + "thrownExceptions " + Arrays.toString(m.getThrownExceptions()));
+        }
+        return result;
+    }
+
+    private static String describe(XMethod m) {
+        return m == null ? "null" : m.getName() + m.getSignature();
+    }
+}
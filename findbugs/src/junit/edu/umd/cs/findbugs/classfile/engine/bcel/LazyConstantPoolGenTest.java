@@ -0,0 +1,88 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.engine.bcel;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantFieldref;
+import org.apache.bcel.classfile.ConstantMethodref;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.generic.GETSTATIC;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
+
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+public class LazyConstantPoolGenTest extends TestCase {
+
+    private static ConstantPool constantPool() {
+        return new ConstantPool(new Constant[] { null,
+                // 1, 2: class java/lang/System
+                new ConstantUtf8("java/lang/System"), new ConstantClass(1),
+                // 3, 4, 5: name and type exit(I)V
+                new ConstantUtf8("exit"), new ConstantUtf8("(I)V"), new ConstantNameAndType(3, 4),
+                // 6: method java/lang/System.exit(I)V
+                new ConstantMethodref(2, 5),
+                // 7, 8, 9: name and type out Ljava/io/PrintStream;
+                new ConstantUtf8("out"), new ConstantUtf8("Ljava/io/PrintStream;"), new ConstantNameAndType(7, 8),
+                // 10: field java/lang/System.out
+                new ConstantFieldref(2, 9) });
+    }
+
+    public void testReadsInPlace() {
+        ConstantPool constantPool = constantPool();
+        LazyConstantPoolGen cpg = new LazyConstantPoolGen(constantPool);
+        assertEquals(11, cpg.getSize());
+        assertSame(constantPool, cpg.getConstantPool());
+        assertSame(constantPool.getConstant(6), cpg.getConstant(6));
+    }
+
+    public void testMemoizedReferences() {
+        LazyConstantPoolGen cpg = new LazyConstantPoolGen(constantPool());
+        MethodDescriptor exit = cpg.getMethodDescriptor(new INVOKESTATIC(6));
+        assertEquals("java/lang/System", exit.getSlashedClassName());
+        assertEquals("exit", exit.getName());
+        assertEquals("(I)V", exit.getSignature());
+        assertTrue(exit.isStatic());
+        assertSame(exit, cpg.getMethodDescriptor(new INVOKESTATIC(6)));
+        assertFalse(cpg.getMethodDescriptor(new INVOKEVIRTUAL(6)).isStatic());
+
+        FieldDescriptor out = cpg.getFieldDescriptor(new GETSTATIC(10));
+        assertEquals("out", out.getName());
+        assertEquals("Ljava/io/PrintStream;", out.getSignature());
+        assertTrue(out.isStatic());
+    }
+
+    public void testLookupAndAdd() {
+        LazyConstantPoolGen cpg = new LazyConstantPoolGen(constantPool());
+        assertEquals(6, cpg.lookupMethodref("java.lang.System", "exit", "(I)V"));
+        assertEquals(10, cpg.lookupFieldref("java.lang.System", "out", "Ljava/io/PrintStream;"));
+        int added = cpg.addFieldref("java.lang.System", "err", "Ljava/io/PrintStream;");
+        assertTrue(added >= 11);
+        assertEquals(added + 1, cpg.getSize());
+        assertTrue(cpg.getConstant(added) instanceof ConstantFieldref);
+        assertEquals(added, cpg.lookupFieldref("java.lang.System", "err", "Ljava/io/PrintStream;"));
+    }
+}
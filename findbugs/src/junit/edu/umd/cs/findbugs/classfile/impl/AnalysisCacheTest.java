@@ -0,0 +1,201 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IResultSizeEstimator;
+import edu.umd.cs.findbugs.log.CacheStatistics;
+
+public class AnalysisCacheTest extends TestCase {
+
+    static class Result {
+    }
+
+    static class SlowEngine implements IClassAnalysisEngine<Result> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Result analyze(IAnalysisCache analysisCache, ClassDescriptor descriptor) throws CheckedAnalysisException {
+            count.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Result();
+        }
+
+        @Override
+        public void registerWith(IAnalysisCache analysisCache) {
+            analysisCache.registerClassAnalysisEngine(Result.class, this);
+        }
+
+        @Override
+        public boolean canRecompute() {
+            return true;
+        }
+    }
+
+    static class SizedEngine implements IClassAnalysisEngine<Result>, IResultSizeEstimator<Result> {
+        @Override
+        public Result analyze(IAnalysisCache analysisCache, ClassDescriptor descriptor) throws CheckedAnalysisException {
+            return new Result();
+        }
+
+        @Override
+        public void registerWith(IAnalysisCache analysisCache) {
+            analysisCache.registerClassAnalysisEngine(Result.class, this);
+        }
+
+        @Override
+        public boolean canRecompute() {
+            return true;
+        }
+
+        @Override
+        public long estimateRetainedSize(Result result) {
+            return 100;
+        }
+    }
+
+    public void testMemoryBudgetEvictsLeastRecentlyUsed() throws Exception {
+        AnalysisCache cache = new AnalysisCache(new ClassPathImpl(), new PrintingBugReporter());
+        cache.setMemoryBudget(250);
+        new SizedEngine().registerWith(cache);
+        ClassDescriptor[] descriptors = new ClassDescriptor[4];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = DescriptorFactory.createClassDescriptor("test/C" + i);
+        }
+
+        cache.getClassAnalysis(Result.class, descriptors[0]);
+        cache.getClassAnalysis(Result.class, descriptors[1]);
+        // touch C0, so that C1 is the least recently used
+        cache.getClassAnalysis(Result.class, descriptors[0]);
+        cache.getClassAnalysis(Result.class, descriptors[2]);
+
+        assertNotNull(cache.probeClassAnalysis(Result.class, descriptors[0]));
+        assertNull(cache.probeClassAnalysis(Result.class, descriptors[1]));
+        assertNotNull(cache.probeClassAnalysis(Result.class, descriptors[2]));
+
+        CacheStatistics stats = new CacheStatistics();
+        cache.recordStatistics(stats);
+        CacheStatistics.Entry entry = stats.getEntries().iterator().next();
+        assertEquals(Result.class.getName(), entry.getAnalysis());
+        assertEquals(1, entry.getHits());
+        assertEquals(3, entry.getMisses());
+        assertEquals(1, entry.getEvictions());
+        assertEquals(250, stats.getBudget());
+    }
+
+    static class GrowingResult {
+        long size = 50;
+    }
+
+    public void testReweighedResultEvictsLeastRecentlyUsed() throws Exception {
+        CacheBudget budget = new CacheBudget(150);
+        StripedResultMap<String> map = new StripedResultMap<String>(budget, new IResultSizeEstimator<Object>() {
+            @Override
+            public long estimateRetainedSize(Object result) {
+                return ((GrowingResult) result).size;
+            }
+        });
+        GrowingResult growing = new GrowingResult();
+        map.put("a", growing);
+        map.put("b", new GrowingResult());
+        assertEquals(100, budget.getUsedBytes());
+
+        growing.size = 120;
+        map.reweigh("a", growing);
+        // "a" was used last, so "b" is evicted
+        assertSame(growing, map.get("a"));
+        assertNull(map.get("b"));
+        assertEquals(120, budget.getUsedBytes());
+
+        // a value no longer stored is not weighed again
+        growing.size = 10;
+        map.reweigh("a", new GrowingResult());
+        assertEquals(120, budget.getUsedBytes());
+    }
+
+    public void testPinnedResultSurvivesEviction() throws Exception {
+        AnalysisCache cache = new AnalysisCache(new ClassPathImpl(), new PrintingBugReporter());
+        cache.setMemoryBudget(150);
+        new SizedEngine().registerWith(cache);
+        ClassDescriptor c0 = DescriptorFactory.createClassDescriptor("test/C0");
+        ClassDescriptor c1 = DescriptorFactory.createClassDescriptor("test/C1");
+
+        Result pinned = cache.pinClassAnalysis(Result.class, c0);
+        cache.getClassAnalysis(Result.class, c1);
+        assertNull(cache.probeClassAnalysis(Result.class, c0));
+        assertSame(pinned, cache.getClassAnalysis(Result.class, c0));
+
+        cache.unpinClassAnalysis(Result.class, c0);
+        cache.getClassAnalysis(Result.class, c1);
+        assertNotSame(pinned, cache.getClassAnalysis(Result.class, c0));
+    }
+
+    public void testClassAnalysisComputedOnce() throws Exception {
+        final AnalysisCache cache = new AnalysisCache(new ClassPathImpl(), new PrintingBugReporter());
+        SlowEngine engine = new SlowEngine();
+        engine.registerWith(cache);
+        final ClassDescriptor descriptor = DescriptorFactory.createClassDescriptor("test/Foo");
+
+        int numThreads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<Object>(numThreads);
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results.set(index, cache.getClassAnalysis(Result.class, descriptor));
+                    } catch (Exception e) {
+                        results.set(index, e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(1, engine.count.get());
+        Object first = results.get(0);
+        assertTrue(first instanceof Result);
+        for (int i = 1; i < numThreads; i++) {
+            assertSame(first, results.get(i));
+        }
+    }
+}
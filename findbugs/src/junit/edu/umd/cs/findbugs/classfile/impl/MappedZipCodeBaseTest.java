@@ -0,0 +1,94 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2006-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.io.IO;
+
+public class MappedZipCodeBaseTest extends TestCase {
+
+    private static byte[] contents(String name) {
+        byte[] result = new byte[1000];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) (name.hashCode() + i % 7);
+        }
+        return result;
+    }
+
+    private static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(bytes);
+        boolean stored = false;
+        for (String name : names) {
+            byte[] data = contents(name);
+            ZipEntry entry = new ZipEntry(name);
+            // alternate between stored and deflated entries
+            stored = !stored;
+            if (stored) {
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(data);
+            out.closeEntry();
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(ICodeBaseEntry entry) throws IOException {
+        return IO.readAll(entry.openResource());
+    }
+
+    public void testLookupAndIterate() throws Exception {
+        String[] names = { "b/B.class", "a/A.class", "c.txt" };
+        MappedZipCodeBase codeBase = new MappedZipCodeBase(null, ByteBuffer.wrap(zip(names)), null);
+
+        for (String name : names) {
+            ICodeBaseEntry entry = codeBase.lookupResource(name);
+            assertNotNull(name, entry);
+            assertEquals(name, entry.getResourceName());
+            assertEquals(1000, entry.getNumBytes());
+            assertTrue(name, Arrays.equals(contents(name), read(entry)));
+        }
+        assertNull(codeBase.lookupResource("a/B.class"));
+
+        List<String> iterated = new ArrayList<String>();
+        for (ICodeBaseIterator i = codeBase.iterator(); i.hasNext();) {
+            iterated.add(i.next().getResourceName());
+        }
+        assertEquals(Arrays.asList(names), iterated);
+    }
+}
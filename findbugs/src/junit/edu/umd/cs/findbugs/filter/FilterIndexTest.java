@@ -0,0 +1,137 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.umd.cs.findbugs.BugInstance;
+
+public class FilterIndexTest {
+
+    private static final String FILTER = "<FindBugsFilter>"
+            + "<Match><Bug pattern='NP_NULL_ON_SOME_PATH'/><Class name='p.A'/></Match>"
+            + "<Match><Bug code='UuF'/></Match>"
+            + "<Match><Bug category='MALICIOUS_CODE'/><Priority value='1'/></Match>"
+            + "<Match class='p.B'/>"
+            + "<Match><Package name='q'/></Match>"
+            + "<Match classregex='r\\.s\\..*'/>"
+            + "<Match><Or><Class name='~t\\.Foo\\$.*'/><Class name='t.Bar'/></Or></Match>"
+            + "<Match><Class name='~.*Test'/></Match>"
+            + "<Match><Class name='~u\\.X|v\\.Y'/></Match>"
+            + "<Match><Not><Bug pattern='DMI_HARDCODED_ABSOLUTE_FILENAME'/></Not><Class name='w.W'/></Match>"
+            + "<Match><Class name='w.Role' role='CLASS_REFTYPE'/></Match>"
+            + "<Match disabled='true'><Bug pattern='ES_COMPARING_STRINGS_WITH_EQ'/><Class name='x.Disabled'/></Match>"
+            + "</FindBugsFilter>";
+
+    private static Filter parse(String xml) throws Exception {
+        return new Filter(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    private static boolean linearMatch(Filter filter, BugInstance bug) {
+        for (Iterator<Matcher> i = filter.childIterator(); i.hasNext();) {
+            Matcher child = i.next();
+            if (filter.isEnabled(child) && child.match(bug)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<BugInstance> bugs() {
+        String[] types = { "NP_NULL_ON_SOME_PATH", "UUF_UNUSED_FIELD", "EI_EXPOSE_REP", "DMI_HARDCODED_ABSOLUTE_FILENAME",
+                "ES_COMPARING_STRINGS_WITH_EQ" };
+        String[] classes = { "p.A", "p.B", "p.C", "q.D", "q.r.E", "r.s.F", "r.s", "t.Foo$1", "t.Foo", "t.Bar", "a.MyTest",
+                "u.X", "v.Y", "w.W", "w.Role", "x.Disabled", "Z" };
+        List<BugInstance> result = new ArrayList<BugInstance>();
+        for (String type : types) {
+            for (String c : classes) {
+                for (int priority = 1; priority <= 2; priority++) {
+                    result.add(new BugInstance(type, priority).addClass(c));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesLikeLinearEvaluation() throws Exception {
+        Filter filter = parse(FILTER);
+        int matched = 0;
+        for (BugInstance bug : bugs()) {
+            boolean expected = linearMatch(filter, bug);
+            assertEquals(bug.getType() + " " + bug.getPrimaryClass(), expected, filter.match(bug));
+            if (expected) {
+                matched++;
+            }
+        }
+        assertTrue(matched > 0);
+        // "~.*Test", the alternation and the role can't be indexed
+        assertEquals(3, filter.getNumUnindexedMatchers());
+    }
+
+    @Test
+    public void indexFollowsChanges() throws Exception {
+        Filter filter = parse(FILTER);
+        BugInstance bug = new BugInstance("ES_COMPARING_STRINGS_WITH_EQ", 2).addClass("x.Disabled");
+        assertFalse(filter.match(bug));
+        Matcher disabled = null;
+        for (Iterator<Matcher> i = filter.childIterator(); i.hasNext();) {
+            Matcher child = i.next();
+            if (!filter.isEnabled(child)) {
+                disabled = child;
+            }
+        }
+        filter.enable(disabled);
+        assertTrue(filter.match(bug));
+        filter.disable(disabled);
+        assertFalse(filter.match(bug));
+        Matcher added = new ClassMatcher("x.Disabled");
+        filter.addChild(added);
+        assertTrue(filter.match(bug));
+        filter.removeChild(added);
+        assertFalse(filter.match(bug));
+        filter.addChild(added);
+        filter.clear();
+        assertFalse(filter.match(bug));
+    }
+
+    @Test
+    public void classKeys() {
+        assertEquals(FilterIndex.getClassKey("a.B").toString(), FilterIndex.getClassKey("~a\\.B").toString());
+        assertEquals("1:a.b", FilterIndex.getClassKey("~a\\.b\\.[^.]+").toString());
+        assertEquals("3:a.b.", FilterIndex.getClassKey("~a\\.b\\..*").toString());
+        assertEquals("3:a", FilterIndex.getClassKey("~a.b.*").toString());
+        assertEquals("3:a.", FilterIndex.getClassKey("~a\\.b?").toString());
+        assertNull(FilterIndex.getClassKey("~b?"));
+        assertNull(FilterIndex.getClassKey("~a|b"));
+        assertNull(FilterIndex.getClassKey("~\\w+"));
+        assertNull(FilterIndex.getClassKey(null));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class ProfilerTest extends TestCase {
+
+    static class Detector {
+    }
+
+    static class Engine {
+    }
+
+    private static void analyze(Profiler profiler, String className) throws InterruptedException {
+        profiler.startContext(className);
+        try {
+            profiler.start(Detector.class);
+            try {
+                Thread.sleep(2);
+                profiler.start(Engine.class);
+                try {
+                    Thread.sleep(2);
+                } finally {
+                    profiler.end(Engine.class);
+                }
+            } finally {
+                profiler.end(Detector.class);
+            }
+        } finally {
+            profiler.endContext(className);
+        }
+    }
+
+    private static String collapsedStacks(Profiler profiler) {
+        StringWriter result = new StringWriter();
+        profiler.writeCollapsedStacks(new PrintWriter(result));
+        return result.toString();
+    }
+
+    public void testCollapsedStacks() throws Exception {
+        final Profiler profiler = new Profiler(true);
+        analyze(profiler, "p.A");
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    analyze(profiler, "p.B");
+                    analyze(profiler, "p.A");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.start();
+        worker.join();
+
+        String[] lines = collapsedStacks(profiler).split("\n");
+        String detector = Detector.class.getName();
+        String engine = Engine.class.getName();
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("p.A;" + detector + " "));
+        assertTrue(lines[1], lines[1].startsWith("p.A;" + detector + ";" + engine + " "));
+        assertTrue(lines[2], lines[2].startsWith("p.B;" + detector + " "));
+        assertTrue(lines[3], lines[3].startsWith("p.B;" + detector + ";" + engine + " "));
+
+        Profiler.CallNode a = profiler.getMergedCallTree().children.get("p.A");
+        assertEquals(2, a.calls);
+        assertEquals(2, a.children.get(detector).calls);
+        assertEquals(0, a.selfTime);
+        assertTrue(a.getTotalTime() >= 8000000L);
+        assertEquals(3, profiler.getProfile(Engine.class).totalCalls.get());
+    }
+
+    public void testNotHierarchical() {
+        Profiler profiler = new Profiler(false);
+        profiler.startContext("p.A");
+        profiler.start(Detector.class);
+        profiler.end(Detector.class);
+        profiler.endContext("p.A");
+        assertFalse(profiler.isHierarchical());
+        try {
+            collapsedStacks(profiler);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.visitclass;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+
+public class DecodedCodeTest extends TestCase {
+
+    private static final ConstantPool CONSTANT_POOL = new ConstantPool(new Constant[] { null,
+            new ConstantUtf8("java/lang/String"), new ConstantClass(1), new ConstantUtf8("hello"), new ConstantString(3) });
+
+    private static DecodedCode decode(int... bytes) {
+        byte[] code = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            code[i] = (byte) bytes[i];
+        }
+        return new DecodedCode(new Code(0, code.length + 12, 1, 1, code, new CodeException[0], new Attribute[0], CONSTANT_POOL),
+                CONSTANT_POOL);
+    }
+
+    public void testDecode() {
+        DecodedCode decoded = decode(
+                // 0: ldc "hello"
+                0x12, 4,
+                // 2: checkcast java/lang/String
+                0xc0, 0, 2,
+                // 5: iinc 1, -1
+                0x84, 1, 0xff,
+                // 8: wide iinc 300, 1000
+                0xc4, 0x84, 0x01, 0x2c, 0x03, 0xe8,
+                // 14: iload_2
+                0x1c,
+                // 15: tableswitch 0..1, default +21, no padding
+                0xaa, 0, 0, 0, 21, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 10, 0, 0, 0, 5,
+                // 36: goto 0
+                0xa7, 0xff, 0xdc);
+
+        assertNull(decoded.getBadBytecode());
+        assertNull(decoded.getTruncated());
+        assertEquals(7, decoded.size());
+        assertEquals(39, decoded.getPC(7));
+
+        assertEquals(Constants.LDC, decoded.getOpcode(0));
+        assertEquals("hello", decoded.getConstant(0).string);
+        assertNull(decoded.getConstant(0).classConstant);
+
+        assertEquals(2, decoded.getPC(1));
+        assertEquals(Constants.CHECKCAST, decoded.getOpcode(1));
+        assertEquals("java/lang/String", decoded.getConstant(1).classConstant);
+        assertEquals("java/lang/String", decoded.getConstant(1).classDescriptor.getClassName());
+
+        assertEquals(Constants.IINC, decoded.getOpcode(2));
+        assertFalse(decoded.isWide(2));
+        assertEquals(1, decoded.getRegister(2));
+        assertEquals(-1, decoded.getOperand(2));
+        assertTrue(decoded.isRegisterLoad(2));
+        assertTrue(decoded.isRegisterStore(2));
+
+        assertEquals(8, decoded.getPC(3));
+        assertEquals(Constants.IINC, decoded.getOpcode(3));
+        assertTrue(decoded.isWide(3));
+        assertEquals(300, decoded.getRegister(3));
+        assertEquals(1000, decoded.getOperand(3));
+
+        assertEquals(Constants.ILOAD_2, decoded.getOpcode(4));
+        assertEquals(2, decoded.getRegister(4));
+        assertTrue(decoded.isRegisterLoad(4));
+        assertFalse(decoded.isRegisterStore(4));
+
+        assertEquals(15, decoded.getPC(5));
+        DecodedCode.SwitchTable switchTable = decoded.getSwitchTable(5);
+        assertEquals(21, switchTable.defaultOffset);
+        assertEquals(0, switchTable.low);
+        assertEquals(1, switchTable.high);
+        assertEquals("[5, 10]", Arrays.toString(switchTable.offsets));
+        assertEquals("[1, 0]", Arrays.toString(switchTable.labels));
+        assertNull(decoded.getSwitchTable(4));
+
+        assertEquals(36, decoded.getPC(6));
+        assertEquals(Constants.GOTO, decoded.getOpcode(6));
+        assertEquals(-36, decoded.getOperand(6));
+        assertEquals(-1, decoded.getRegister(6));
+    }
+
+    public void testSharedConstants() {
+        DecodedCode decoded = decode(0x12, 4, 0x57, 0x12, 4);
+        assertEquals(3, decoded.size());
+        assertSame(decoded.getConstant(0), decoded.getConstant(2));
+    }
+
+    public void testTruncated() {
+        // sipush missing its second byte
+        DecodedCode decoded = decode(0x1c, 0x11, 0);
+        assertEquals(1, decoded.size());
+        assertEquals(1, decoded.getPC(1));
+        assertNotNull(decoded.getTruncated());
+        assertNull(decoded.getBadBytecode());
+    }
+
+    public void testBadBytecode() {
+        // wide nop
+        DecodedCode decoded = decode(0x1c, 0xc4, 0);
+        assertEquals(1, decoded.size());
+        assertNotNull(decoded.getBadBytecode());
+        assertNull(decoded.getTruncated());
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.LocalVariableAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SloppyBugComparator;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.VersionInsensitiveBugComparator;
+import edu.umd.cs.findbugs.model.ClassNameRewriter;
+
+public class UpdateTest extends TestCase {
+
+    /** Rewrites the classes of package q to package p, as if they moved */
+    private static final ClassNameRewriter MOVED_CLASSES = new ClassNameRewriter() {
+        @Override
+        public String rewriteClassName(String className) {
+            return className.startsWith("q.") ? "p." + className.substring(2) : className;
+        }
+    };
+
+    private static BugInstance bug(String type, String className, String methodName, int line, String local,
+            boolean inSubclass) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        if (inSubclass) {
+            bug.addClass(className + "Sub").describe(ClassAnnotation.SUBCLASS_ROLE);
+        }
+        bug.addClass(className);
+        bug.addMethod(className, methodName, "()V", false);
+        bug.addSourceLine(new SourceLineAnnotation(className, "A.java", line, line, line, line));
+        if (local != null) {
+            bug.add(new LocalVariableAnnotation(local, 1, line));
+        }
+        return bug;
+    }
+
+    private static List<BugInstance> allBugs() {
+        String[] types = { "NP_NULL_ON_SOME_PATH", "NP_ALWAYS_NULL", "RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE" };
+        String[] classes = { "p.A", "p.B", "q.A" };
+        String[] methods = { "f", "g" };
+        int[] lines = { 10, 20 };
+        String[] locals = { null, "x", "?" };
+        List<BugInstance> result = new ArrayList<BugInstance>();
+        for (String type : types) {
+            for (String className : classes) {
+                for (String methodName : methods) {
+                    for (int line : lines) {
+                        for (String local : locals) {
+                            result.add(bug(type, className, methodName, line, local, false));
+                            result.add(bug(type, className, methodName, line, local, true));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Comparator<BugInstance>> allComparators() {
+        List<Comparator<BugInstance>> result = new ArrayList<Comparator<BugInstance>>();
+        result.add(SortedBugCollection.BugInstanceComparator.instance);
+        result.add(SortedBugCollection.MultiversionBugInstanceComparator.instance);
+        result.add(new VersionInsensitiveBugComparator());
+        VersionInsensitiveBugComparator fuzzy = new VersionInsensitiveBugComparator();
+        fuzzy.setExactBugPatternMatch(false);
+        result.add(fuzzy);
+        VersionInsensitiveBugComparator moved = new VersionInsensitiveBugComparator();
+        moved.setClassNameRewriter(MOVED_CLASSES);
+        moved.setComparePriorities(true);
+        result.add(moved);
+        VersionInsensitiveBugComparator movedFuzzy = new VersionInsensitiveBugComparator();
+        movedFuzzy.setClassNameRewriter(MOVED_CLASSES);
+        movedFuzzy.setExactBugPatternMatch(false);
+        result.add(movedFuzzy);
+        result.add(new SloppyBugComparator());
+        SloppyBugComparator movedSloppy = new SloppyBugComparator();
+        movedSloppy.setClassNameRewriter(MOVED_CLASSES);
+        result.add(movedSloppy);
+        return result;
+    }
+
+    public void testEqualBugsHaveEqualMatchKeys() {
+        List<BugInstance> bugs = allBugs();
+        for (Comparator<BugInstance> comparator : allComparators()) {
+            int equalPairs = 0;
+            for (BugInstance lhs : bugs) {
+                String key = Update.getMatchKey(comparator, lhs);
+                for (BugInstance rhs : bugs) {
+                    if (lhs != rhs && comparator.compare(lhs, rhs) == 0) {
+                        assertEquals(comparator.getClass().getSimpleName() + ": " + lhs + " = " + rhs, key,
+                                Update.getMatchKey(comparator, rhs));
+                        equalPairs++;
+                    }
+                }
+            }
+            if (!(comparator instanceof SortedBugCollection.BugInstanceComparator)) {
+                assertTrue(comparator.getClass().getSimpleName(), equalPairs > 0);
+            }
+        }
+    }
+
+    public void testMatchKeysSeparateClasses() {
+        BugInstance a = bug("NP_ALWAYS_NULL", "p.A", "f", 10, null, false);
+        BugInstance b = bug("NP_ALWAYS_NULL", "p.B", "f", 10, null, false);
+        assertFalse(Update.getMatchKey(SortedBugCollection.BugInstanceComparator.instance, a).equals(
+                Update.getMatchKey(SortedBugCollection.BugInstanceComparator.instance, b)));
+        assertFalse(Update.getMatchKey(new SloppyBugComparator(), a).equals(Update.getMatchKey(new SloppyBugComparator(), b)));
+    }
+
+    private static List<BugInstance> bugsWithKnownLocals() {
+        List<BugInstance> result = new ArrayList<BugInstance>();
+        for (BugInstance bug : allBugs()) {
+            LocalVariableAnnotation local = bug.getPrimaryLocalVariableAnnotation();
+            if (local == null || local.isSignificant()) {
+                result.add(bug);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looking a bug up in the map of its match key finds the bug found in a
+     * single map of all bugs, as matching did before the maps were split.
+     * Update doesn't split the maps of a VersionInsensitiveBugComparator if a
+     * bug has an unknown local variable.
+     */
+    public void testBucketsFindSameBugsAsOneMap() {
+        for (Comparator<BugInstance> comparator : allComparators()) {
+            List<BugInstance> bugs = comparator instanceof VersionInsensitiveBugComparator ? bugsWithKnownLocals()
+                    : allBugs();
+            TreeMap<BugInstance, BugInstance> all = new TreeMap<BugInstance, BugInstance>(comparator);
+            Map<String, TreeMap<BugInstance, BugInstance>> buckets = new HashMap<String, TreeMap<BugInstance, BugInstance>>();
+            // Every other bug is an old bug
+            for (int i = 0; i < bugs.size(); i += 2) {
+                BugInstance bug = bugs.get(i);
+                if (!all.containsKey(bug)) {
+                    all.put(bug, bug);
+                }
+                String key = Update.getMatchKey(comparator, bug);
+                TreeMap<BugInstance, BugInstance> bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new TreeMap<BugInstance, BugInstance>(comparator);
+                    buckets.put(key, bucket);
+                }
+                if (!bucket.containsKey(bug)) {
+                    bucket.put(bug, bug);
+                }
+            }
+            for (BugInstance bug : bugs) {
+                TreeMap<BugInstance, BugInstance> bucket = buckets.get(Update.getMatchKey(comparator, bug));
+                assertSame(comparator.getClass().getSimpleName() + ": " + bug, all.get(bug), bucket == null ? null
+                        : bucket.get(bug));
+            }
+        }
+    }
+
+    public void testHasUnknownLocalVariable() {
+        assertFalse(Update.hasUnknownLocalVariable(collection(0, bugsWithKnownLocals().toArray(new BugInstance[0]))));
+        assertTrue(Update.hasUnknownLocalVariable(collection(0, bug("NP_ALWAYS_NULL", "p.A", "f", 10, "x", false),
+                bug("NP_ALWAYS_NULL", "p.A", "f", 10, "?", false))));
+    }
+
+    private static SortedBugCollection collection(long sequence, BugInstance... bugs) {
+        SortedBugCollection result = new SortedBugCollection();
+        result.setSequenceNumber(sequence);
+        for (BugInstance bug : bugs) {
+            result.add(bug, false);
+        }
+        return result;
+    }
+
+    /**
+     * Get the first version of each bug in a merged collection, by the class,
+     * method and source line of the bug.
+     */
+    private static Map<String, Long> firstVersions(BugCollection merged) {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (BugInstance bug : merged) {
+            MethodAnnotation method = bug.getPrimaryMethod();
+            String where = bug.getType() + " " + method.getClassName() + "." + method.getMethodName() + " "
+                    + bug.getPrimarySourceLineAnnotation().getStartLine();
+            assertNull(where, result.put(where + (bug.isDead() ? " dead" : ""), bug.getFirstVersion()));
+        }
+        return result;
+    }
+
+    public void testMergeMatchesBugs() {
+        SortedBugCollection orig = collection(3,
+                bug("NP_ALWAYS_NULL", "p.A", "f", 10, "x", false),
+                bug("NP_ALWAYS_NULL", "p.A", "g", 10, "x", false),
+                bug("NP_NULL_ON_SOME_PATH", "p.B", "f", 10, null, false),
+                bug("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE", "p.B", "g", 10, null, false),
+                bug("NP_ALWAYS_NULL", "p.B", "g", 30, "y", true));
+        for (BugInstance bug : orig) {
+            bug.setFirstVersion(1);
+        }
+        SortedBugCollection newer = collection(0,
+                // unchanged
+                bug("NP_ALWAYS_NULL", "p.A", "f", 10, "x", false),
+                // moved to another line
+                bug("NP_ALWAYS_NULL", "p.A", "g", 15, "x", false),
+                // pattern changed within the same code
+                bug("NP_ALWAYS_NULL", "p.B", "f", 10, null, false),
+                // new
+                bug("NP_ALWAYS_NULL", "p.C", "f", 10, null, false),
+                bug("NP_ALWAYS_NULL", "p.B", "g", 30, "z", true));
+
+        Map<String, Long> firstVersions = firstVersions(new Update().mergeCollections(orig, newer, true, false));
+
+        assertEquals(Long.valueOf(1), firstVersions.get("NP_ALWAYS_NULL p.A.f 10"));
+        assertEquals(Long.valueOf(1), firstVersions.get("NP_ALWAYS_NULL p.A.g 15"));
+        assertEquals(Long.valueOf(1), firstVersions.get("NP_ALWAYS_NULL p.B.f 10"));
+        assertEquals(Long.valueOf(4), firstVersions.get("NP_ALWAYS_NULL p.C.f 10"));
+        assertEquals(Long.valueOf(4), firstVersions.get("NP_ALWAYS_NULL p.B.g 30"));
+        assertEquals(Long.valueOf(1), firstVersions.get("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE p.B.g 10 dead"));
+        assertEquals(Long.valueOf(1), firstVersions.get("NP_ALWAYS_NULL p.B.g 30 dead"));
+        assertEquals(7, firstVersions.size());
+    }
+}